@@ -1,12 +1,18 @@
 package com.rest.playlist;
 
 import org.springframework.boot.SpringApplication;
+import com.rest.playlist.config.CacheConfig;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
 
 //@EnableJpaAuditing
 @SpringBootApplication
+// imported explicitly so that test slices (@DataJpaTest) build their own second-level cache too
+@Import(CacheConfig.class)
+@EnableScheduling
 public class PlaylistApplication {
 
 	public static void main(String[] args) {
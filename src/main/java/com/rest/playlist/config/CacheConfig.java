@@ -0,0 +1,43 @@
+package com.rest.playlist.config;
+
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.ehcache.xml.XmlConfiguration;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.util.UUID;
+
+/**
+ * CacheConfig class builds the JCache manager holding the Hibernate second-level cache regions
+ * declared in ehcache.xml.
+ * <p>
+ * Each application context gets its own manager (and so its own entries) instead of the
+ * provider-wide one Hibernate would otherwise share between every context of the JVM.
+ * Statistics of every region are enabled : they are read back by {@link com.rest.playlist.service.CacheStatisticsService}.
+ */
+
+@Configuration
+public class CacheConfig {
+
+    private static final String CONFIG = "/ehcache.xml";
+
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager() {
+        EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        // the uri only names the manager : it shows up in the statistics MBean names
+        URI uri = URI.create("playlist-" + UUID.randomUUID());
+        CacheManager cacheManager = provider.getCacheManager(uri, new XmlConfiguration(getClass().getResource(CONFIG)));
+        cacheManager.getCacheNames().forEach(name -> cacheManager.enableStatistics(name, true));
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheManagerCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+    }
+}
@@ -0,0 +1,50 @@
+package com.rest.playlist.config;
+
+import com.rest.playlist.model.PooledSequenceGenerator;
+import com.rest.playlist.model.Playlist;
+import com.rest.playlist.model.Song;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationInitializer;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+
+/**
+ * IdGenerationConfig class hands the id block size (playlist.id.block-size) to
+ * {@link PooledSequenceGenerator} and migrates the id sequences to it before the
+ * EntityManagerFactory is built.
+ */
+
+@Configuration
+public class IdGenerationConfig {
+
+    private static final String SEQUENCE_MIGRATION = "sequenceMigration";
+
+    @Bean
+    public static EntityManagerFactoryDependsOnPostProcessor sequenceMigrationBeforeHibernate() {
+        return new EntityManagerFactoryDependsOnPostProcessor(SEQUENCE_MIGRATION);
+    }
+
+    /**
+     * runs after the versioned migrations (db/migration), which create the sequences with the default block size
+     */
+    @Bean(SEQUENCE_MIGRATION)
+    public SequenceMigration sequenceMigration(DataSource dataSource, ObjectProvider<FlywayMigrationInitializer> flywayInitializer,
+                                               @Value("${playlist.id.block-size:" + PooledSequenceGenerator.DEFAULT_BLOCK_SIZE + "}") int blockSize) {
+        // the initializer migrates the database as it is created
+        flywayInitializer.getIfAvailable();
+        return new SequenceMigration(new JdbcTemplate(dataSource), Arrays.asList(Song.SEQUENCE, Playlist.SEQUENCE), blockSize);
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer idBlockSizeCustomizer(
+            @Value("${playlist.id.block-size:" + PooledSequenceGenerator.DEFAULT_BLOCK_SIZE + "}") int blockSize) {
+        return properties -> properties.put(PooledSequenceGenerator.BLOCK_SIZE_SETTING, blockSize);
+    }
+}
@@ -0,0 +1,50 @@
+package com.rest.playlist.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+/**
+ * SequenceMigration class sets the increment of the id sequences to the block size of
+ * {@link com.rest.playlist.model.PooledSequenceGenerator} before Hibernate starts : Hibernate refuses
+ * a sequence whose increment differs from its mapping. The versioned migrations (db/migration) create
+ * the sequences with the default block size, a configured one is applied here.
+ * <p>
+ * One nextval is drawn with the old increment first, so the next value with the new increment
+ * starts after every id handed out so far, whether the block grows or shrinks.
+ * Sequences that do not exist are skipped.
+ */
+
+public class SequenceMigration implements InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(SequenceMigration.class);
+
+    private static final String SELECT_INCREMENT =
+            "select increment from information_schema.sequences where lower(sequence_name) = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final List<String> sequences;
+    private final int blockSize;
+
+    public SequenceMigration(JdbcTemplate jdbcTemplate, List<String> sequences, int blockSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sequences = sequences;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        for (String sequence : sequences) {
+            List<String> increments = jdbcTemplate.queryForList(SELECT_INCREMENT, String.class, sequence);
+            if (increments.isEmpty() || Long.parseLong(increments.get(0).trim()) == blockSize) {
+                continue;
+            }
+            log.info("Sequence {} : increment {} changed to {}", sequence, increments.get(0), blockSize);
+            jdbcTemplate.queryForObject("select nextval('" + sequence + "')", Long.class);
+            jdbcTemplate.execute("alter sequence " + sequence + " increment by " + blockSize);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.rest.playlist.dto;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BulkImportReport class is the response of a bulk song upload, eg :
+ * {
+ * "received": 3,
+ * "imported": 2,
+ * "rejected": 1,
+ * "errors": [
+ * {
+ * "line": 2,
+ * "message": "NotBlank: artistname ne doit pas être null"
+ * }
+ * ]
+ * }
+ * Only the first MAX_REPORTED_ERRORS errors are listed, so a broken upload
+ * does not grow the report without bound ; "rejected" always counts them all.
+ */
+
+@Getter
+public class BulkImportReport {
+
+    public static final int MAX_REPORTED_ERRORS = 1000;
+
+    private long received;
+    private long imported;
+    private long rejected;
+    private final List<RowError> errors = new ArrayList<>();
+
+    public void received() {
+        received++;
+    }
+
+    public void imported(int count) {
+        imported += count;
+    }
+
+    public void rejected(long line, String message) {
+        rejected++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new RowError(line, message));
+        }
+    }
+
+    @Getter
+    public static class RowError {
+
+        private final long line;
+        private final String message;
+
+        RowError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+    }
+}
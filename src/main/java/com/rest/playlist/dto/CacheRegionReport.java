@@ -0,0 +1,40 @@
+package com.rest.playlist.dto;
+
+import lombok.Getter;
+
+/**
+ * CacheRegionReport class is the activity of one second-level cache region since startup, eg :
+ * {
+ * "region": "com.rest.playlist.model.Song",
+ * "hits": 120,
+ * "misses": 8,
+ * "hitPercentage": 93.75,
+ * "puts": 8,
+ * "removals": 1,
+ * "evictions": 0
+ * }
+ * where evictions counts the entries dropped because the region was full.
+ */
+
+@Getter
+public class CacheRegionReport {
+
+    private final String region;
+    private final long hits;
+    private final long misses;
+    private final float hitPercentage;
+    private final long puts;
+    private final long removals;
+    private final long evictions;
+
+    public CacheRegionReport(String region, long hits, long misses, float hitPercentage,
+                             long puts, long removals, long evictions) {
+        this.region = region;
+        this.hits = hits;
+        this.misses = misses;
+        this.hitPercentage = hitPercentage;
+        this.puts = puts;
+        this.removals = removals;
+        this.evictions = evictions;
+    }
+}
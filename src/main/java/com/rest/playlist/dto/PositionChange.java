@@ -0,0 +1,19 @@
+package com.rest.playlist.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * PositionChange class is the new place of a song within its playlist, eg :
+ * {
+ * "after": 42
+ * }
+ * moves the song right after song 42, while a null (or missing) after moves it first.
+ */
+
+@Getter
+@Setter
+public class PositionChange {
+
+    private Long after;
+}
@@ -0,0 +1,46 @@
+package com.rest.playlist.dto;
+
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * ResourceVersion class is the validator of one representation served by a GET, eg :
+ * tag "4" and the last update of a song, or tag "2-15-31" for a playlist with its songs
+ * (playlist version, number of songs, sum of the songs' versions).
+ * It is read without loading the entity, so a conditional GET is answered with a 304
+ * before any entity or JSON work.
+ */
+
+@Getter
+public class ResourceVersion {
+
+    private final String tag;
+    private final Instant lastModified;
+
+    public ResourceVersion(String tag, Instant lastModified) {
+        this.tag = tag;
+        this.lastModified = lastModified;
+    }
+
+    public static ResourceVersion of(long version, Instant lastModified) {
+        return new ResourceVersion(String.valueOf(version), lastModified);
+    }
+
+    /**
+     * versions only grow and membership changes move the playlist version :
+     * the tag changes whenever one of the songs does
+     */
+    public ResourceVersion withSongs(long songCount, long songVersionSum, Instant songsLastModified) {
+        Instant last = songsLastModified != null && songsLastModified.isAfter(lastModified) ? songsLastModified : lastModified;
+        return new ResourceVersion(tag + "-" + songCount + "-" + songVersionSum, last);
+    }
+
+    /**
+     * @return the weak ETag of the representation : the same tag validates every body served for the version
+     * (JSON, CBOR or Smile, gzipped or not), which are equivalent but not byte for byte identical
+     */
+    public String getETag() {
+        return "W/\"" + tag + "\"";
+    }
+}
@@ -0,0 +1,44 @@
+package com.rest.playlist.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.pagination.CursorPage;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SongSearchResult class is one page of a faceted song search, eg :
+ * {
+ * "total": 42,
+ * "songs": [ ... ],
+ * "categories": { "JAZZ": 0, "POP": 40, "CLASSICAL": 2 },
+ * "artists": { "Sam Smith": 30, "Adele": 12 }
+ * }
+ * total and facet counts cover every matching song, not only the page ;
+ * the next page cursor is sent in the X-Next-Cursor header.
+ */
+
+@Getter
+@JsonPropertyOrder({"total", "songs", "categories", "artists"})
+public class SongSearchResult {
+
+    private final long total;
+    @JsonIgnore
+    private final CursorPage<Song> page;
+    private final Map<String, Integer> categories;
+    private final Map<String, Integer> artists;
+
+    public SongSearchResult(long total, CursorPage<Song> page, Map<String, Integer> categories, Map<String, Integer> artists) {
+        this.total = total;
+        this.page = page;
+        this.categories = categories;
+        this.artists = artists;
+    }
+
+    public List<Song> getSongs() {
+        return page.getContent();
+    }
+}
@@ -0,0 +1,27 @@
+package com.rest.playlist.dto;
+
+import lombok.Getter;
+
+/**
+ * Suggestion class is one typeahead completion, eg :
+ * {
+ * "value": "Sam Smith",
+ * "field": "artistName",
+ * "count": 12
+ * }
+ * where count is the number of songs (or playlists) holding the value.
+ */
+
+@Getter
+public class Suggestion {
+
+    private final String value;
+    private final String field;
+    private final int count;
+
+    public Suggestion(String value, String field, int count) {
+        this.value = value;
+        this.field = field;
+        this.count = count;
+    }
+}
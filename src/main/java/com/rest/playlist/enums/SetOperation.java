@@ -0,0 +1,19 @@
+package com.rest.playlist.enums;
+
+/**
+ * how the songs of several playlists are combined into a new one, in the order of the first playlist
+ */
+public enum SetOperation {
+    /**
+     * the songs of every playlist, each once at its first occurrence
+     */
+    UNION,
+    /**
+     * the songs of the first playlist found in every other one
+     */
+    INTERSECT,
+    /**
+     * the songs of the first playlist found in none of the others
+     */
+    MINUS,
+}
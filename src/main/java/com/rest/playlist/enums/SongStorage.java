@@ -0,0 +1,15 @@
+package com.rest.playlist.enums;
+
+/**
+ * where the songs of a playlist are kept
+ */
+public enum SongStorage {
+    /**
+     * one songs_playlist row per song
+     */
+    ROWS,
+    /**
+     * one playlist_packed_songs row holding every song id, see PackedSongIds
+     */
+    PACKED,
+}
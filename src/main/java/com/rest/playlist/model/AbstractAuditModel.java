@@ -9,8 +9,12 @@ import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 import javax.persistence.Column;
 import javax.persistence.EntityListeners;
 import javax.persistence.MappedSuperclass;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.Version;
 import java.io.Serializable;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 
 @MappedSuperclass
 @Audited
@@ -27,6 +31,31 @@ public abstract class AbstractAuditModel implements Serializable {
     @Column(name = "updated_at")
     private Instant updatedAt;
 
+    /**
+     * incremented by Hibernate on every update : the ETag of the entity (see ResourceVersion).
+     * A primitive, so an entity is still told new or detached by its id alone
+     */
+    @Version
+    @JsonIgnore
+    @Column(name = "version")
+    private long version;
+
+    /**
+     * timestamps are stored with a microsecond precision : truncating them before the write
+     * keeps the managed entity equal to the row, which keyset pagination on created_at relies on.
+     * Runs after the AuditingEntityListener callbacks.
+     */
+    @PrePersist
+    @PreUpdate
+    void truncateToDatabasePrecision() {
+        if (createAt != null) {
+            createAt = createAt.truncatedTo(ChronoUnit.MICROS);
+        }
+        if (updatedAt != null) {
+            updatedAt = updatedAt.truncatedTo(ChronoUnit.MICROS);
+        }
+    }
+
     public Instant getCreateAt() {
         return createAt;
     }
@@ -42,4 +71,12 @@ public abstract class AbstractAuditModel implements Serializable {
     public void setUpdatedAt(Instant updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,22 @@
+package com.rest.playlist.model;
+
+import org.hibernate.Hibernate;
+
+/**
+ * LazyAssociationFilter class is a Jackson value filter (@JsonInclude CUSTOM) :
+ * an association that the fetch plan of the request did not load is left out of the
+ * response instead of being initialized during serialization (one extra select per row).
+ */
+
+public class LazyAssociationFilter {
+
+    @Override
+    public boolean equals(Object value) {
+        return value != null && !Hibernate.isInitialized(value);
+    }
+
+    @Override
+    public int hashCode() {
+        return 0;
+    }
+}
@@ -1,6 +1,19 @@
 package com.rest.playlist.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.rest.playlist.enums.SongStorage;
+import com.rest.playlist.repository.PlaylistMemberJdbcRepository;
+import com.rest.playlist.search.PlaylistSearchIndexListener;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.OrderBy;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.SQLInsert;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotBlank;
@@ -12,11 +25,32 @@ import java.util.List;
 @Setter
 @Entity
 @Table(name = "playlists")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@EntityListeners(PlaylistSearchIndexListener.class)
+@NamedEntityGraph(name = Playlist.SUMMARY_GRAPH)
+@NamedEntityGraph(name = Playlist.DETAIL_GRAPH, attributeNodes = @NamedAttributeNode("songs"))
 public class Playlist extends AbstractAuditModel {
 
+    /**
+     * fetch plan of list and search endpoints : playlist columns only, songs stay unloaded
+     */
+    public static final String SUMMARY_GRAPH = "Playlist.summary";
+
+    /**
+     * fetch plan of a single playlist : songs are loaded in the same query
+     */
+    public static final String DETAIL_GRAPH = "Playlist.detail";
+
+    /**
+     * ids are drawn in blocks, see PooledSequenceGenerator
+     */
+    public static final String SEQUENCE = "playlist_seq";
+
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "PLAYLIST_SEQ")
-    @SequenceGenerator(name = "PLAYLIST_SEQ", sequenceName = "playlist_seq", allocationSize = 1)
+    @GenericGenerator(name = "PLAYLIST_SEQ", strategy = PooledSequenceGenerator.NAME,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = SEQUENCE))
     private Long id;
 
     @Column(name = "title")
@@ -29,7 +63,26 @@ public class Playlist extends AbstractAuditModel {
     @Size(min = 3, max = 50, message = "description doit être compris entre 3 et 50 caractères")
     private String description;
 
-    @ManyToMany(fetch = FetchType.EAGER)
+    /**
+     * changed through PUT /api/playlists/{id}/storage only : in PACKED storage the songs collection stays empty
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "song_storage")
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private SongStorage songStorage = SongStorage.ROWS;
+
+    /**
+     * songs in playlist order : each songs_playlist row carries a sparse position (see PlaylistMemberJdbcRepository),
+     * rows written by Hibernate are appended after the last position of the playlist
+     */
+    @ManyToMany(fetch = FetchType.LAZY)
+    @BatchSize(size = 100)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+    @OrderBy(clause = "position asc, song_id asc")
+    @SQLInsert(sql = "insert into songs_playlist (playlist_id, song_id, position) " +
+            "select p.id, s.id, coalesce((select max(sp.position) from songs_playlist sp where sp.playlist_id = p.id), 0) + " +
+            PlaylistMemberJdbcRepository.POSITION_GAP + " from playlists p, songs s where p.id = ? and s.id = ?")
+    @JsonInclude(value = JsonInclude.Include.CUSTOM, valueFilter = LazyAssociationFilter.class)
     @JoinTable(name = "songs_playlist",
             joinColumns = {@JoinColumn(name = "playlist_id", referencedColumnName = "id")},
             inverseJoinColumns = {@JoinColumn(name = "song_id", referencedColumnName = "id")})
@@ -0,0 +1,40 @@
+package com.rest.playlist.model;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Properties;
+
+/**
+ * PooledSequenceGenerator class draws entity ids from a database sequence one block at a time
+ * (pooled-lo optimizer) : a nextval returns the first id of a block of {@link #BLOCK_SIZE_SETTING} ids,
+ * the following inserts of the block take their ids in memory. Inserts no longer wait for a nextval
+ * each, and Hibernate can batch them.
+ * <p>
+ * The sequence is incremented by the block size (see SequenceMigration) : every nextval, from Hibernate
+ * or from a JDBC insert such as SongJdbcRepository#insertAll, hands out a block nobody else uses.
+ */
+
+public class PooledSequenceGenerator extends SequenceStyleGenerator {
+
+    /**
+     * Hibernate setting holding the block size, set from playlist.id.block-size (see SequenceMigration)
+     */
+    public static final String BLOCK_SIZE_SETTING = "playlist.id.block-size";
+
+    public static final int DEFAULT_BLOCK_SIZE = 50;
+
+    public static final String NAME = "com.rest.playlist.model.PooledSequenceGenerator";
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        Object blockSize = serviceRegistry.getService(ConfigurationService.class).getSettings().get(BLOCK_SIZE_SETTING);
+        params.setProperty(INCREMENT_PARAM, blockSize == null ? String.valueOf(DEFAULT_BLOCK_SIZE) : blockSize.toString());
+        params.setProperty(OPT_PARAM, StandardOptimizerDescriptor.POOLED_LO.getExternalName());
+        super.configure(type, params, serviceRegistry);
+    }
+}
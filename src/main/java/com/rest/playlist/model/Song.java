@@ -2,7 +2,13 @@ package com.rest.playlist.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.search.SongSearchIndexListener;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotBlank;
@@ -16,11 +22,20 @@ import java.util.List;
 @Getter
 @Setter
 @Table(name = "songs")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@EntityListeners(SongSearchIndexListener.class)
 public class Song extends AbstractAuditModel {
 
+    /**
+     * ids are drawn in blocks, see PooledSequenceGenerator
+     */
+    public static final String SEQUENCE = "song_seq";
+
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "SONG_SEQ")
-    @SequenceGenerator(name = "SONG_SEQ", sequenceName = "song_seq", allocationSize = 1)
+    @GenericGenerator(name = "SONG_SEQ", strategy = PooledSequenceGenerator.NAME,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = SEQUENCE))
     private Long id;
 
     @Column(name = "title")
@@ -47,7 +62,11 @@ public class Song extends AbstractAuditModel {
     private SongCategory category;
 
 
-    @ManyToMany(fetch = FetchType.LAZY)
+    /**
+     * inverse side : songs_playlist rows are only written through Playlist.songs (or PlaylistMemberJdbcRepository),
+     * the playlists of a song are read in pages with GET /api/songs/{id}/playlists
+     */
+    @ManyToMany(mappedBy = "songs", fetch = FetchType.LAZY)
     @JsonIgnore
     private List<Playlist> playlist;
 }
@@ -0,0 +1,171 @@
+package com.rest.playlist.pagination;
+
+import com.rest.playlist.web.exception.BadRequestException;
+import lombok.Getter;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Cursor class is the position of a keyset (seek) pagination :
+ * it holds the sort keys of the last row of the previous page, so the next page
+ * is read with "WHERE key > :last ORDER BY key LIMIT :limit" instead of an OFFSET.
+ * Every page, however deep, costs the same index range scan as the first one.
+ * <p>
+ * The cursor is handed to clients as an opaque url-safe token, eg :
+ * "aWR8NDI" for (order = id, id = 42)
+ * <p>
+ * Listings with a fixed order (songs of a playlist, by position) resolve their cursor with
+ * {@link #resolve(String, Order)} : their order cannot be requested as a sort elsewhere.
+ */
+
+@Getter
+public final class Cursor {
+
+    public static final int MAX_LIMIT = 1000;
+
+    private static final String SEPARATOR = "|";
+
+    public enum Order {
+        ID("id", true),
+        CREATED_AT("createdAt", true),
+        POSITION("position", false);
+
+        private final String param;
+        private final boolean sortable;
+
+        Order(String param, boolean sortable) {
+            this.param = param;
+            this.sortable = sortable;
+        }
+
+        public String getParam() {
+            return param;
+        }
+
+        static Order fromParam(String param) {
+            for (Order order : values()) {
+                if (order.sortable && order.param.equalsIgnoreCase(param)) {
+                    return order;
+                }
+            }
+            throw new BadRequestException("Not supported sort with value = " + param);
+        }
+
+        private static Order fromToken(String param) {
+            for (Order order : values()) {
+                if (order.param.equals(param)) {
+                    return order;
+                }
+            }
+            throw new IllegalArgumentException(param);
+        }
+    }
+
+    private final Order order;
+    private final Instant createdAt;
+    private final Long position;
+    private final Long id;
+
+    private Cursor(Order order, Instant createdAt, Long position, Long id) {
+        this.order = order;
+        this.createdAt = createdAt;
+        this.position = position;
+        this.id = id;
+    }
+
+    /**
+     * @return the position after the row identified by the given sort keys
+     */
+    public static Cursor after(Order order, Instant createdAt, Long id) {
+        return new Cursor(order, createdAt, null, id);
+    }
+
+    /**
+     * @return the position after the playlist entry (position, songId)
+     */
+    public static Cursor afterPosition(long position, Long songId) {
+        return new Cursor(Order.POSITION, null, position, songId);
+    }
+
+    /**
+     * resolves the position to read from : the decoded token when a cursor is given,
+     * otherwise the first page for the requested sort (id when none).
+     */
+    public static Cursor resolve(String token, String sort) {
+        if (token == null || token.isEmpty()) {
+            return new Cursor(sort == null ? Order.ID : Order.fromParam(sort), null, null, null);
+        }
+        Cursor cursor = decode(token);
+        if (!cursor.order.sortable) {
+            throw new BadRequestException("Invalid cursor with value = " + token);
+        }
+        if (sort != null && cursor.order != Order.fromParam(sort)) {
+            throw new BadRequestException("Cursor was not issued for sort = " + sort);
+        }
+        return cursor;
+    }
+
+    /**
+     * resolves the position to read from in a listing that is always read in the given order
+     */
+    public static Cursor resolve(String token, Order order) {
+        if (token == null || token.isEmpty()) {
+            return new Cursor(order, null, null, null);
+        }
+        Cursor cursor = decode(token);
+        if (cursor.order != order) {
+            throw new BadRequestException("Invalid cursor with value = " + token);
+        }
+        return cursor;
+    }
+
+    /**
+     * one more row than requested is read to know whether a next page exists
+     */
+    public static Pageable window(int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        return PageRequest.of(0, limit + 1);
+    }
+
+    public boolean isFirst() {
+        return id == null;
+    }
+
+    public String encode() {
+        String raw;
+        if (order == Order.ID) {
+            raw = order.param + SEPARATOR + id;
+        } else if (order == Order.POSITION) {
+            raw = order.param + SEPARATOR + position + SEPARATOR + id;
+        } else {
+            raw = order.param + SEPARATOR + createdAt + SEPARATOR + id;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Cursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\" + SEPARATOR);
+            Order order = Order.fromToken(parts[0]);
+            if (order == Order.ID && parts.length == 2) {
+                return new Cursor(order, null, null, Long.valueOf(parts[1]));
+            }
+            if (order == Order.CREATED_AT && parts.length == 3) {
+                return new Cursor(order, Instant.parse(parts[1]), null, Long.valueOf(parts[2]));
+            }
+            if (order == Order.POSITION && parts.length == 3) {
+                return new Cursor(order, null, Long.valueOf(parts[1]), Long.valueOf(parts[2]));
+            }
+        } catch (RuntimeException e) {
+            // malformed token : reported below as a 400
+        }
+        throw new BadRequestException("Invalid cursor with value = " + token);
+    }
+}
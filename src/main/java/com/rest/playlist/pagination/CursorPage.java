@@ -0,0 +1,39 @@
+package com.rest.playlist.pagination;
+
+import lombok.Getter;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * CursorPage class is one page of a keyset pagination :
+ * the rows of the page and the opaque cursor of the next page
+ * (null when the last page has been reached).
+ */
+
+@Getter
+public final class CursorPage<T> {
+
+    private final List<T> content;
+    private final String nextCursor;
+
+    public CursorPage(List<T> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * builds a page from a window read with {@link Cursor#window(int)} (limit + 1 rows)
+     */
+    public static <T> CursorPage<T> of(List<T> window, int limit, Function<T, Cursor> cursorOf) {
+        if (window.size() <= limit) {
+            return new CursorPage<>(window, null);
+        }
+        List<T> content = window.subList(0, limit);
+        return new CursorPage<>(content, cursorOf.apply(content.get(limit - 1)).encode());
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,31 @@
+package com.rest.playlist.projection;
+
+/**
+ * PlaylistField enum lists the fields of a playlist that can be picked with ?fields= :
+ * its songs are not a field, they are added with ?expand=songs
+ */
+
+public enum PlaylistField implements ProjectedField {
+    ID("id", "id"),
+    TITLE("title", "title"),
+    DESCRIPTION("description", "description"),
+    SONG_STORAGE("songStorage", "song_storage");
+
+    private final String param;
+    private final String column;
+
+    PlaylistField(String param, String column) {
+        this.param = param;
+        this.column = column;
+    }
+
+    @Override
+    public String getParam() {
+        return param;
+    }
+
+    @Override
+    public String getColumn() {
+        return column;
+    }
+}
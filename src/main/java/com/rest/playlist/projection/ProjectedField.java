@@ -0,0 +1,56 @@
+package com.rest.playlist.projection;
+
+import com.rest.playlist.web.exception.BadRequestException;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * ProjectedField interface is a field a client can pick with ?fields= : the name of its JSON property
+ * and the column it is read from, so a projection selects the requested columns only.
+ */
+
+public interface ProjectedField {
+
+    String getParam();
+
+    String getColumn();
+
+    default boolean isId() {
+        return getParam().equals("id");
+    }
+
+    /**
+     * parses a comma separated list of JSON property names, eg : "title,artistName", every field when null.
+     * The id is always selected : it identifies the row and positions the cursor of the next page.
+     */
+    static <F extends Enum<F> & ProjectedField> EnumSet<F> parse(String fields, Class<F> type) {
+        if (fields == null) {
+            return EnumSet.allOf(type);
+        }
+        return parse(Arrays.asList(fields.split(",")), type);
+    }
+
+    static <F extends Enum<F> & ProjectedField> EnumSet<F> parse(List<String> params, Class<F> type) {
+        EnumSet<F> selected = EnumSet.noneOf(type);
+        for (F field : type.getEnumConstants()) {
+            if (field.isId()) {
+                selected.add(field);
+            }
+        }
+        for (String param : params) {
+            selected.add(fromParam(param.trim(), type));
+        }
+        return selected;
+    }
+
+    static <F extends Enum<F> & ProjectedField> F fromParam(String param, Class<F> type) {
+        for (F field : type.getEnumConstants()) {
+            if (field.getParam().equals(param)) {
+                return field;
+            }
+        }
+        throw new BadRequestException("Not supported field with value = " + param);
+    }
+}
@@ -0,0 +1,39 @@
+package com.rest.playlist.projection;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.rest.playlist.pagination.Cursor;
+import lombok.Getter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Projection class is a row read with the requested fields only (see ProjectedField) :
+ * it is written as an object holding these fields, eg : {"id":42,"title":"Summer Rain"}.
+ * It also keeps the cursor positioned after it, so a page of projections is paginated as a page of entities.
+ */
+
+@Getter
+public final class Projection {
+
+    private final Map<String, Object> values = new LinkedHashMap<>();
+    private final Cursor after;
+
+    public Projection(Cursor after) {
+        this.after = after;
+    }
+
+    public Projection put(String field, Object value) {
+        values.put(field, value);
+        return this;
+    }
+
+    public Object get(String field) {
+        return values.get(field);
+    }
+
+    @JsonValue
+    public Map<String, Object> getValues() {
+        return values;
+    }
+}
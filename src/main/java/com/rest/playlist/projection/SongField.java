@@ -0,0 +1,32 @@
+package com.rest.playlist.projection;
+
+/**
+ * SongField enum lists the fields of a song that can be picked with ?fields=
+ */
+
+public enum SongField implements ProjectedField {
+    ID("id", "id"),
+    TITLE("title", "title"),
+    DESCRIPTION("description", "description"),
+    DURATION("duration", "duration"),
+    ARTIST_NAME("artistName", "artist_name"),
+    CATEGORY("category", "category");
+
+    private final String param;
+    private final String column;
+
+    SongField(String param, String column) {
+        this.param = param;
+        this.column = column;
+    }
+
+    @Override
+    public String getParam() {
+        return param;
+    }
+
+    @Override
+    public String getColumn() {
+        return column;
+    }
+}
@@ -0,0 +1,65 @@
+package com.rest.playlist.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PackedSongIds class encodes the song ids of a playlist, in playlist order, as one byte array :
+ * each id is stored as its difference with the previous one (zigzag encoded, the order being
+ * the playlist's and not the ids'), written as a varint of 7 bits per byte.
+ * Ids of songs added together are close, so most take 1 to 3 bytes instead of a 24 byte row
+ * (playlist_id, song_id, position) plus its index entries.
+ */
+
+public final class PackedSongIds {
+
+    private PackedSongIds() {
+    }
+
+    public static byte[] pack(List<Long> songIds) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(songIds.size() * 2);
+        long previous = 0;
+        for (long songId : songIds) {
+            long delta = songId - previous;
+            long zigzag = (delta << 1) ^ (delta >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                out.write((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            out.write((int) zigzag);
+            previous = songId;
+        }
+        return out.toByteArray();
+    }
+
+    public static List<Long> unpack(byte[] packed) {
+        return unpack(packed, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * decodes count ids from the from-th one (0 based) : the array is read from its start,
+     * but only the requested ids are kept in memory
+     */
+    public static List<Long> unpack(byte[] packed, int from, int count) {
+        List<Long> songIds = new ArrayList<>(Math.min(count, packed.length));
+        long previous = 0;
+        int index = 0;
+        int offset = 0;
+        while (offset < packed.length && songIds.size() < count) {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = packed[offset++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            if (index++ >= from) {
+                songIds.add(previous);
+            }
+        }
+        return songIds;
+    }
+}
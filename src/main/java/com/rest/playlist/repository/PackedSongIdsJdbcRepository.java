@@ -0,0 +1,171 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.enums.SongStorage;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * PackedSongIdsJdbcRepository class stores the songs of the playlists in {@link SongStorage#PACKED} storage :
+ * their song ids are one {@link PackedSongIds} array in playlist_packed_songs, read and written as a whole.
+ * <p>
+ * playlist_packed_song_members holds one row per song and playlist, kept in step with the arrays :
+ * it answers the playlists of a song without decoding any array. The V3 migration that creates it still names
+ * PlaylistJdbcRepository, which held this code before : applied migrations are left as they are.
+ */
+
+@Repository
+public class PackedSongIdsJdbcRepository {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String SELECT_PACKED_SONG_IDS =
+            "select song_ids from playlist_packed_songs where playlist_id = ?";
+
+    private static final String UPDATE_PACKED_SONG_IDS =
+            "update playlist_packed_songs set song_count = ?, song_ids = ? where playlist_id = ?";
+
+    private static final String INSERT_PACKED_SONG_IDS =
+            "insert into playlist_packed_songs (playlist_id, song_count, song_ids) values (?, ?, ?)";
+
+    private static final String DELETE_PACKED_SONG_IDS =
+            "delete from playlist_packed_songs where playlist_id = ?";
+
+    private static final String COPY_PACKED_SONG_IDS =
+            "insert into playlist_packed_songs (playlist_id, song_count, song_ids) " +
+                    "select ?, song_count, song_ids from playlist_packed_songs where playlist_id = ?";
+
+    // packed playlists of a song : a range scan of the primary key of playlist_packed_song_members (see db/migration)
+    private static final String SELECT_PLAYLIST_IDS_OF_SONG =
+            "select playlist_id from playlist_packed_song_members where song_id = ? and playlist_id > ? " +
+                    "order by song_id, playlist_id limit ?";
+
+    private static final String SELECT_MEMBER_SONG_IDS =
+            "select song_id from playlist_packed_song_members where playlist_id = ?";
+
+    private static final String INSERT_MEMBER =
+            "insert into playlist_packed_song_members (song_id, playlist_id) values (?, ?)";
+
+    private static final String DELETE_MEMBER =
+            "delete from playlist_packed_song_members where song_id = ? and playlist_id = ?";
+
+    private static final String DELETE_MEMBERS =
+            "delete from playlist_packed_song_members where playlist_id = ?";
+
+    private static final String COPY_MEMBERS =
+            "insert into playlist_packed_song_members (song_id, playlist_id) " +
+                    "select song_id, ? from playlist_packed_song_members where playlist_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final String deleteSongsMemberships;
+
+    public PackedSongIdsJdbcRepository(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.deleteSongsMemberships = ReturningDelete.of(dataSource, "playlist_packed_song_members",
+                "song_id in (:songIds)", "playlist_id, song_id");
+    }
+
+    /**
+     * @return the song ids of a packed playlist in playlist order, empty when it has none
+     */
+    public List<Long> findPackedSongIds(long playlistId) {
+        return findPackedSongIds(playlistId, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return count song ids of a packed playlist from the from-th one (0 based)
+     */
+    public List<Long> findPackedSongIds(long playlistId, int from, int count) {
+        List<byte[]> packed = jdbcTemplate.query(SELECT_PACKED_SONG_IDS, (rs, rowNum) -> rs.getBytes(1), playlistId);
+        return packed.isEmpty() ? new ArrayList<>() : PackedSongIds.unpack(packed.get(0), from, count);
+    }
+
+    /**
+     * replaces the song ids of a packed playlist : a single row is written, plus the
+     * playlist_packed_song_members rows of the songs added or removed
+     */
+    public void savePackedSongIds(long playlistId, List<Long> songIds) {
+        byte[] packed = PackedSongIds.pack(songIds);
+        if (jdbcTemplate.update(UPDATE_PACKED_SONG_IDS, songIds.size(), packed, playlistId) == 0) {
+            jdbcTemplate.update(INSERT_PACKED_SONG_IDS, playlistId, songIds.size(), packed);
+        }
+
+        Set<Long> memberIds = new HashSet<>(jdbcTemplate.queryForList(SELECT_MEMBER_SONG_IDS, Long.class, playlistId));
+        Set<Long> newIds = new HashSet<>(songIds);
+        List<Long> addedIds = newIds.stream().filter(songId -> !memberIds.contains(songId)).collect(Collectors.toList());
+        List<Long> removedIds = memberIds.stream().filter(songId -> !newIds.contains(songId)).collect(Collectors.toList());
+        updateMembers(DELETE_MEMBER, playlistId, removedIds);
+        updateMembers(INSERT_MEMBER, playlistId, addedIds);
+    }
+
+    public void deletePackedSongIds(long playlistId) {
+        jdbcTemplate.update(DELETE_MEMBERS, playlistId);
+        jdbcTemplate.update(DELETE_PACKED_SONG_IDS, playlistId);
+    }
+
+    /**
+     * copies the packed row of the source as is
+     */
+    public void copyPackedSongIds(long sourceId, long playlistId) {
+        jdbcTemplate.update(COPY_PACKED_SONG_IDS, playlistId, sourceId);
+        jdbcTemplate.update(COPY_MEMBERS, playlistId, sourceId);
+    }
+
+    /**
+     * @return the ids of at most limit packed playlists holding the song after the playlist afterId, in id order
+     */
+    public List<Long> findPlaylistIdsOfSong(long songId, long afterId, int limit) {
+        return jdbcTemplate.queryForList(SELECT_PLAYLIST_IDS_OF_SONG, Long.class, songId, afterId, limit);
+    }
+
+    /**
+     * deletes the playlist_packed_song_members rows of the songs, whatever their playlists, in one statement
+     * that also returns them (see ReturningDelete) : the packed ids themselves are left as they are,
+     * reads skip the songs deleted since.
+     *
+     * @return the songs removed, by packed playlist they were removed from
+     */
+    public Map<Long, List<Long>> removeSongsFromPlaylists(Collection<Long> songIds) {
+        Map<Long, List<Long>> removedSongIds = new HashMap<>();
+        namedParameterJdbcTemplate.query(deleteSongsMemberships, new MapSqlParameterSource("songIds", songIds),
+                (RowCallbackHandler) rs -> removedSongIds
+                        .computeIfAbsent(rs.getLong("playlist_id"), playlistId -> new ArrayList<>())
+                        .add(rs.getLong("song_id")));
+        return removedSongIds;
+    }
+
+    private void updateMembers(String sql, long playlistId, List<Long> songIds) {
+        for (int from = 0; from < songIds.size(); from += BATCH_SIZE) {
+            List<Long> batch = songIds.subList(from, Math.min(from + BATCH_SIZE, songIds.size()));
+            jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    ps.setLong(1, batch.get(i));
+                    ps.setLong(2, playlistId);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return batch.size();
+                }
+            });
+        }
+    }
+}
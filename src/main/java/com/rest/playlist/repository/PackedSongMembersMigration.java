@@ -0,0 +1,75 @@
+package com.rest.playlist.repository;
+
+import org.flywaydb.core.api.MigrationVersion;
+import org.flywaydb.core.api.migration.Context;
+import org.flywaydb.core.api.migration.JavaMigration;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.LinkedHashSet;
+
+/**
+ * PackedSongMembersMigration class is the versioned migration V4 : it fills playlist_packed_song_members
+ * (created by V3) from the packed ids of the playlists already in PACKED storage, which only Java can decode.
+ * Spring Boot hands the JavaMigration beans to Flyway along with the scripts of db/migration.
+ */
+
+@Component
+public class PackedSongMembersMigration implements JavaMigration {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String SELECT_PACKED_SONG_IDS =
+            "select playlist_id, song_ids from playlist_packed_songs";
+
+    private static final String INSERT_MEMBER =
+            "insert into playlist_packed_song_members (song_id, playlist_id) values (?, ?)";
+
+    @Override
+    public MigrationVersion getVersion() {
+        return MigrationVersion.fromVersion("4");
+    }
+
+    @Override
+    public String getDescription() {
+        return "playlist packed song members";
+    }
+
+    @Override
+    public Integer getChecksum() {
+        return null;
+    }
+
+    @Override
+    public boolean isUndo() {
+        return false;
+    }
+
+    @Override
+    public boolean canExecuteInTransaction() {
+        return true;
+    }
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement select = context.getConnection().createStatement();
+             ResultSet rs = select.executeQuery(SELECT_PACKED_SONG_IDS);
+             PreparedStatement insert = context.getConnection().prepareStatement(INSERT_MEMBER)) {
+            int batched = 0;
+            while (rs.next()) {
+                long playlistId = rs.getLong("playlist_id");
+                for (long songId : new LinkedHashSet<>(PackedSongIds.unpack(rs.getBytes("song_ids")))) {
+                    insert.setLong(1, songId);
+                    insert.setLong(2, playlistId);
+                    insert.addBatch();
+                    if (++batched % BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                    }
+                }
+            }
+            insert.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.rest.playlist.repository;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * PlaylistChange class is what one write did to a playlist, logged under the version it was applied to
+ * (one write, one version) : the songs it added and removed, whether it moved songs, and the title and
+ * description it replaced. Going back through the changes made since a version rebuilds the membership
+ * and the details of that version, which a stale update is merged against (see PlaylistMerge).
+ */
+
+@Getter
+public final class PlaylistChange {
+
+    private final List<Long> addedSongIds;
+    private final List<Long> removedSongIds;
+    private final boolean reordered;
+    private final boolean detailsChanged;
+    private final String previousTitle;
+    private final String previousDescription;
+
+    public PlaylistChange(List<Long> addedSongIds, List<Long> removedSongIds, boolean reordered,
+                          boolean detailsChanged, String previousTitle, String previousDescription) {
+        this.addedSongIds = addedSongIds;
+        this.removedSongIds = removedSongIds;
+        this.reordered = reordered;
+        this.detailsChanged = detailsChanged;
+        this.previousTitle = previousTitle;
+        this.previousDescription = previousDescription;
+    }
+
+    public static PlaylistChange added(List<Long> songIds) {
+        return new PlaylistChange(songIds, Collections.emptyList(), false, false, null, null);
+    }
+
+    public static PlaylistChange removed(List<Long> songIds) {
+        return new PlaylistChange(Collections.emptyList(), songIds, false, false, null, null);
+    }
+
+    public static PlaylistChange moved() {
+        return new PlaylistChange(Collections.emptyList(), Collections.emptyList(), true, false, null, null);
+    }
+
+    /**
+     * a write that moved the version without touching songs nor details (eg a change of storage)
+     */
+    public static PlaylistChange unchanged() {
+        return new PlaylistChange(Collections.emptyList(), Collections.emptyList(), false, false, null, null);
+    }
+
+    /**
+     * the change made by replacing a playlist (songIds, title, description) by another
+     */
+    public static PlaylistChange between(List<Long> songIds, String title, String description,
+                                         List<Long> newSongIds, String newTitle, String newDescription) {
+        Set<Long> before = new HashSet<>(songIds);
+        Set<Long> after = new HashSet<>(newSongIds);
+        List<Long> added = newSongIds.stream().filter(songId -> !before.contains(songId)).collect(Collectors.toList());
+        List<Long> removed = songIds.stream().filter(songId -> !after.contains(songId)).collect(Collectors.toList());
+        boolean detailsChanged = !Objects.equals(title, newTitle) || !Objects.equals(description, newDescription);
+        return new PlaylistChange(added, removed, !sameOrder(songIds, newSongIds), detailsChanged,
+                detailsChanged ? title : null, detailsChanged ? description : null);
+    }
+
+    /**
+     * @return whether the songs found in both lists come in the same order
+     */
+    public static boolean sameOrder(List<Long> songIds, List<Long> otherSongIds) {
+        Set<Long> others = new HashSet<>(otherSongIds);
+        Set<Long> ids = new HashSet<>(songIds);
+        List<Long> common = songIds.stream().filter(others::contains).collect(Collectors.toList());
+        List<Long> otherCommon = otherSongIds.stream().filter(ids::contains).collect(Collectors.toList());
+        return common.equals(otherCommon);
+    }
+}
@@ -0,0 +1,161 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.model.Playlist;
+import org.hibernate.Cache;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * PlaylistChangeJdbcRepository class keeps the change log of the playlists in playlist_changes :
+ * one row per version of a playlist, what the write made of that version (see PlaylistChange).
+ * An update based on an older version is merged with the changes logged since.
+ */
+
+@Repository
+public class PlaylistChangeJdbcRepository {
+
+    /**
+     * changes kept per playlist : an update based on an older version cannot be merged any more
+     */
+    public static final int MAX_CHANGES = 100;
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String INSERT_CHANGE =
+            "insert into playlist_changes (playlist_id, version, added_song_ids, removed_song_ids, reordered, " +
+                    "details_changed, previous_title, previous_description) values (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String DELETE_CHANGES_BEFORE =
+            "delete from playlist_changes where playlist_id = ? and version < ?";
+
+    private static final String SELECT_CHANGES_SINCE =
+            "select added_song_ids, removed_song_ids, reordered, details_changed, previous_title, previous_description " +
+                    "from playlist_changes where playlist_id = ? and version >= ? order by version";
+
+    private static final String DELETE_CHANGES =
+            "delete from playlist_changes where playlist_id = ?";
+
+    // logged at the version the playlist has when the statement runs, whatever the version read before
+    private static final String INSERT_REMOVAL =
+            "insert into playlist_changes (playlist_id, version, added_song_ids, removed_song_ids, reordered, details_changed) " +
+                    "select id, version, ?, ?, false, false from playlists where id = ?";
+
+    private static final String UPDATE_VERSIONS =
+            "update playlists set version = version + 1, updated_at = :updatedAt where id in (:playlistIds)";
+
+    private static final String DELETE_OLD_CHANGES =
+            "delete from playlist_changes where playlist_id in (:playlistIds) and version < " +
+                    "(select p.version from playlists p where p.id = playlist_changes.playlist_id) - :maxChanges";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+
+    public PlaylistChangeJdbcRepository(DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    /**
+     * logs the change applied to the given version of the playlist and trims the log to its last
+     * {@link #MAX_CHANGES} changes. Two writes applied to the same version collide on the primary key :
+     * the later one fails as an optimistic lock failure and is replayed on the newer version.
+     */
+    public void insertChange(long playlistId, long version, PlaylistChange change) {
+        try {
+            jdbcTemplate.update(INSERT_CHANGE, playlistId, version,
+                    PackedSongIds.pack(change.getAddedSongIds()), PackedSongIds.pack(change.getRemovedSongIds()),
+                    change.isReordered(), change.isDetailsChanged(), change.getPreviousTitle(), change.getPreviousDescription());
+        } catch (DuplicateKeyException e) {
+            throw new OptimisticLockingFailureException("Playlist with id = " + playlistId + " was changed concurrently", e);
+        }
+        jdbcTemplate.update(DELETE_CHANGES_BEFORE, playlistId, version - MAX_CHANGES + 1);
+    }
+
+    /**
+     * @return the changes applied to the playlist from the given version on, oldest first
+     */
+    public List<PlaylistChange> findChangesSince(long playlistId, long version) {
+        return jdbcTemplate.query(SELECT_CHANGES_SINCE, (rs, rowNum) -> new PlaylistChange(
+                PackedSongIds.unpack(rs.getBytes("added_song_ids")), PackedSongIds.unpack(rs.getBytes("removed_song_ids")),
+                rs.getBoolean("reordered"), rs.getBoolean("details_changed"),
+                rs.getString("previous_title"), rs.getString("previous_description")), playlistId, version);
+    }
+
+    public void deleteChanges(long playlistId) {
+        jdbcTemplate.update(DELETE_CHANGES, playlistId);
+    }
+
+    /**
+     * logs the removal of the songs from each playlist, then moves the playlists to their next version
+     * and updated date : the set-based counterpart of {@link #insertChange} followed by a flush of the playlist,
+     * one batch and two statements per {@link #BATCH_SIZE} playlists. A playlist written concurrently
+     * collides on the change log primary key, or on its version, as an optimistic lock failure.
+     * The playlist rows changed behind Hibernate's back : the cached playlists are dropped now,
+     * and again on commit in case a concurrent reader cached them in between.
+     */
+    public void recordRemovals(Map<Long, List<Long>> removedSongIds) {
+        List<Map.Entry<Long, List<Long>>> removals = new ArrayList<>(removedSongIds.entrySet());
+        byte[] noSongIds = PackedSongIds.pack(Collections.emptyList());
+        for (int from = 0; from < removals.size(); from += BATCH_SIZE) {
+            List<Map.Entry<Long, List<Long>>> chunk = removals.subList(from, Math.min(from + BATCH_SIZE, removals.size()));
+            try {
+                jdbcTemplate.batchUpdate(INSERT_REMOVAL, new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setBytes(1, noSongIds);
+                        ps.setBytes(2, PackedSongIds.pack(chunk.get(i).getValue()));
+                        ps.setLong(3, chunk.get(i).getKey());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return chunk.size();
+                    }
+                });
+            } catch (DuplicateKeyException e) {
+                throw new OptimisticLockingFailureException("Playlists with songs removed were changed concurrently", e);
+            }
+            MapSqlParameterSource parameters = new MapSqlParameterSource()
+                    .addValue("playlistIds", chunk.stream().map(Map.Entry::getKey).collect(Collectors.toList()))
+                    .addValue("updatedAt", Timestamp.from(Instant.now()))
+                    .addValue("maxChanges", MAX_CHANGES);
+            namedParameterJdbcTemplate.update(UPDATE_VERSIONS, parameters);
+            namedParameterJdbcTemplate.update(DELETE_OLD_CHANGES, parameters);
+        }
+
+        Set<Long> playlistIds = new HashSet<>(removedSongIds.keySet());
+        Cache cache = entityManagerFactory.getCache().unwrap(Cache.class);
+        playlistIds.forEach(playlistId -> cache.evictEntityData(Playlist.class, playlistId));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    playlistIds.forEach(playlistId -> cache.evictEntityData(Playlist.class, playlistId));
+                }
+            });
+        }
+    }
+}
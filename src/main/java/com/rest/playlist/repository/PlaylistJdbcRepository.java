@@ -0,0 +1,263 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.dto.ResourceVersion;
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.enums.SongStorage;
+import com.rest.playlist.model.Playlist;
+import com.rest.playlist.model.Song;
+import lombok.Getter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * PlaylistJdbcRepository class reads playlists with their songs from one ordered join :
+ * rows of a playlist are contiguous, so a playlist is complete as soon as the next one starts.
+ * Playlists handed out are plain objects, never attached to a persistence context.
+ * <p>
+ * It also reads the songs of one playlist a page at a time and the version of a playlist, without loading it.
+ * Membership is written by PlaylistMemberJdbcRepository (songs_playlist rows) and PackedSongIdsJdbcRepository
+ * (playlists in {@link SongStorage#PACKED} storage), the change log by PlaylistChangeJdbcRepository.
+ */
+
+@Repository
+public class PlaylistJdbcRepository {
+
+    private static final int FETCH_SIZE = 500;
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String SELECT_PLAYLISTS_WITH_SONGS =
+            "select p.id, p.title, p.description, p.song_storage, " +
+                    "s.id as song_id, s.title as song_title, s.description as song_description, " +
+                    "s.duration, s.artist_name, s.category " +
+                    "from playlists p " +
+                    "left join songs_playlist sp on sp.playlist_id = p.id " +
+                    "left join songs s on s.id = sp.song_id " +
+                    "order by p.id, sp.position, sp.song_id";
+
+    // keyset pages of one playlist : a range scan of songs_playlist_position_idx (see db/migration),
+    // the redundant "position >= ?" gives the scan its start, the OR alone would read the playlist from its first row,
+    // and ordering by the whole index key lets H2 read the rows in index order instead of sorting them
+    private static final String SELECT_FIRST_SONGS =
+            "select sp.position, s.id, s.title, s.description, s.duration, s.artist_name, s.category " +
+                    "from songs_playlist sp join songs s on s.id = sp.song_id " +
+                    "where sp.playlist_id = ? " +
+                    "order by sp.playlist_id, sp.position, sp.song_id limit ?";
+
+    private static final String SELECT_SONGS_AFTER =
+            "select sp.position, s.id, s.title, s.description, s.duration, s.artist_name, s.category " +
+                    "from songs_playlist sp join songs s on s.id = sp.song_id " +
+                    "where sp.playlist_id = ? and sp.position >= ? and (sp.position > ? or (sp.position = ? and sp.song_id > ?)) " +
+                    "order by sp.playlist_id, sp.position, sp.song_id limit ?";
+
+    private static final String SELECT_VERSION =
+            "select version, coalesce(updated_at, created_at) as last_modified, song_storage from playlists where id = ?";
+
+    private static final String SELECT_MEMBERS_VERSION =
+            "select count(*), coalesce(sum(s.version), 0), max(coalesce(s.updated_at, s.created_at)) " +
+                    "from songs_playlist sp join songs s on s.id = sp.song_id where sp.playlist_id = ?";
+
+    private static final String SELECT_SONGS_VERSION_BY_IDS =
+            "select count(*), coalesce(sum(version), 0), max(coalesce(updated_at, created_at)) from songs where id in (:ids)";
+
+    private static final String SELECT_SONGS_BY_IDS =
+            "select id, title, description, duration, artist_name, category from songs where id in (:ids)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final PackedSongIdsJdbcRepository packedSongIdsJdbcRepository;
+
+    public PlaylistJdbcRepository(DataSource dataSource, PackedSongIdsJdbcRepository packedSongIdsJdbcRepository) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.packedSongIdsJdbcRepository = packedSongIdsJdbcRepository;
+    }
+
+    /**
+     * reads at most limit songs of the playlist following the entry (position, songId),
+     * from the first one when position is null
+     */
+    public List<PositionedSong> findSongs(long playlistId, Long position, Long songId, int limit) {
+        RowMapper<PositionedSong> mapper = (rs, rowNum) -> new PositionedSong(rs.getLong("position"), mapSong(rs));
+        if (position == null) {
+            return jdbcTemplate.query(SELECT_FIRST_SONGS, mapper, playlistId, limit);
+        }
+        return jdbcTemplate.query(SELECT_SONGS_AFTER, mapper, playlistId, position, position, position, songId, limit);
+    }
+
+    /**
+     * reads the version of a playlist without loading it : with its songs, one aggregate over
+     * the songs' rows (songs_playlist or packed ids) is added to the playlist row
+     */
+    public Optional<ResourceVersion> findVersion(long playlistId, boolean includeSongs) {
+        List<Map<String, Object>> playlists = jdbcTemplate.queryForList(SELECT_VERSION, playlistId);
+        if (playlists.isEmpty()) {
+            return Optional.empty();
+        }
+        Map<String, Object> playlist = playlists.get(0);
+        ResourceVersion version = ResourceVersion.of(((Number) playlist.get("version")).longValue(),
+                ((Timestamp) playlist.get("last_modified")).toInstant());
+        if (!includeSongs) {
+            return Optional.of(version);
+        }
+        SongsVersion songsVersion = new SongsVersion();
+        if (SongStorage.PACKED.name().equals(playlist.get("song_storage"))) {
+            List<Long> songIds = packedSongIdsJdbcRepository.findPackedSongIds(playlistId);
+            for (int from = 0; from < songIds.size(); from += BATCH_SIZE) {
+                List<Long> chunk = songIds.subList(from, Math.min(from + BATCH_SIZE, songIds.size()));
+                namedParameterJdbcTemplate.query(SELECT_SONGS_VERSION_BY_IDS, new MapSqlParameterSource("ids", chunk),
+                        (RowCallbackHandler) songsVersion::add);
+            }
+        } else {
+            jdbcTemplate.query(SELECT_MEMBERS_VERSION, (RowCallbackHandler) songsVersion::add, playlistId);
+        }
+        return Optional.of(version.withSongs(songsVersion.count, songsVersion.versionSum, songsVersion.lastModified));
+    }
+
+    /**
+     * reads the songs in the order of the given ids, one IN query per 1000 ids :
+     * ids of songs deleted since are skipped
+     */
+    public List<Song> findSongsByIds(List<Long> songIds) {
+        Map<Long, Song> songsById = new HashMap<>();
+        for (int from = 0; from < songIds.size(); from += BATCH_SIZE) {
+            List<Long> chunk = songIds.subList(from, Math.min(from + BATCH_SIZE, songIds.size()));
+            namedParameterJdbcTemplate.query(SELECT_SONGS_BY_IDS, new MapSqlParameterSource("ids", chunk),
+                    (RowCallbackHandler) rs -> songsById.put(rs.getLong("id"), mapSong(rs)));
+        }
+        return songIds.stream()
+                .map(songsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private static Song mapSong(ResultSet rs) throws SQLException {
+        Song song = new Song();
+        song.setId(rs.getLong("id"));
+        song.setTitle(rs.getString("title"));
+        song.setDescription(rs.getString("description"));
+        song.setDuration(rs.getString("duration"));
+        song.setArtistName(rs.getString("artist_name"));
+        song.setCategory(SongCategory.valueOf(rs.getString("category")));
+        return song;
+    }
+
+
+    /**
+     * hands every playlist, songs included, to the action in id order : only the playlist
+     * being read is held in memory. The driver only honours the fetch size inside a transaction.
+     */
+    public void forEachPlaylistWithSongs(Consumer<Playlist> action) {
+        PlaylistGrouper grouper = new PlaylistGrouper(action,
+                playlistId -> findSongsByIds(packedSongIdsJdbcRepository.findPackedSongIds(playlistId)));
+        jdbcTemplate.query(SELECT_PLAYLISTS_WITH_SONGS, grouper);
+        // the last playlist has no following row to close it
+        grouper.flush();
+    }
+
+    /**
+     * count, version sum and last update of a playlist's songs, summed over the chunks they were read in
+     */
+    private static final class SongsVersion {
+
+        private long count;
+        private long versionSum;
+        private Instant lastModified;
+
+        private void add(ResultSet rs) throws SQLException {
+            count += rs.getLong(1);
+            versionSum += rs.getLong(2);
+            Timestamp last = rs.getTimestamp(3);
+            if (last != null && (lastModified == null || last.toInstant().isAfter(lastModified))) {
+                lastModified = last.toInstant();
+            }
+        }
+    }
+
+    /**
+     * a song of a playlist with the position it holds there
+     */
+    @Getter
+    public static final class PositionedSong {
+
+        private final long position;
+        private final Song song;
+
+        public PositionedSong(long position, Song song) {
+            this.position = position;
+            this.song = song;
+        }
+    }
+
+    private static final class PlaylistGrouper implements RowCallbackHandler {
+
+        private final Consumer<Playlist> action;
+        private final Function<Long, List<Song>> packedSongs;
+        private Playlist current;
+
+        private PlaylistGrouper(Consumer<Playlist> action, Function<Long, List<Song>> packedSongs) {
+            this.action = action;
+            this.packedSongs = packedSongs;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long playlistId = rs.getLong("id");
+            if (current == null || current.getId() != playlistId) {
+                if (current != null) {
+                    action.accept(current);
+                }
+                current = new Playlist();
+                current.setId(playlistId);
+                current.setTitle(rs.getString("title"));
+                current.setDescription(rs.getString("description"));
+                current.setSongs(new ArrayList<>());
+                String songStorage = rs.getString("song_storage");
+                if (songStorage != null) {
+                    current.setSongStorage(SongStorage.valueOf(songStorage));
+                }
+                if (current.getSongStorage() == SongStorage.PACKED) {
+                    // a packed playlist joins no songs_playlist row : its songs are read on their own
+                    current.setSongs(packedSongs.apply(playlistId));
+                }
+            }
+            long songId = rs.getLong("song_id");
+            if (!rs.wasNull()) {
+                Song song = new Song();
+                song.setId(songId);
+                song.setTitle(rs.getString("song_title"));
+                song.setDescription(rs.getString("song_description"));
+                song.setDuration(rs.getString("duration"));
+                song.setArtistName(rs.getString("artist_name"));
+                song.setCategory(SongCategory.valueOf(rs.getString("category")));
+                current.getSongs().add(song);
+            }
+        }
+
+        private void flush() {
+            if (current != null) {
+                action.accept(current);
+                current = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.enums.SetOperation;
+import com.rest.playlist.enums.SongStorage;
+import com.rest.playlist.model.Playlist;
+import org.hibernate.Cache;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * PlaylistMemberJdbcRepository class edits playlist membership row by row in songs_playlist, where going through
+ * Playlist.songs (a bag) would delete and reinsert every row of the playlist. Playlists in
+ * {@link SongStorage#PACKED} storage have no songs_playlist rows, see PackedSongIdsJdbcRepository.
+ * <p>
+ * Songs of a playlist are ordered by a sparse position : appended rows are {@link #POSITION_GAP}
+ * after the last one and a moved row takes the middle of the gap it is moved into, so a move
+ * writes a single row. Positions are spread again by {@link #renumber(long)} once gaps run out.
+ * <p>
+ * The migrations (V1) still name PlaylistJdbcRepository, which held this code before : applied migrations
+ * are left as they are so that their checksums do not change.
+ */
+
+@Repository
+public class PlaylistMemberJdbcRepository {
+
+    public static final long POSITION_GAP = 1L << 20;
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String SELECT_MEMBER_SONG_IDS =
+            "select song_id from songs_playlist where playlist_id = :playlistId and song_id in (:songIds)";
+
+    private static final String SELECT_LAST_POSITION =
+            "select coalesce(max(position), 0) from songs_playlist where playlist_id = ?";
+
+    private static final String INSERT_MEMBER =
+            "insert into songs_playlist (playlist_id, song_id, position) values (?, ?, ?)";
+
+    private static final String SELECT_POSITION =
+            "select position from songs_playlist where playlist_id = ? and song_id = ?";
+
+    private static final String SELECT_FIRST_POSITION_EXCEPT =
+            "select min(position) from songs_playlist where playlist_id = ? and song_id <> ?";
+
+    // next row in (position, song_id) order : rows sharing the position come after the smaller song id
+    private static final String SELECT_NEXT_POSITION_EXCEPT =
+            "select min(position) from songs_playlist where playlist_id = ? and song_id <> ? " +
+                    "and position >= ? and (position > ? or (position = ? and song_id > ?))";
+
+    private static final String UPDATE_POSITION =
+            "update songs_playlist set position = ? where playlist_id = ? and song_id = ?";
+
+    private static final String SELECT_SONG_IDS_IN_ORDER =
+            "select song_id from songs_playlist where playlist_id = ? order by playlist_id, position, song_id";
+
+    private static final String DELETE_MEMBERS =
+            "delete from songs_playlist where playlist_id = :playlistId and song_id in (:songIds)";
+
+    private static final String DELETE_ALL_MEMBERS =
+            "delete from songs_playlist where playlist_id = ?";
+
+    // playlists of a song : a range scan of songs_playlist_song_idx (see db/migration)
+    private static final String SELECT_PLAYLIST_IDS_OF_SONG =
+            "select playlist_id from songs_playlist where song_id = ? and playlist_id > ? " +
+                    "order by song_id, playlist_id limit ?";
+
+    private static final String COPY_MEMBERS =
+            "insert into songs_playlist (playlist_id, song_id, position) " +
+                    "select ?, song_id, position from songs_playlist where playlist_id = ?";
+
+    // each song once, at its first occurrence in (source order, position) : the rows of the sources are
+    // numbered per song, the first ones are renumbered POSITION_GAP apart in that order
+    private static final String INSERT_UNION =
+            "insert into songs_playlist (playlist_id, song_id, position) " +
+                    "select :playlistId, song_id, row_number() over (order by source_order, position, song_id) * :gap " +
+                    "from (select song_id, position, source_order, " +
+                    "row_number() over (partition by song_id order by source_order, position) as occurrence " +
+                    "from (select song_id, position, %s as source_order " +
+                    "from songs_playlist where playlist_id in (:sourceIds)) sp) numbered " +
+                    "where occurrence = 1";
+
+    // the rows of the first source whose song every other source holds : a playlist holds a song once (primary key),
+    // so the song counts one row per other source. Rows of the song are looked up through songs_playlist_song_idx
+    private static final String INSERT_INTERSECTION =
+            "insert into songs_playlist (playlist_id, song_id, position) " +
+                    "select :playlistId, sp.song_id, row_number() over (order by sp.position, sp.song_id) * :gap " +
+                    "from songs_playlist sp where sp.playlist_id = :firstId " +
+                    "and (select count(*) from songs_playlist o where o.song_id = sp.song_id " +
+                    "and o.playlist_id in (:otherIds)) = :otherCount";
+
+    private static final String INSERT_DIFFERENCE =
+            "insert into songs_playlist (playlist_id, song_id, position) " +
+                    "select :playlistId, sp.song_id, row_number() over (order by sp.position, sp.song_id) * :gap " +
+                    "from songs_playlist sp where sp.playlist_id = :firstId " +
+                    "and not exists (select 1 from songs_playlist o where o.song_id = sp.song_id " +
+                    "and o.playlist_id in (:otherIds))";
+
+    private static final String SONGS_ROLE = Playlist.class.getName() + ".songs";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+    private final String deleteSongsMemberships;
+
+    public PlaylistMemberJdbcRepository(DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.entityManagerFactory = entityManagerFactory;
+        this.deleteSongsMemberships = ReturningDelete.of(dataSource, "songs_playlist", "song_id in (:songIds)", "playlist_id, song_id");
+    }
+
+    /**
+     * @return the song ids of the playlist's songs_playlist rows, in playlist order
+     */
+    public List<Long> findMemberSongIdsInOrder(long playlistId) {
+        return jdbcTemplate.queryForList(SELECT_SONG_IDS_IN_ORDER, Long.class, playlistId);
+    }
+
+    /**
+     * @return the songs among songIds that already belong to the playlist
+     */
+    public Set<Long> findMemberSongIds(long playlistId, Collection<Long> songIds) {
+        return new HashSet<>(namedParameterJdbcTemplate.queryForList(SELECT_MEMBER_SONG_IDS,
+                membersParameters(playlistId, songIds), Long.class));
+    }
+
+    /**
+     * appends one songs_playlist row per song after the last one of the playlist, in one JDBC batch
+     */
+    public void addMembers(long playlistId, List<Long> songIds) {
+        long lastPosition = jdbcTemplate.queryForObject(SELECT_LAST_POSITION, Long.class, playlistId);
+        jdbcTemplate.batchUpdate(INSERT_MEMBER, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setLong(1, playlistId);
+                ps.setLong(2, songIds.get(i));
+                ps.setLong(3, lastPosition + (i + 1) * POSITION_GAP);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return songIds.size();
+            }
+        });
+        evictSongsOf(playlistId);
+    }
+
+    /**
+     * @return the number of songs_playlist rows deleted
+     */
+    public int removeMembers(long playlistId, Collection<Long> songIds) {
+        int removed = namedParameterJdbcTemplate.update(DELETE_MEMBERS, membersParameters(playlistId, songIds));
+        evictSongsOf(playlistId);
+        return removed;
+    }
+
+    public void removeAllMembers(long playlistId) {
+        jdbcTemplate.update(DELETE_ALL_MEMBERS, playlistId);
+        evictSongsOf(playlistId);
+    }
+
+    /**
+     * @return the position of the song in the playlist, null when it is not a member
+     */
+    public Long findPosition(long playlistId, long songId) {
+        List<Long> positions = jdbcTemplate.queryForList(SELECT_POSITION, Long.class, playlistId, songId);
+        return positions.isEmpty() ? null : positions.get(0);
+    }
+
+    /**
+     * @return the position of the row following (position, songId) - the first row when position is null -
+     * ignoring the row of excludedSongId, or null when there is none
+     */
+    public Long findNextPosition(long playlistId, Long position, Long songId, long excludedSongId) {
+        if (position == null) {
+            return jdbcTemplate.queryForObject(SELECT_FIRST_POSITION_EXCEPT, Long.class, playlistId, excludedSongId);
+        }
+        return jdbcTemplate.queryForObject(SELECT_NEXT_POSITION_EXCEPT, Long.class,
+                playlistId, excludedSongId, position, position, position, songId);
+    }
+
+    public void updatePosition(long playlistId, long songId, long position) {
+        jdbcTemplate.update(UPDATE_POSITION, position, playlistId, songId);
+        evictSongsOf(playlistId);
+    }
+
+    /**
+     * spreads the positions of the playlist {@link #POSITION_GAP} apart again, keeping their order :
+     * rewrites every row of the playlist, in batches
+     */
+    public void renumber(long playlistId) {
+        List<Long> songIds = findMemberSongIdsInOrder(playlistId);
+        for (int from = 0; from < songIds.size(); from += BATCH_SIZE) {
+            int offset = from;
+            List<Long> batch = songIds.subList(from, Math.min(from + BATCH_SIZE, songIds.size()));
+            jdbcTemplate.batchUpdate(UPDATE_POSITION, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    ps.setLong(1, (offset + i + 1) * POSITION_GAP);
+                    ps.setLong(2, playlistId);
+                    ps.setLong(3, batch.get(i));
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return batch.size();
+                }
+            });
+        }
+        evictSongsOf(playlistId);
+    }
+
+    /**
+     * gives the playlist the songs of the source in one INSERT ... SELECT, positions included :
+     * no song id leaves the database. The playlist must have no songs yet.
+     *
+     * @return the number of songs copied
+     */
+    public int copyMembers(long sourceId, long playlistId) {
+        int copied = jdbcTemplate.update(COPY_MEMBERS, playlistId, sourceId);
+        evictSongsOf(playlistId);
+        return copied;
+    }
+
+    /**
+     * gives the playlist the songs of the combination of the sources' songs_playlist rows in one INSERT ... SELECT,
+     * in the order of the first source (then of the next ones for a union), {@link #POSITION_GAP} apart.
+     * The playlist must have no songs yet.
+     *
+     * @param sourceIds distinct ids of playlists in ROWS storage, the first one first
+     * @return the number of songs inserted
+     */
+    public int insertCombination(long playlistId, SetOperation operation, List<Long> sourceIds) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("playlistId", playlistId)
+                .addValue("gap", POSITION_GAP);
+        String sql;
+        if (operation == SetOperation.UNION) {
+            StringBuilder sourceOrder = new StringBuilder("case playlist_id");
+            for (int i = 0; i < sourceIds.size(); i++) {
+                sourceOrder.append(" when :source").append(i).append(" then ").append(i);
+                parameters.addValue("source" + i, sourceIds.get(i));
+            }
+            sql = String.format(INSERT_UNION, sourceOrder.append(" end"));
+            parameters.addValue("sourceIds", sourceIds);
+        } else {
+            List<Long> otherIds = sourceIds.subList(1, sourceIds.size());
+            sql = operation == SetOperation.INTERSECT ? INSERT_INTERSECTION : INSERT_DIFFERENCE;
+            parameters.addValue("firstId", sourceIds.get(0))
+                    .addValue("otherIds", otherIds)
+                    .addValue("otherCount", otherIds.size());
+        }
+        int inserted = namedParameterJdbcTemplate.update(sql, parameters);
+        evictSongsOf(playlistId);
+        return inserted;
+    }
+
+    /**
+     * @return the ids of at most limit playlists holding a songs_playlist row of the song after the playlist afterId,
+     * in id order
+     */
+    public List<Long> findPlaylistIdsOfSong(long songId, long afterId, int limit) {
+        return jdbcTemplate.queryForList(SELECT_PLAYLIST_IDS_OF_SONG, Long.class, songId, afterId, limit);
+    }
+
+    /**
+     * deletes the songs_playlist rows of the songs, whatever their playlists, in one statement read through
+     * songs_playlist_song_idx that also returns them (see ReturningDelete) : the cached songs of these playlists are dropped.
+     *
+     * @return the songs removed, by playlist they were removed from
+     */
+    public Map<Long, List<Long>> removeSongsFromPlaylists(Collection<Long> songIds) {
+        Map<Long, List<Long>> removedSongIds = new HashMap<>();
+        namedParameterJdbcTemplate.query(deleteSongsMemberships, new MapSqlParameterSource("songIds", songIds),
+                (RowCallbackHandler) rs -> removedSongIds
+                        .computeIfAbsent(rs.getLong("playlist_id"), playlistId -> new ArrayList<>())
+                        .add(rs.getLong("song_id")));
+        if (!removedSongIds.isEmpty()) {
+            evictSongsOf(new HashSet<>(removedSongIds.keySet()));
+        }
+        return removedSongIds;
+    }
+
+    private static MapSqlParameterSource membersParameters(long playlistId, Collection<Long> songIds) {
+        return new MapSqlParameterSource()
+                .addValue("playlistId", playlistId)
+                .addValue("songIds", songIds);
+    }
+
+    /**
+     * the rows changed behind Hibernate's back : the cached Playlist.songs collection is dropped now,
+     * and again on commit in case a concurrent reader cached the old rows in between.
+     */
+    private void evictSongsOf(long playlistId) {
+        evictSongsOf(Collections.singleton(playlistId));
+    }
+
+    private void evictSongsOf(Collection<Long> playlistIds) {
+        Cache cache = entityManagerFactory.getCache().unwrap(Cache.class);
+        playlistIds.forEach(playlistId -> cache.evictCollectionData(SONGS_ROLE, playlistId));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    playlistIds.forEach(playlistId -> cache.evictCollectionData(SONGS_ROLE, playlistId));
+                }
+            });
+        }
+    }
+}
@@ -1,14 +1,45 @@
 package com.rest.playlist.repository;
 
 import com.rest.playlist.model.Playlist;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 @EnableJpaAuditing
 public interface PlaylistRepository extends JpaRepository<Playlist, Long> {
+    @Override
+    @EntityGraph(Playlist.SUMMARY_GRAPH)
+    List<Playlist> findAll();
+
+    @Override
+    @EntityGraph(Playlist.SUMMARY_GRAPH)
+    List<Playlist> findAllById(Iterable<Long> ids);
+
+    @EntityGraph(Playlist.SUMMARY_GRAPH)
     List<Playlist> findPlaylistsByTitleContaining(String title);
+
+    @EntityGraph(Playlist.DETAIL_GRAPH)
+    Optional<Playlist> findWithSongsById(Long id);
+
+    // keyset pagination : pageable only carries the limit, never an offset
+    @EntityGraph(Playlist.SUMMARY_GRAPH)
+    List<Playlist> findAllByOrderByIdAsc(Pageable pageable);
+    @EntityGraph(Playlist.SUMMARY_GRAPH)
+    List<Playlist> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+    @EntityGraph(Playlist.SUMMARY_GRAPH)
+    List<Playlist> findAllByOrderByCreateAtAscIdAsc(Pageable pageable);
+
+    @EntityGraph(Playlist.SUMMARY_GRAPH)
+    @Query("select p from Playlist p where p.createAt > :createdAt or (p.createAt = :createdAt and p.id > :id) " +
+            "order by p.createAt asc, p.id asc")
+    List<Playlist> findPlaylistsCreatedAfter(@Param("createdAt") Instant createdAt, @Param("id") Long id, Pageable pageable);
 }
@@ -0,0 +1,163 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.pagination.Cursor;
+import com.rest.playlist.projection.PlaylistField;
+import com.rest.playlist.projection.ProjectedField;
+import com.rest.playlist.projection.Projection;
+import com.rest.playlist.projection.SongField;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * ProjectionJdbcRepository class reads songs and playlists with the columns of the requested fields only
+ * (?fields=, see ProjectedField) : no entity is built, no other column is read, each row becomes a Projection.
+ * Pages are read by keyset in the same orders as the entity listings, so their cursors are interchangeable.
+ */
+
+@Repository
+public class ProjectionJdbcRepository {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    public ProjectionJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    /**
+     * reads at most limit songs after the cursor, by id or by creation date
+     */
+    public List<Projection> findSongs(Set<SongField> fields, Cursor position, int limit) {
+        return findPage("songs", fields, position, limit);
+    }
+
+    /**
+     * reads at most limit playlists after the cursor, by id or by creation date
+     */
+    public List<Projection> findPlaylists(Set<PlaylistField> fields, Cursor position, int limit) {
+        return findPage("playlists", fields, position, limit);
+    }
+
+    /**
+     * reads at most limit songs of a playlist following the entry (position, songId), from the first one
+     * when position is null : the same range scan of songs_playlist_position_idx as PlaylistJdbcRepository#findSongs
+     */
+    public List<Projection> findPlaylistSongs(long playlistId, Set<SongField> fields, Long position, Long songId, int limit) {
+        String sql = "select sp.position, " + columns("s.", fields) + " " +
+                "from songs_playlist sp join songs s on s.id = sp.song_id " +
+                "where sp.playlist_id = ? " +
+                (position == null ? "" : "and sp.position >= ? and (sp.position > ? or (sp.position = ? and sp.song_id > ?)) ") +
+                "order by sp.playlist_id, sp.position, sp.song_id limit ?";
+        Object[] args = position == null
+                ? new Object[]{playlistId, limit}
+                : new Object[]{playlistId, position, position, position, songId, limit};
+        return jdbcTemplate.query(sql, (rs, rowNum) ->
+                map(rs, 2, fields, Cursor.afterPosition(rs.getLong(1), rs.getLong(SongField.ID.getColumn()))), args);
+    }
+
+    /**
+     * reads the songs in the order of the given ids, one IN query per 1000 ids : ids of songs deleted since are skipped.
+     * Songs read by id carry no cursor.
+     */
+    public List<Projection> findSongsByIds(Set<SongField> fields, List<Long> songIds) {
+        String sql = "select " + columns("", fields) + " from songs where id in (:ids)";
+        Map<Long, Projection> songsById = new HashMap<>();
+        for (int from = 0; from < songIds.size(); from += BATCH_SIZE) {
+            List<Long> chunk = songIds.subList(from, Math.min(from + BATCH_SIZE, songIds.size()));
+            namedParameterJdbcTemplate.query(sql, new MapSqlParameterSource("ids", chunk),
+                    (RowCallbackHandler) rs -> songsById.put(rs.getLong(SongField.ID.getColumn()), map(rs, 1, fields, null)));
+        }
+        return songIds.stream()
+                .map(songsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * reads the songs of the playlists stored as songs_playlist rows, in playlist order, from one ordered join
+     *
+     * @return the songs by playlist id, playlists without rows (empty or packed) are left out
+     */
+    public Map<Long, List<Projection>> findSongsOfPlaylists(Set<SongField> fields, Collection<Long> playlistIds) {
+        String sql = "select sp.playlist_id, " + columns("s.", fields) + " " +
+                "from songs_playlist sp join songs s on s.id = sp.song_id " +
+                "where sp.playlist_id in (:ids) " +
+                "order by sp.playlist_id, sp.position, sp.song_id";
+        Map<Long, List<Projection>> songs = new LinkedHashMap<>();
+        if (!playlistIds.isEmpty()) {
+            namedParameterJdbcTemplate.query(sql, new MapSqlParameterSource("ids", playlistIds), (RowCallbackHandler) rs ->
+                    songs.computeIfAbsent(rs.getLong(1), id -> new ArrayList<>()).add(map(rs, 2, fields, null)));
+        }
+        return songs;
+    }
+
+    /**
+     * @return the song ids of the packed playlists among the given ones, in playlist order, by playlist id
+     */
+    public Map<Long, List<Long>> findPackedSongIds(Collection<Long> playlistIds) {
+        String sql = "select playlist_id, song_ids from playlist_packed_songs where playlist_id in (:ids)";
+        Map<Long, List<Long>> songIds = new HashMap<>();
+        if (!playlistIds.isEmpty()) {
+            namedParameterJdbcTemplate.query(sql, new MapSqlParameterSource("ids", playlistIds), (RowCallbackHandler) rs ->
+                    songIds.put(rs.getLong(1), PackedSongIds.unpack(rs.getBytes(2))));
+        }
+        return songIds;
+    }
+
+    private <F extends ProjectedField> List<Projection> findPage(String table, Set<F> fields, Cursor position, int limit) {
+        boolean byCreatedAt = position.getOrder() == Cursor.Order.CREATED_AT;
+        String sql = "select " + columns("", fields) + (byCreatedAt ? ", created_at" : "") + " from " + table;
+        List<Object> args = new ArrayList<>();
+        if (!position.isFirst() && byCreatedAt) {
+            sql += " where created_at > ? or (created_at = ? and id > ?)";
+            Timestamp createdAt = Timestamp.from(position.getCreatedAt());
+            args.add(createdAt);
+            args.add(createdAt);
+            args.add(position.getId());
+        } else if (!position.isFirst()) {
+            sql += " where id > ?";
+            args.add(position.getId());
+        }
+        sql += byCreatedAt ? " order by created_at, id limit ?" : " order by id limit ?";
+        args.add(limit);
+        return jdbcTemplate.query(sql, (rs, rowNum) -> map(rs, 1, fields, Cursor.after(position.getOrder(),
+                byCreatedAt ? rs.getTimestamp("created_at").toInstant() : null, rs.getLong("id"))), args.toArray());
+    }
+
+    private static String columns(String alias, Set<? extends ProjectedField> fields) {
+        return fields.stream().map(field -> alias + field.getColumn()).collect(Collectors.joining(", "));
+    }
+
+    /**
+     * the fields are read from the column at index first, in the order of the set
+     */
+    private static Projection map(ResultSet rs, int first, Set<? extends ProjectedField> fields, Cursor after)
+            throws SQLException {
+        Projection projection = new Projection(after);
+        int index = first;
+        for (ProjectedField field : fields) {
+            projection.put(field.getParam(), field.isId() ? rs.getLong(index) : rs.getString(index));
+            index++;
+        }
+        return projection;
+    }
+}
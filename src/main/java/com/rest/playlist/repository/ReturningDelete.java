@@ -0,0 +1,37 @@
+package com.rest.playlist.repository;
+
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+
+/**
+ * ReturningDelete class writes a delete that hands back the rows it deletes, in the same statement :
+ * DELETE ... RETURNING on PostgreSQL, a select from the OLD TABLE of the delete on the others (H2).
+ * The rows read are exactly the rows deleted : no row written in between is deleted without being read.
+ */
+
+final class ReturningDelete {
+
+    private ReturningDelete() {
+    }
+
+    /**
+     * @return the statement deleting the rows of the table matching the condition, run as a query of the columns
+     */
+    static String of(DataSource dataSource, String table, String condition, String columns) {
+        String delete = "delete from " + table + " where " + condition;
+        return isPostgreSql(dataSource)
+                ? delete + " returning " + columns
+                : "select " + columns + " from old table (" + delete + ")";
+    }
+
+    private static boolean isPostgreSql(DataSource dataSource) {
+        try {
+            return "PostgreSQL".equals(JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName));
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Cannot read the database product name", e);
+        }
+    }
+}
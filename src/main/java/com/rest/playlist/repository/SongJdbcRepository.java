@@ -0,0 +1,153 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.dto.ResourceVersion;
+import com.rest.playlist.model.PooledSequenceGenerator;
+import com.rest.playlist.model.Song;
+import org.hibernate.Cache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManagerFactory;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * SongJdbcRepository class writes songs with plain JDBC batches, for the paths where
+ * going through the persistence context costs more than the work itself (bulk uploads) :
+ * one round trip per batch. Ids are drawn from song_seq a block at a time, as Hibernate does
+ * (see PooledSequenceGenerator) : one nextval per block of ids instead of one per song.
+ * <p>
+ * Songs are deleted the same way, a set of them per statement, without loading their entities.
+ */
+
+@Repository
+public class SongJdbcRepository {
+
+    private static final String INSERT_SONG =
+            "insert into songs (id, title, description, duration, artist_name, category, created_at, updated_at, version) " +
+                    "values (?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    private static final String SELECT_NEXT_BLOCK = "select nextval('" + Song.SEQUENCE + "')";
+
+    private static final String SELECT_VERSION =
+            "select version, coalesce(updated_at, created_at) from songs where id = ?";
+
+    private static final String SELECT_EXISTING_IDS =
+            "select id from songs where id in (:ids)";
+
+    private static final String DELETE_SONGS =
+            "delete from songs where id in (:ids)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+    private final int idBlockSize;
+
+    public SongJdbcRepository(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory,
+                              @Value("${playlist.id.block-size:" + PooledSequenceGenerator.DEFAULT_BLOCK_SIZE + "}") int idBlockSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.entityManagerFactory = entityManagerFactory;
+        this.idBlockSize = idBlockSize;
+    }
+
+    /**
+     * reads the version of a song from its row alone : the entity is not loaded
+     */
+    public Optional<ResourceVersion> findVersion(long songId) {
+        return jdbcTemplate.query(SELECT_VERSION,
+                (rs, rowNum) -> ResourceVersion.of(rs.getLong(1), rs.getTimestamp(2).toInstant()), songId)
+                .stream().findFirst();
+    }
+
+    /**
+     * inserts the songs in one JDBC batch and sets their ids
+     */
+    public List<Song> insertAll(List<Song> songs) {
+        Timestamp now = Timestamp.from(Instant.now().truncatedTo(ChronoUnit.MICROS));
+        Iterator<Long> ids = reserveIds(songs.size()).iterator();
+        for (Song song : songs) {
+            song.setId(ids.next());
+        }
+        jdbcTemplate.execute((ConnectionCallback<int[]>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SONG)) {
+                for (Song song : songs) {
+                    statement.setLong(1, song.getId());
+                    statement.setString(2, song.getTitle());
+                    statement.setString(3, song.getDescription());
+                    statement.setString(4, song.getDuration());
+                    statement.setString(5, song.getArtistName());
+                    statement.setString(6, song.getCategory().name());
+                    statement.setTimestamp(7, now);
+                    statement.setTimestamp(8, now);
+                    statement.addBatch();
+                }
+                return statement.executeBatch();
+            }
+        });
+        for (Song song : songs) {
+            song.setCreateAt(now.toInstant());
+            song.setUpdatedAt(now.toInstant());
+            song.setVersion(0L);
+        }
+        return songs;
+    }
+
+    /**
+     * @return the ids among the given ones that have a song row
+     */
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        return new HashSet<>(namedParameterJdbcTemplate.queryForList(SELECT_EXISTING_IDS,
+                new MapSqlParameterSource("ids", ids), Long.class));
+    }
+
+    /**
+     * deletes the song rows in one statement, their songs_playlist rows must be gone already
+     * (see PlaylistMemberJdbcRepository#removeSongsFromPlaylists). The rows changed behind Hibernate's back :
+     * the cached songs are dropped now, and again on commit in case a concurrent reader cached them in between.
+     */
+    public int deleteAll(Collection<Long> ids) {
+        int deleted = namedParameterJdbcTemplate.update(DELETE_SONGS, new MapSqlParameterSource("ids", ids));
+        Cache cache = entityManagerFactory.getCache().unwrap(Cache.class);
+        ids.forEach(id -> cache.evictEntityData(Song.class, id));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    ids.forEach(id -> cache.evictEntityData(Song.class, id));
+                }
+            });
+        }
+        return deleted;
+    }
+
+    /**
+     * a nextval of song_seq is the first id of a block nobody else uses : the ids left over
+     * in the last block are skipped
+     */
+    private List<Long> reserveIds(int count) {
+        List<Long> ids = new ArrayList<>(count);
+        while (ids.size() < count) {
+            long first = jdbcTemplate.queryForObject(SELECT_NEXT_BLOCK, Long.class);
+            for (long id = first; id < first + idBlockSize && ids.size() < count; id++) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+}
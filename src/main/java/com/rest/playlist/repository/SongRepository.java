@@ -2,15 +2,43 @@ package com.rest.playlist.repository;
 
 import com.rest.playlist.enums.SongCategory;
 import com.rest.playlist.model.Song;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+
+import java.time.Instant;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_MODE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
 @EnableJpaAuditing
 public interface SongRepository extends JpaRepository<Song, Long> {
     List<Song> findSongsByCategory(SongCategory category);
     List<Song> findSongsByArtistNameContaining(String artistName);
+
+    // keyset pagination : pageable only carries the limit, never an offset
+    List<Song> findAllByOrderByIdAsc(Pageable pageable);
+    List<Song> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+    List<Song> findAllByOrderByCreateAtAscIdAsc(Pageable pageable);
+
+    @Query("select s from Song s where s.createAt > :createdAt or (s.createAt = :createdAt and s.id > :id) " +
+            "order by s.createAt asc, s.id asc")
+    List<Song> findSongsCreatedAfter(@Param("createdAt") Instant createdAt, @Param("id") Long id, Pageable pageable);
+
+    // forward-only cursor for exports : rows are fetched 500 at a time, entities are not snapshotted
+    // nor put in the second-level cache (a full scan would evict the songs actually being read)
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_CACHE_MODE, value = "IGNORE")})
+    @Query("select s from Song s order by s.id")
+    Stream<Song> streamAllByOrderByIdAsc();
 }
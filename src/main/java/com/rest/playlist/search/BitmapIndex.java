@@ -0,0 +1,116 @@
+package com.rest.playlist.search;
+
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BitmapIndex class holds one compressed bitmap of ids per distinct value : filters are bitmap
+ * intersections and a facet count is the cardinality of an intersection, computed without
+ * materializing it. Ids are drawn from sequences and are expected to fit in an int : an id beyond
+ * (see {@link #holds}) is left out of the bitmaps, so the write that indexes it never fails on it.
+ */
+
+public class BitmapIndex extends TextIndex {
+    private static final Logger log = LoggerFactory.getLogger(BitmapIndex.class);
+
+    private final Map<String, RoaringBitmap> bitmaps = new HashMap<>();
+
+    /**
+     * @return a copy of the ids holding the value
+     */
+    public RoaringBitmap get(String value) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap bitmap = bitmaps.get(value);
+            return bitmap == null ? new RoaringBitmap() : bitmap.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the ids holding any value
+     */
+    public RoaringBitmap all() {
+        lock.readLock().lock();
+        try {
+            return RoaringBitmap.or(bitmaps.values().iterator());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of ids of the given set holding each value, most frequent first, at most limit values
+     */
+    public Map<String, Integer> counts(RoaringBitmap within, int limit) {
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> counts = new HashMap<>();
+            if (within.getLongCardinality() < bitmaps.size()) {
+                // fewer ids than values : reading the values of each id is cheaper
+                IntIterator ids = within.getIntIterator();
+                while (ids.hasNext()) {
+                    for (String value : valuesOf(ids.next())) {
+                        counts.merge(value, 1, Integer::sum);
+                    }
+                }
+            } else {
+                bitmaps.forEach((value, bitmap) -> {
+                    int count = RoaringBitmap.andCardinality(bitmap, within);
+                    if (count > 0) {
+                        counts.put(value, count);
+                    }
+                });
+            }
+            return top(counts, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return whether the id fits in the bitmaps : ids are read back as unsigned ints, from 0 to Integer.MAX_VALUE
+     */
+    public static boolean holds(long id) {
+        return id >= 0 && id <= Integer.MAX_VALUE;
+    }
+
+    @Override
+    protected void index(long id, String value) {
+        if (!holds(id)) {
+            log.warn("id {} does not fit in an int : not indexed for value {}", id, value);
+            return;
+        }
+        bitmaps.computeIfAbsent(value, key -> new RoaringBitmap()).add((int) id);
+    }
+
+    @Override
+    protected void unindex(long id, String value, List<String> remaining) {
+        RoaringBitmap bitmap = bitmaps.get(value);
+        if (bitmap != null && holds(id)) {
+            bitmap.remove((int) id);
+            if (bitmap.isEmpty()) {
+                bitmaps.remove(value);
+            }
+        }
+    }
+
+    private static Map<String, Integer> top(Map<String, Integer> counts, int limit) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Integer> top = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : entries.subList(0, Math.min(limit, entries.size()))) {
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return top;
+    }
+}
@@ -0,0 +1,165 @@
+package com.rest.playlist.search;
+
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * BkTreeIndex class is a BK-tree over the distinct values, each node holding the ids of that value.
+ * Children are filed by their Levenshtein distance to the parent, so by the triangle inequality
+ * a lookup within n edits only descends into children filed between d - n and d + n :
+ * a small fraction of the dictionary is compared for n = 1 or 2.
+ * Distances are computed on case-folded values. A value no id holds any more stays in the tree
+ * as a routing node and is skipped by lookups.
+ */
+
+public class BkTreeIndex extends TextIndex {
+
+    public static final int MAX_DISTANCE = 2;
+
+    private static final Comparator<Match> RANKING = Comparator.comparingInt(Match::getDistance)
+            .thenComparing(Comparator.comparingInt(Match::getCount).reversed())
+            .thenComparing(Match::getValue);
+
+    private Node root;
+
+    /**
+     * @return the values within maxDistance edits of the query, closest then most held first
+     */
+    public List<Match> search(String query, int maxDistance) {
+        String folded = fold(query);
+        List<Match> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (root == null) {
+                return matches;
+            }
+            Deque<Node> pending = new ArrayDeque<>();
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                Node node = pending.pop();
+                int distance = distance(folded, node.folded);
+                if (distance <= maxDistance && !node.ids.isEmpty()) {
+                    matches.add(new Match(node.value, distance, node.ids));
+                }
+                int from = Math.max(0, distance - maxDistance);
+                int to = Math.min(node.children.length - 1, distance + maxDistance);
+                for (int d = from; d <= to; d++) {
+                    if (node.children[d] != null) {
+                        pending.push(node.children[d]);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        matches.sort(RANKING);
+        return matches;
+    }
+
+    @Override
+    protected void index(long id, String value) {
+        nodeOf(value).ids.addLong(id);
+    }
+
+    @Override
+    protected void unindex(long id, String value, List<String> remaining) {
+        nodeOf(value).ids.removeLong(id);
+    }
+
+    private Node nodeOf(String value) {
+        String folded = fold(value);
+        if (root == null) {
+            root = new Node(value, folded);
+            return root;
+        }
+        Node node = root;
+        while (!node.value.equals(value)) {
+            int distance = distance(folded, node.folded);
+            if (distance >= node.children.length) {
+                node.children = Arrays.copyOf(node.children, distance + 1);
+            }
+            if (node.children[distance] == null) {
+                node.children[distance] = new Node(value, folded);
+            }
+            node = node.children[distance];
+        }
+        return node;
+    }
+
+    static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    public static final class Match {
+
+        private final String value;
+        private final int distance;
+        private final List<Long> ids = new ArrayList<>();
+
+        Match(String value, int distance, Roaring64Bitmap ids) {
+            this.value = value;
+            this.distance = distance;
+            LongIterator iterator = ids.getLongIterator();
+            while (iterator.hasNext()) {
+                this.ids.add(iterator.next());
+            }
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+
+        /**
+         * ascending
+         */
+        public List<Long> getIds() {
+            return ids;
+        }
+
+        public int getCount() {
+            return ids.size();
+        }
+    }
+
+    private static final class Node {
+
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private final String value;
+        private final String folded;
+        private final Roaring64Bitmap ids = new Roaring64Bitmap();
+        // indexed by the distance to this node
+        private Node[] children = NO_CHILDREN;
+
+        Node(String value, String folded) {
+            this.value = value;
+            this.folded = folded;
+        }
+    }
+}
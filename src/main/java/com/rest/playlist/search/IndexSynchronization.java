@@ -0,0 +1,54 @@
+package com.rest.playlist.search;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Consumer;
+
+/**
+ * IndexSynchronization class ties in-memory index changes to the outcome of the current transaction :
+ * a new value is searchable at once (so the writing transaction reads its own writes),
+ * the value it replaces is dropped only on commit and the new one is dropped again on rollback.
+ * Indexes may therefore return ids that no longer match, never miss one that does.
+ */
+
+final class IndexSynchronization {
+
+    private IndexSynchronization() {
+    }
+
+    static void stage(TextIndex index, long id, String value) {
+        boolean added = index.add(id, value);
+        afterCompletion(committed -> {
+            if (committed) {
+                index.retainOnly(id, value);
+            } else if (added) {
+                index.remove(id, value);
+            }
+        });
+    }
+
+    static void afterCommit(Runnable action) {
+        afterCompletion(committed -> {
+            if (committed) {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * runs the action right away when no transaction is active
+     */
+    static void afterCompletion(Consumer<Boolean> action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.accept(true);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                action.accept(status == STATUS_COMMITTED);
+            }
+        });
+    }
+}
@@ -0,0 +1,61 @@
+package com.rest.playlist.search;
+
+import com.rest.playlist.dto.Suggestion;
+import com.rest.playlist.model.Playlist;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * PlaylistSearchIndex class holds the trigram and prefix indexes of the playlist titles.
+ * Loaded at startup by {@link SearchIndexLoader}, kept current by {@link PlaylistSearchIndexListener}.
+ */
+
+@Component
+public class PlaylistSearchIndex {
+
+    private final TrigramIndex titles = new TrigramIndex();
+    private final PrefixIndex titlePrefixes = new PrefixIndex();
+
+    public List<Long> findIdsByTitle(String title) {
+        return titles.search(title);
+    }
+
+    /**
+     * @return the most frequent titles completing the prefix
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        return titlePrefixes.complete(prefix, limit).stream()
+                .map(completion -> new Suggestion(completion.getValue(), "title", completion.getCount()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * indexes a playlist written in the current transaction
+     */
+    public void saved(Playlist playlist) {
+        IndexSynchronization.stage(titles, playlist.getId(), playlist.getTitle());
+        IndexSynchronization.stage(titlePrefixes, playlist.getId(), playlist.getTitle());
+    }
+
+    /**
+     * unindexes a playlist deleted in the current transaction
+     */
+    public void removed(Playlist playlist) {
+        long id = playlist.getId();
+        IndexSynchronization.afterCommit(() -> {
+            titles.removeAll(id);
+            titlePrefixes.removeAll(id);
+        });
+    }
+
+    public int size() {
+        return titles.size();
+    }
+
+    void load(long id, String title) {
+        titles.add(id, title);
+        titlePrefixes.add(id, title);
+    }
+}
@@ -0,0 +1,34 @@
+package com.rest.playlist.search;
+
+import com.rest.playlist.model.Playlist;
+import org.springframework.beans.factory.ObjectProvider;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * PlaylistSearchIndexListener class forwards playlist writes to the {@link PlaylistSearchIndex}.
+ * Instantiated by Hibernate through the Spring bean container ; a no-op where no index
+ * bean exists (repository slices).
+ */
+
+public class PlaylistSearchIndexListener {
+
+    private final ObjectProvider<PlaylistSearchIndex> playlistSearchIndex;
+
+    public PlaylistSearchIndexListener(ObjectProvider<PlaylistSearchIndex> playlistSearchIndex) {
+        this.playlistSearchIndex = playlistSearchIndex;
+    }
+
+    @PostPersist
+    @PostUpdate
+    void onSaved(Playlist playlist) {
+        playlistSearchIndex.ifAvailable(index -> index.saved(playlist));
+    }
+
+    @PostRemove
+    void onRemoved(Playlist playlist) {
+        playlistSearchIndex.ifAvailable(index -> index.removed(playlist));
+    }
+}
@@ -0,0 +1,210 @@
+package com.rest.playlist.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PrefixIndex class is a trie over the case-folded values, entered at every word start so that
+ * "smi" completes "Sam Smith". Each node keeps the best completions of its subtree, ranked by the
+ * number of ids holding the value : a lookup walks the prefix and returns that list as is,
+ * whatever the size of the catalog. Children are kept in sorted arrays.
+ */
+
+public class PrefixIndex extends TextIndex {
+
+    public static final int MAX_COMPLETIONS = 10;
+
+    private static final Comparator<Completion> RANKING = Comparator.comparingInt(Completion::getCount).reversed()
+            .thenComparing(Completion::getValue);
+
+    private final Node root = new Node();
+
+    /**
+     * @return at most limit values holding a word that starts with the prefix (case-insensitive), most frequent first
+     */
+    public List<Completion> complete(String prefix, int limit) {
+        String key = fold(prefix);
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.child(key.charAt(i));
+            }
+            if (node == null) {
+                return Collections.emptyList();
+            }
+            return node.best.subList(0, Math.min(limit, node.best.size()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected void index(long id, String value) {
+        for (String key : keys(value)) {
+            Node[] path = new Node[key.length() + 1];
+            path[0] = root;
+            for (int i = 0; i < key.length(); i++) {
+                path[i + 1] = path[i].childOrCreate(key.charAt(i));
+            }
+            path[key.length()].count(value, 1);
+            refresh(path, key);
+        }
+    }
+
+    @Override
+    protected void unindex(long id, String value, List<String> remaining) {
+        for (String key : keys(value)) {
+            Node[] path = new Node[key.length() + 1];
+            path[0] = root;
+            for (int i = 0; i < key.length() && path[i] != null; i++) {
+                path[i + 1] = path[i].child(key.charAt(i));
+            }
+            if (path[key.length()] == null) {
+                continue;
+            }
+            path[key.length()].count(value, -1);
+            refresh(path, key);
+        }
+    }
+
+    /**
+     * recomputes the best completions from the end of the key up to the root, dropping emptied nodes
+     */
+    private static void refresh(Node[] path, String key) {
+        for (int i = key.length(); i >= 0; i--) {
+            Node node = path[i];
+            if (i > 0 && node.isEmpty()) {
+                path[i - 1].removeChild(key.charAt(i - 1));
+                continue;
+            }
+            node.best = node.rank();
+        }
+    }
+
+    /**
+     * the value from each of its word starts
+     */
+    static List<String> keys(String value) {
+        String folded = fold(value);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < folded.length(); i++) {
+            if (folded.charAt(i) != ' ' && (i == 0 || folded.charAt(i - 1) == ' ')) {
+                keys.add(folded.substring(i));
+            }
+        }
+        return keys;
+    }
+
+    public static final class Completion {
+
+        private final String value;
+        private final int count;
+
+        Completion(String value, int count) {
+            this.value = value;
+            this.count = count;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    private static final class Node {
+
+        private static final char[] NO_LABELS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private char[] labels = NO_LABELS;
+        private Node[] children = NO_CHILDREN;
+        // values ending at this node, with the number of ids holding them
+        private Map<String, Integer> counts;
+        private List<Completion> best = Collections.emptyList();
+
+        Node child(char label) {
+            int i = Arrays.binarySearch(labels, label);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node childOrCreate(char label) {
+            int i = Arrays.binarySearch(labels, label);
+            if (i >= 0) {
+                return children[i];
+            }
+            int at = -i - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            System.arraycopy(labels, at, newLabels, at + 1, labels.length - at);
+            System.arraycopy(children, at, newChildren, at + 1, children.length - at);
+            newLabels[at] = label;
+            newChildren[at] = new Node();
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[at];
+        }
+
+        void removeChild(char label) {
+            int at = Arrays.binarySearch(labels, label);
+            if (at < 0) {
+                return;
+            }
+            char[] newLabels = new char[labels.length - 1];
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(labels, 0, newLabels, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            System.arraycopy(labels, at + 1, newLabels, at, labels.length - at - 1);
+            System.arraycopy(children, at + 1, newChildren, at, children.length - at - 1);
+            labels = newLabels;
+            children = newChildren;
+        }
+
+        void count(String value, int delta) {
+            if (counts == null) {
+                counts = new HashMap<>(2);
+            }
+            int count = counts.getOrDefault(value, 0) + delta;
+            if (count > 0) {
+                counts.put(value, count);
+            } else {
+                counts.remove(value);
+            }
+            if (counts.isEmpty()) {
+                counts = null;
+            }
+        }
+
+        boolean isEmpty() {
+            return counts == null && children.length == 0;
+        }
+
+        List<Completion> rank() {
+            // a value entered at several word starts may come from several children
+            Map<String, Completion> candidates = new LinkedHashMap<>();
+            if (counts != null) {
+                counts.forEach((value, count) -> candidates.put(value, new Completion(value, count)));
+            }
+            for (Node child : children) {
+                for (Completion completion : child.best) {
+                    candidates.merge(completion.value, completion,
+                            (kept, other) -> kept.count >= other.count ? kept : other);
+                }
+            }
+            List<Completion> ranked = new ArrayList<>(candidates.values());
+            ranked.sort(RANKING);
+            return ranked.size() > MAX_COMPLETIONS ? new ArrayList<>(ranked.subList(0, MAX_COMPLETIONS)) : ranked;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.rest.playlist.search;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * SearchIndexLoader class fills the in-memory search indexes from the database once every bean is created
+ * (the migrations have run), before the web server starts taking requests : a search never answers from
+ * a partly filled index. Only the indexed columns are read, no entity is built.
+ */
+
+@Component
+public class SearchIndexLoader implements SmartInitializingSingleton {
+    private static final Logger log = LoggerFactory.getLogger(SearchIndexLoader.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SongSearchIndex songSearchIndex;
+    private final PlaylistSearchIndex playlistSearchIndex;
+
+    public SearchIndexLoader(JdbcTemplate jdbcTemplate, SongSearchIndex songSearchIndex, PlaylistSearchIndex playlistSearchIndex) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.songSearchIndex = songSearchIndex;
+        this.playlistSearchIndex = playlistSearchIndex;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        load();
+    }
+
+    private void load() {
+        jdbcTemplate.query("select id, artist_name, title, category from songs",
+                (RowCallbackHandler) rs -> songSearchIndex.load(rs.getLong("id"), rs.getString("artist_name"),
+                        rs.getString("title"), rs.getString("category")));
+        jdbcTemplate.query("select id, title from playlists",
+                (RowCallbackHandler) rs -> playlistSearchIndex.load(rs.getLong("id"), rs.getString("title")));
+        log.info("search indexes loaded : {} songs, {} playlists", songSearchIndex.size(), playlistSearchIndex.size());
+    }
+}
@@ -0,0 +1,147 @@
+package com.rest.playlist.search;
+
+import com.rest.playlist.dto.Suggestion;
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * SongSearchIndex class holds the trigram and prefix indexes of the song artist names and titles,
+ * the BK-tree of the distinct artist names and the category and artist name bitmaps.
+ * Loaded at startup by {@link SearchIndexLoader}, kept current by {@link SongSearchIndexListener}.
+ */
+
+@Component
+public class SongSearchIndex {
+
+    private final TrigramIndex artistNames = new TrigramIndex();
+    private final TrigramIndex titles = new TrigramIndex();
+    private final PrefixIndex artistNamePrefixes = new PrefixIndex();
+    private final PrefixIndex titlePrefixes = new PrefixIndex();
+    private final BkTreeIndex artistNameDictionary = new BkTreeIndex();
+    private final BitmapIndex artistNameFacets = new BitmapIndex();
+    private final BitmapIndex categoryFacets = new BitmapIndex();
+
+    // every index of a field is written the same way
+    private final List<TextIndex> artistNameIndexes = Arrays.asList(artistNames, artistNamePrefixes, artistNameDictionary, artistNameFacets);
+    private final List<TextIndex> titleIndexes = Arrays.asList(titles, titlePrefixes);
+    private final List<TextIndex> categoryIndexes = Collections.singletonList(categoryFacets);
+
+    public List<Long> findIdsByArtistName(String artistName) {
+        return artistNames.search(artistName);
+    }
+
+    public List<Long> findIdsByTitle(String title) {
+        return titles.search(title);
+    }
+
+    /**
+     * @return the artist names within maxDistance edits of the given one, closest first
+     */
+    public List<BkTreeIndex.Match> findArtistNames(String artistName, int maxDistance) {
+        return artistNameDictionary.search(artistName, maxDistance);
+    }
+
+    /**
+     * @return the ids of the songs matching every given filter, null filters match all songs :
+     * the category and the artist name are exact, the title is a substring of at least 3 characters
+     */
+    public RoaringBitmap match(SongCategory category, String artistName, String title) {
+        RoaringBitmap matching = category == null ? categoryFacets.all() : categoryFacets.get(category.name());
+        if (artistName != null) {
+            matching.and(artistNameFacets.get(artistName));
+        }
+        if (title != null) {
+            RoaringBitmap titled = new RoaringBitmap();
+            titles.search(title).stream().filter(BitmapIndex::holds).forEach(id -> titled.add(id.intValue()));
+            matching.and(titled);
+        }
+        return matching;
+    }
+
+    /**
+     * @return the number of the given songs in each category, every category listed
+     */
+    public Map<String, Integer> countCategories(RoaringBitmap within) {
+        Map<String, Integer> counts = categoryFacets.counts(within, SongCategory.values().length);
+        Map<String, Integer> categories = new LinkedHashMap<>();
+        for (SongCategory category : SongCategory.values()) {
+            categories.put(category.name(), counts.getOrDefault(category.name(), 0));
+        }
+        return categories;
+    }
+
+    /**
+     * @return the artist names holding the most of the given songs
+     */
+    public Map<String, Integer> countTopArtistNames(RoaringBitmap within, int limit) {
+        return artistNameFacets.counts(within, limit);
+    }
+
+    /**
+     * @return the most frequent artist names and titles completing the prefix
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        List<Suggestion> suggestions = new ArrayList<>();
+        artistNamePrefixes.complete(prefix, limit)
+                .forEach(completion -> suggestions.add(new Suggestion(completion.getValue(), "artistName", completion.getCount())));
+        titlePrefixes.complete(prefix, limit)
+                .forEach(completion -> suggestions.add(new Suggestion(completion.getValue(), "title", completion.getCount())));
+        return suggestions.stream()
+                .sorted(Comparator.comparingInt(Suggestion::getCount).reversed().thenComparing(Suggestion::getValue))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * indexes a song written in the current transaction
+     */
+    public void saved(Song song) {
+        long id = song.getId();
+        artistNameIndexes.forEach(index -> IndexSynchronization.stage(index, id, song.getArtistName()));
+        titleIndexes.forEach(index -> IndexSynchronization.stage(index, id, song.getTitle()));
+        categoryIndexes.forEach(index -> IndexSynchronization.stage(index, id, nameOf(song.getCategory())));
+    }
+
+    /**
+     * unindexes a song deleted in the current transaction
+     */
+    public void removed(Song song) {
+        removed(song.getId());
+    }
+
+    /**
+     * unindexes a song deleted in the current transaction without going through its entity (set-based deletes)
+     */
+    public void removed(long id) {
+        IndexSynchronization.afterCommit(() -> {
+            artistNameIndexes.forEach(index -> index.removeAll(id));
+            titleIndexes.forEach(index -> index.removeAll(id));
+            categoryIndexes.forEach(index -> index.removeAll(id));
+        });
+    }
+
+    public int size() {
+        return categoryFacets.size();
+    }
+
+    void load(long id, String artistName, String title, String category) {
+        artistNameIndexes.forEach(index -> index.add(id, artistName));
+        titleIndexes.forEach(index -> index.add(id, title));
+        categoryIndexes.forEach(index -> index.add(id, category));
+    }
+
+    private static String nameOf(SongCategory category) {
+        return category == null ? null : category.name();
+    }
+}
@@ -0,0 +1,34 @@
+package com.rest.playlist.search;
+
+import com.rest.playlist.model.Song;
+import org.springframework.beans.factory.ObjectProvider;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * SongSearchIndexListener class forwards song writes to the {@link SongSearchIndex}.
+ * Instantiated by Hibernate through the Spring bean container ; a no-op where no index
+ * bean exists (repository slices).
+ */
+
+public class SongSearchIndexListener {
+
+    private final ObjectProvider<SongSearchIndex> songSearchIndex;
+
+    public SongSearchIndexListener(ObjectProvider<SongSearchIndex> songSearchIndex) {
+        this.songSearchIndex = songSearchIndex;
+    }
+
+    @PostPersist
+    @PostUpdate
+    void onSaved(Song song) {
+        songSearchIndex.ifAvailable(index -> index.saved(song));
+    }
+
+    @PostRemove
+    void onRemoved(Song song) {
+        songSearchIndex.ifAvailable(index -> index.removed(song));
+    }
+}
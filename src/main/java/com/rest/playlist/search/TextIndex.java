@@ -0,0 +1,117 @@
+package com.rest.playlist.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * TextIndex class is the id to values bookkeeping shared by the in-memory text indexes :
+ * subclasses only index and unindex single values, under the write lock.
+ * <p>
+ * An id may hold several values for a while (an update not committed yet) : it then matches on any of them.
+ */
+
+public abstract class TextIndex {
+
+    private final Map<Long, List<String>> values = new HashMap<>();
+    protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @return false when the id already holds this value
+     */
+    public boolean add(long id, String value) {
+        if (value == null) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            List<String> held = values.computeIfAbsent(id, key -> new ArrayList<>(1));
+            if (held.contains(value)) {
+                return false;
+            }
+            held.add(value);
+            index(id, value);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id, String value) {
+        lock.writeLock().lock();
+        try {
+            List<String> held = values.get(id);
+            if (held == null || !held.remove(value)) {
+                return;
+            }
+            if (held.isEmpty()) {
+                values.remove(id);
+            }
+            unindex(id, value, held);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * drops every value of the id but the given one
+     */
+    public void retainOnly(long id, String value) {
+        lock.writeLock().lock();
+        try {
+            List<String> held = values.get(id);
+            if (held == null) {
+                return;
+            }
+            for (String other : new ArrayList<>(held)) {
+                if (!other.equals(value)) {
+                    remove(id, other);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeAll(long id) {
+        retainOnly(id, null);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return values.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * to be called under the read lock
+     */
+    protected List<String> valuesOf(long id) {
+        return values.getOrDefault(id, Collections.emptyList());
+    }
+
+    protected abstract void index(long id, String value);
+
+    /**
+     * @param remaining the values the id still holds
+     */
+    protected abstract void unindex(long id, String value, List<String> remaining);
+
+    /**
+     * case folding is done char by char so a value and its substrings fold the same way
+     */
+    static String fold(String value) {
+        char[] folded = new char[value.length()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = Character.toLowerCase(value.charAt(i));
+        }
+        return new String(folded);
+    }
+}
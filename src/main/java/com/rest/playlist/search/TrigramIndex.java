@@ -0,0 +1,106 @@
+package com.rest.playlist.search;
+
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * TrigramIndex class maps every 3-character sequence of the indexed values to the ids holding it :
+ * a substring query intersects the posting lists of its own trigrams, then checks the few candidates
+ * left against their values, instead of scanning every row like LIKE '%x%' does.
+ * Trigrams are case-folded, the check against the value is case-sensitive.
+ */
+
+public class TrigramIndex extends TextIndex {
+
+    public static final int GRAM_LENGTH = 3;
+
+    private final Map<String, Roaring64Bitmap> postings = new HashMap<>();
+
+    /**
+     * @return whether the query is long enough to be answered by the index
+     */
+    public static boolean isSearchable(String query) {
+        return query != null && query.length() >= GRAM_LENGTH;
+    }
+
+    @Override
+    protected void index(long id, String value) {
+        for (String gram : trigrams(value)) {
+            postings.computeIfAbsent(gram, key -> new Roaring64Bitmap()).addLong(id);
+        }
+    }
+
+    @Override
+    protected void unindex(long id, String value, List<String> remaining) {
+        Set<String> kept = new HashSet<>();
+        for (String other : remaining) {
+            kept.addAll(trigrams(other));
+        }
+        for (String gram : trigrams(value)) {
+            Roaring64Bitmap posting = postings.get(gram);
+            if (posting != null && !kept.contains(gram)) {
+                posting.removeLong(id);
+                if (posting.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the ids, ascending, holding a value that contains the query (case-sensitive)
+     */
+    public List<Long> search(String query) {
+        if (!isSearchable(query)) {
+            throw new IllegalArgumentException("query shorter than " + GRAM_LENGTH + " characters");
+        }
+        lock.readLock().lock();
+        try {
+            List<Roaring64Bitmap> lists = new ArrayList<>();
+            for (String gram : trigrams(query)) {
+                Roaring64Bitmap posting = postings.get(gram);
+                if (posting == null) {
+                    return Collections.emptyList();
+                }
+                lists.add(posting);
+            }
+            lists.sort(Comparator.comparingLong(Roaring64Bitmap::getLongCardinality));
+
+            Roaring64Bitmap candidates = new Roaring64Bitmap();
+            candidates.or(lists.get(0));
+            for (int i = 1; i < lists.size() && !candidates.isEmpty(); i++) {
+                candidates.and(lists.get(i));
+            }
+
+            List<Long> ids = new ArrayList<>();
+            LongIterator iterator = candidates.getLongIterator();
+            while (iterator.hasNext()) {
+                long id = iterator.next();
+                if (valuesOf(id).stream().anyMatch(value -> value.contains(query))) {
+                    ids.add(id);
+                }
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static Set<String> trigrams(String value) {
+        String folded = fold(value);
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= folded.length(); i++) {
+            grams.add(folded.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+}
@@ -0,0 +1,54 @@
+package com.rest.playlist.service;
+
+import com.rest.playlist.dto.CacheRegionReport;
+import org.springframework.stereotype.Service;
+
+import javax.cache.CacheManager;
+import javax.cache.management.CacheStatisticsMXBean;
+import javax.management.JMX;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * CacheStatisticsService class reads the statistics of the second-level cache regions.
+ * The JCache provider publishes them as one MBean per region : evictions are only known there,
+ * Hibernate itself never sees an entry leave the cache.
+ */
+
+@Service
+public class CacheStatisticsService {
+
+    private final CacheManager hibernateCacheManager;
+
+    public CacheStatisticsService(CacheManager hibernateCacheManager) {
+        this.hibernateCacheManager = hibernateCacheManager;
+    }
+
+    public List<CacheRegionReport> getRegionReports() {
+        return StreamSupport.stream(hibernateCacheManager.getCacheNames().spliterator(), false)
+                .sorted()
+                .map(this::getRegionReport)
+                .collect(Collectors.toList());
+    }
+
+    private CacheRegionReport getRegionReport(String region) {
+        CacheStatisticsMXBean statistics = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+                statisticsName(region), CacheStatisticsMXBean.class);
+        return new CacheRegionReport(region, statistics.getCacheHits(), statistics.getCacheMisses(),
+                statistics.getCacheHitPercentage(), statistics.getCachePuts(),
+                statistics.getCacheRemovals(), statistics.getCacheEvictions());
+    }
+
+    private ObjectName statisticsName(String region) {
+        try {
+            return new ObjectName("javax.cache:type=CacheStatistics,CacheManager="
+                    + hibernateCacheManager.getURI() + ",Cache=" + region);
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalStateException("Invalid cache region name " + region, e);
+        }
+    }
+}
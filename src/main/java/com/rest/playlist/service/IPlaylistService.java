@@ -1,20 +1,57 @@
 package com.rest.playlist.service;
 
+import com.rest.playlist.dto.ResourceVersion;
+import com.rest.playlist.dto.Suggestion;
 import com.rest.playlist.model.Playlist;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.pagination.CursorPage;
+import com.rest.playlist.projection.Projection;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 public interface IPlaylistService {
 
     List<Playlist> getAllPlaylists();
 
+    CursorPage<Playlist> getAllPlaylists(String cursor, int limit, String sort);
+
+    CursorPage<Projection> getAllPlaylists(String cursor, int limit, String sort, String fields, String expand);
+
     Playlist getPlaylistById(Long id);
 
+    Playlist getPlaylistById(Long id, boolean includeSongs);
+
+    ResourceVersion getPlaylistVersion(Long id, boolean includeSongs);
+
+    CursorPage<Song> getPlaylistSongs(Long id, String cursor, int limit);
+
+    CursorPage<Projection> getPlaylistSongs(Long id, String cursor, int limit, String fields);
+
     List<Playlist> getPlaylistsByTitle(String title);
 
+    List<Suggestion> suggestPlaylists(String prefix, int limit);
+
     Playlist createPlaylist(Playlist playlist);
 
+    Playlist copyPlaylist(Long id);
+
+    Playlist combinePlaylists(String operation, List<Long> ids);
+
     Playlist updatePlaylist(Playlist playlist);
 
+    Playlist updatePlaylist(Playlist playlist, Long baseVersion);
+
     void deletePlaylistById(Long id);
+
+    void addSongs(Long id, List<Long> songIds);
+
+    void removeSongs(Long id, List<Long> songIds);
+
+    void moveSong(Long id, Long songId, Long afterSongId);
+
+    void changeSongStorage(Long id, String storage);
+
+    long exportPlaylists(OutputStream out) throws IOException;
 }
@@ -1,22 +1,57 @@
 package com.rest.playlist.service;
 
+import com.rest.playlist.dto.BulkImportReport;
+import com.rest.playlist.dto.ResourceVersion;
+import com.rest.playlist.dto.SongSearchResult;
+import com.rest.playlist.dto.Suggestion;
+import com.rest.playlist.model.Playlist;
 import com.rest.playlist.model.Song;
+import com.rest.playlist.pagination.CursorPage;
+import com.rest.playlist.projection.Projection;
+import com.rest.playlist.service.io.TransferFormat;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 
 public interface ISongService {
 
     List<Song> getAllSongs();
 
+    CursorPage<Song> getAllSongs(String cursor, int limit, String sort);
+
+    CursorPage<Projection> getAllSongs(String cursor, int limit, String sort, String fields);
+
     List<Song> getSongsByCategory(String category);
 
     List<Song> getSongsByArtistName(String artistName);
 
+    List<Song> getSongsByArtistName(String artistName, int maxDistance);
+
+    List<Suggestion> suggestSongs(String prefix, int limit);
+
+    SongSearchResult searchSongs(String category, String artistName, String title, String cursor, int limit);
+
     Song getSongById(Long id);
 
+    ResourceVersion getSongVersion(Long id);
+
+    List<Song> getSongsByIds(List<Long> ids);
+
+    CursorPage<Playlist> getSongPlaylists(Long id, String cursor, int limit);
+
     Song createSong(Song song);
 
     Song updateSong(Song song);
 
+    Song updateSong(Song song, Long expectedVersion);
+
     void deleteSongById(Long id);
+
+    void deleteSongs(List<Long> ids);
+
+    BulkImportReport importSongs(InputStream in, TransferFormat format) throws IOException;
+
+    long exportSongs(OutputStream out, TransferFormat format) throws IOException;
 }
@@ -0,0 +1,70 @@
+package com.rest.playlist.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * OptimisticLockRetry class runs a write in its own transaction and replays it when it lost
+ * an optimistic lock race (a version or a change log row written by a concurrent transaction first) :
+ * nothing is locked while a write is prepared, the replay reads the newer state and applies the write on it.
+ * Replays are spread with a random, exponentially growing backoff so that colliding writers do not collide again.
+ * <p>
+ * Within an already started transaction the write runs once : the failure is left to the caller,
+ * whose transaction cannot be replayed from here.
+ */
+
+@Component
+public class OptimisticLockRetry {
+    private static final Logger log = LoggerFactory.getLogger(OptimisticLockRetry.class);
+
+    public static final int MAX_ATTEMPTS = 10;
+    private static final long BACKOFF_MS = 5;
+    private static final long MAX_BACKOFF_MS = 200;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public OptimisticLockRetry(TransactionTemplate transactionTemplate) {
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    public <T> T execute(Supplier<T> write) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return write.get();
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> write.get());
+            } catch (ConcurrencyFailureException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("Concurrent write, attempt {} replayed", attempt);
+                backoff(attempt);
+            }
+        }
+    }
+
+    public void executeWithoutResult(Runnable write) {
+        execute(() -> {
+            write.run();
+            return null;
+        });
+    }
+
+    private static void backoff(int attempt) {
+        try {
+            long bound = Math.min(MAX_BACKOFF_MS, BACKOFF_MS << Math.min(attempt, 16));
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound) + 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while replaying a concurrent write", e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.rest.playlist.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.rest.playlist.model.Playlist;
+import com.rest.playlist.repository.PlaylistJdbcRepository;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * PlaylistBulkExporter class writes every playlist with its songs as one JSON document
+ * per line, as the ordered join completes them : a playlist is written then dropped.
+ * Must run inside a read-only transaction.
+ */
+
+@Component
+public class PlaylistBulkExporter {
+
+    private final PlaylistJdbcRepository playlistJdbcRepository;
+    private final ObjectMapper objectMapper;
+
+    public PlaylistBulkExporter(PlaylistJdbcRepository playlistJdbcRepository, ObjectMapper objectMapper) {
+        this.playlistJdbcRepository = playlistJdbcRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    public long exportPlaylists(OutputStream out) throws IOException {
+        ObjectWriter playlistWriter = objectMapper.writerFor(Playlist.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        long[] exported = {0};
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            playlistJdbcRepository.forEachPlaylistWithSongs(playlist -> {
+                try {
+                    playlistWriter.writeValue(generator, playlist);
+                    generator.writeRaw('\n');
+                    exported[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return exported[0];
+    }
+}
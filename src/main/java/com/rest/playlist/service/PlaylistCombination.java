@@ -0,0 +1,66 @@
+package com.rest.playlist.service;
+
+import com.rest.playlist.enums.SetOperation;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PlaylistCombination class combines song ids already in memory (playlists in PACKED storage) :
+ * the songs of the other playlists become one compressed bitmap of long ids, the songs of the first
+ * playlist are then kept or dropped by a bitmap lookup each, in their order.
+ * The database does the same for playlists in ROWS storage, see PlaylistMemberJdbcRepository#insertCombination.
+ */
+
+public final class PlaylistCombination {
+
+    private PlaylistCombination() {
+    }
+
+    /**
+     * @param songIds the song ids of each playlist in playlist order, the first playlist first
+     * @return the song ids of the combination, each once
+     */
+    public static List<Long> combine(SetOperation operation, List<List<Long>> songIds) {
+        List<Long> combined = new ArrayList<>();
+        Roaring64NavigableMap kept = new Roaring64NavigableMap();
+        if (operation == SetOperation.UNION) {
+            for (List<Long> ids : songIds) {
+                for (long id : ids) {
+                    if (!kept.contains(id)) {
+                        kept.addLong(id);
+                        combined.add(id);
+                    }
+                }
+            }
+            return combined;
+        }
+
+        Roaring64NavigableMap others = null;
+        for (List<Long> ids : songIds.subList(1, songIds.size())) {
+            Roaring64NavigableMap bitmap = toBitmap(ids);
+            if (others == null) {
+                others = bitmap;
+            } else if (operation == SetOperation.INTERSECT) {
+                others.and(bitmap);
+            } else {
+                others.or(bitmap);
+            }
+        }
+        boolean inOthers = operation == SetOperation.INTERSECT;
+        for (long id : songIds.get(0)) {
+            if ((others != null && others.contains(id)) == inOthers && !kept.contains(id)) {
+                kept.addLong(id);
+                combined.add(id);
+            }
+        }
+        return combined;
+    }
+
+    private static Roaring64NavigableMap toBitmap(List<Long> ids) {
+        Roaring64NavigableMap bitmap = new Roaring64NavigableMap();
+        ids.forEach(bitmap::addLong);
+        return bitmap;
+    }
+}
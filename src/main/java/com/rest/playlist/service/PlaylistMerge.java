@@ -0,0 +1,131 @@
+package com.rest.playlist.service;
+
+import com.rest.playlist.repository.PlaylistChange;
+import com.rest.playlist.web.exception.ConflictException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * PlaylistMerge class merges an update written against an older version of a playlist (the base)
+ * with the current playlist, given the changes made since the base (see PlaylistChange) :
+ * <ul>
+ * <li>title and description : the side that changed a value wins, both changing it to different values is a conflict</li>
+ * <li>songs : the songs added and removed on both sides are all kept added and removed,
+ * the songs added by the update are placed after the song they follow in the update</li>
+ * <li>order : the side that moved songs wins, both moving songs is a conflict</li>
+ * </ul>
+ * The log holds which songs were added and removed, not the order of the base : when songs were moved
+ * since the base, an update whose order differs from the current one cannot be told apart from an update
+ * that moved songs itself, and is reported as a conflict.
+ */
+
+public final class PlaylistMerge {
+
+    private final List<Long> currentSongIds;
+    private final String currentTitle;
+    private final String currentDescription;
+    private final Set<Long> baseSongIds;
+    private final String baseTitle;
+    private final String baseDescription;
+    private final boolean reordered;
+
+    /**
+     * @param changes the changes made since the base, oldest first
+     */
+    public PlaylistMerge(List<PlaylistChange> changes, List<Long> currentSongIds, String currentTitle, String currentDescription) {
+        this.currentSongIds = currentSongIds;
+        this.currentTitle = currentTitle;
+        this.currentDescription = currentDescription;
+
+        Set<Long> songIds = new HashSet<>(currentSongIds);
+        String title = currentTitle;
+        String description = currentDescription;
+        boolean moved = false;
+        // undone newest first : the oldest details change holds the details of the base
+        for (ListIterator<PlaylistChange> it = changes.listIterator(changes.size()); it.hasPrevious(); ) {
+            PlaylistChange change = it.previous();
+            songIds.removeAll(change.getAddedSongIds());
+            songIds.addAll(change.getRemovedSongIds());
+            if (change.isDetailsChanged()) {
+                title = change.getPreviousTitle();
+                description = change.getPreviousDescription();
+            }
+            moved |= change.isReordered();
+        }
+        this.baseSongIds = songIds;
+        this.baseTitle = title;
+        this.baseDescription = description;
+        this.reordered = moved;
+    }
+
+    public String mergeTitle(String title) {
+        return merge("title", baseTitle, currentTitle, title);
+    }
+
+    public String mergeDescription(String description) {
+        return merge("description", baseDescription, currentDescription, description);
+    }
+
+    /**
+     * @param songIds the songs of the update, in its order
+     * @return the songs of the merged playlist, in order
+     */
+    public List<Long> mergeSongIds(List<Long> songIds) {
+        Set<Long> current = new HashSet<>(currentSongIds);
+        Set<Long> mine = new HashSet<>(songIds);
+        boolean movedByUpdate = !PlaylistChange.sameOrder(songIds, currentSongIds);
+        if (movedByUpdate && reordered) {
+            throw new ConflictException("Songs of the playlist were moved concurrently");
+        }
+
+        if (movedByUpdate) {
+            // the order of the update, without the songs removed since the base, then the songs added since the base
+            Set<Long> merged = new LinkedHashSet<>();
+            for (Long songId : songIds) {
+                if (current.contains(songId) || !baseSongIds.contains(songId)) {
+                    merged.add(songId);
+                }
+            }
+            for (Long songId : currentSongIds) {
+                if (!baseSongIds.contains(songId)) {
+                    merged.add(songId);
+                }
+            }
+            return new ArrayList<>(merged);
+        }
+
+        // the current order, without the songs removed by the update, with the songs it added
+        List<Long> merged = new ArrayList<>();
+        for (Long songId : currentSongIds) {
+            if (mine.contains(songId) || !baseSongIds.contains(songId)) {
+                merged.add(songId);
+            }
+        }
+        Long previous = null;
+        for (Long songId : songIds) {
+            if (!current.contains(songId) && !baseSongIds.contains(songId)) {
+                merged.add(previous == null ? 0 : merged.indexOf(previous) + 1, songId);
+            }
+            if (merged.contains(songId)) {
+                previous = songId;
+            }
+        }
+        return merged;
+    }
+
+    private static String merge(String field, String base, String current, String value) {
+        if (Objects.equals(value, base) || Objects.equals(value, current)) {
+            return current;
+        }
+        if (Objects.equals(current, base)) {
+            return value;
+        }
+        throw new ConflictException("The " + field + " of the playlist was changed concurrently");
+    }
+}
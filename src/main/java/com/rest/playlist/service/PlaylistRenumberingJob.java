@@ -0,0 +1,93 @@
+package com.rest.playlist.service;
+
+import com.rest.playlist.enums.SongStorage;
+import com.rest.playlist.model.Playlist;
+import com.rest.playlist.repository.PlaylistChange;
+import com.rest.playlist.repository.PlaylistChangeJdbcRepository;
+import com.rest.playlist.repository.PlaylistMemberJdbcRepository;
+import com.rest.playlist.repository.PlaylistRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * PlaylistRenumberingJob class spreads the positions of crowded playlists again in the background,
+ * before moves run out of room between two neighbours and have to renumber the playlist themselves.
+ * <p>
+ * A renumbering is a write of the playlist like any other : it logs a change under the version it read
+ * and moves the version, in its own transaction. A move that read its neighbours under the old numbering
+ * then loses the optimistic lock race and is replayed on the new one (and the other way round),
+ * so the two never interleave.
+ */
+
+@Component
+public class PlaylistRenumberingJob {
+    private static final Logger log = LoggerFactory.getLogger(PlaylistRenumberingJob.class);
+
+    private final PlaylistRepository playlistRepository;
+    private final PlaylistMemberJdbcRepository playlistMemberJdbcRepository;
+    private final PlaylistChangeJdbcRepository playlistChangeJdbcRepository;
+    private final OptimisticLockRetry optimisticLockRetry;
+    private final Set<Long> pendingPlaylistIds = ConcurrentHashMap.newKeySet();
+
+    public PlaylistRenumberingJob(PlaylistRepository playlistRepository,
+                                  PlaylistMemberJdbcRepository playlistMemberJdbcRepository,
+                                  PlaylistChangeJdbcRepository playlistChangeJdbcRepository,
+                                  OptimisticLockRetry optimisticLockRetry) {
+        this.playlistRepository = playlistRepository;
+        this.playlistMemberJdbcRepository = playlistMemberJdbcRepository;
+        this.playlistChangeJdbcRepository = playlistChangeJdbcRepository;
+        this.optimisticLockRetry = optimisticLockRetry;
+    }
+
+    /**
+     * queues the playlist once the current transaction commits (right away when none is active)
+     */
+    public void schedule(long playlistId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendingPlaylistIds.add(playlistId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                pendingPlaylistIds.add(playlistId);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${playlist.renumbering.delay-ms:60000}")
+    public void renumberPending() {
+        for (Long playlistId : pendingPlaylistIds) {
+            pendingPlaylistIds.remove(playlistId);
+            try {
+                optimisticLockRetry.executeWithoutResult(() -> renumber(playlistId));
+            } catch (RuntimeException e) {
+                // moves keep working without it : the next crowded move queues the playlist again
+                log.warn("Renumbering of playlist {} failed", playlistId, e);
+            }
+        }
+    }
+
+    /**
+     * a playlist deleted or packed since it was queued has no positions left to spread
+     */
+    private void renumber(long playlistId) {
+        Playlist playlist = playlistRepository.findById(playlistId).orElse(null);
+        if (playlist == null || playlist.getSongStorage() == SongStorage.PACKED) {
+            return;
+        }
+        playlistMemberJdbcRepository.renumber(playlistId);
+        // as the writes of PlaylistServiceImpl : the change is logged, then the flush moves the version
+        playlistChangeJdbcRepository.insertChange(playlistId, playlist.getVersion(), PlaylistChange.unchanged());
+        playlist.setUpdatedAt(Instant.now());
+        playlistRepository.flush();
+    }
+}
@@ -1,15 +1,53 @@
 package com.rest.playlist.service;
 
+import com.rest.playlist.dto.ResourceVersion;
+import com.rest.playlist.dto.Suggestion;
+import com.rest.playlist.enums.SetOperation;
+import com.rest.playlist.enums.SongStorage;
+import com.rest.playlist.web.exception.BadRequestException;
+import com.rest.playlist.web.exception.ConflictException;
+import com.rest.playlist.web.exception.PreconditionFailedException;
 import com.rest.playlist.web.exception.ResourceNotFoundException;
 import com.rest.playlist.model.Playlist;
 import com.rest.playlist.model.Song;
+import com.rest.playlist.pagination.Cursor;
+import com.rest.playlist.pagination.CursorPage;
+import com.rest.playlist.projection.PlaylistField;
+import com.rest.playlist.projection.ProjectedField;
+import com.rest.playlist.projection.Projection;
+import com.rest.playlist.projection.SongField;
+import com.rest.playlist.repository.PlaylistChange;
+import com.rest.playlist.repository.PackedSongIdsJdbcRepository;
+import com.rest.playlist.repository.PlaylistChangeJdbcRepository;
+import com.rest.playlist.repository.PlaylistJdbcRepository;
+import com.rest.playlist.repository.PlaylistJdbcRepository.PositionedSong;
+import com.rest.playlist.repository.PlaylistMemberJdbcRepository;
 import com.rest.playlist.repository.PlaylistRepository;
+import com.rest.playlist.repository.ProjectionJdbcRepository;
+import com.rest.playlist.search.PlaylistSearchIndex;
+import com.rest.playlist.search.PrefixIndex;
+import com.rest.playlist.search.TrigramIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -17,12 +55,46 @@ import java.util.stream.Collectors;
 public class PlaylistServiceImpl implements IPlaylistService {
     private static final Logger log = LoggerFactory.getLogger(PlaylistServiceImpl.class);
 
+    /**
+     * a move leaving less room than this next to the moved song queues the playlist for renumbering
+     */
+    static final long MIN_POSITION_GAP = 16;
+
+    /**
+     * the only association a listing can expand, its fields are picked with the "songs." prefix, eg : "songs.title"
+     */
+    static final String SONGS = "songs";
+
     private final PlaylistRepository playlistRepository;
+    private final PlaylistJdbcRepository playlistJdbcRepository;
+    private final PlaylistMemberJdbcRepository playlistMemberJdbcRepository;
+    private final PackedSongIdsJdbcRepository packedSongIdsJdbcRepository;
+    private final PlaylistChangeJdbcRepository playlistChangeJdbcRepository;
+    private final ProjectionJdbcRepository projectionJdbcRepository;
     private final ISongService songService;
+    private final PlaylistBulkExporter playlistBulkExporter;
+    private final PlaylistSearchIndex playlistSearchIndex;
+    private final PlaylistRenumberingJob playlistRenumberingJob;
+    private final OptimisticLockRetry optimisticLockRetry;
 
-    public PlaylistServiceImpl(PlaylistRepository playlistRepository, ISongService songService) {
+    public PlaylistServiceImpl(PlaylistRepository playlistRepository, PlaylistJdbcRepository playlistJdbcRepository,
+                               PlaylistMemberJdbcRepository playlistMemberJdbcRepository,
+                               PackedSongIdsJdbcRepository packedSongIdsJdbcRepository,
+                               PlaylistChangeJdbcRepository playlistChangeJdbcRepository,
+                               ProjectionJdbcRepository projectionJdbcRepository, ISongService songService,
+                               PlaylistBulkExporter playlistBulkExporter, PlaylistSearchIndex playlistSearchIndex,
+                               PlaylistRenumberingJob playlistRenumberingJob, OptimisticLockRetry optimisticLockRetry) {
         this.playlistRepository = playlistRepository;
+        this.playlistJdbcRepository = playlistJdbcRepository;
+        this.playlistMemberJdbcRepository = playlistMemberJdbcRepository;
+        this.packedSongIdsJdbcRepository = packedSongIdsJdbcRepository;
+        this.playlistChangeJdbcRepository = playlistChangeJdbcRepository;
+        this.projectionJdbcRepository = projectionJdbcRepository;
         this.songService = songService;
+        this.playlistBulkExporter = playlistBulkExporter;
+        this.playlistSearchIndex = playlistSearchIndex;
+        this.playlistRenumberingJob = playlistRenumberingJob;
+        this.optimisticLockRetry = optimisticLockRetry;
     }
 
     @Override
@@ -31,48 +103,286 @@ public class PlaylistServiceImpl implements IPlaylistService {
         return playlistRepository.findAll();
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<Playlist> getAllPlaylists(String cursor, int limit, String sort) {
+        Cursor position = Cursor.resolve(cursor, sort);
+        Pageable window = Cursor.window(limit);
+
+        List<Playlist> playlists;
+        if (position.getOrder() == Cursor.Order.CREATED_AT) {
+            playlists = position.isFirst()
+                    ? playlistRepository.findAllByOrderByCreateAtAscIdAsc(window)
+                    : playlistRepository.findPlaylistsCreatedAfter(position.getCreatedAt(), position.getId(), window);
+        } else {
+            playlists = position.isFirst()
+                    ? playlistRepository.findAllByOrderByIdAsc(window)
+                    : playlistRepository.findByIdGreaterThanOrderByIdAsc(position.getId(), window);
+        }
+        return CursorPage.of(playlists, limit,
+                playlist -> Cursor.after(position.getOrder(), playlist.getCreateAt(), playlist.getId()));
+    }
+
+    /**
+     * the page is read with the columns of the requested fields only, eg : "title" or "title,songs.title" :
+     * no Playlist entity is built. With expand=songs the songs of the whole page are added from one ordered join
+     * (songs_playlist rows) and one IN query (packed ids), with the columns of their "songs." fields only.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<Projection> getAllPlaylists(String cursor, int limit, String sort, String fields, String expand) {
+        boolean withSongs = parseExpand(expand);
+        List<String> playlistParams = new ArrayList<>();
+        List<String> songParams = new ArrayList<>();
+        if (fields != null) {
+            for (String param : fields.split(",")) {
+                String field = param.trim();
+                if (field.startsWith(SONGS + ".")) {
+                    songParams.add(field.substring(SONGS.length() + 1));
+                } else {
+                    playlistParams.add(field);
+                }
+            }
+        }
+        if (!songParams.isEmpty() && !withSongs) {
+            throw new BadRequestException("Fields of songs need expand=" + SONGS);
+        }
+        EnumSet<PlaylistField> playlistFields = fields == null
+                ? EnumSet.allOf(PlaylistField.class) : ProjectedField.parse(playlistParams, PlaylistField.class);
+        EnumSet<SongField> songFields = songParams.isEmpty()
+                ? EnumSet.allOf(SongField.class) : ProjectedField.parse(songParams, SongField.class);
+
+        Cursor position = Cursor.resolve(cursor, sort);
+        int window = Cursor.window(limit).getPageSize();
+        CursorPage<Projection> page = CursorPage.of(projectionJdbcRepository.findPlaylists(playlistFields, position, window),
+                limit, Projection::getAfter);
+        if (withSongs) {
+            addSongs(page.getContent(), songFields);
+        }
+        return page;
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<Playlist> getPlaylistsByTitle(String title) {
-        return playlistRepository.findPlaylistsByTitleContaining(title);
+        if (!TrigramIndex.isSearchable(title)) {
+            return playlistRepository.findPlaylistsByTitleContaining(title);
+        }
+        // the index may still hold a value replaced by a concurrent write : matches are checked again
+        return findPlaylistsByIds(playlistSearchIndex.findIdsByTitle(title)).stream()
+                .filter(playlist -> playlist.getTitle().contains(title))
+                .sorted(Comparator.comparing(Playlist::getId))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * answered from memory only : no transaction, no connection
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<Suggestion> suggestPlaylists(String prefix, int limit) {
+        if (limit < 1 || limit > PrefixIndex.MAX_COMPLETIONS) {
+            throw new BadRequestException("limit must be between 1 and " + PrefixIndex.MAX_COMPLETIONS);
+        }
+        return playlistSearchIndex.suggest(prefix, limit);
     }
 
 
     @Override
     @Transactional(readOnly = true)
     public Playlist getPlaylistById(Long id) {
+        Playlist playlist = playlistRepository.findWithSongsById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Not found playlist with id = " + id));
+        if (playlist.getSongStorage() == SongStorage.PACKED) {
+            return withPackedSongs(playlist);
+        }
+        return playlist;
+    }
+
+    /**
+     * without songs the playlist row alone is read : its songs collection stays unloaded
+     * and is left out of the response
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Playlist getPlaylistById(Long id, boolean includeSongs) {
+        if (includeSongs) {
+            return getPlaylistById(id);
+        }
         return playlistRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Not found playlist with id = " + id));
     }
 
+    /**
+     * the validator of GET /api/playlists/{id}, read without loading the playlist nor its songs
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public ResourceVersion getPlaylistVersion(Long id, boolean includeSongs) {
+        return playlistJdbcRepository.findVersion(id, includeSongs)
+                .orElseThrow(() -> new ResourceNotFoundException("Not found playlist with id = " + id));
+    }
+
+    /**
+     * one page of the playlist's songs in playlist order, read from songs_playlist by keyset :
+     * only the rows of the page are loaded, whatever the playlist size.
+     * In PACKED storage the position of the cursor is the index of the song in the packed ids.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<Song> getPlaylistSongs(Long id, String cursor, int limit) {
+        Cursor position = Cursor.resolve(cursor, Cursor.Order.POSITION);
+        int window = Cursor.window(limit).getPageSize();
+        if (findPlaylist(id).getSongStorage() == SongStorage.PACKED) {
+            return getPackedSongs(id, position, limit, playlistJdbcRepository::findSongsByIds);
+        }
+
+        List<PositionedSong> songs = playlistJdbcRepository.findSongs(id, position.getPosition(), position.getId(), window);
+        CursorPage<PositionedSong> page = CursorPage.of(songs, limit,
+                song -> Cursor.afterPosition(song.getPosition(), song.getSong().getId()));
+        return new CursorPage<>(page.getContent().stream().map(PositionedSong::getSong).collect(Collectors.toList()),
+                page.getNextCursor());
+    }
+
+    /**
+     * the same pages as {@link #getPlaylistSongs(Long, String, int)}, read with the columns of the requested fields only
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<Projection> getPlaylistSongs(Long id, String cursor, int limit, String fields) {
+        EnumSet<SongField> songFields = ProjectedField.parse(fields, SongField.class);
+        Cursor position = Cursor.resolve(cursor, Cursor.Order.POSITION);
+        int window = Cursor.window(limit).getPageSize();
+        if (findPlaylist(id).getSongStorage() == SongStorage.PACKED) {
+            return getPackedSongs(id, position, limit, songIds -> projectionJdbcRepository.findSongsByIds(songFields, songIds));
+        }
+        List<Projection> songs = projectionJdbcRepository.findPlaylistSongs(id, songFields, position.getPosition(),
+                position.getId(), window);
+        return CursorPage.of(songs, limit, Projection::getAfter);
+    }
+
     @Override
     public Playlist createPlaylist(Playlist playlist) {
         if(!playlist.getSongs().isEmpty()){
-            List<Song> songs = playlist.getSongs()
-                    .stream()
-                    .map(song -> songService.getSongById(song.getId()))
-                    .collect(Collectors.toList());
-            playlist.setSongs(songs);
+            playlist.setSongs(resolveSongs(playlist.getSongs()));
         }
         return playlistRepository.save(playlist);
     }
 
+    /**
+     * a new playlist with the title, the description, the storage and the songs of the playlist :
+     * its songs_playlist rows (or its packed row) are copied by the database, no song is read
+     */
     @Override
-    public Playlist updatePlaylist(Playlist playlist) {
+    public Playlist copyPlaylist(Long id) {
+        Playlist source = findPlaylist(id);
+        Playlist copy = newPlaylist(source.getTitle(), source.getDescription(), source.getSongStorage());
+        if (source.getSongStorage() == SongStorage.PACKED) {
+            packedSongIdsJdbcRepository.copyPackedSongIds(id, copy.getId());
+        } else {
+            playlistMemberJdbcRepository.copyMembers(id, copy.getId());
+        }
+        log.info("Playlist {} copied to playlist {}", id, copy.getId());
+        return copy;
+    }
 
-        Playlist searchedPlaylist = playlistRepository.findById(playlist.getId())
-                .orElseThrow(() -> new ResourceNotFoundException("Not found playlist with id = " + playlist.getId()));
+    /**
+     * a new playlist with the union, the intersection or the difference of the songs of the playlists,
+     * in the order of the first one (then of the next ones for a union). Songs_playlist rows are combined by
+     * the database in one INSERT ... SELECT ; once a playlist is packed its ids are read in one go anyway,
+     * so they are combined in memory on bitmaps of song ids (see PlaylistCombination).
+     * The new playlist is in ROWS storage, its songs are left out of the response.
+     */
+    @Override
+    public Playlist combinePlaylists(String operation, List<Long> ids) {
+        SetOperation setOperation = parseSetOperation(operation);
+        List<Long> distinctIds = ids.stream().distinct().collect(Collectors.toList());
+        if (distinctIds.size() < 2 || distinctIds.size() > SongServiceImpl.MAX_IN_LIST) {
+            throw new BadRequestException("ids must hold between 2 and " + SongServiceImpl.MAX_IN_LIST + " playlist ids");
+        }
+        Map<Long, Playlist> playlistsById = playlistRepository.findAllById(distinctIds).stream()
+                .collect(Collectors.toMap(Playlist::getId, Function.identity()));
+        List<Long> missingIds = distinctIds.stream()
+                .filter(id -> !playlistsById.containsKey(id))
+                .collect(Collectors.toList());
+        if (!missingIds.isEmpty()) {
+            throw new ResourceNotFoundException("Not found playlists with ids = " + missingIds);
+        }
 
-        searchedPlaylist.setTitle(playlist.getTitle());
-        searchedPlaylist.setDescription(playlist.getDescription());
-        if(!playlist.getSongs().isEmpty()){
-            List<Song> songs = playlist.getSongs()
+        Playlist first = playlistsById.get(distinctIds.get(0));
+        Playlist combination = newPlaylist(first.getTitle(),
+                setOperation.name().toLowerCase() + " of " + distinctIds.size() + " playlists", SongStorage.ROWS);
+        boolean packed = playlistsById.values().stream()
+                .anyMatch(playlist -> playlist.getSongStorage() == SongStorage.PACKED);
+        if (!packed) {
+            playlistMemberJdbcRepository.insertCombination(combination.getId(), setOperation, distinctIds);
+        } else {
+            List<List<Long>> songIds = distinctIds.stream()
+                    .map(id -> playlistsById.get(id).getSongStorage() == SongStorage.PACKED
+                            ? packedSongIdsJdbcRepository.findPackedSongIds(id)
+                            : playlistMemberJdbcRepository.findMemberSongIdsInOrder(id))
+                    .collect(Collectors.toList());
+            // ids of songs deleted since they were packed are dropped
+            List<Long> existingIds = playlistJdbcRepository.findSongsByIds(PlaylistCombination.combine(setOperation, songIds))
                     .stream()
-                    .map(song -> songService.getSongById(song.getId()))
+                    .map(Song::getId)
                     .collect(Collectors.toList());
-            searchedPlaylist.setSongs(songs);
+            if (!existingIds.isEmpty()) {
+                playlistMemberJdbcRepository.addMembers(combination.getId(), existingIds);
+            }
         }
-        return playlistRepository.saveAndFlush(playlist);
+        log.info("Playlists {} combined by {} into playlist {}", distinctIds, setOperation, combination.getId());
+        return combination;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Playlist updatePlaylist(Playlist playlist) {
+        return updatePlaylist(playlist, null);
+    }
+
+    /**
+     * the title, the description and the songs of the body replace the playlist's (no songs keeps them).
+     * An update based on an older version is merged with the changes made since (see PlaylistMerge),
+     * a concurrent write committed meanwhile replays it on the newer version.
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Playlist updatePlaylist(Playlist playlist, Long baseVersion) {
+        List<Long> requestedIds = playlist.getSongs() == null ? Collections.emptyList()
+                : playlist.getSongs().stream().map(Song::getId).distinct().collect(Collectors.toList());
+        return optimisticLockRetry.execute(() -> {
+            Playlist searchedPlaylist = findPlaylist(playlist.getId());
+            boolean packed = searchedPlaylist.getSongStorage() == SongStorage.PACKED;
+            List<Long> currentIds = packed
+                    ? packedSongIdsJdbcRepository.findPackedSongIds(playlist.getId())
+                    : playlistMemberJdbcRepository.findMemberSongIdsInOrder(playlist.getId());
+
+            List<Long> songIds = requestedIds.isEmpty() ? currentIds : requestedIds;
+            String title = playlist.getTitle();
+            String description = playlist.getDescription();
+            if (baseVersion != null && baseVersion != searchedPlaylist.getVersion()) {
+                PlaylistMerge merge = mergeSince(searchedPlaylist, baseVersion, currentIds);
+                songIds = merge.mergeSongIds(songIds);
+                title = merge.mergeTitle(title);
+                description = merge.mergeDescription(description);
+            }
+            boolean songsChanged = !songIds.equals(currentIds);
+            // reports every unknown song at once
+            List<Song> songs = songsChanged ? songService.getSongsByIds(songIds) : null;
+
+            PlaylistChange change = PlaylistChange.between(currentIds, searchedPlaylist.getTitle(),
+                    searchedPlaylist.getDescription(), songIds, title, description);
+            searchedPlaylist.setTitle(title);
+            searchedPlaylist.setDescription(description);
+            if (packed && songsChanged) {
+                packedSongIdsJdbcRepository.savePackedSongIds(playlist.getId(), songIds);
+            } else if (songsChanged) {
+                searchedPlaylist.setSongs(songs);
+            }
+            recordChange(searchedPlaylist, change);
+            return packed ? withPackedSongs(searchedPlaylist) : searchedPlaylist;
+        });
     }
 
     @Override
@@ -80,6 +390,348 @@ public class PlaylistServiceImpl implements IPlaylistService {
         playlistRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Not found playlist with id = " + id));
 
+        packedSongIdsJdbcRepository.deletePackedSongIds(id);
+        playlistChangeJdbcRepository.deleteChanges(id);
         playlistRepository.deleteById(id);
     }
+
+    /**
+     * inserts only the songs_playlist rows of the songs not yet in the playlist :
+     * the playlist's other rows are neither read nor rewritten.
+     * In PACKED storage the single row of the playlist is rewritten.
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void addSongs(Long id, List<Long> songIds) {
+        List<Long> distinctIds = distinctSongIds(songIds);
+        optimisticLockRetry.executeWithoutResult(() -> {
+            Playlist playlist = findPlaylist(id);
+            // reports every unknown song at once
+            songService.getSongsByIds(distinctIds);
+
+            if (playlist.getSongStorage() == SongStorage.PACKED) {
+                List<Long> packedIds = packedSongIdsJdbcRepository.findPackedSongIds(id);
+                Set<Long> memberIds = new HashSet<>(packedIds);
+                List<Long> newIds = distinctIds.stream().filter(memberIds::add).collect(Collectors.toList());
+                if (!newIds.isEmpty()) {
+                    packedIds.addAll(newIds);
+                    recordChange(playlist, PlaylistChange.added(newIds));
+                    packedSongIdsJdbcRepository.savePackedSongIds(id, packedIds);
+                }
+                return;
+            }
+
+            Set<Long> memberIds = playlistMemberJdbcRepository.findMemberSongIds(id, distinctIds);
+            List<Long> newIds = distinctIds.stream()
+                    .filter(songId -> !memberIds.contains(songId))
+                    .collect(Collectors.toList());
+            if (!newIds.isEmpty()) {
+                recordChange(playlist, PlaylistChange.added(newIds));
+                playlistMemberJdbcRepository.addMembers(id, newIds);
+            }
+        });
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void removeSongs(Long id, List<Long> songIds) {
+        List<Long> distinctIds = distinctSongIds(songIds);
+        optimisticLockRetry.executeWithoutResult(() -> {
+            Playlist playlist = findPlaylist(id);
+            boolean packed = playlist.getSongStorage() == SongStorage.PACKED;
+
+            List<Long> packedIds = packed ? packedSongIdsJdbcRepository.findPackedSongIds(id) : null;
+            Set<Long> memberIds = packed ? new HashSet<>(packedIds) : playlistMemberJdbcRepository.findMemberSongIds(id, distinctIds);
+            List<Long> missingIds = distinctIds.stream()
+                    .filter(songId -> !memberIds.contains(songId))
+                    .collect(Collectors.toList());
+            if (!missingIds.isEmpty()) {
+                throw new ResourceNotFoundException("Not found songs with ids = " + missingIds + " in playlist with id = " + id);
+            }
+            recordChange(playlist, PlaylistChange.removed(distinctIds));
+            if (packed) {
+                packedIds.removeAll(new HashSet<>(distinctIds));
+                packedSongIdsJdbcRepository.savePackedSongIds(id, packedIds);
+                return;
+            }
+            playlistMemberJdbcRepository.removeMembers(id, distinctIds);
+        });
+    }
+
+    /**
+     * writes the moved song's row only : its new position is the middle of the gap between
+     * the song it follows and the next one. The playlist is renumbered on the spot only when
+     * that gap is already closed.
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void moveSong(Long id, Long songId, Long afterSongId) {
+        if (songId.equals(afterSongId)) {
+            throw new BadRequestException("A song cannot be moved after itself");
+        }
+        optimisticLockRetry.executeWithoutResult(() -> {
+            Playlist playlist = findPlaylist(id);
+            if (playlist.getSongStorage() == SongStorage.PACKED) {
+                movePackedSong(id, songId, afterSongId);
+            } else {
+                moveRowSong(id, songId, afterSongId);
+            }
+            recordChange(playlist, PlaylistChange.moved());
+        });
+    }
+
+    private void moveRowSong(Long id, Long songId, Long afterSongId) {
+        checkMember(id, songId);
+        Long lower = afterSongId == null ? null : checkMember(id, afterSongId);
+        Long upper = playlistMemberJdbcRepository.findNextPosition(id, lower, afterSongId, songId);
+
+        long position;
+        if (lower == null) {
+            position = upper == null ? PlaylistMemberJdbcRepository.POSITION_GAP : upper - PlaylistMemberJdbcRepository.POSITION_GAP;
+        } else if (upper == null) {
+            position = lower + PlaylistMemberJdbcRepository.POSITION_GAP;
+        } else if (upper - lower >= 2) {
+            position = lower + (upper - lower) / 2;
+        } else {
+            log.info("No room left after song {} in playlist {} : renumbering it", afterSongId, id);
+            playlistMemberJdbcRepository.renumber(id);
+            moveRowSong(id, songId, afterSongId);
+            return;
+        }
+        playlistMemberJdbcRepository.updatePosition(id, songId, position);
+
+        if (lower != null && upper != null && upper - lower < 2 * MIN_POSITION_GAP) {
+            playlistRenumberingJob.schedule(id);
+        }
+    }
+
+    /**
+     * moves the songs of the playlist to the other storage, keeping their order :
+     * ROWS to PACKED replaces the songs_playlist rows by one packed row, PACKED to ROWS the other way round
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void changeSongStorage(Long id, String storage) {
+        SongStorage target = parseSongStorage(storage);
+        optimisticLockRetry.executeWithoutResult(() -> changeSongStorage(findPlaylist(id), target));
+    }
+
+    private void changeSongStorage(Playlist playlist, SongStorage target) {
+        Long id = playlist.getId();
+        if (playlist.getSongStorage() == target) {
+            return;
+        }
+        PlaylistChange change = PlaylistChange.unchanged();
+        if (target == SongStorage.PACKED) {
+            packedSongIdsJdbcRepository.savePackedSongIds(id, playlistMemberJdbcRepository.findMemberSongIdsInOrder(id));
+            playlistMemberJdbcRepository.removeAllMembers(id);
+        } else {
+            List<Long> songIds = packedSongIdsJdbcRepository.findPackedSongIds(id);
+            packedSongIdsJdbcRepository.deletePackedSongIds(id);
+            // ids of songs deleted since the playlist was packed are dropped
+            List<Long> existingIds = playlistJdbcRepository.findSongsByIds(songIds).stream()
+                    .map(Song::getId)
+                    .collect(Collectors.toList());
+            if (!existingIds.isEmpty()) {
+                playlistMemberJdbcRepository.addMembers(id, existingIds);
+            }
+            if (existingIds.size() < songIds.size()) {
+                songIds.removeAll(new HashSet<>(existingIds));
+                change = PlaylistChange.removed(songIds);
+            }
+        }
+        log.info("Playlist {} moved to {} song storage", id, target);
+        playlist.setSongStorage(target);
+        recordChange(playlist, change);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long exportPlaylists(OutputStream out) throws IOException {
+        return playlistBulkExporter.exportPlaylists(out);
+    }
+
+    private Playlist findPlaylist(Long id) {
+        return playlistRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Not found playlist with id = " + id));
+    }
+
+    /**
+     * inserted at once : the songs of a copy or a combination reference its row
+     */
+    private Playlist newPlaylist(String title, String description, SongStorage songStorage) {
+        Playlist playlist = new Playlist();
+        playlist.setTitle(title);
+        playlist.setDescription(description);
+        playlist.setSongStorage(songStorage);
+        return playlistRepository.saveAndFlush(playlist);
+    }
+
+    /**
+     * one IN query per {@link SongServiceImpl#MAX_IN_LIST} ids : a hit list of the search index can be as long
+     * as the table. Unknown ids are skipped, playlists come in no particular order
+     */
+    private List<Playlist> findPlaylistsByIds(List<Long> ids) {
+        List<Playlist> playlists = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += SongServiceImpl.MAX_IN_LIST) {
+            playlists.addAll(playlistRepository.findAllById(
+                    ids.subList(from, Math.min(from + SongServiceImpl.MAX_IN_LIST, ids.size()))));
+        }
+        return playlists;
+    }
+
+    /**
+     * logs the change under the version it is applied to, then dirties and flushes the playlist :
+     * songs_playlist and packed writes bypass Hibernate, the flush moves the version, hence the ETag, with them.
+     * To be called once per write, once the playlist holds its new state.
+     */
+    private void recordChange(Playlist playlist, PlaylistChange change) {
+        playlistChangeJdbcRepository.insertChange(playlist.getId(), playlist.getVersion(), change);
+        playlist.setUpdatedAt(Instant.now());
+        playlistRepository.flush();
+    }
+
+    /**
+     * @param currentSongIds the songs of the playlist, in order
+     */
+    private PlaylistMerge mergeSince(Playlist playlist, long baseVersion, List<Long> currentSongIds) {
+        if (baseVersion > playlist.getVersion()) {
+            throw new PreconditionFailedException("Not found version " + baseVersion + " of playlist with id = " + playlist.getId());
+        }
+        List<PlaylistChange> changes = playlistChangeJdbcRepository.findChangesSince(playlist.getId(), baseVersion);
+        if (changes.size() != playlist.getVersion() - baseVersion) {
+            throw new ConflictException("Version " + baseVersion + " of playlist with id = " + playlist.getId() + " is too old to be merged");
+        }
+        return new PlaylistMerge(changes, currentSongIds, playlist.getTitle(), playlist.getDescription());
+    }
+
+    /**
+     * a detached copy holding the packed songs : the managed playlist keeps its empty songs collection
+     */
+    private Playlist withPackedSongs(Playlist playlist) {
+        Playlist copy = new Playlist();
+        copy.setId(playlist.getId());
+        copy.setTitle(playlist.getTitle());
+        copy.setDescription(playlist.getDescription());
+        copy.setCreateAt(playlist.getCreateAt());
+        copy.setUpdatedAt(playlist.getUpdatedAt());
+        copy.setSongStorage(playlist.getSongStorage());
+        copy.setVersion(playlist.getVersion());
+        copy.setSongs(playlistJdbcRepository.findSongsByIds(packedSongIdsJdbcRepository.findPackedSongIds(playlist.getId())));
+        return copy;
+    }
+
+    /**
+     * only the ids of the page are decoded, the rest of the packed array is skipped over
+     */
+    private <T> CursorPage<T> getPackedSongs(Long id, Cursor position, int limit,
+                                            Function<List<Long>, List<T>> findSongsByIds) {
+        int from = position.isFirst() ? 0 : (int) (position.getPosition() + 1);
+        List<Long> songIds = packedSongIdsJdbcRepository.findPackedSongIds(id, from, limit + 1);
+        if (songIds.size() <= limit) {
+            return new CursorPage<>(findSongsByIds.apply(songIds), null);
+        }
+        List<Long> pageIds = songIds.subList(0, limit);
+        String nextCursor = Cursor.afterPosition(from + limit - 1L, pageIds.get(limit - 1)).encode();
+        return new CursorPage<>(findSongsByIds.apply(pageIds), nextCursor);
+    }
+
+    /**
+     * adds its songs to every playlist of the page, in playlist order : the songs of packed playlists
+     * are read once for the whole page, ids of songs deleted since they were packed are skipped
+     */
+    private void addSongs(List<Projection> playlists, Set<SongField> songFields) {
+        List<Long> playlistIds = playlists.stream()
+                .map(playlist -> (Long) playlist.get(PlaylistField.ID.getParam()))
+                .collect(Collectors.toList());
+        Map<Long, List<Projection>> songsByPlaylist = projectionJdbcRepository.findSongsOfPlaylists(songFields, playlistIds);
+        Map<Long, List<Long>> packedSongIds = projectionJdbcRepository.findPackedSongIds(playlistIds.stream()
+                .filter(playlistId -> !songsByPlaylist.containsKey(playlistId))
+                .collect(Collectors.toList()));
+
+        Set<Long> distinctPackedIds = new LinkedHashSet<>();
+        packedSongIds.values().forEach(distinctPackedIds::addAll);
+        Map<Long, Projection> packedSongs = projectionJdbcRepository
+                .findSongsByIds(songFields, new ArrayList<>(distinctPackedIds)).stream()
+                .collect(Collectors.toMap(song -> (Long) song.get(SongField.ID.getParam()), Function.identity()));
+        packedSongIds.forEach((playlistId, songIds) -> songsByPlaylist.put(playlistId, songIds.stream()
+                .map(packedSongs::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList())));
+
+        for (int i = 0; i < playlists.size(); i++) {
+            playlists.get(i).put(SONGS, songsByPlaylist.getOrDefault(playlistIds.get(i), Collections.emptyList()));
+        }
+    }
+
+    private static boolean parseExpand(String expand) {
+        if (expand == null) {
+            return false;
+        }
+        if (!expand.trim().equals(SONGS)) {
+            throw new BadRequestException("Not supported expand with value = " + expand);
+        }
+        return true;
+    }
+
+    private void movePackedSong(Long id, Long songId, Long afterSongId) {
+        List<Long> songIds = packedSongIdsJdbcRepository.findPackedSongIds(id);
+        if (!songIds.remove(songId)) {
+            throw new ResourceNotFoundException("Not found song with id = " + songId + " in playlist with id = " + id);
+        }
+        int index = 0;
+        if (afterSongId != null) {
+            index = songIds.indexOf(afterSongId) + 1;
+            if (index == 0) {
+                throw new ResourceNotFoundException("Not found song with id = " + afterSongId + " in playlist with id = " + id);
+            }
+        }
+        songIds.add(index, songId);
+        packedSongIdsJdbcRepository.savePackedSongIds(id, songIds);
+    }
+
+    private static SongStorage parseSongStorage(String storage) {
+        for (SongStorage songStorage : SongStorage.values()) {
+            if (songStorage.name().equalsIgnoreCase(storage)) {
+                return songStorage;
+            }
+        }
+        throw new BadRequestException("Not supported storage with value = " + storage);
+    }
+
+    private static SetOperation parseSetOperation(String operation) {
+        for (SetOperation setOperation : SetOperation.values()) {
+            if (setOperation.name().equalsIgnoreCase(operation)) {
+                return setOperation;
+            }
+        }
+        throw new BadRequestException("Not supported op with value = " + operation);
+    }
+
+    /**
+     * @return the position of the song in the playlist
+     */
+    private Long checkMember(Long id, Long songId) {
+        Long position = playlistMemberJdbcRepository.findPosition(id, songId);
+        if (position == null) {
+            throw new ResourceNotFoundException("Not found song with id = " + songId + " in playlist with id = " + id);
+        }
+        return position;
+    }
+
+    private static List<Long> distinctSongIds(List<Long> songIds) {
+        if (songIds.isEmpty() || songIds.size() > SongServiceImpl.MAX_IN_LIST) {
+            throw new BadRequestException("songIds must hold between 1 and " + SongServiceImpl.MAX_IN_LIST + " ids");
+        }
+        return songIds.stream().distinct().collect(Collectors.toList());
+    }
+
+    /**
+     * the songs sent by the client only need to carry their id : they are all loaded in one go.
+     * A song belongs to a playlist once, at the place of its first occurrence.
+     */
+    private List<Song> resolveSongs(List<Song> songs) {
+        List<Long> ids = songs.stream().map(Song::getId).distinct().collect(Collectors.toList());
+        return songService.getSongsByIds(ids);
+    }
 }
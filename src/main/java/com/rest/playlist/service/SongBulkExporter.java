@@ -0,0 +1,49 @@
+package com.rest.playlist.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.repository.SongRepository;
+import com.rest.playlist.service.io.SongRecordWriter;
+import com.rest.playlist.service.io.TransferFormat;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * SongBulkExporter class writes the whole catalog from a forward-only cursor :
+ * each song is written then detached, so the persistence context never holds
+ * more than the row being written. Must run inside a read-only transaction.
+ */
+
+@Component
+public class SongBulkExporter {
+
+    private final SongRepository songRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    public SongBulkExporter(SongRepository songRepository, EntityManager entityManager, ObjectMapper objectMapper) {
+        this.songRepository = songRepository;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+    }
+
+    public long exportSongs(OutputStream out, TransferFormat format) throws IOException {
+        long exported = 0;
+        try (SongRecordWriter writer = SongRecordWriter.open(out, format, objectMapper);
+             Stream<Song> songs = songRepository.streamAllByOrderByIdAsc()) {
+            Iterator<Song> cursor = songs.iterator();
+            while (cursor.hasNext()) {
+                Song song = cursor.next();
+                writer.write(song);
+                entityManager.detach(song);
+                exported++;
+            }
+        }
+        return exported;
+    }
+}
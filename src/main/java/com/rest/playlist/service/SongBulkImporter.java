@@ -0,0 +1,108 @@
+package com.rest.playlist.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rest.playlist.dto.BulkImportReport;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.repository.SongJdbcRepository;
+import com.rest.playlist.search.SongSearchIndex;
+import com.rest.playlist.service.io.SongRecord;
+import com.rest.playlist.service.io.SongRecordReader;
+import com.rest.playlist.service.io.TransferFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * SongBulkImporter class validates the rows of an upload against the Song constraints
+ * and inserts the valid ones in fixed-size chunks, each chunk in its own transaction :
+ * at most one chunk of songs is held in memory, whatever the size of the upload.
+ * Inserts bypass the entity listeners : the search index is fed here, with the generated ids.
+ */
+
+@Component
+public class SongBulkImporter {
+    private static final Logger log = LoggerFactory.getLogger(SongBulkImporter.class);
+
+    private final SongJdbcRepository songJdbcRepository;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final SongSearchIndex songSearchIndex;
+    private final int chunkSize;
+
+    public SongBulkImporter(SongJdbcRepository songJdbcRepository,
+                            Validator validator,
+                            ObjectMapper objectMapper,
+                            TransactionTemplate transactionTemplate,
+                            SongSearchIndex songSearchIndex,
+                            @Value("${playlist.bulk.chunk-size:500}") int chunkSize) {
+        this.songJdbcRepository = songJdbcRepository;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.songSearchIndex = songSearchIndex;
+        this.chunkSize = chunkSize;
+    }
+
+    public BulkImportReport importSongs(InputStream in, TransferFormat format) throws IOException {
+        try (SongRecordReader reader = SongRecordReader.open(in, format, objectMapper)) {
+            return importSongs(reader);
+        }
+    }
+
+    BulkImportReport importSongs(SongRecordReader reader) throws IOException {
+        BulkImportReport report = new BulkImportReport();
+        List<Song> chunk = new ArrayList<>(chunkSize);
+
+        for (SongRecord record = reader.next(); record != null; record = reader.next()) {
+            report.received();
+            if (record.isRejected()) {
+                report.rejected(record.getLine(), record.getError());
+                continue;
+            }
+            Set<ConstraintViolation<Song>> violations = validator.validate(record.getSong());
+            if (!violations.isEmpty()) {
+                report.rejected(record.getLine(), describe(violations));
+                continue;
+            }
+            chunk.add(record.getSong());
+            if (chunk.size() == chunkSize) {
+                write(chunk, report);
+            }
+        }
+        write(chunk, report);
+
+        log.info("bulk import : {} received, {} imported, {} rejected",
+                report.getReceived(), report.getImported(), report.getRejected());
+        return report;
+    }
+
+    private void write(List<Song> chunk, BulkImportReport report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> songJdbcRepository.insertAll(chunk).forEach(songSearchIndex::saved));
+        report.imported(chunk.size());
+        chunk.clear();
+    }
+
+    private static String describe(Set<ConstraintViolation<Song>> violations) {
+        return violations.stream()
+                .sorted(Comparator.comparing(v -> v.getPropertyPath().toString()))
+                .map(v -> v.getConstraintDescriptor().getAnnotation().annotationType().getSimpleName()
+                        + ": " + v.getMessage())
+                .reduce((a, b) -> a + ", " + b)
+                .orElse("");
+    }
+}
@@ -1,27 +1,107 @@
 package com.rest.playlist.service;
 
+import com.rest.playlist.dto.BulkImportReport;
+import com.rest.playlist.dto.ResourceVersion;
+import com.rest.playlist.dto.SongSearchResult;
+import com.rest.playlist.dto.Suggestion;
 import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.web.exception.BadRequestException;
+import com.rest.playlist.web.exception.PreconditionFailedException;
 import com.rest.playlist.web.exception.ResourceNotFoundException;
+import com.rest.playlist.model.Playlist;
 import com.rest.playlist.model.Song;
+import com.rest.playlist.pagination.Cursor;
+import com.rest.playlist.pagination.CursorPage;
+import com.rest.playlist.projection.ProjectedField;
+import com.rest.playlist.projection.Projection;
+import com.rest.playlist.projection.SongField;
+import com.rest.playlist.repository.PackedSongIdsJdbcRepository;
+import com.rest.playlist.repository.PlaylistChangeJdbcRepository;
+import com.rest.playlist.repository.PlaylistMemberJdbcRepository;
+import com.rest.playlist.repository.PlaylistRepository;
+import com.rest.playlist.repository.ProjectionJdbcRepository;
+import com.rest.playlist.repository.SongJdbcRepository;
 import com.rest.playlist.repository.SongRepository;
+import com.rest.playlist.search.BitmapIndex;
+import com.rest.playlist.search.BkTreeIndex;
+import com.rest.playlist.search.PrefixIndex;
+import com.rest.playlist.search.SongSearchIndex;
+import com.rest.playlist.search.TrigramIndex;
+import com.rest.playlist.service.io.TransferFormat;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
 import org.springframework.stereotype.Service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.commons.lang3.EnumUtils;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @Transactional
 public class SongServiceImpl implements ISongService {
     private static final Logger log = LoggerFactory.getLogger(SongServiceImpl.class);
 
+    private static final int TOP_ARTISTS = 10;
+
+    /**
+     * ids bound per IN list : keeps statements under the driver and database parameter limits
+     */
+    static final int MAX_IN_LIST = 1000;
+
     private final SongRepository songRepository;
+    private final SongJdbcRepository songJdbcRepository;
+    private final PlaylistRepository playlistRepository;
+    private final PlaylistMemberJdbcRepository playlistMemberJdbcRepository;
+    private final PackedSongIdsJdbcRepository packedSongIdsJdbcRepository;
+    private final PlaylistChangeJdbcRepository playlistChangeJdbcRepository;
+    private final ProjectionJdbcRepository projectionJdbcRepository;
+    private final SongBulkImporter songBulkImporter;
+    private final SongBulkExporter songBulkExporter;
+    private final SongSearchIndex songSearchIndex;
+    private final OptimisticLockRetry optimisticLockRetry;
+    private final EntityManager entityManager;
 
-    public SongServiceImpl(SongRepository songRepository) {
+    public SongServiceImpl(SongRepository songRepository, SongJdbcRepository songJdbcRepository,
+                           PlaylistRepository playlistRepository, PlaylistMemberJdbcRepository playlistMemberJdbcRepository,
+                           PackedSongIdsJdbcRepository packedSongIdsJdbcRepository,
+                           PlaylistChangeJdbcRepository playlistChangeJdbcRepository,
+                           ProjectionJdbcRepository projectionJdbcRepository,
+                           SongBulkImporter songBulkImporter, SongBulkExporter songBulkExporter,
+                           SongSearchIndex songSearchIndex, OptimisticLockRetry optimisticLockRetry,
+                           EntityManager entityManager) {
         this.songRepository = songRepository;
+        this.songJdbcRepository = songJdbcRepository;
+        this.playlistRepository = playlistRepository;
+        this.playlistMemberJdbcRepository = playlistMemberJdbcRepository;
+        this.packedSongIdsJdbcRepository = packedSongIdsJdbcRepository;
+        this.playlistChangeJdbcRepository = playlistChangeJdbcRepository;
+        this.projectionJdbcRepository = projectionJdbcRepository;
+        this.songBulkImporter = songBulkImporter;
+        this.songBulkExporter = songBulkExporter;
+        this.songSearchIndex = songSearchIndex;
+        this.optimisticLockRetry = optimisticLockRetry;
+        this.entityManager = entityManager;
     }
 
     @Override
@@ -30,6 +110,38 @@ public class SongServiceImpl implements ISongService {
         return songRepository.findAll();
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<Song> getAllSongs(String cursor, int limit, String sort) {
+        Cursor position = Cursor.resolve(cursor, sort);
+        Pageable window = Cursor.window(limit);
+
+        List<Song> songs;
+        if (position.getOrder() == Cursor.Order.CREATED_AT) {
+            songs = position.isFirst()
+                    ? songRepository.findAllByOrderByCreateAtAscIdAsc(window)
+                    : songRepository.findSongsCreatedAfter(position.getCreatedAt(), position.getId(), window);
+        } else {
+            songs = position.isFirst()
+                    ? songRepository.findAllByOrderByIdAsc(window)
+                    : songRepository.findByIdGreaterThanOrderByIdAsc(position.getId(), window);
+        }
+        return CursorPage.of(songs, limit, song -> Cursor.after(position.getOrder(), song.getCreateAt(), song.getId()));
+    }
+
+    /**
+     * the page is read with the columns of the requested fields only, eg : "title,artistName" :
+     * no Song entity is built and the audit columns are neither read nor written out
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<Projection> getAllSongs(String cursor, int limit, String sort, String fields) {
+        EnumSet<SongField> songFields = ProjectedField.parse(fields, SongField.class);
+        Cursor position = Cursor.resolve(cursor, sort);
+        int window = Cursor.window(limit).getPageSize();
+        return CursorPage.of(projectionJdbcRepository.findSongs(songFields, position, window), limit, Projection::getAfter);
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<Song> getSongsByCategory(String category) {
@@ -43,7 +155,101 @@ public class SongServiceImpl implements ISongService {
     @Override
     @Transactional(readOnly = true)
     public List<Song> getSongsByArtistName(String artistName) {
-        return songRepository.findSongsByArtistNameContaining(artistName);
+        if (!TrigramIndex.isSearchable(artistName)) {
+            return songRepository.findSongsByArtistNameContaining(artistName);
+        }
+        // the index may still hold a value replaced by a concurrent write : matches are checked again
+        return findSongsByIds(songSearchIndex.findIdsByArtistName(artistName)).stream()
+                .filter(song -> song.getArtistName().contains(artistName))
+                .sorted(Comparator.comparing(Song::getId))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * songs of the artists within maxDistance edits of the given name, closest then most prolific artists first
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<Song> getSongsByArtistName(String artistName, int maxDistance) {
+        if (maxDistance < 0 || maxDistance > BkTreeIndex.MAX_DISTANCE) {
+            throw new BadRequestException("fuzzy must be between 0 and " + BkTreeIndex.MAX_DISTANCE);
+        }
+        List<BkTreeIndex.Match> matches = songSearchIndex.findArtistNames(artistName, maxDistance);
+        List<Long> ids = matches.stream()
+                .flatMap(match -> match.getIds().stream())
+                .collect(Collectors.toList());
+        Map<Long, Song> songs = findSongsByIds(ids).stream()
+                .collect(Collectors.toMap(Song::getId, Function.identity()));
+
+        // the index may still hold a value replaced by a concurrent write : matches are checked again
+        return matches.stream()
+                .flatMap(match -> match.getIds().stream()
+                        .map(songs::get)
+                        .filter(song -> song != null && song.getArtistName().equals(match.getValue())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * filters and facet counts are answered by the index bitmaps, only the songs of the page are read
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public SongSearchResult searchSongs(String category, String artistName, String title, String cursor, int limit) {
+        SongCategory searchedCategory = null;
+        if (category != null) {
+            searchedCategory = EnumUtils.getEnumIgnoreCase(SongCategory.class, category);
+            if (searchedCategory == null) {
+                throw new BadRequestException("Not supported category with value = " + category);
+            }
+        }
+        if (title != null && !TrigramIndex.isSearchable(title)) {
+            throw new BadRequestException("title must hold at least " + TrigramIndex.GRAM_LENGTH + " characters");
+        }
+        Cursor position = Cursor.resolve(cursor, Cursor.Order.ID.getParam());
+        int window = Cursor.window(limit).getPageSize();
+
+        RoaringBitmap matching = songSearchIndex.match(searchedCategory, artistName, title);
+        List<Long> ids = new ArrayList<>(window);
+        PeekableIntIterator iterator = matching.getIntIterator();
+        if (!position.isFirst()) {
+            if (!BitmapIndex.holds(position.getId())) {
+                throw new BadRequestException("Invalid cursor with value = " + cursor);
+            }
+            // read as unsigned : after Integer.MAX_VALUE comes 2^31, above every id held
+            iterator.advanceIfNeeded((int) (position.getId() + 1));
+        }
+        while (iterator.hasNext() && ids.size() < window) {
+            ids.add((long) iterator.next());
+        }
+        boolean hasNext = ids.size() == window;
+        List<Long> pageIds = hasNext ? ids.subList(0, limit) : ids;
+
+        SongCategory categoryFilter = searchedCategory;
+        // the index may still hold a value replaced by a concurrent write : matches are checked again
+        List<Song> songs = songRepository.findAllById(pageIds).stream()
+                .filter(song -> categoryFilter == null || song.getCategory() == categoryFilter)
+                .filter(song -> artistName == null || song.getArtistName().equals(artistName))
+                .filter(song -> title == null || song.getTitle().contains(title))
+                .sorted(Comparator.comparing(Song::getId))
+                .collect(Collectors.toList());
+        String nextCursor = hasNext ? Cursor.after(Cursor.Order.ID, null, pageIds.get(limit - 1)).encode() : null;
+
+        return new SongSearchResult(matching.getLongCardinality(),
+                new CursorPage<>(songs, nextCursor),
+                songSearchIndex.countCategories(matching),
+                songSearchIndex.countTopArtistNames(matching, TOP_ARTISTS));
+    }
+
+    /**
+     * answered from memory only : no transaction, no connection
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<Suggestion> suggestSongs(String prefix, int limit) {
+        if (limit < 1 || limit > PrefixIndex.MAX_COMPLETIONS) {
+            throw new BadRequestException("limit must be between 1 and " + PrefixIndex.MAX_COMPLETIONS);
+        }
+        return songSearchIndex.suggest(prefix, limit);
     }
 
 
@@ -54,29 +260,182 @@ public class SongServiceImpl implements ISongService {
                 .orElseThrow(() -> new ResourceNotFoundException("Not found song with id = " + id));
     }
 
+    /**
+     * the validator of GET /api/songs/{id}, read from the song's row without loading the entity
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public ResourceVersion getSongVersion(Long id) {
+        return songJdbcRepository.findVersion(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Not found song with id = " + id));
+    }
+
+    /**
+     * resolves all the ids with one IN query per {@link #MAX_IN_LIST} ids, in the order they were given
+     * (duplicates included), or reports every unknown id at once.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<Song> getSongsByIds(List<Long> ids) {
+        List<Long> distinctIds = ids.stream().distinct().collect(Collectors.toList());
+        Map<Long, Song> songsById = new HashMap<>();
+        for (int from = 0; from < distinctIds.size(); from += MAX_IN_LIST) {
+            List<Long> chunk = distinctIds.subList(from, Math.min(from + MAX_IN_LIST, distinctIds.size()));
+            songRepository.findAllById(chunk).forEach(song -> songsById.put(song.getId(), song));
+        }
+
+        List<Long> missingIds = distinctIds.stream()
+                .filter(id -> !songsById.containsKey(id))
+                .collect(Collectors.toList());
+        if (!missingIds.isEmpty()) {
+            throw new ResourceNotFoundException("Not found songs with ids = " + missingIds);
+        }
+        return ids.stream().map(songsById::get).collect(Collectors.toList());
+    }
+
+    /**
+     * one IN query per {@link #MAX_IN_LIST} ids : a hit list of the search index can be as long as the table.
+     * Unknown ids are skipped, songs come in no particular order
+     */
+    private List<Song> findSongsByIds(List<Long> ids) {
+        List<Song> songs = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += MAX_IN_LIST) {
+            songs.addAll(songRepository.findAllById(ids.subList(from, Math.min(from + MAX_IN_LIST, ids.size()))));
+        }
+        return songs;
+    }
+
+    /**
+     * the playlists holding the song in id order, without their songs : the page of ids is read from
+     * songs_playlist by song (and from the packed playlists), then the playlists in one IN query
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<Playlist> getSongPlaylists(Long id, String cursor, int limit) {
+        Cursor position = Cursor.resolve(cursor, Cursor.Order.ID);
+        int window = Cursor.window(limit).getPageSize();
+        if (!songRepository.existsById(id)) {
+            throw new ResourceNotFoundException("Not found song with id = " + id);
+        }
+
+        // two range scans by song, one over its songs_playlist rows, one over the packed playlists holding it
+        long afterId = position.isFirst() ? 0L : position.getId();
+        TreeSet<Long> playlistIds = new TreeSet<>(playlistMemberJdbcRepository.findPlaylistIdsOfSong(id, afterId, window));
+        playlistIds.addAll(packedSongIdsJdbcRepository.findPlaylistIdsOfSong(id, afterId, window));
+        List<Long> pageIds = playlistIds.stream().limit(window).collect(Collectors.toList());
+        List<Playlist> playlists = playlistRepository.findAllById(pageIds).stream()
+                .sorted(Comparator.comparing(Playlist::getId))
+                .collect(Collectors.toList());
+        return CursorPage.of(playlists, limit, playlist -> Cursor.after(Cursor.Order.ID, null, playlist.getId()));
+    }
+
     @Override
     public Song createSong(Song song) {return songRepository.save(song);}
 
     @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
     public Song updateSong(Song song) {
+        return updateSong(song, null);
+    }
 
-        Song searchedSong = songRepository.findById(song.getId())
-                .orElseThrow(() -> new ResourceNotFoundException("Not found song with id = " + song.getId()));
-
-        searchedSong.setTitle(song.getTitle());
-        searchedSong.setDescription(song.getDescription());
-        searchedSong.setArtistName(song.getArtistName());
-        searchedSong.setCategory(song.getCategory());
-        searchedSong.setDuration(song.getDuration());
+    /**
+     * with an expected version the update is refused once the song moved past it,
+     * without one the last update wins
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Song updateSong(Song song, Long expectedVersion) {
+        return optimisticLockRetry.execute(() -> {
+            Song searchedSong = songRepository.findById(song.getId())
+                    .orElseThrow(() -> new ResourceNotFoundException("Not found song with id = " + song.getId()));
+            if (expectedVersion != null && expectedVersion != searchedSong.getVersion()) {
+                throw new PreconditionFailedException("Song with id = " + song.getId() + " was changed since version " + expectedVersion);
+            }
 
-        return songRepository.saveAndFlush(song);
+            searchedSong.setTitle(song.getTitle());
+            searchedSong.setDescription(song.getDescription());
+            searchedSong.setArtistName(song.getArtistName());
+            searchedSong.setCategory(song.getCategory());
+            searchedSong.setDuration(song.getDuration());
+            // the managed song is returned : the request body (no version, no creation date) is never merged
+            songRepository.flush();
+            return searchedSong;
+        });
     }
 
     @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void deleteSongById(Long id) {
-        songRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Not found song with id = " + id));
+        optimisticLockRetry.executeWithoutResult(() -> {
+            List<Long> ids = Collections.singletonList(id);
+            if (songJdbcRepository.findExistingIds(ids).isEmpty()) {
+                throw new ResourceNotFoundException("Not found song with id = " + id);
+            }
+            deleteExistingSongs(ids);
+        });
+    }
+
+    /**
+     * all or nothing : a single unknown id rejects the whole request
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void deleteSongs(List<Long> ids) {
+        List<Long> distinctIds = ids.stream().distinct().collect(Collectors.toList());
+        optimisticLockRetry.executeWithoutResult(() -> {
+            Set<Long> existingIds = new HashSet<>();
+            for (int from = 0; from < distinctIds.size(); from += MAX_IN_LIST) {
+                existingIds.addAll(songJdbcRepository.findExistingIds(
+                        distinctIds.subList(from, Math.min(from + MAX_IN_LIST, distinctIds.size()))));
+            }
+            List<Long> missingIds = distinctIds.stream()
+                    .filter(id -> !existingIds.contains(id))
+                    .collect(Collectors.toList());
+            if (!missingIds.isEmpty()) {
+                throw new ResourceNotFoundException("Not found songs with ids = " + missingIds);
+            }
+            deleteExistingSongs(distinctIds);
+        });
+    }
 
-        songRepository.deleteById(id);
+    /**
+     * set-based : per 1000 songs, one DELETE of their songs_playlist rows (whatever the number of playlists
+     * holding them) and one of their rows, no entity loaded. The songs of packed playlists stay in their ids
+     * until the next write of the playlist, reads skip them.
+     * <p>
+     * The playlists the songs were removed from move to their next version, with the removal in their change log :
+     * their ETag and Last-Modified move, and an update based on an older version is still merged.
+     * A concurrent write of one of them replays the whole deletion.
+     * <p>
+     * Pending entity changes are flushed before the statements and the persistence context is cleared after them :
+     * the deleted songs, and the playlists loaded with them, would otherwise still be handed out as managed.
+     */
+    private void deleteExistingSongs(List<Long> ids) {
+        entityManager.flush();
+        for (int from = 0; from < ids.size(); from += MAX_IN_LIST) {
+            List<Long> chunk = ids.subList(from, Math.min(from + MAX_IN_LIST, ids.size()));
+            Map<Long, List<Long>> removedSongIds = new HashMap<>(playlistMemberJdbcRepository.removeSongsFromPlaylists(chunk));
+            packedSongIdsJdbcRepository.removeSongsFromPlaylists(chunk).forEach((playlistId, songIds) -> removedSongIds
+                    .computeIfAbsent(playlistId, key -> new ArrayList<>()).addAll(songIds));
+            songJdbcRepository.deleteAll(chunk);
+            playlistChangeJdbcRepository.recordRemovals(removedSongIds);
+        }
+        entityManager.clear();
+        ids.forEach(songSearchIndex::removed);
+    }
+
+    /**
+     * each chunk of the upload commits on its own : no transaction spans the whole stream
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public BulkImportReport importSongs(InputStream in, TransferFormat format) throws IOException {
+        return songBulkImporter.importSongs(in, format);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long exportSongs(OutputStream out, TransferFormat format) throws IOException {
+        return songBulkExporter.exportSongs(out, format);
     }
 }
@@ -0,0 +1,73 @@
+package com.rest.playlist.service.io;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.rest.playlist.model.Song;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * CsvSongRecordReader class reads a CSV upload whose header row names the song properties,
+ * eg : title,description,duration,artistName,category
+ * A row with a bad value only rejects that row ; a syntax error ends the upload,
+ * since the following rows can no longer be delimited.
+ */
+
+class CsvSongRecordReader implements SongRecordReader {
+
+    private static final CsvMapper CSV_MAPPER = new CsvMapper();
+
+    private final MappingIterator<Map<String, String>> rows;
+    private final ObjectMapper objectMapper;
+    // the header is line 1
+    private long line = 1;
+    private boolean broken;
+
+    CsvSongRecordReader(InputStream in, ObjectMapper objectMapper) throws IOException {
+        this.rows = CSV_MAPPER.readerFor(Map.class)
+                .with(CsvSchema.emptySchema().withHeader())
+                .readValues(new InputStreamReader(in, StandardCharsets.UTF_8));
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public SongRecord next() throws IOException {
+        if (broken) {
+            return null;
+        }
+        Map<String, String> row;
+        try {
+            if (!rows.hasNextValue()) {
+                return null;
+            }
+            row = rows.nextValue();
+            line++;
+        } catch (RuntimeException | IOException e) {
+            broken = true;
+            return SongRecord.rejected(line + 1, e.getMessage());
+        }
+
+        try {
+            Song song = objectMapper.convertValue(row, Song.class);
+            song.setId(null);
+            return SongRecord.of(line, song);
+        } catch (IllegalArgumentException e) {
+            String message = e.getCause() instanceof JsonProcessingException
+                    ? ((JsonProcessingException) e.getCause()).getOriginalMessage()
+                    : e.getMessage();
+            return SongRecord.rejected(line, message);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        rows.close();
+    }
+}
@@ -0,0 +1,50 @@
+package com.rest.playlist.service.io;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.rest.playlist.model.Song;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * CsvSongRecordWriter class writes a header row, then one song per row, with the columns
+ * read back by the bulk upload : id,title,description,duration,artistName,category
+ */
+
+class CsvSongRecordWriter implements SongRecordWriter {
+
+    private static final CsvMapper CSV_MAPPER = new CsvMapper();
+
+    private static final CsvSchema SCHEMA = CsvSchema.builder()
+            .addColumn("id")
+            .addColumn("title")
+            .addColumn("description")
+            .addColumn("duration")
+            .addColumn("artistName")
+            .addColumn("category")
+            .build()
+            .withHeader();
+
+    private final SequenceWriter rows;
+
+    CsvSongRecordWriter(OutputStream out) throws IOException {
+        JsonGenerator generator = CSV_MAPPER.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.rows = CSV_MAPPER.writerFor(Song.class)
+                .with(SCHEMA)
+                .writeValues(generator);
+    }
+
+    @Override
+    public void write(Song song) throws IOException {
+        rows.write(song);
+    }
+
+    @Override
+    public void close() throws IOException {
+        rows.close();
+    }
+}
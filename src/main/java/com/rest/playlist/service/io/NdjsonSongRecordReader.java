@@ -0,0 +1,54 @@
+package com.rest.playlist.service.io;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.rest.playlist.model.Song;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * NdjsonSongRecordReader class reads one JSON song per line ; a malformed line
+ * only rejects that line.
+ */
+
+class NdjsonSongRecordReader implements SongRecordReader {
+
+    private final BufferedReader reader;
+    private final ObjectReader songReader;
+    private long line;
+
+    NdjsonSongRecordReader(InputStream in, ObjectMapper objectMapper) {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        this.songReader = objectMapper.readerFor(Song.class);
+    }
+
+    @Override
+    public SongRecord next() throws IOException {
+        String row;
+        do {
+            row = reader.readLine();
+            if (row == null) {
+                return null;
+            }
+            line++;
+        } while (row.trim().isEmpty());
+
+        try {
+            Song song = songReader.readValue(row);
+            song.setId(null);
+            return SongRecord.of(line, song);
+        } catch (JsonProcessingException e) {
+            return SongRecord.rejected(line, e.getOriginalMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
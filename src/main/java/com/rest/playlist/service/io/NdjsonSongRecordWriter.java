@@ -0,0 +1,39 @@
+package com.rest.playlist.service.io;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.rest.playlist.model.Song;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * NdjsonSongRecordWriter class writes one JSON song per line through a single buffered
+ * generator : nothing is flushed between rows.
+ */
+
+class NdjsonSongRecordWriter implements SongRecordWriter {
+
+    private final JsonGenerator generator;
+    private final ObjectWriter songWriter;
+
+    NdjsonSongRecordWriter(OutputStream out, ObjectMapper objectMapper) throws IOException {
+        this.generator = objectMapper.getFactory().createGenerator(out);
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.generator.setRootValueSeparator(null);
+        this.songWriter = objectMapper.writerFor(Song.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @Override
+    public void write(Song song) throws IOException {
+        songWriter.writeValue(generator, song);
+        generator.writeRaw('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
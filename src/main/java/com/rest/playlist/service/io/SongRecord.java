@@ -0,0 +1,35 @@
+package com.rest.playlist.service.io;
+
+import com.rest.playlist.model.Song;
+import lombok.Getter;
+
+/**
+ * SongRecord class is one row of a bulk upload : the song read at the given line,
+ * or the reason why the row could not be read.
+ */
+
+@Getter
+public final class SongRecord {
+
+    private final long line;
+    private final Song song;
+    private final String error;
+
+    private SongRecord(long line, Song song, String error) {
+        this.line = line;
+        this.song = song;
+        this.error = error;
+    }
+
+    public static SongRecord of(long line, Song song) {
+        return new SongRecord(line, song, null);
+    }
+
+    public static SongRecord rejected(long line, String error) {
+        return new SongRecord(line, null, error);
+    }
+
+    public boolean isRejected() {
+        return error != null;
+    }
+}
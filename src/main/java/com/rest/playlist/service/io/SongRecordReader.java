@@ -0,0 +1,26 @@
+package com.rest.playlist.service.io;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * SongRecordReader interface reads the songs of an upload one row at a time,
+ * so the size of the upload never reaches the heap.
+ */
+
+public interface SongRecordReader extends Closeable {
+
+    /**
+     * @return the next row, or null at the end of the input
+     */
+    SongRecord next() throws IOException;
+
+    static SongRecordReader open(InputStream in, TransferFormat format, ObjectMapper objectMapper) throws IOException {
+        return format == TransferFormat.CSV
+                ? new CsvSongRecordReader(in, objectMapper)
+                : new NdjsonSongRecordReader(in, objectMapper);
+    }
+}
@@ -0,0 +1,25 @@
+package com.rest.playlist.service.io;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rest.playlist.model.Song;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * SongRecordWriter interface writes the songs of an export one row at a time
+ * straight to the response stream. Closing the writer flushes it but leaves the
+ * stream open for its owner.
+ */
+
+public interface SongRecordWriter extends Closeable {
+
+    void write(Song song) throws IOException;
+
+    static SongRecordWriter open(OutputStream out, TransferFormat format, ObjectMapper objectMapper) throws IOException {
+        return format == TransferFormat.CSV
+                ? new CsvSongRecordWriter(out)
+                : new NdjsonSongRecordWriter(out, objectMapper);
+    }
+}
@@ -0,0 +1,46 @@
+package com.rest.playlist.service.io;
+
+import com.rest.playlist.web.exception.BadRequestException;
+import org.springframework.http.MediaType;
+
+/**
+ * TransferFormat enum lists the streaming formats of the bulk song endpoints :
+ * NDJSON (one JSON song per line) and CSV (header row, then one song per row).
+ */
+
+public enum TransferFormat {
+    NDJSON(TransferFormat.NDJSON_VALUE),
+    CSV(TransferFormat.CSV_VALUE);
+
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+    public static final String CSV_VALUE = "text/csv";
+
+    private final MediaType mediaType;
+
+    TransferFormat(String mediaType) {
+        this.mediaType = MediaType.parseMediaType(mediaType);
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @return the format named by a request parameter (ndjson or csv)
+     */
+    public static TransferFormat fromParam(String format) {
+        for (TransferFormat transferFormat : values()) {
+            if (transferFormat.name().equalsIgnoreCase(format)) {
+                return transferFormat;
+            }
+        }
+        throw new BadRequestException("Not supported format with value = " + format);
+    }
+
+    /**
+     * @return the format of the given content type, NDJSON when it is not CSV
+     */
+    public static TransferFormat fromMediaType(MediaType mediaType) {
+        return mediaType != null && CSV.mediaType.includes(mediaType) ? CSV : NDJSON;
+    }
+}
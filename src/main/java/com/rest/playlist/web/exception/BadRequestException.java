@@ -0,0 +1,17 @@
+package com.rest.playlist.web.exception;
+
+
+/**
+ * BadRequestException class extends RuntimeException.
+ * It's about a custom exception :
+ * throwing an exception for a malformed request parameter in Spring Boot Service
+ * (eg: an invalid pagination cursor)
+ * BadRequestException is thrown with Http 400
+ */
+
+public class BadRequestException extends RuntimeException {
+
+    public BadRequestException(String message) {
+        super(message);
+    }
+}
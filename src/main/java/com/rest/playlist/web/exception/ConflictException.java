@@ -0,0 +1,17 @@
+package com.rest.playlist.web.exception;
+
+
+/**
+ * ConflictException class extends RuntimeException.
+ * It's about a custom exception :
+ * throwing an exception for a write that cannot be merged with the writes made since the version it was based on
+ * (eg: two updates moving songs of the same playlist)
+ * ConflictException is thrown with Http 409
+ */
+
+public class ConflictException extends RuntimeException {
+
+    public ConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,17 @@
+package com.rest.playlist.web.exception;
+
+
+/**
+ * PreconditionFailedException class extends RuntimeException.
+ * It's about a custom exception :
+ * throwing an exception for a write whose If-Match version is not the current one
+ * (eg: a song updated since the client read it)
+ * PreconditionFailedException is thrown with Http 412
+ */
+
+public class PreconditionFailedException extends RuntimeException {
+
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
@@ -3,9 +3,12 @@ package com.rest.playlist.web.exception;
 import com.rest.playlist.service.SongServiceImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.HttpMediaTypeNotSupportedException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -18,8 +21,11 @@ import java.util.stream.Collectors;
 
 /**
  * ServiceExceptionHandler class handles specific exceptions :
- * ResoureNotFoundException, MethodArgumentNotValidException,
- * and global Exception in only one place.
+ * ResoureNotFoundException, BadRequestException, ConflictException, PreconditionFailedException,
+ * ConcurrencyFailureException, MethodArgumentNotValidException, HttpMediaTypeNotSupportedException,
+ * HttpMediaTypeNotAcceptableException and global Exception in only one place.
+ * <p>
+ * Error bodies are written in the media type accepted by the client, as any other response body (JSON, CBOR, Smile).
  */
 
 @ControllerAdvice
@@ -41,6 +47,61 @@ public class ServiceExceptionHandler {
         return new ResponseEntity<>(message, HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<ErrorMessage> handleBadRequestException(BadRequestException e, WebRequest request) {
+        ErrorMessage message =
+                ErrorMessage.builder()
+                        .statusCode(HttpStatus.BAD_REQUEST.value())
+                        .timeStamp(new Date())
+                        .message(e.getMessage())
+                        .description(request.getDescription(false))
+                        .build();
+
+        return new ResponseEntity<>(message, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(ConflictException.class)
+    public ResponseEntity<ErrorMessage> handleConflictException(ConflictException e, WebRequest request) {
+        ErrorMessage message =
+                ErrorMessage.builder()
+                        .statusCode(HttpStatus.CONFLICT.value())
+                        .timeStamp(new Date())
+                        .message(e.getMessage())
+                        .description(request.getDescription(false))
+                        .build();
+
+        return new ResponseEntity<>(message, HttpStatus.CONFLICT);
+    }
+
+    /**
+     * concurrent writes still colliding once OptimisticLockRetry gave up : the client may send its write again
+     */
+    @ExceptionHandler(ConcurrencyFailureException.class)
+    public ResponseEntity<ErrorMessage> handleConcurrencyFailureException(ConcurrencyFailureException e, WebRequest request) {
+        ErrorMessage message =
+                ErrorMessage.builder()
+                        .statusCode(HttpStatus.CONFLICT.value())
+                        .timeStamp(new Date())
+                        .message("Concurrent writes, please retry")
+                        .description(request.getDescription(false))
+                        .build();
+
+        return new ResponseEntity<>(message, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<ErrorMessage> handlePreconditionFailedException(PreconditionFailedException e, WebRequest request) {
+        ErrorMessage message =
+                ErrorMessage.builder()
+                        .statusCode(HttpStatus.PRECONDITION_FAILED.value())
+                        .timeStamp(new Date())
+                        .message(e.getMessage())
+                        .description(request.getDescription(false))
+                        .build();
+
+        return new ResponseEntity<>(message, HttpStatus.PRECONDITION_FAILED);
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public final ResponseEntity<ErrorMessage> handleArgumentNotValidException(MethodArgumentNotValidException e, WebRequest request) {
 
@@ -67,6 +128,27 @@ public class ServiceExceptionHandler {
         return new ResponseEntity<>(message, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(HttpMediaTypeNotSupportedException.class)
+    public ResponseEntity<ErrorMessage> handleMediaTypeNotSupportedException(HttpMediaTypeNotSupportedException e, WebRequest request) {
+        ErrorMessage message =
+                ErrorMessage.builder()
+                        .statusCode(HttpStatus.UNSUPPORTED_MEDIA_TYPE.value())
+                        .timeStamp(new Date())
+                        .message(e.getMessage())
+                        .description(request.getDescription(false))
+                        .build();
+
+        return new ResponseEntity<>(message, HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+    }
+
+    /**
+     * no body : none of the media types the client accepts can be written
+     */
+    @ExceptionHandler(HttpMediaTypeNotAcceptableException.class)
+    public ResponseEntity<Void> handleMediaTypeNotAcceptableException(HttpMediaTypeNotAcceptableException e) {
+        return new ResponseEntity<>(HttpStatus.NOT_ACCEPTABLE);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorMessage> globalException(Exception e, WebRequest request) {
         ErrorMessage message =
@@ -0,0 +1,28 @@
+package com.rest.playlist.web.resource;
+
+import com.rest.playlist.dto.CacheRegionReport;
+import com.rest.playlist.service.CacheStatisticsService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/cache")
+public class CacheResource {
+
+    private final CacheStatisticsService cacheStatisticsService;
+
+    public CacheResource(CacheStatisticsService cacheStatisticsService) {
+        this.cacheStatisticsService = cacheStatisticsService;
+    }
+
+    @GetMapping("/statistics")
+    public ResponseEntity<List<CacheRegionReport>> getCacheStatistics() {
+        List<CacheRegionReport> reports = cacheStatisticsService.getRegionReports();
+        return new ResponseEntity<>(reports, HttpStatus.OK);
+    }
+}
@@ -0,0 +1,41 @@
+package com.rest.playlist.web.resource;
+
+import com.rest.playlist.web.exception.BadRequestException;
+
+/**
+ * ETagUtil class reads back the version of a resource from an If-Match header holding one of
+ * the ETags served by GET (see ResourceVersion) : the version is the first part of the tag, eg :
+ * If-Match: W/"4" for version 4 of a song
+ * If-Match: W/"2-15-31" for version 2 of a playlist, whatever its songs
+ * A strong tag with the same value is read the same way.
+ */
+
+final class ETagUtil {
+
+    private static final String WEAK_PREFIX = "W/";
+
+    private ETagUtil() {
+    }
+
+    /**
+     * @return the version the client wrote against, null when it did not send one (or sent *)
+     */
+    static Long parseVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith(WEAK_PREFIX)) {
+            tag = tag.substring(WEAK_PREFIX.length());
+        }
+        if (tag.length() > 1 && tag.charAt(0) == '"' && tag.charAt(tag.length() - 1) == '"') {
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        int end = tag.indexOf('-');
+        try {
+            return Long.valueOf(end < 0 ? tag : tag.substring(0, end));
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid If-Match with value = " + ifMatch);
+        }
+    }
+}
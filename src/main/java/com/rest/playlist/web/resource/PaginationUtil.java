@@ -0,0 +1,33 @@
+package com.rest.playlist.web.resource;
+
+import com.rest.playlist.pagination.CursorPage;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+/**
+ * PaginationUtil class exposes the cursor of the next page of a keyset pagination
+ * as response headers, so list endpoints keep returning a plain JSON array :
+ * X-Next-Cursor: aWR8NDI
+ * Link: <http://localhost:8080/api/songs?cursor=aWR8NDI&limit=100>; rel="next"
+ */
+
+final class PaginationUtil {
+
+    static final String DEFAULT_LIMIT = "100";
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private PaginationUtil() {
+    }
+
+    static HttpHeaders generateCursorHeaders(CursorPage<?> page) {
+        HttpHeaders headers = new HttpHeaders();
+        if (page.hasNext()) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("cursor", page.getNextCursor())
+                    .toUriString();
+            headers.add(NEXT_CURSOR_HEADER, page.getNextCursor());
+            headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return headers;
+    }
+}
@@ -1,15 +1,29 @@
 package com.rest.playlist.web.resource;
 
+import com.rest.playlist.dto.PositionChange;
+import com.rest.playlist.dto.ResourceVersion;
+import com.rest.playlist.dto.Suggestion;
 import com.rest.playlist.model.Playlist;
+import com.rest.playlist.pagination.CursorPage;
 import com.rest.playlist.service.IPlaylistService;
 import com.rest.playlist.service.PlaylistServiceImpl;
+import com.rest.playlist.web.resource.RenderedResponseCache.RenderedResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.rest.playlist.service.io.TransferFormat;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.util.Collections;
 import java.util.List;
 
 @RestController
@@ -19,14 +33,49 @@ public class PlaylistResource {
     final private IPlaylistService IPlaylistService;
     private static final Logger log = LoggerFactory.getLogger(PlaylistServiceImpl.class);
 
-    public PlaylistResource(IPlaylistService IPlaylistService) {
+    private final RenderedResponseCache renderedPlaylists;
+    private final RenderedResponseCache renderedPlaylistsWithoutSongs;
+
+    public PlaylistResource(IPlaylistService IPlaylistService, HttpMessageConverters messageConverters,
+                            @Value("${playlist.rendered-responses.max-bytes:16777216}") long renderedResponsesMaxBytes) {
         this.IPlaylistService = IPlaylistService;
+        this.renderedPlaylists = new RenderedResponseCache(renderedResponsesMaxBytes, messageConverters.getConverters());
+        this.renderedPlaylistsWithoutSongs = new RenderedResponseCache(renderedResponsesMaxBytes, messageConverters.getConverters());
     }
 
+    /**
+     * with ?fields=, eg : "title,songs.title", only the columns of these fields are read and written out
+     * (the ids always are), with ?expand=songs the songs of each playlist are added
+     */
     @GetMapping
-    public ResponseEntity<List<Playlist>> getAllPlaylists() {
-        List<Playlist> playlists = IPlaylistService.getAllPlaylists();
-        return new ResponseEntity<>(playlists, HttpStatus.OK);
+    public ResponseEntity<List<?>> getAllPlaylists(@RequestParam(required = false) String cursor,
+                                                   @RequestParam(defaultValue = PaginationUtil.DEFAULT_LIMIT) int limit,
+                                                   @RequestParam(required = false) String sort,
+                                                   @RequestParam(required = false) String fields,
+                                                   @RequestParam(required = false) String expand) {
+        CursorPage<?> page = fields == null && expand == null
+                ? IPlaylistService.getAllPlaylists(cursor, limit, sort)
+                : IPlaylistService.getAllPlaylists(cursor, limit, sort, fields, expand);
+        HttpHeaders headers = PaginationUtil.generateCursorHeaders(page);
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportPlaylists() {
+        StreamingResponseBody body = IPlaylistService::exportPlaylists;
+        return ResponseEntity.ok()
+                .contentType(TransferFormat.NDJSON.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("playlists.ndjson")
+                        .build().toString())
+                .body(body);
+    }
+
+    @GetMapping("/suggest")
+    public ResponseEntity<List<Suggestion>> suggestPlaylists(@RequestParam(defaultValue = "") String prefix,
+                                                             @RequestParam(defaultValue = "10") int limit) {
+        List<Suggestion> suggestions = IPlaylistService.suggestPlaylists(prefix, limit);
+        return new ResponseEntity<>(suggestions, HttpStatus.OK);
     }
 
     @GetMapping("/title/{title}")
@@ -35,10 +84,36 @@ public class PlaylistResource {
         return new ResponseEntity<>(playlists, HttpStatus.OK);
     }
 
+    /**
+     * answers a conditional GET (If-None-Match, If-Modified-Since) with a 304 from the versions alone,
+     * otherwise with the body (JSON, CBOR or Smile) kept for those versions when the playlist was read lately :
+     * the ETag read first may be older than the playlist returned, never newer
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<Playlist> getPlaylistById(@PathVariable Long id) {
-        Playlist playlist = IPlaylistService.getPlaylistById(id);
-        return new ResponseEntity<>(playlist, HttpStatus.OK);
+    public ResponseEntity<byte[]> getPlaylistById(@PathVariable Long id,
+                                                  @RequestParam(defaultValue = "true") boolean includeSongs,
+                                                  WebRequest request)
+            throws HttpMediaTypeNotAcceptableException {
+        ResourceVersion version = IPlaylistService.getPlaylistVersion(id, includeSongs);
+        if (request.checkNotModified(version.getETag(), version.getLastModified().toEpochMilli())) {
+            return null;
+        }
+        RenderedResponseCache rendered = includeSongs ? renderedPlaylists : renderedPlaylistsWithoutSongs;
+        RenderedResponse playlist = rendered.getOrRender(id, version.getTag(), request,
+                () -> IPlaylistService.getPlaylistById(id, includeSongs));
+        return RenderedResponseCache.toResponseEntity(playlist, request);
+    }
+
+    @GetMapping("/{id}/songs")
+    public ResponseEntity<List<?>> getPlaylistSongs(@PathVariable Long id,
+                                                    @RequestParam(required = false) String cursor,
+                                                    @RequestParam(defaultValue = PaginationUtil.DEFAULT_LIMIT) int limit,
+                                                    @RequestParam(required = false) String fields) {
+        CursorPage<?> page = fields == null
+                ? IPlaylistService.getPlaylistSongs(id, cursor, limit)
+                : IPlaylistService.getPlaylistSongs(id, cursor, limit, fields);
+        HttpHeaders headers = PaginationUtil.generateCursorHeaders(page);
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
     @PostMapping
@@ -47,15 +122,86 @@ public class PlaylistResource {
         return new ResponseEntity<>(addedPlaylist, HttpStatus.CREATED);
     }
 
+    /**
+     * the copy is made by the database : the response carries the new playlist without its songs
+     */
+    @PostMapping("/{id}/copy")
+    public ResponseEntity<Playlist> copyPlaylist(@PathVariable Long id) {
+        Playlist copy = IPlaylistService.copyPlaylist(id);
+        return new ResponseEntity<>(copy, HttpStatus.CREATED);
+    }
+
+    /**
+     * op : union, intersect or minus of the songs of the playlists ids, in the order of the first one.
+     * The response carries the new playlist without its songs
+     */
+    @PostMapping("/combine")
+    public ResponseEntity<Playlist> combinePlaylists(@RequestParam String op, @RequestParam List<Long> ids) {
+        Playlist combination = IPlaylistService.combinePlaylists(op, ids);
+        return new ResponseEntity<>(combination, HttpStatus.CREATED);
+    }
+
+    /**
+     * with If-Match (the ETag of a GET) the update is merged with the changes made since that GET,
+     * or refused with a 409 when both changed the same thing
+     */
     @PutMapping
-    public ResponseEntity updatePlaylist(@Valid @RequestBody Playlist playlist) {
-        Playlist updatedPlaylist = IPlaylistService.updatePlaylist(playlist);
+    public ResponseEntity updatePlaylist(@Valid @RequestBody Playlist playlist,
+                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Long version = ETagUtil.parseVersion(ifMatch);
+        Playlist updatedPlaylist = version == null
+                ? IPlaylistService.updatePlaylist(playlist)
+                : IPlaylistService.updatePlaylist(playlist, version);
+        evictRendered(playlist.getId());
         return new ResponseEntity<>(updatedPlaylist, HttpStatus.OK);
     }
 
+    @PostMapping("/{id}/songs/{songId}")
+    public ResponseEntity addSong(@PathVariable Long id, @PathVariable Long songId) {
+        IPlaylistService.addSongs(id, Collections.singletonList(songId));
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+    @PostMapping("/{id}/songs")
+    public ResponseEntity addSongs(@PathVariable Long id, @RequestBody List<Long> songIds) {
+        IPlaylistService.addSongs(id, songIds);
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+    @PatchMapping("/{id}/songs/{songId}/position")
+    public ResponseEntity moveSong(@PathVariable Long id, @PathVariable Long songId,
+                                   @RequestBody PositionChange positionChange) {
+        IPlaylistService.moveSong(id, songId, positionChange.getAfter());
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+    @PutMapping("/{id}/storage")
+    public ResponseEntity changeSongStorage(@PathVariable Long id, @RequestParam String mode) {
+        IPlaylistService.changeSongStorage(id, mode);
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+    @DeleteMapping("/{id}/songs/{songId}")
+    public ResponseEntity removeSong(@PathVariable Long id, @PathVariable Long songId) {
+        IPlaylistService.removeSongs(id, Collections.singletonList(songId));
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+    @DeleteMapping("/{id}/songs")
+    public ResponseEntity removeSongs(@PathVariable Long id, @RequestParam List<Long> songIds) {
+        IPlaylistService.removeSongs(id, songIds);
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity deletePlaylistById(@PathVariable Long id) {
         IPlaylistService.deletePlaylistById(id);
+        evictRendered(id);
         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
+
+    private void evictRendered(Long id) {
+        renderedPlaylists.evict(id);
+        renderedPlaylistsWithoutSongs.evict(id);
+    }
 }
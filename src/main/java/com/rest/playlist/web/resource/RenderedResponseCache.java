@@ -0,0 +1,248 @@
+package com.rest.playlist.web.resource;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * RenderedResponseCache class keeps the body of the most recently read resources, already serialized
+ * (and gzipped when large enough), under their id, their media type and the tag of their version (see ResourceVersion).
+ * A hit writes the stored bytes as the response body : no entity is loaded, nothing is serialized.
+ * <p>
+ * The media type is negotiated from the Accept header among the Jackson converters of the application
+ * (JSON, CBOR, Smile), in their order : JSON is served when any type is accepted.
+ * <p>
+ * An entry is only served for the tag it was rendered at : any write moving the version (including the songs
+ * of a playlist) makes it unreachable, updates and deletes drop it at once to free its room.
+ * The cache is bounded by the total size of its bytes, least recently read entries are dropped first.
+ */
+
+public final class RenderedResponseCache {
+
+    /**
+     * below this size gzip saves less than the Content-Encoding header costs
+     */
+    static final int MIN_GZIP_LENGTH = 1024;
+
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final long maxBytes;
+    private final Map<MediaType, ObjectMapper> objectMappers = new LinkedHashMap<>();
+    private final LinkedHashMap<Key, RenderedResponse> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+
+    /**
+     * @param converters the message converters of the application, the Jackson ones render the responses
+     */
+    public RenderedResponseCache(long maxBytes, List<HttpMessageConverter<?>> converters) {
+        this.maxBytes = maxBytes;
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter instanceof AbstractJackson2HttpMessageConverter) {
+                ObjectMapper objectMapper = ((AbstractJackson2HttpMessageConverter) converter).getObjectMapper();
+                for (MediaType mediaType : converter.getSupportedMediaTypes()) {
+                    if (mediaType.isConcrete()) {
+                        objectMappers.putIfAbsent(new MediaType(mediaType.getType(), mediaType.getSubtype()), objectMapper);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the response rendered for the given version of the resource, null when none is kept
+     */
+    public synchronized RenderedResponse get(Long id, MediaType mediaType, String tag) {
+        RenderedResponse response = entries.get(new Key(id, mediaType));
+        return response != null && response.tag.equals(tag) ? response : null;
+    }
+
+    public synchronized void put(Long id, RenderedResponse response) {
+        if (response.size() > maxBytes) {
+            return;
+        }
+        RenderedResponse previous = entries.put(new Key(id, response.mediaType), response);
+        bytes += response.size() - (previous == null ? 0 : previous.size());
+        Iterator<RenderedResponse> eldest = entries.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= eldest.next().size();
+            eldest.remove();
+        }
+    }
+
+    public synchronized void evict(Long id) {
+        for (MediaType mediaType : objectMappers.keySet()) {
+            RenderedResponse previous = entries.remove(new Key(id, mediaType));
+            if (previous != null) {
+                bytes -= previous.size();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * the cached response of the resource at the given version in the media type accepted by the request,
+     * rendered with the mapper of its converter on a miss
+     */
+    public RenderedResponse getOrRender(Long id, String tag, WebRequest request, Supplier<?> resource)
+            throws HttpMediaTypeNotAcceptableException {
+        MediaType mediaType = negotiate(request.getHeader(HttpHeaders.ACCEPT));
+        RenderedResponse response = get(id, mediaType, tag);
+        if (response == null) {
+            response = RenderedResponse.render(tag, mediaType, objectMappers.get(mediaType), resource.get());
+            put(id, response);
+        }
+        return response;
+    }
+
+    /**
+     * @return the first rendered media type matching the most specific and preferred type of the Accept header
+     */
+    MediaType negotiate(String accept) throws HttpMediaTypeNotAcceptableException {
+        if (accept == null || accept.trim().isEmpty()) {
+            return objectMappers.keySet().iterator().next();
+        }
+        List<MediaType> acceptedTypes;
+        try {
+            acceptedTypes = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            throw new HttpMediaTypeNotAcceptableException("Could not parse 'Accept' header [" + accept + "]: " + e.getMessage());
+        }
+        MediaType.sortBySpecificityAndQuality(acceptedTypes);
+        for (MediaType acceptedType : acceptedTypes) {
+            if (acceptedType.getQualityValue() == 0) {
+                continue;
+            }
+            for (MediaType mediaType : objectMappers.keySet()) {
+                if (acceptedType.isCompatibleWith(mediaType)) {
+                    return mediaType;
+                }
+            }
+        }
+        throw new HttpMediaTypeNotAcceptableException(new ArrayList<>(objectMappers.keySet()));
+    }
+
+    /**
+     * the body as is, gzipped when the client accepts it : ETag and Last-Modified are already set by the
+     * conditional GET check, the ETag is weak as the negotiated bodies share it
+     */
+    public static ResponseEntity<byte[]> toResponseEntity(RenderedResponse response, WebRequest request) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(response.mediaType)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+        if (response.gzip != null && acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(response.gzip);
+        }
+        return builder.body(response.body);
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static final class Key {
+
+        private final Long id;
+        private final MediaType mediaType;
+
+        private Key(Long id, MediaType mediaType) {
+            this.id = id;
+            this.mediaType = mediaType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return id.equals(key.id) && mediaType.equals(key.mediaType);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, mediaType);
+        }
+    }
+
+    /**
+     * RenderedResponse class is one resource serialized at one version in one media type
+     */
+    @Getter
+    public static final class RenderedResponse {
+
+        private final String tag;
+        private final MediaType mediaType;
+        private final byte[] body;
+        private final byte[] gzip;
+
+        RenderedResponse(String tag, MediaType mediaType, byte[] body, byte[] gzip) {
+            this.tag = tag;
+            this.mediaType = mediaType;
+            this.body = body;
+            this.gzip = gzip;
+        }
+
+        public static RenderedResponse render(String tag, MediaType mediaType, ObjectMapper objectMapper, Object resource) {
+            try {
+                byte[] body = objectMapper.writeValueAsBytes(resource);
+                return new RenderedResponse(tag, mediaType, body, body.length < MIN_GZIP_LENGTH ? null : gzip(body));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Resource could not be rendered as " + mediaType, e);
+            }
+        }
+
+        long size() {
+            return ENTRY_OVERHEAD + tag.length() * 2L + body.length + (gzip == null ? 0 : gzip.length);
+        }
+
+        private static byte[] gzip(byte[] body) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(body);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        }
+    }
+}
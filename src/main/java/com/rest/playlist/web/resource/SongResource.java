@@ -1,15 +1,33 @@
 package com.rest.playlist.web.resource;
 
+import com.rest.playlist.dto.BulkImportReport;
+import com.rest.playlist.dto.ResourceVersion;
+import com.rest.playlist.dto.SongSearchResult;
+import com.rest.playlist.dto.Suggestion;
+import com.rest.playlist.model.Playlist;
 import com.rest.playlist.model.Song;
+import com.rest.playlist.pagination.CursorPage;
 import com.rest.playlist.service.ISongService;
 import com.rest.playlist.service.SongServiceImpl;
+import com.rest.playlist.service.io.TransferFormat;
+import com.rest.playlist.web.resource.RenderedResponseCache.RenderedResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
@@ -19,16 +37,60 @@ public class SongResource {
     final private ISongService ISongService;
     private static final Logger log = LoggerFactory.getLogger(SongServiceImpl.class);
 
-    public SongResource(ISongService ISongService) {
+    private final RenderedResponseCache renderedSongs;
+
+    public SongResource(ISongService ISongService, HttpMessageConverters messageConverters,
+                        @Value("${playlist.rendered-responses.max-bytes:16777216}") long renderedResponsesMaxBytes) {
         this.ISongService = ISongService;
+        this.renderedSongs = new RenderedResponseCache(renderedResponsesMaxBytes, messageConverters.getConverters());
     }
 
+    /**
+     * with ?fields=, eg : "title,artistName", only the columns of these fields are read and written out
+     * (the id always is), the cursors are the same as without
+     */
     @GetMapping
-    public ResponseEntity<List<Song>> getAllSongs() {
-        List<Song> songs = ISongService.getAllSongs();
-        return new ResponseEntity<>(songs, HttpStatus.OK);
+    public ResponseEntity<List<?>> getAllSongs(@RequestParam(required = false) String cursor,
+                                               @RequestParam(defaultValue = PaginationUtil.DEFAULT_LIMIT) int limit,
+                                               @RequestParam(required = false) String sort,
+                                               @RequestParam(required = false) String fields) {
+        CursorPage<?> page = fields == null
+                ? ISongService.getAllSongs(cursor, limit, sort)
+                : ISongService.getAllSongs(cursor, limit, sort, fields);
+        HttpHeaders headers = PaginationUtil.generateCursorHeaders(page);
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+    }
+
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportSongs(@RequestParam(defaultValue = "ndjson") String format) {
+        TransferFormat exportFormat = TransferFormat.fromParam(format);
+        StreamingResponseBody body = out -> ISongService.exportSongs(out, exportFormat);
+        return ResponseEntity.ok()
+                .contentType(exportFormat.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("songs." + exportFormat.name().toLowerCase())
+                        .build().toString())
+                .body(body);
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<SongSearchResult> searchSongs(@RequestParam(required = false) String category,
+                                                        @RequestParam(required = false) String artist,
+                                                        @RequestParam(required = false) String title,
+                                                        @RequestParam(required = false) String cursor,
+                                                        @RequestParam(defaultValue = PaginationUtil.DEFAULT_LIMIT) int limit) {
+        SongSearchResult result = ISongService.searchSongs(category, artist, title, cursor, limit);
+        HttpHeaders headers = PaginationUtil.generateCursorHeaders(result.getPage());
+        return new ResponseEntity<>(result, headers, HttpStatus.OK);
     }
 
+    @GetMapping("/suggest")
+    public ResponseEntity<List<Suggestion>> suggestSongs(@RequestParam(defaultValue = "") String prefix,
+                                                         @RequestParam(defaultValue = "10") int limit) {
+        List<Suggestion> suggestions = ISongService.suggestSongs(prefix, limit);
+        return new ResponseEntity<>(suggestions, HttpStatus.OK);
+    }
 
     @GetMapping("/category/{category}")
     public ResponseEntity<List<Song>> getSongsByCategory(@PathVariable String category) {
@@ -37,15 +99,40 @@ public class SongResource {
     }
 
     @GetMapping("/artist/{artistName}")
-    public ResponseEntity<List<Song>> getSongsByArtist(@PathVariable String artistName) {
-        List<Song> songs = ISongService.getSongsByArtistName(artistName);
+    public ResponseEntity<List<Song>> getSongsByArtist(@PathVariable String artistName,
+                                                       @RequestParam(required = false) Integer fuzzy) {
+        List<Song> songs = fuzzy == null
+                ? ISongService.getSongsByArtistName(artistName)
+                : ISongService.getSongsByArtistName(artistName, fuzzy);
         return new ResponseEntity<>(songs, HttpStatus.OK);
     }
 
+    /**
+     * answers a conditional GET (If-None-Match, If-Modified-Since) with a 304 from the song's version alone,
+     * otherwise with the body (JSON, CBOR or Smile) kept for that version when the song was read lately
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<Song> getSongById(@PathVariable Long id) {
-        Song song = ISongService.getSongById(id);
-        return new ResponseEntity<>(song, HttpStatus.OK);
+    public ResponseEntity<byte[]> getSongById(@PathVariable Long id, WebRequest request)
+            throws HttpMediaTypeNotAcceptableException {
+        ResourceVersion version = ISongService.getSongVersion(id);
+        if (request.checkNotModified(version.getETag(), version.getLastModified().toEpochMilli())) {
+            return null;
+        }
+        RenderedResponse song = renderedSongs.getOrRender(id, version.getTag(), request,
+                () -> ISongService.getSongById(id));
+        return RenderedResponseCache.toResponseEntity(song, request);
+    }
+
+    /**
+     * the playlists holding the song, in id order and without their songs
+     */
+    @GetMapping("/{id}/playlists")
+    public ResponseEntity<List<Playlist>> getSongPlaylists(@PathVariable Long id,
+                                                           @RequestParam(required = false) String cursor,
+                                                           @RequestParam(defaultValue = PaginationUtil.DEFAULT_LIMIT) int limit) {
+        CursorPage<Playlist> page = ISongService.getSongPlaylists(id, cursor, limit);
+        HttpHeaders headers = PaginationUtil.generateCursorHeaders(page);
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
     @PostMapping
@@ -54,14 +141,39 @@ public class SongResource {
         return new ResponseEntity<>(addedSong, HttpStatus.CREATED);
     }
 
+    @PostMapping(value = "/bulk", consumes = {TransferFormat.NDJSON_VALUE, TransferFormat.CSV_VALUE})
+    public ResponseEntity<BulkImportReport> importSongs(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                                        InputStream body) throws IOException {
+        BulkImportReport report = ISongService.importSongs(body, TransferFormat.fromMediaType(contentType));
+        return new ResponseEntity<>(report, HttpStatus.OK);
+    }
+
+    /**
+     * with If-Match (the ETag of a GET) the update is refused with a 412 once the song changed since that GET
+     */
     @PutMapping
-    public ResponseEntity updateSong(@Valid @RequestBody Song song) {
-        return new ResponseEntity<>(ISongService.updateSong(song), HttpStatus.OK);
+    public ResponseEntity updateSong(@Valid @RequestBody Song song,
+                                     @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Long version = ETagUtil.parseVersion(ifMatch);
+        Song updatedSong = version == null ? ISongService.updateSong(song) : ISongService.updateSong(song, version);
+        renderedSongs.evict(song.getId());
+        return new ResponseEntity<>(updatedSong, HttpStatus.OK);
     }
 
     @DeleteMapping("/{id}")
     public ResponseEntity deleteSongById(@PathVariable Long id) {
         ISongService.deleteSongById(id);
+        renderedSongs.evict(id);
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+    /**
+     * deletes all the songs or none : a single unknown id is a 404
+     */
+    @DeleteMapping
+    public ResponseEntity deleteSongs(@RequestParam List<Long> ids) {
+        ISongService.deleteSongs(ids);
+        ids.forEach(renderedSongs::evict);
         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 }
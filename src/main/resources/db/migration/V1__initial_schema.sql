@@ -0,0 +1,78 @@
+-- creates the schema on an empty database, and brings the one Hibernate (ddl-auto=update) and the former
+-- schema.sql left up to it : databases created before the versioned migrations are baselined at version 0
+-- (spring.flyway.baseline-on-migrate), so this version runs on them too. Every statement leaves
+-- an object already there as it is, whichever of these states the database is in.
+
+-- ids are drawn in blocks of 50, see PooledSequenceGenerator and SequenceMigration
+create sequence if not exists song_seq start with 1 increment by 50;
+create sequence if not exists playlist_seq start with 1 increment by 50;
+
+create table if not exists songs (
+    id bigint not null,
+    created_at timestamp not null,
+    updated_at timestamp,
+    title varchar(255),
+    description varchar(255),
+    duration varchar(255),
+    artist_name varchar(255),
+    category varchar(255),
+    primary key (id)
+);
+
+create table if not exists playlists (
+    id bigint not null,
+    created_at timestamp not null,
+    updated_at timestamp,
+    title varchar(255),
+    description varchar(255),
+    primary key (id)
+);
+
+create table if not exists songs_playlist (
+    playlist_id bigint not null references playlists (id),
+    song_id bigint not null references songs (id)
+);
+
+-- optimistic lock column (AbstractAuditModel.version) of the rows written before it existed
+alter table songs add column if not exists version bigint;
+update songs set version = 0 where version is null;
+alter table songs alter column version set not null;
+
+alter table playlists add column if not exists version bigint;
+update playlists set version = 0 where version is null;
+alter table playlists alter column version set not null;
+
+-- playlists created before the packed storage keep their songs_playlist rows
+alter table playlists add column if not exists song_storage varchar(255);
+update playlists set song_storage = 'ROWS' where song_storage is null;
+
+-- sparse position of a song within its playlist, see PlaylistJdbcRepository :
+-- rows written before it existed are placed by V2
+alter table songs_playlist add column if not exists position bigint;
+
+-- keyset pages and moves of one playlist read its rows in this order
+create index if not exists songs_playlist_position_idx on songs_playlist (playlist_id, position, song_id);
+
+-- playlists of a song (GET /api/songs/{id}/playlists) and deletion of a song's rows
+create index if not exists songs_playlist_song_idx on songs_playlist (song_id, playlist_id);
+
+-- song ids of the playlists in PACKED storage, see PackedSongIds
+create table if not exists playlist_packed_songs (
+    playlist_id bigint primary key references playlists (id),
+    song_count int not null,
+    song_ids bytea not null
+);
+
+-- one row per version of a playlist : what the write made of that version, see PlaylistChange.
+-- no foreign key : the log is trimmed as it grows and only ever read through its playlist
+create table if not exists playlist_changes (
+    playlist_id bigint not null,
+    version bigint not null,
+    added_song_ids bytea not null,
+    removed_song_ids bytea not null,
+    reordered boolean not null,
+    details_changed boolean not null,
+    previous_title varchar(255),
+    previous_description varchar(255),
+    primary key (playlist_id, version)
+);
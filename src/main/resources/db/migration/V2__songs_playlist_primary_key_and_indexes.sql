@@ -0,0 +1,31 @@
+-- Song.playlist used to own songs_playlist as well : a pair added from both sides has two rows,
+-- only the first position is kept
+create table songs_playlist_duplicates as
+    select playlist_id, song_id, min(position) as position from songs_playlist
+    group by playlist_id, song_id having count(*) > 1;
+delete from songs_playlist where exists (select 1 from songs_playlist_duplicates d
+    where d.playlist_id = songs_playlist.playlist_id and d.song_id = songs_playlist.song_id);
+insert into songs_playlist (playlist_id, song_id, position)
+    select playlist_id, song_id, position from songs_playlist_duplicates;
+drop table songs_playlist_duplicates;
+
+-- rows written without a position (from Song.playlist) go after the songs placed so far
+update songs_playlist set position = song_id * 1048576 where position is null;
+alter table songs_playlist alter column position set not null;
+
+-- a song is in a playlist once : membership checks, moves and removals of a row read this key
+alter table songs_playlist add constraint songs_playlist_pkey primary key (playlist_id, song_id);
+
+-- GET /api/songs/category/{category}
+create index songs_category_idx on songs (category);
+
+-- artist names compared as a whole or by prefix
+create index songs_artist_name_idx on songs (artist_name);
+
+-- rows changed since a given time
+create index songs_updated_at_idx on songs (updated_at);
+create index playlists_updated_at_idx on playlists (updated_at);
+
+-- keyset pages sorted by createdAt (see Cursor) : read in index order instead of sorted
+create index songs_created_at_idx on songs (created_at, id);
+create index playlists_created_at_idx on playlists (created_at, id);
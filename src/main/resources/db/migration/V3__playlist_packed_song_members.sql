@@ -0,0 +1,12 @@
+-- the songs of the playlists in PACKED storage, one row per song and playlist : the packed ids stay the
+-- source of the playlist order, this table answers the playlists of a song (GET /api/songs/{id}/playlists)
+-- without decoding any array. Kept in step by PlaylistJdbcRepository, filled from the existing arrays by V4.
+-- no foreign key on songs : a deleted song stays in the packed ids until the next write of the playlist
+create table playlist_packed_song_members (
+    song_id bigint not null,
+    playlist_id bigint not null references playlists (id),
+    primary key (song_id, playlist_id)
+);
+
+-- rows of one playlist, rewritten with its packed ids
+create index playlist_packed_song_members_playlist_idx on playlist_packed_song_members (playlist_id);
@@ -0,0 +1,110 @@
+package com.rest.playlist.benchmark;
+
+import com.rest.playlist.search.TrigramIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Substring search on artist names : LIKE '%x%' on an in-memory H2 table against the trigram index.
+ * Run its main method on the test classpath (after mvn test-compile).
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArtistSearchBenchmark {
+
+    private static final String[] SYLLABLES = {"sa", "mi", "th", "le", "an", "bri", "dge", "ko", "ra", "vel", "ton", "is", "ak"};
+
+    @Param({"10000", "100000"})
+    private int songs;
+
+    @Param({"Smith", "Bridges"})
+    private String query;
+
+    private Connection connection;
+    private PreparedStatement likeStatement;
+    private TrigramIndex index;
+
+    @Setup
+    public void setup() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table songs (id bigint primary key, artist_name varchar(255))");
+        }
+        index = new TrigramIndex();
+        Random random = new Random(42);
+        try (PreparedStatement insert = connection.prepareStatement("insert into songs values (?, ?)")) {
+            for (int id = 1; id <= songs; id++) {
+                String artistName = id % 100 == 0 ? "Sam Smith" : id % 101 == 0 ? "Lean Bridges" : randomName(random);
+                insert.setLong(1, id);
+                insert.setString(2, artistName);
+                insert.addBatch();
+                index.add(id, artistName);
+            }
+            insert.executeBatch();
+        }
+        likeStatement = connection.prepareStatement("select id from songs where artist_name like ?");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop table songs");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public List<Long> like() throws SQLException {
+        likeStatement.setString(1, "%" + query + "%");
+        List<Long> ids = new ArrayList<>();
+        try (ResultSet rs = likeStatement.executeQuery()) {
+            while (rs.next()) {
+                ids.add(rs.getLong(1));
+            }
+        }
+        return ids;
+    }
+
+    @Benchmark
+    public List<Long> trigramIndex() {
+        return index.search(query);
+    }
+
+    private static String randomName(Random random) {
+        StringBuilder name = new StringBuilder();
+        for (int word = 0; word < 2; word++) {
+            if (word > 0) {
+                name.append(' ');
+            }
+            int start = name.length();
+            int syllables = 2 + random.nextInt(3);
+            for (int i = 0; i < syllables; i++) {
+                name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            name.setCharAt(start, Character.toUpperCase(name.charAt(start)));
+        }
+        return name.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ArtistSearchBenchmark.class.getSimpleName()).build()).run();
+    }
+}
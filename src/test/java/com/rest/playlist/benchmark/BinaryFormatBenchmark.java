@@ -0,0 +1,96 @@
+package com.rest.playlist.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Playlist;
+import com.rest.playlist.model.Song;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One playlist with its songs written and read back as JSON, CBOR and Smile, with mappers built as
+ * the message converters build theirs (MessageConverterConfig). The encoded size of each format is printed
+ * at setup. Run its main method on the test classpath (after mvn test-compile).
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinaryFormatBenchmark {
+
+    private static final String[] ARTISTS = {"Sam Smith", "Lean Bridges", "Isak Danielson", "Ben Howard", "Adele"};
+
+    @Param({"10", "1000", "100000"})
+    private int songs;
+
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    private ObjectMapper objectMapper;
+    private Playlist playlist;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().factory(factory(format)).build();
+        Random random = new Random(42);
+        List<Song> playlistSongs = new ArrayList<>(songs);
+        for (int i = 1; i <= songs; i++) {
+            Song song = new Song();
+            song.setId((long) i);
+            song.setTitle("Song number " + i);
+            song.setDescription("Live At Abbey Road Studios, take " + random.nextInt(10));
+            song.setArtistName(ARTISTS[random.nextInt(ARTISTS.length)]);
+            song.setCategory(SongCategory.values()[random.nextInt(SongCategory.values().length)]);
+            song.setDuration(random.nextInt(6) + ":" + (10 + random.nextInt(50)));
+            playlistSongs.add(song);
+        }
+        playlist = new Playlist();
+        playlist.setId(1L);
+        playlist.setTitle("Playlist1");
+        playlist.setDescription("Description Playlist1");
+        playlist.setSongs(playlistSongs);
+        encoded = objectMapper.writeValueAsBytes(playlist);
+        System.out.printf("%n%d songs as %s : %d bytes%n", songs, format, encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return objectMapper.writeValueAsBytes(playlist);
+    }
+
+    @Benchmark
+    public Playlist decode() throws IOException {
+        return objectMapper.readValue(encoded, Playlist.class);
+    }
+
+    private static JsonFactory factory(String format) {
+        switch (format) {
+            case "cbor":
+                return new CBORFactory();
+            case "smile":
+                return new SmileFactory();
+            default:
+                return new JsonFactory();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(BinaryFormatBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,105 @@
+package com.rest.playlist.benchmark;
+
+import com.rest.playlist.search.BitmapIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Category facet counts of the songs of one artist : GROUP BY on an in-memory H2 table
+ * (result reuse disabled so every call scans) against bitmap intersections.
+ * Run its main method on the test classpath (after mvn test-compile).
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FacetBenchmark {
+
+    private static final String[] CATEGORIES = {"JAZZ", "CLASSICAL", "POP"};
+    private static final int ARTISTS = 1000;
+
+    @Param({"100000", "1000000"})
+    private int songs;
+
+    private Connection connection;
+    private PreparedStatement groupBy;
+    private BitmapIndex categories;
+    private BitmapIndex artistNames;
+
+    @Setup
+    public void setup() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:facets;DB_CLOSE_DELAY=-1;OPTIMIZE_REUSE_RESULTS=FALSE");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table songs (id bigint primary key, artist_name varchar(255), category varchar(255))");
+        }
+        categories = new BitmapIndex();
+        artistNames = new BitmapIndex();
+        Random random = new Random(42);
+        try (PreparedStatement insert = connection.prepareStatement("insert into songs values (?, ?, ?)")) {
+            for (int id = 1; id <= songs; id++) {
+                String artistName = "Artist " + random.nextInt(ARTISTS);
+                String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+                insert.setLong(1, id);
+                insert.setString(2, artistName);
+                insert.setString(3, category);
+                insert.addBatch();
+                categories.add(id, category);
+                artistNames.add(id, artistName);
+            }
+            insert.executeBatch();
+        }
+        groupBy = connection.prepareStatement("select category, count(*) from songs where artist_name = ? group by category");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop table songs");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public Map<String, Integer> groupBy() throws SQLException {
+        groupBy.setString(1, "Artist 7");
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        try (ResultSet rs = groupBy.executeQuery()) {
+            while (rs.next()) {
+                counts.put(rs.getString(1), rs.getInt(2));
+            }
+        }
+        return counts;
+    }
+
+    @Benchmark
+    public Map<String, Integer> bitmaps() {
+        RoaringBitmap matching = artistNames.get("Artist 7");
+        return categories.counts(matching, CATEGORIES.length);
+    }
+
+    @Benchmark
+    public Map<String, Integer> bitmapsUnfiltered() {
+        return categories.counts(categories.all(), CATEGORIES.length);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FacetBenchmark.class.getSimpleName()).build()).run();
+    }
+}
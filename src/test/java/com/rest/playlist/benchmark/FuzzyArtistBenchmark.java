@@ -0,0 +1,108 @@
+package com.rest.playlist.benchmark;
+
+import com.rest.playlist.search.BkTreeIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Artist names within n edits of a misspelled query : BK-tree against a scan of the whole dictionary.
+ * Run its main method on the test classpath (after mvn test-compile).
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FuzzyArtistBenchmark {
+
+    private static final String[] SYLLABLES = {"sa", "mi", "th", "le", "an", "bri", "dge", "ko", "ra", "vel", "ton", "is", "ak"};
+
+    @Param({"10000", "100000"})
+    private int artists;
+
+    @Param({"1", "2"})
+    private int maxDistance;
+
+    private final String query = "Samith Brige";
+
+    private BkTreeIndex index;
+    // case-folded once, as the tree does
+    private List<String> dictionary;
+
+    @Setup
+    public void setup() {
+        index = new BkTreeIndex();
+        dictionary = new ArrayList<>();
+        Random random = new Random(42);
+        for (int id = 1; id <= artists; id++) {
+            String artistName = randomName(random);
+            dictionary.add(artistName.toLowerCase());
+            index.add(id, artistName);
+        }
+    }
+
+    @Benchmark
+    public List<BkTreeIndex.Match> bkTree() {
+        return index.search(query, maxDistance);
+    }
+
+    @Benchmark
+    public List<String> scan() {
+        List<String> matches = new ArrayList<>();
+        String folded = query.toLowerCase();
+        for (String artistName : dictionary) {
+            if (levenshtein(folded, artistName) <= maxDistance) {
+                matches.add(artistName);
+            }
+        }
+        return matches;
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static String randomName(Random random) {
+        StringBuilder name = new StringBuilder();
+        for (int word = 0; word < 2; word++) {
+            if (word > 0) {
+                name.append(' ');
+            }
+            int start = name.length();
+            int syllables = 2 + random.nextInt(3);
+            for (int i = 0; i < syllables; i++) {
+                name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            name.setCharAt(start, Character.toUpperCase(name.charAt(start)));
+        }
+        return name.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FuzzyArtistBenchmark.class.getSimpleName()).build()).run();
+    }
+}
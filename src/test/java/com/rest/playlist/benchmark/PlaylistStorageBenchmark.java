@@ -0,0 +1,194 @@
+package com.rest.playlist.benchmark;
+
+import com.rest.playlist.repository.PackedSongIds;
+import com.rest.playlist.repository.PlaylistMemberJdbcRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Song ids of one large playlist kept as songs_playlist rows (indexed on playlist_id, position, song_id)
+ * against one packed playlist_packed_songs row : whole playlist load, one page from its middle,
+ * and appending a song. Both tables live in the same in-memory H2 database, result reuse disabled.
+ * Run its main method on the test classpath (after mvn test-compile).
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlaylistStorageBenchmark {
+
+    private static final long PLAYLIST_ID = 1L;
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"10000", "100000"})
+    private int songs;
+
+    private Connection connection;
+    private PreparedStatement selectRows;
+    private PreparedStatement selectRowsPage;
+    private PreparedStatement insertRow;
+    private PreparedStatement deleteRow;
+    private PreparedStatement selectPacked;
+    private PreparedStatement updatePacked;
+    private long middlePosition;
+    private long middleSongId;
+    private long lastPosition;
+
+    @Setup
+    public void setup() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:storage;DB_CLOSE_DELAY=-1;OPTIMIZE_REUSE_RESULTS=FALSE");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table songs_playlist (playlist_id bigint, song_id bigint, position bigint)");
+            statement.execute("create index songs_playlist_position_idx on songs_playlist (playlist_id, position, song_id)");
+            statement.execute("create table playlist_packed_songs (playlist_id bigint primary key, song_count int, song_ids bytea)");
+        }
+        // songs added in batches of close ids, as a playlist grows over time
+        Random random = new Random(42);
+        List<Long> songIds = new ArrayList<>();
+        long songId = 1;
+        while (songIds.size() < songs) {
+            songId += random.nextInt(500);
+            for (int i = 0; i < 20 && songIds.size() < songs; i++) {
+                songIds.add(songId++);
+            }
+        }
+        try (PreparedStatement insert = connection.prepareStatement("insert into songs_playlist values (?, ?, ?)")) {
+            for (int i = 0; i < songIds.size(); i++) {
+                insert.setLong(1, PLAYLIST_ID);
+                insert.setLong(2, songIds.get(i));
+                insert.setLong(3, (i + 1) * PlaylistMemberJdbcRepository.POSITION_GAP);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        byte[] packed = PackedSongIds.pack(songIds);
+        try (PreparedStatement insert = connection.prepareStatement("insert into playlist_packed_songs values (?, ?, ?)")) {
+            insert.setLong(1, PLAYLIST_ID);
+            insert.setInt(2, songIds.size());
+            insert.setBytes(3, packed);
+            insert.executeUpdate();
+        }
+        System.out.printf("%n%d song ids : %d packed bytes, %d bytes of (playlist_id, song_id, position) rows%n",
+                songIds.size(), packed.length, songIds.size() * 3L * Long.BYTES);
+
+        middlePosition = (songs / 2) * PlaylistMemberJdbcRepository.POSITION_GAP;
+        middleSongId = songIds.get(songs / 2 - 1);
+        lastPosition = songs * PlaylistMemberJdbcRepository.POSITION_GAP;
+
+        selectRows = connection.prepareStatement(
+                "select song_id from songs_playlist where playlist_id = ? order by playlist_id, position, song_id");
+        selectRowsPage = connection.prepareStatement(
+                "select song_id, position from songs_playlist where playlist_id = ? and position >= ? and (position > ? or (position = ? and song_id > ?)) " +
+                        "order by playlist_id, position, song_id limit ?");
+        insertRow = connection.prepareStatement("insert into songs_playlist values (?, ?, ?)");
+        deleteRow = connection.prepareStatement("delete from songs_playlist where playlist_id = ? and position = ?");
+        selectPacked = connection.prepareStatement("select song_ids from playlist_packed_songs where playlist_id = ?");
+        updatePacked = connection.prepareStatement(
+                "update playlist_packed_songs set song_count = ?, song_ids = ? where playlist_id = ?");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop table songs_playlist");
+            statement.execute("drop table playlist_packed_songs");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public List<Long> loadRows() throws SQLException {
+        selectRows.setLong(1, PLAYLIST_ID);
+        List<Long> songIds = new ArrayList<>(songs);
+        try (ResultSet rs = selectRows.executeQuery()) {
+            while (rs.next()) {
+                songIds.add(rs.getLong(1));
+            }
+        }
+        return songIds;
+    }
+
+    @Benchmark
+    public List<Long> loadPacked() throws SQLException {
+        return PackedSongIds.unpack(readPacked());
+    }
+
+    @Benchmark
+    public List<Long> middlePageOfRows() throws SQLException {
+        selectRowsPage.setLong(1, PLAYLIST_ID);
+        selectRowsPage.setLong(2, middlePosition);
+        selectRowsPage.setLong(3, middlePosition);
+        selectRowsPage.setLong(4, middlePosition);
+        selectRowsPage.setLong(5, middleSongId);
+        selectRowsPage.setInt(6, PAGE_SIZE);
+        List<Long> songIds = new ArrayList<>(PAGE_SIZE);
+        try (ResultSet rs = selectRowsPage.executeQuery()) {
+            while (rs.next()) {
+                songIds.add(rs.getLong(1));
+            }
+        }
+        return songIds;
+    }
+
+    @Benchmark
+    public List<Long> middlePageOfPacked() throws SQLException {
+        return PackedSongIds.unpack(readPacked(), songs / 2, PAGE_SIZE);
+    }
+
+    /**
+     * the appended row is deleted again so every invocation sees the same playlist
+     */
+    @Benchmark
+    public int appendRow() throws SQLException {
+        insertRow.setLong(1, PLAYLIST_ID);
+        insertRow.setLong(2, Long.MAX_VALUE);
+        insertRow.setLong(3, lastPosition + PlaylistMemberJdbcRepository.POSITION_GAP);
+        int inserted = insertRow.executeUpdate();
+        deleteRow.setLong(1, PLAYLIST_ID);
+        deleteRow.setLong(2, lastPosition + PlaylistMemberJdbcRepository.POSITION_GAP);
+        return inserted + deleteRow.executeUpdate();
+    }
+
+    /**
+     * read-modify-write of the whole packed row, the appended id is left out of the write
+     * so every invocation sees the same playlist
+     */
+    @Benchmark
+    public int appendPacked() throws SQLException {
+        List<Long> songIds = PackedSongIds.unpack(readPacked());
+        songIds.add(Long.MAX_VALUE);
+        byte[] packed = PackedSongIds.pack(songIds.subList(0, songIds.size() - 1));
+        updatePacked.setInt(1, songIds.size() - 1);
+        updatePacked.setBytes(2, packed);
+        updatePacked.setLong(3, PLAYLIST_ID);
+        return updatePacked.executeUpdate();
+    }
+
+    private byte[] readPacked() throws SQLException {
+        selectPacked.setLong(1, PLAYLIST_ID);
+        try (ResultSet rs = selectPacked.executeQuery()) {
+            rs.next();
+            return rs.getBytes(1);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PlaylistStorageBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,120 @@
+package com.rest.playlist.benchmark;
+
+import com.rest.playlist.PlaylistApplication;
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Playlist;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.repository.SongRepository;
+import com.rest.playlist.service.IPlaylistService;
+import com.rest.playlist.service.ISongService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Songs and playlists created through the application on an in-memory H2 database, with the ids and
+ * inserts of before (sequence : one nextval per row, no JDBC batching) and after (pooled : one nextval
+ * per block of 50 ids, inserts of songs and songs_playlist rows batched by 50 and ordered).
+ * Each mode boots its own application context. Run its main method on the test classpath (after mvn test-compile).
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SongCreateBenchmark {
+
+    private static final int SONGS_PER_TRANSACTION = 100;
+
+    @Param({"sequence", "pooled"})
+    private String idGeneration;
+
+    private ConfigurableApplicationContext context;
+    private ISongService songService;
+    private IPlaylistService playlistService;
+    private SongRepository songRepository;
+    private TransactionTemplate transactionTemplate;
+    private List<Song> playlistSongs;
+
+    @Setup
+    public void setup() {
+        boolean pooled = idGeneration.equals("pooled");
+        context = new SpringApplicationBuilder(PlaylistApplication.class)
+                .properties("spring.datasource.url=jdbc:h2:mem:create-" + idGeneration,
+                        "spring.jpa.show-sql=false",
+                        "spring.jpa.properties.hibernate.generate_statistics=false",
+                        "playlist.id.block-size=" + (pooled ? 50 : 1),
+                        "spring.jpa.properties.hibernate.jdbc.batch_size=" + (pooled ? 50 : 0),
+                        "spring.jpa.properties.hibernate.order_inserts=" + pooled,
+                        "spring.jpa.properties.hibernate.order_updates=" + pooled)
+                .run();
+        songService = context.getBean(ISongService.class);
+        playlistService = context.getBean(IPlaylistService.class);
+        songRepository = context.getBean(SongRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        playlistSongs = songRepository.saveAll(newSongs());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * one song per transaction : POST /api/songs
+     */
+    @Benchmark
+    public Song createSong() {
+        return songService.createSong(newSong(0));
+    }
+
+    @Benchmark
+    public List<Song> createSongs() {
+        return transactionTemplate.execute(status -> songRepository.saveAll(newSongs()));
+    }
+
+    /**
+     * one playlist holding 100 existing songs : one playlists row and 100 songs_playlist rows
+     */
+    @Benchmark
+    public Playlist createPlaylist() {
+        Playlist playlist = new Playlist();
+        playlist.setTitle("Benchmark Playlist");
+        playlist.setDescription("Create throughput");
+        playlist.setSongs(new ArrayList<>(playlistSongs));
+        return playlistService.createPlaylist(playlist);
+    }
+
+    private static List<Song> newSongs() {
+        List<Song> songs = new ArrayList<>(SONGS_PER_TRANSACTION);
+        for (int i = 0; i < SONGS_PER_TRANSACTION; i++) {
+            songs.add(newSong(i));
+        }
+        return songs;
+    }
+
+    private static Song newSong(int i) {
+        Song song = new Song();
+        song.setTitle("Created Song " + i);
+        song.setDescription("Create throughput");
+        song.setCategory(SongCategory.values()[i % SongCategory.values().length]);
+        song.setArtistName("Benchmark Artist " + (i % 10));
+        song.setDuration("3:0" + (i % 10));
+        return song;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SongCreateBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,61 @@
+package com.rest.playlist.benchmark;
+
+import com.rest.playlist.PlaylistApplication;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boot of the application on an existing schema (an in-memory H2 database kept across boots), with the schema
+ * handling of before (update : Hibernate introspects every table, column, foreign key and sequence and
+ * compares them with the mappings) and after (migrations : Flyway reads its history table, Hibernate validates).
+ * Each boot builds a whole application context : the difference is what the schema handling costs.
+ * Run its main method on the test classpath (after mvn test-compile).
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+
+    @Param({"update", "migrations"})
+    private String schema;
+
+    private String url;
+
+    @Setup
+    public void setup() {
+        url = "jdbc:h2:mem:startup-" + schema + ";DB_CLOSE_DELAY=-1";
+        // the first boot creates the schema through the migrations, the measured ones find it in place
+        boot("migrations").close();
+    }
+
+    @Benchmark
+    public void start() {
+        boot(schema).close();
+    }
+
+    private ConfigurableApplicationContext boot(String mode) {
+        boolean migrations = mode.equals("migrations");
+        return new SpringApplicationBuilder(PlaylistApplication.class)
+                .properties("spring.datasource.url=" + url,
+                        "server.port=0",
+                        "spring.jpa.show-sql=false",
+                        "spring.jpa.properties.hibernate.generate_statistics=false",
+                        "spring.flyway.enabled=" + migrations,
+                        "spring.jpa.hibernate.ddl-auto=" + (migrations ? "validate" : "update"))
+                .run();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StartupBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,69 @@
+package com.rest.playlist.benchmark;
+
+import com.rest.playlist.search.PrefixIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Typeahead completions on one keystroke : sampled, so the report gives the p99 latency.
+ * Run its main method on the test classpath (after mvn test-compile).
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SuggestBenchmark {
+
+    private static final String[] SYLLABLES = {"sa", "mi", "th", "le", "an", "bri", "dge", "ko", "ra", "vel", "ton", "is", "ak"};
+
+    @Param({"100000"})
+    private int songs;
+
+    @Param({"s", "sa", "sami"})
+    private String prefix;
+
+    private PrefixIndex index;
+
+    @Setup
+    public void setup() {
+        index = new PrefixIndex();
+        Random random = new Random(42);
+        for (int id = 1; id <= songs; id++) {
+            index.add(id, randomName(random));
+        }
+    }
+
+    @Benchmark
+    public List<PrefixIndex.Completion> complete() {
+        return index.complete(prefix, PrefixIndex.MAX_COMPLETIONS);
+    }
+
+    private static String randomName(Random random) {
+        StringBuilder name = new StringBuilder();
+        for (int word = 0; word < 2; word++) {
+            if (word > 0) {
+                name.append(' ');
+            }
+            int start = name.length();
+            int syllables = 2 + random.nextInt(3);
+            for (int i = 0; i < syllables; i++) {
+                name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            name.setCharAt(start, Character.toUpperCase(name.charAt(start)));
+        }
+        return name.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SuggestBenchmark.class.getSimpleName()).build()).run();
+    }
+}
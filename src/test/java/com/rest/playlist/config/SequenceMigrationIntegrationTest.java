@@ -0,0 +1,85 @@
+package com.rest.playlist.config;
+
+import com.rest.playlist.model.Song;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * sequence DDL commits on its own : the migrated sequence is dropped after each test
+ */
+
+@SpringBootTest
+@RunWith(SpringRunner.class)
+public class SequenceMigrationIntegrationTest {
+
+    private static final String SEQUENCE = "migrated_seq";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setup() {
+        jdbcTemplate.execute("create sequence " + SEQUENCE + " start with 1 increment by 1");
+    }
+
+    @After
+    public void tearDown() {
+        jdbcTemplate.execute("drop sequence " + SEQUENCE);
+    }
+
+    @Test
+    public void testIdSequencesAreIncrementedByTheBlockSize() {
+        assertThat(incrementOf(Song.SEQUENCE)).isEqualTo(50);
+    }
+
+    @Test
+    public void testMigratedSequenceStartsAfterTheIdsHandedOut() {
+        for (int i = 0; i < 3; i++) {
+            nextValue();
+        }
+
+        new SequenceMigration(jdbcTemplate, Collections.singletonList(SEQUENCE), 50).afterPropertiesSet();
+
+        assertThat(incrementOf(SEQUENCE)).isEqualTo(50);
+        long first = nextValue();
+        assertThat(first).isGreaterThan(3);
+        assertThat(nextValue()).isEqualTo(first + 50);
+    }
+
+    @Test
+    public void testShrunkSequenceStartsAfterTheLastBlock() {
+        new SequenceMigration(jdbcTemplate, Collections.singletonList(SEQUENCE), 50).afterPropertiesSet();
+        long lastBlock = nextValue();
+
+        new SequenceMigration(jdbcTemplate, Collections.singletonList(SEQUENCE), 10).afterPropertiesSet();
+
+        assertThat(incrementOf(SEQUENCE)).isEqualTo(10);
+        assertThat(nextValue()).isGreaterThanOrEqualTo(lastBlock + 50);
+    }
+
+    @Test
+    public void testUnknownSequenceIsLeftToHibernate() {
+        new SequenceMigration(jdbcTemplate, Collections.singletonList("unknown_seq"), 50).afterPropertiesSet();
+        assertThat(jdbcTemplate.queryForList("select sequence_name from information_schema.sequences " +
+                "where lower(sequence_name) = 'unknown_seq'")).isEmpty();
+    }
+
+    private long incrementOf(String sequence) {
+        return Long.parseLong(jdbcTemplate.queryForObject("select increment from information_schema.sequences " +
+                "where lower(sequence_name) = ?", String.class, sequence));
+    }
+
+    private long nextValue() {
+        return jdbcTemplate.queryForObject("select nextval('" + SEQUENCE + "')", Long.class);
+    }
+}
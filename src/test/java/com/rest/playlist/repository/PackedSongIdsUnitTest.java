@@ -0,0 +1,42 @@
+package com.rest.playlist.repository;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PackedSongIdsUnitTest {
+
+    @Test
+    public void testPackAndUnpackKeepPlaylistOrder() {
+        List<Long> songIds = Arrays.asList(42L, 7L, 1_000_000L, 43L, Long.MAX_VALUE, 1L);
+        assertThat(PackedSongIds.unpack(PackedSongIds.pack(songIds))).containsExactlyElementsOf(songIds);
+    }
+
+    @Test
+    public void testCloseIdsTakeOneByteEach() {
+        List<Long> songIds = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            songIds.add(id);
+        }
+        assertThat(PackedSongIds.pack(songIds)).hasSize(1000);
+    }
+
+    @Test
+    public void testUnpackSlice() {
+        byte[] packed = PackedSongIds.pack(Arrays.asList(10L, 300L, 20L, 70_000L, 30L));
+        assertThat(PackedSongIds.unpack(packed, 1, 3)).containsExactly(300L, 20L, 70_000L);
+        assertThat(PackedSongIds.unpack(packed, 4, 10)).containsExactly(30L);
+        assertThat(PackedSongIds.unpack(packed, 5, 10)).isEmpty();
+    }
+
+    @Test
+    public void testEmptyPlaylist() {
+        assertThat(PackedSongIds.pack(Collections.emptyList())).isEmpty();
+        assertThat(PackedSongIds.unpack(new byte[0])).isEmpty();
+    }
+}
@@ -0,0 +1,37 @@
+package com.rest.playlist.repository;
+
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReturningDeleteUnitTest {
+
+    @Test
+    public void testDeleteReturningOnPostgreSql() throws SQLException {
+        assertThat(ReturningDelete.of(dataSource("PostgreSQL"), "songs_playlist", "song_id in (:songIds)", "playlist_id, song_id"))
+                .isEqualTo("delete from songs_playlist where song_id in (:songIds) returning playlist_id, song_id");
+    }
+
+    @Test
+    public void testSelectFromOldTableOnH2() throws SQLException {
+        assertThat(ReturningDelete.of(dataSource("H2"), "songs_playlist", "song_id in (:songIds)", "playlist_id, song_id"))
+                .isEqualTo("select playlist_id, song_id from old table (delete from songs_playlist where song_id in (:songIds))");
+    }
+
+    private static DataSource dataSource(String productName) throws SQLException {
+        DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+        when(metaData.getDatabaseProductName()).thenReturn(productName);
+        Connection connection = mock(Connection.class);
+        when(connection.getMetaData()).thenReturn(metaData);
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        return dataSource;
+    }
+}
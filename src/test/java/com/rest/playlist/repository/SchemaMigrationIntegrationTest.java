@@ -0,0 +1,196 @@
+package com.rest.playlist.repository;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Playlist;
+import com.rest.playlist.model.Song;
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.migration.Context;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * the schema comes from the versioned migrations (db/migration) and Hibernate only validates it :
+ * the plans H2 chooses for the queries of the application read the indexes they create
+ */
+
+@SpringBootTest
+@Transactional
+@RunWith(SpringRunner.class)
+public class SchemaMigrationIntegrationTest {
+
+    @Autowired
+    private Flyway flyway;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private SongRepository songRepository;
+
+    @Autowired
+    private PlaylistRepository playlistRepository;
+
+    @Test
+    public void testAllMigrationsAreApplied() {
+        assertThat(flyway.info().pending()).isEmpty();
+        assertThat(flyway.info().current().getVersion().getVersion()).isEqualTo("4");
+    }
+
+    @Test
+    public void testSongsByCategoryReadCategoryIndex() {
+        assertThat(planOf("select id from songs where category = 'POP'")).containsIgnoringCase("songs_category_idx");
+    }
+
+    @Test
+    public void testSongsByArtistNameReadArtistNameIndex() {
+        assertThat(planOf("select id from songs where artist_name = 'Sam Smith'"))
+                .containsIgnoringCase("songs_artist_name_idx");
+    }
+
+    @Test
+    public void testSongsUpdatedSinceReadUpdatedAtIndex() {
+        assertThat(planOf("select id from songs where updated_at > timestamp '2021-01-01 00:00:00'"))
+                .containsIgnoringCase("songs_updated_at_idx");
+        assertThat(planOf("select id from playlists where updated_at > timestamp '2021-01-01 00:00:00'"))
+                .containsIgnoringCase("playlists_updated_at_idx");
+    }
+
+    @Test
+    public void testSongsByCreationDateAreReadInIndexOrder() {
+        assertThat(planOf("select id from songs order by created_at, id limit 10"))
+                .containsIgnoringCase("songs_created_at_idx");
+    }
+
+    @Test
+    public void testPlaylistsOfSongReadSongIndex() {
+        assertThat(planOf("select playlist_id from songs_playlist where song_id = 1 and playlist_id > 0 " +
+                "order by song_id, playlist_id limit 10")).containsIgnoringCase("songs_playlist_song_idx");
+    }
+
+    @Test
+    public void testPackedPlaylistsOfSongReadPrimaryKey() {
+        assertThat(planOf("select playlist_id from playlist_packed_song_members where song_id = 1 and playlist_id > 0 " +
+                "order by song_id, playlist_id limit 10")).containsIgnoringCase("primary_key");
+    }
+
+    /**
+     * H2 prefers songs_playlist_position_idx, which holds the position, to the primary key :
+     * the lookup reads the rows of one playlist without going back to the table
+     */
+    @Test
+    public void testSongOfPlaylistReadsPositionIndex() {
+        assertThat(planOf("select position from songs_playlist where playlist_id = 1 and song_id = 2"))
+                .containsIgnoringCase("songs_playlist_position_idx");
+    }
+
+    @Test
+    public void testSongIsInPlaylistOnce() {
+        Song song = new Song();
+        song.setTitle("For The Lover That I Lost");
+        song.setDescription("Live At Abbey Road Studios");
+        song.setCategory(SongCategory.POP);
+        song.setArtistName("Sam Smith");
+        song.setDuration("3:01");
+        song = songRepository.saveAndFlush(song);
+        Playlist playlist = new Playlist();
+        playlist.setTitle("Primary Key Playlist");
+        playlist.setDescription("One row per song");
+        playlist.setSongs(new ArrayList<>(Collections.singletonList(song)));
+        playlist = playlistRepository.saveAndFlush(playlist);
+
+        Long playlistId = playlist.getId();
+        Long songId = song.getId();
+        assertThrows(DuplicateKeyException.class, () -> jdbcTemplate.update(
+                "insert into songs_playlist (playlist_id, song_id, position) values (?, ?, ?)", playlistId, songId, 1L));
+    }
+
+    @Test
+    public void testPackedSongMembersAreFilledFromExistingPackedIds() throws Exception {
+        Playlist playlist = new Playlist();
+        playlist.setTitle("Packed Before Migration");
+        playlist.setDescription("Filled by V4");
+        playlist = playlistRepository.saveAndFlush(playlist);
+        Long playlistId = playlist.getId();
+        jdbcTemplate.update("insert into playlist_packed_songs (playlist_id, song_count, song_ids) values (?, ?, ?)",
+                playlistId, 3, PackedSongIds.pack(Arrays.asList(7L, 3L, 7L)));
+
+        Context context = mock(Context.class);
+        when(context.getConnection()).thenReturn(DataSourceUtils.getConnection(dataSource));
+        new PackedSongMembersMigration().migrate(context);
+
+        assertThat(jdbcTemplate.queryForList("select song_id from playlist_packed_song_members where playlist_id = ?",
+                Long.class, playlistId)).containsExactlyInAnyOrder(3L, 7L);
+    }
+
+    /**
+     * a database left by ddl-auto=update before the versioned migrations : no version, no position,
+     * no storage, no packed ids nor change log, and a pair stored from both sides of the association
+     */
+    @Test
+    public void testSchemaLeftByHibernateIsUpgraded() {
+        DriverManagerDataSource preSeriesDataSource =
+                new DriverManagerDataSource("jdbc:h2:mem:pre_series_playlist_song_db;DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate preSeries = new JdbcTemplate(preSeriesDataSource);
+        try {
+            preSeries.execute("create sequence song_seq start with 1 increment by 1");
+            preSeries.execute("create sequence playlist_seq start with 1 increment by 1");
+            preSeries.execute("create table songs (id bigint not null, created_at timestamp not null, updated_at timestamp, " +
+                    "artist_name varchar(255), category varchar(255), description varchar(255), duration varchar(255), " +
+                    "title varchar(255), primary key (id))");
+            preSeries.execute("create table playlists (id bigint not null, created_at timestamp not null, " +
+                    "updated_at timestamp, description varchar(255), title varchar(255), primary key (id))");
+            preSeries.execute("create table songs_playlist (playlist_id bigint not null references playlists (id), " +
+                    "song_id bigint not null references songs (id))");
+            preSeries.update("insert into songs (id, created_at, title, description, duration, artist_name, category) " +
+                    "values (1, current_timestamp, 'Lay Me Down', 'In The Lonely Hour', '3:40', 'Sam Smith', 'POP')");
+            preSeries.update("insert into playlists (id, created_at, title, description) " +
+                    "values (1, current_timestamp, 'Before Migrations', 'Left by update')");
+            preSeries.update("insert into songs_playlist (playlist_id, song_id) values (1, 1)");
+            preSeries.update("insert into songs_playlist (playlist_id, song_id) values (1, 1)");
+
+            Flyway.configure()
+                    .dataSource(preSeriesDataSource)
+                    .baselineOnMigrate(true)
+                    .baselineVersion("0")
+                    .javaMigrations(new PackedSongMembersMigration())
+                    .load()
+                    .migrate();
+
+            assertThat(preSeries.queryForObject("select version from songs where id = 1", Long.class)).isZero();
+            assertThat(preSeries.queryForObject("select version from playlists where id = 1", Long.class)).isZero();
+            assertThat(preSeries.queryForObject("select song_storage from playlists where id = 1", String.class))
+                    .isEqualTo("ROWS");
+            assertThat(preSeries.queryForList("select position from songs_playlist where playlist_id = 1", Long.class))
+                    .containsExactly(PlaylistMemberJdbcRepository.POSITION_GAP);
+            assertThat(preSeries.queryForObject("select count(*) from playlist_changes", Long.class)).isZero();
+            assertThat(preSeries.queryForObject("select count(*) from playlist_packed_song_members", Long.class)).isZero();
+        } finally {
+            preSeries.execute("drop all objects");
+        }
+    }
+
+    private String planOf(String query) {
+        return jdbcTemplate.queryForObject("explain " + query, String.class);
+    }
+}
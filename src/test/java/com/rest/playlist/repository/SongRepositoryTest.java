@@ -8,6 +8,7 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.util.List;
@@ -55,6 +56,21 @@ public class SongRepositoryTest {
         assertThat(songs.get(songs.size() - 1).getId()).isNotNull();
     }
 
+    @Test
+    public void shouldFindSongsAfterId() {
+        List<Song> songs = songRepository.findByIdGreaterThanOrderByIdAsc(savedSong.getId() - 1, PageRequest.of(0, 1));
+        assertThat(songs).containsExactly(savedSong);
+        assertThat(songRepository.findByIdGreaterThanOrderByIdAsc(savedSong.getId(), PageRequest.of(0, 1))).isEmpty();
+    }
+
+    @Test
+    public void shouldFindSongsCreatedAfter() {
+        List<Song> songs = songRepository.findSongsCreatedAfter(savedSong.getCreateAt(), savedSong.getId() - 1, PageRequest.of(0, 10));
+        assertThat(songs).contains(savedSong);
+        songs = songRepository.findSongsCreatedAfter(savedSong.getCreateAt(), savedSong.getId(), PageRequest.of(0, 10));
+        assertThat(songs).doesNotContain(savedSong);
+    }
+
     @Test
     public void shouldFindSongsByCategory() {
         List<Song> songs = songRepository.findSongsByCategory(savedSong.getCategory());
@@ -0,0 +1,51 @@
+package com.rest.playlist.resource.cache;
+
+import com.rest.playlist.dto.CacheRegionReport;
+import com.rest.playlist.service.CacheStatisticsService;
+import com.rest.playlist.web.resource.CacheResource;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(controllers = CacheResource.class)
+public class CacheResourceUnitTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private CacheStatisticsService cacheStatisticsService;
+
+    @Test
+    public void testGetCacheStatistics() throws Exception {
+        CacheRegionReport report = new CacheRegionReport("com.rest.playlist.model.Song", 120, 8, 93.75f, 8, 1, 0);
+        when(cacheStatisticsService.getRegionReports()).thenReturn(Collections.singletonList(report));
+
+        mockMvc.perform(get("/api/cache/statistics")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].region").value("com.rest.playlist.model.Song"))
+                .andExpect(jsonPath("$[0].hits").value(120))
+                .andExpect(jsonPath("$[0].misses").value(8))
+                .andExpect(jsonPath("$[0].hitPercentage").value(93.75))
+                .andExpect(jsonPath("$[0].evictions").value(0));
+        verify(cacheStatisticsService, times(1)).getRegionReports();
+    }
+}
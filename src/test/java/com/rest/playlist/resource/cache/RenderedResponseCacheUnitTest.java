@@ -0,0 +1,165 @@
+package com.rest.playlist.resource.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.rest.playlist.web.resource.RenderedResponseCache;
+import com.rest.playlist.web.resource.RenderedResponseCache.RenderedResponse;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RenderedResponseCacheUnitTest {
+
+    private static final MediaType CBOR = MediaType.valueOf("application/cbor");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<HttpMessageConverter<?>> converters = Arrays.asList(
+            new StringHttpMessageConverter(),
+            new MappingJackson2HttpMessageConverter(objectMapper),
+            new MappingJackson2CborHttpMessageConverter(new ObjectMapper(new CBORFactory())));
+
+    @Test
+    public void testRendersOncePerVersion() throws Exception {
+        RenderedResponseCache cache = new RenderedResponseCache(1 << 20, converters);
+        AtomicInteger renders = new AtomicInteger();
+
+        RenderedResponse first = cache.getOrRender(1L, "4", request(null, null), () -> song(renders, "Summer Rain"));
+        RenderedResponse second = cache.getOrRender(1L, "4", request(null, null), () -> song(renders, "Summer Rain"));
+        RenderedResponse updated = cache.getOrRender(1L, "5", request(null, null), () -> song(renders, "Winter Rain"));
+
+        assertThat(second).isSameAs(first);
+        assertThat(new String(updated.getBody())).isEqualTo("{\"title\":\"Winter Rain\"}");
+        assertThat(renders).hasValue(2);
+        assertThat(cache.get(1L, MediaType.APPLICATION_JSON, "4")).isNull();
+    }
+
+    @Test
+    public void testRendersTheAcceptedMediaType() throws Exception {
+        RenderedResponseCache cache = new RenderedResponseCache(1 << 20, converters);
+        AtomicInteger renders = new AtomicInteger();
+
+        RenderedResponse cbor = cache.getOrRender(1L, "4", request("application/cbor", null), () -> song(renders, "Summer Rain"));
+        RenderedResponse json = cache.getOrRender(1L, "4", request("*/*", null), () -> song(renders, "Summer Rain"));
+        RenderedResponse preferred = cache.getOrRender(1L, "4",
+                request("application/json;q=0.5, application/cbor", null), () -> song(renders, "Summer Rain"));
+
+        assertThat(cbor.getMediaType()).isEqualTo(CBOR);
+        assertThat(json.getMediaType()).isEqualTo(MediaType.APPLICATION_JSON);
+        assertThat(preferred).isSameAs(cbor);
+        assertThat(renders).hasValue(2);
+        assertThat(new ObjectMapper(new CBORFactory()).readValue(cbor.getBody(), Map.class))
+                .containsEntry("title", "Summer Rain");
+        assertThat(cbor.getBody().length).isLessThan(json.getBody().length);
+        assertThatThrownBy(() -> cache.getOrRender(1L, "4", request("text/html", null), () -> song(renders, "Summer Rain")))
+                .isInstanceOf(HttpMediaTypeNotAcceptableException.class);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyReadBeyondBudget() {
+        RenderedResponseCache sizing = new RenderedResponseCache(1 << 20, converters);
+        sizing.put(1L, render("1", Collections.singletonMap("title", "Summer Rain")));
+        long budget = sizing.bytes() * 10;
+        RenderedResponseCache cache = new RenderedResponseCache(budget, converters);
+        for (long id = 1; id <= 20; id++) {
+            cache.put(id, render("1", Collections.singletonMap("title", "Summer Rain")));
+            cache.get(1L, MediaType.APPLICATION_JSON, "1");
+        }
+
+        assertThat(cache.bytes()).isLessThanOrEqualTo(budget);
+        assertThat(cache.size()).isEqualTo(10);
+        assertThat(cache.get(1L, MediaType.APPLICATION_JSON, "1")).isNotNull();
+        assertThat(cache.get(2L, MediaType.APPLICATION_JSON, "1")).isNull();
+        assertThat(cache.get(20L, MediaType.APPLICATION_JSON, "1")).isNotNull();
+    }
+
+    @Test
+    public void testEvictEveryMediaType() throws Exception {
+        RenderedResponseCache cache = new RenderedResponseCache(1 << 20, converters);
+        cache.getOrRender(1L, "1", request("application/json", null), () -> Collections.singletonMap("title", "Summer Rain"));
+        cache.getOrRender(1L, "1", request("application/cbor", null), () -> Collections.singletonMap("title", "Summer Rain"));
+        assertThat(cache.size()).isEqualTo(2);
+
+        cache.evict(1L);
+
+        assertThat(cache.get(1L, MediaType.APPLICATION_JSON, "1")).isNull();
+        assertThat(cache.get(1L, CBOR, "1")).isNull();
+        assertThat(cache.bytes()).isZero();
+    }
+
+    @Test
+    public void testLargeResponsesAreServedGzipped() throws IOException {
+        List<String> titles = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            titles.add("Ordered Song " + i);
+        }
+        RenderedResponse large = render("1", titles);
+        RenderedResponse small = render("1", titles.subList(0, 2));
+        assertThat(small.getGzip()).isNull();
+        assertThat(large.getGzip().length).isLessThan(large.getBody().length / 4);
+        assertThat(gunzip(large.getGzip())).isEqualTo(large.getBody());
+
+        ResponseEntity<byte[]> gzipped = RenderedResponseCache.toResponseEntity(large, request(null, "deflate, gzip;q=0.8"));
+        assertThat(gzipped.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(gzipped.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+        assertThat(gzipped.getBody()).isSameAs(large.getGzip());
+
+        ResponseEntity<byte[]> refused = RenderedResponseCache.toResponseEntity(large, request(null, "gzip;q=0"));
+        assertThat(refused.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)).isFalse();
+        assertThat(refused.getBody()).isSameAs(large.getBody());
+        assertThat(RenderedResponseCache.toResponseEntity(small, request(null, "gzip")).getBody()).isSameAs(small.getBody());
+    }
+
+    private RenderedResponse render(String tag, Object resource) {
+        return RenderedResponse.render(tag, MediaType.APPLICATION_JSON, objectMapper, resource);
+    }
+
+    private static Object song(AtomicInteger renders, String title) {
+        renders.incrementAndGet();
+        return Collections.singletonMap("title", title);
+    }
+
+    private static ServletWebRequest request(String accept, String acceptEncoding) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (accept != null) {
+            request.addHeader(HttpHeaders.ACCEPT, accept);
+        }
+        if (acceptEncoding != null) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        return new ServletWebRequest(request);
+    }
+
+    private static byte[] gunzip(byte[] gzip) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -8,16 +8,20 @@ import com.rest.playlist.repository.PlaylistRepository;
 import com.rest.playlist.web.resource.PlaylistResource;
 import com.rest.playlist.service.IPlaylistService;
 import com.rest.playlist.service.ISongService;
+import com.rest.playlist.service.io.TransferFormat;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.util.Arrays;
@@ -28,8 +32,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasSize;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @SpringBootTest
 @RunWith(SpringRunner.class)
@@ -41,6 +44,9 @@ public class PlaylistResourceIntegrationTest {
     @Autowired
     private ServiceExceptionHandler serviceExceptionHandler;
 
+    @Autowired
+    private HttpMessageConverters messageConverters;
+
     @Autowired
     private PlaylistRepository playlistRepository;
 
@@ -55,7 +61,7 @@ public class PlaylistResourceIntegrationTest {
     @Before
     public void setup() {
 
-        PlaylistResource playlistResource = new PlaylistResource(playlistService);
+        PlaylistResource playlistResource = new PlaylistResource(playlistService, messageConverters, 1 << 20);
         this.mockMvc = MockMvcBuilders.standaloneSetup(playlistResource)
                 .setControllerAdvice(serviceExceptionHandler)
                 .build();
@@ -104,6 +110,26 @@ public class PlaylistResourceIntegrationTest {
     }
 
 
+    @Test
+    public void testExportPlaylists() throws Exception {
+        Playlist savedPlaylist = playlistRepository.saveAndFlush(myPlaylist);
+        try {
+            MvcResult result = mockMvc.perform(get("/api/playlists/export"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            String body = mockMvc.perform(asyncDispatch(result))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(TransferFormat.NDJSON.getMediaType()))
+                    .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"playlists.ndjson\""))
+                    .andReturn().getResponse().getContentAsString();
+
+            assertThat(body.split("\n")).hasSize((int) playlistRepository.count());
+            assertThat(body).contains("\"title\":\"Playlist1\"", "\"title\":\"Summer Rain\"");
+        } finally {
+            playlistRepository.delete(savedPlaylist);
+        }
+    }
+
     @Test
     public void testGetPlaylistsByTitle() throws Exception {
         Playlist savedPlaylist = playlistRepository.saveAndFlush(myPlaylist);
@@ -1,9 +1,16 @@
 package com.rest.playlist.resource.playlist;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rest.playlist.dto.ResourceVersion;
+import com.rest.playlist.dto.Suggestion;
 import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.web.exception.BadRequestException;
+import com.rest.playlist.web.exception.ConflictException;
 import com.rest.playlist.web.exception.ResourceNotFoundException;
 import com.rest.playlist.model.Playlist;
 import com.rest.playlist.model.Song;
+import com.rest.playlist.pagination.CursorPage;
+import com.rest.playlist.projection.Projection;
 import com.rest.playlist.web.resource.PlaylistResource;
 import com.rest.playlist.service.IPlaylistService;
 import com.rest.playlist.service.ISongService;
@@ -15,18 +22,29 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static com.rest.playlist.TestUtils.asJsonString;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -36,6 +54,9 @@ public class PlaylistResourceUnitTest {
 
     private static final Logger log = LoggerFactory.getLogger(PlaylistResourceUnitTest.class);
 
+    private static final ResourceVersion PLAYLIST_VERSION =
+            new ResourceVersion("3-2-5", Instant.parse("2026-11-15T10:00:00Z"));
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -77,21 +98,56 @@ public class PlaylistResourceUnitTest {
     @Test
     public void testGetAllPlaylists() throws Exception {
         playlistList.add(myPlaylist);
-        when(playlistService.getAllPlaylists()).thenReturn(playlistList);
+        when(playlistService.getAllPlaylists(null, 100, null)).thenReturn(new CursorPage<>(playlistList, null));
 
         mockMvc.perform(get("/api/playlists")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
                 .andExpect(jsonPath("$", hasSize(1)))
                 .andExpect(jsonPath("$[*].title").value(playlistList.get(0).getTitle()))
                 .andExpect(jsonPath("$[*].description").value(playlistList.get(0).getDescription()));
-        verify(playlistService).getAllPlaylists();
-        verify(playlistService, times(1)).getAllPlaylists();
+        verify(playlistService).getAllPlaylists(null, 100, null);
+        verify(playlistService, times(1)).getAllPlaylists(null, 100, null);
+    }
+
+    @Test
+    public void testGetAllPlaylistsWithNextCursor() throws Exception {
+        playlistList.add(myPlaylist);
+        when(playlistService.getAllPlaylists(null, 1, "createdAt")).thenReturn(new CursorPage<>(playlistList, "Y3JlYXRlZEF0"));
+
+        mockMvc.perform(get("/api/playlists?limit=1&sort=createdAt")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "Y3JlYXRlZEF0"))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[*].title").value(playlistList.get(0).getTitle()));
+    }
+
+    @Test
+    public void testGetAllPlaylistsWithFieldsAndSongs() throws Exception {
+        Projection playlist = new Projection(null)
+                .put("id", 1000L)
+                .put("title", myPlaylist.getTitle())
+                .put("songs", Collections.singletonList(new Projection(null).put("id", 7L).put("title", "Summer Rain")));
+        when(playlistService.getAllPlaylists(null, 100, null, "title,songs.title", "songs"))
+                .thenReturn(new CursorPage<>(Collections.singletonList(playlist), null));
+
+        mockMvc.perform(get("/api/playlists?fields=title,songs.title&expand=songs")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].title").value(myPlaylist.getTitle()))
+                .andExpect(jsonPath("$[0].description").doesNotExist())
+                .andExpect(jsonPath("$[0].songs[0].id").value(7))
+                .andExpect(jsonPath("$[0].songs[0].title").value("Summer Rain"))
+                .andExpect(jsonPath("$[0].songs[0].artistName").doesNotExist());
+        verify(playlistService, never()).getAllPlaylists(null, 100, null);
     }
 
     @Test
     public void testGetEmptyListPlaylists() throws Exception {
-        when(playlistService.getAllPlaylists()).thenReturn(playlistList);
+        when(playlistService.getAllPlaylists(null, 100, null)).thenReturn(new CursorPage<>(playlistList, null));
 
         mockMvc.perform(get("/api/playlists")
                 .contentType(MediaType.APPLICATION_JSON))
@@ -122,22 +178,144 @@ public class PlaylistResourceUnitTest {
                 .andExpect(jsonPath("$", hasSize(0)));
     }
 
+    @Test
+    public void testSuggestPlaylists() throws Exception {
+        when(playlistService.suggestPlaylists("play", 5)).thenReturn(Arrays.asList(new Suggestion("Playlist1", "title", 1)));
+
+        mockMvc.perform(get("/api/playlists/suggest?prefix=play&limit=5")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].value").value("Playlist1"))
+                .andExpect(jsonPath("$[0].field").value("title"));
+        verify(playlistService, times(1)).suggestPlaylists("play", 5);
+    }
+
    @Test
     public void testGetPlaylistById() throws Exception {
         myPlaylist.setId(1000L);
-        when(playlistService.getPlaylistById(myPlaylist.getId())).thenReturn(myPlaylist);
+        when(playlistService.getPlaylistVersion(myPlaylist.getId(), true)).thenReturn(PLAYLIST_VERSION);
+        when(playlistService.getPlaylistById(myPlaylist.getId(), true)).thenReturn(myPlaylist);
 
         mockMvc.perform(get("/api/playlists/" + myPlaylist.getId())
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"3-2-5\""))
                 .andExpect(jsonPath("$.title").value(myPlaylist.getTitle()))
                 .andExpect(jsonPath("$.description").value(myPlaylist.getDescription()));
     }
 
+    @Test
+    public void testGetPlaylistByIdNotModified() throws Exception {
+        when(playlistService.getPlaylistVersion(1000L, true)).thenReturn(PLAYLIST_VERSION);
+
+        mockMvc.perform(get("/api/playlists/1000")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"3-2-5\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"3-2-5\""));
+        verify(playlistService, never()).getPlaylistById(anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void testGetPlaylistByIdIfModifiedSince() throws Exception {
+        when(playlistService.getPlaylistVersion(1000L, true)).thenReturn(PLAYLIST_VERSION);
+        when(playlistService.getPlaylistById(1000L, true)).thenReturn(myPlaylist);
+
+        mockMvc.perform(get("/api/playlists/1000")
+                .header(HttpHeaders.IF_MODIFIED_SINCE, "Sun, 15 Nov 2026 10:00:00 GMT"))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/api/playlists/1000")
+                .header(HttpHeaders.IF_MODIFIED_SINCE, "Sun, 15 Nov 2026 09:59:59 GMT"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value(myPlaylist.getTitle()));
+    }
+
+
+    @Test
+    public void testGetPlaylistByIdWithoutSongs() throws Exception {
+        myPlaylist.setId(1000L);
+        when(playlistService.getPlaylistVersion(myPlaylist.getId(), false)).thenReturn(PLAYLIST_VERSION);
+        when(playlistService.getPlaylistById(myPlaylist.getId(), false)).thenReturn(myPlaylist);
+
+        mockMvc.perform(get("/api/playlists/" + myPlaylist.getId() + "?includeSongs=false")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value(myPlaylist.getTitle()));
+        verify(playlistService, times(1)).getPlaylistById(myPlaylist.getId(), false);
+    }
+
+    @Test
+    public void testGetLargePlaylistByIdGzipped() throws Exception {
+        List<Song> songs = new ArrayList<>();
+        for (long i = 1; i <= 50; i++) {
+            Song song = new Song();
+            song.setId(i);
+            song.setTitle("Ordered Song " + i);
+            song.setCategory(SongCategory.POP);
+            song.setArtistName("Sam Smith");
+            songs.add(song);
+        }
+        myPlaylist.setId(2000L);
+        myPlaylist.setSongs(songs);
+        when(playlistService.getPlaylistVersion(2000L, true)).thenReturn(PLAYLIST_VERSION);
+        when(playlistService.getPlaylistById(2000L, true)).thenReturn(myPlaylist);
+
+        byte[] gzipped = mockMvc.perform(get("/api/playlists/2000")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"3-2-5\""))
+                .andReturn().getResponse().getContentAsByteArray();
+        mockMvc.perform(get("/api/playlists/2000"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"3-2-5\""))
+                .andExpect(jsonPath("$.songs", hasSize(50)));
+        // the tag only validates the version : the identity body is revalidated by the tag of the gzipped one
+        mockMvc.perform(get("/api/playlists/2000")
+                .header(HttpHeaders.IF_NONE_MATCH, "W/\"3-2-5\""))
+                .andExpect(status().isNotModified());
+
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(gzipped)), StandardCharsets.UTF_8)) {
+            assertThat(new ObjectMapper().readTree(reader).get("songs").size()).isEqualTo(50);
+        }
+        verify(playlistService, times(1)).getPlaylistById(2000L, true);
+    }
+
+    @Test
+    public void testGetPlaylistSongs() throws Exception {
+        Song song = new Song();
+        song.setId(7L);
+        song.setTitle("Summer Rain");
+        when(playlistService.getPlaylistSongs(1000L, null, 1))
+                .thenReturn(new CursorPage<>(Collections.singletonList(song), "cG9zaXRpb258MTA0ODU3Nnw3"));
+
+        mockMvc.perform(get("/api/playlists/1000/songs?limit=1")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "cG9zaXRpb258MTA0ODU3Nnw3"))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].title").value("Summer Rain"));
+        verify(playlistService, times(1)).getPlaylistSongs(1000L, null, 1);
+    }
+
+    @Test
+    public void testGetPlaylistSongsWithFields() throws Exception {
+        Projection song = new Projection(null).put("id", 7L).put("title", "Summer Rain");
+        when(playlistService.getPlaylistSongs(1000L, null, 100, "title"))
+                .thenReturn(new CursorPage<>(Collections.singletonList(song), null));
+
+        mockMvc.perform(get("/api/playlists/1000/songs?fields=title")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].title").value("Summer Rain"))
+                .andExpect(jsonPath("$[0].duration").doesNotExist());
+        verify(playlistService, never()).getPlaylistSongs(1000L, null, 100);
+    }
 
     @Test
     public void testGetPlaylistByNonExistingId() throws Exception {
-        doThrow(new ResourceNotFoundException("Not found Playlist with id = 1000")).when(playlistService).getPlaylistById(1000L);
+        doThrow(new ResourceNotFoundException("Not found Playlist with id = 1000")).when(playlistService).getPlaylistVersion(1000L, true);
         mockMvc.perform(get("/api/playlists/1000")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().is4xxClientError())
@@ -210,6 +388,42 @@ public class PlaylistResourceUnitTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    public void testUpdatePlaylistWithIfMatch() throws Exception {
+        myPlaylist.setId(1000L);
+        when(playlistService.updatePlaylist(any(Playlist.class), eq(2L))).thenReturn(myPlaylist);
+        mockMvc.perform(put("/api/playlists")
+                .header(HttpHeaders.IF_MATCH, "W/\"2-5-7\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(asJsonString(myPlaylist)))
+                .andExpect(status().isOk());
+        verify(playlistService).updatePlaylist(any(Playlist.class), eq(2L));
+    }
+
+    @Test
+    public void testUpdatePlaylistWithConflict() throws Exception {
+        myPlaylist.setId(1000L);
+        doThrow(new ConflictException("The title of the playlist was changed concurrently"))
+                .when(playlistService).updatePlaylist(any(Playlist.class), eq(2L));
+        mockMvc.perform(put("/api/playlists")
+                .header(HttpHeaders.IF_MATCH, "\"2-5-7\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(asJsonString(myPlaylist)))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.message").value("The title of the playlist was changed concurrently"));
+    }
+
+    @Test
+    public void testAddSongsLosingConcurrentWrites() throws Exception {
+        doThrow(new OptimisticLockingFailureException("Playlist with id = 1000 was changed concurrently"))
+                .when(playlistService).addSongs(1000L, Collections.singletonList(2000L));
+        mockMvc.perform(post("/api/playlists/1000/songs/2000"))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.message").value("Concurrent writes, please retry"));
+    }
+
     @Test
     public void testUpdatePlaylistWithTitleSizeLessThanThree() throws Exception {
         myPlaylist.setId(1000L);
@@ -263,6 +477,114 @@ public class PlaylistResourceUnitTest {
                 .andExpect(status().isNoContent());
     }
 
+    @Test
+    public void testAddSongToPlaylist() throws Exception {
+        mockMvc.perform(post("/api/playlists/1000/songs/7"))
+                .andExpect(status().isNoContent());
+        verify(playlistService, times(1)).addSongs(1000L, Collections.singletonList(7L));
+    }
+
+    @Test
+    public void testAddSongsToPlaylist() throws Exception {
+        mockMvc.perform(post("/api/playlists/1000/songs")
+                .content("[7, 8]")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNoContent());
+        verify(playlistService, times(1)).addSongs(1000L, Arrays.asList(7L, 8L));
+    }
+
+    @Test
+    public void testAddNotFoundSongsToPlaylist() throws Exception {
+        doThrow(new ResourceNotFoundException("Not found songs with ids = [7, 8]"))
+                .when(playlistService).addSongs(1000L, Arrays.asList(7L, 8L));
+        mockMvc.perform(post("/api/playlists/1000/songs")
+                .content("[7, 8]")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("message").value("Not found songs with ids = [7, 8]"));
+    }
+
+    @Test
+    public void testMoveSongInPlaylist() throws Exception {
+        mockMvc.perform(patch("/api/playlists/1000/songs/7/position")
+                .content("{\"after\": 8}")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNoContent());
+        verify(playlistService, times(1)).moveSong(1000L, 7L, 8L);
+    }
+
+    @Test
+    public void testMoveSongFirstInPlaylist() throws Exception {
+        mockMvc.perform(patch("/api/playlists/1000/songs/7/position")
+                .content("{}")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNoContent());
+        verify(playlistService, times(1)).moveSong(1000L, 7L, null);
+    }
+
+    @Test
+    public void testChangeSongStorage() throws Exception {
+        mockMvc.perform(put("/api/playlists/1000/storage?mode=packed"))
+                .andExpect(status().isNoContent());
+        verify(playlistService, times(1)).changeSongStorage(1000L, "packed");
+    }
+
+    @Test
+    public void testChangeSongStorageWithUnknownMode() throws Exception {
+        doThrow(new BadRequestException("Not supported storage with value = blob")).when(playlistService).changeSongStorage(1000L, "blob");
+        mockMvc.perform(put("/api/playlists/1000/storage?mode=blob"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("message").value("Not supported storage with value = blob"));
+    }
+
+    @Test
+    public void testCopyPlaylist() throws Exception {
+        Playlist copy = new Playlist();
+        copy.setId(1001L);
+        copy.setTitle("Playlist1");
+        copy.setDescription("Description Playlist1");
+        when(playlistService.copyPlaylist(1000L)).thenReturn(copy);
+        mockMvc.perform(post("/api/playlists/1000/copy"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("id").value(1001));
+        verify(playlistService, times(1)).copyPlaylist(1000L);
+    }
+
+    @Test
+    public void testCombinePlaylists() throws Exception {
+        Playlist combination = new Playlist();
+        combination.setId(1002L);
+        combination.setTitle("Playlist1");
+        combination.setDescription("intersect of 2 playlists");
+        when(playlistService.combinePlaylists("intersect", Arrays.asList(1000L, 1001L))).thenReturn(combination);
+        mockMvc.perform(post("/api/playlists/combine?op=intersect&ids=1000,1001"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("description").value("intersect of 2 playlists"));
+    }
+
+    @Test
+    public void testCombinePlaylistsWithUnknownOp() throws Exception {
+        when(playlistService.combinePlaylists("xor", Arrays.asList(1000L, 1001L)))
+                .thenThrow(new BadRequestException("Not supported op with value = xor"));
+        mockMvc.perform(post("/api/playlists/combine?op=xor&ids=1000,1001"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("message").value("Not supported op with value = xor"));
+    }
+
+    @Test
+    public void testRemoveSongFromPlaylist() throws Exception {
+        mockMvc.perform(delete("/api/playlists/1000/songs/7"))
+                .andExpect(status().isNoContent());
+        verify(playlistService, times(1)).removeSongs(1000L, Collections.singletonList(7L));
+    }
+
+    @Test
+    public void testRemoveSongsFromPlaylist() throws Exception {
+        mockMvc.perform(delete("/api/playlists/1000/songs?songIds=7,8"))
+                .andExpect(status().isNoContent());
+        verify(playlistService, times(1)).removeSongs(1000L, Arrays.asList(7L, 8L));
+    }
+
     @Test
     public void testDeleteNotFoundPlaylist() throws Exception {
         doThrow(new ResourceNotFoundException("Not found Playlist with id = 5000")).when(playlistService).deletePlaylistById(5000L);
@@ -6,26 +6,30 @@ import com.rest.playlist.model.Song;
 import com.rest.playlist.repository.SongRepository;
 import com.rest.playlist.web.resource.SongResource;
 import com.rest.playlist.service.ISongService;
+import com.rest.playlist.service.io.TransferFormat;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static com.rest.playlist.TestUtils.asJsonString;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasItem;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @SpringBootTest
 @RunWith(SpringRunner.class)
@@ -37,6 +41,9 @@ public class SongResourceIntegrationTest {
     @Autowired
     private ServiceExceptionHandler serviceExceptionHandler;
 
+    @Autowired
+    private HttpMessageConverters messageConverters;
+
     @Autowired
     private SongRepository songRepository;
 
@@ -48,7 +55,7 @@ public class SongResourceIntegrationTest {
     @Before
     public void setup() {
 
-        SongResource songResource = new SongResource(songService);
+        SongResource songResource = new SongResource(songService, messageConverters, 1 << 20);
         this.mockMvc = MockMvcBuilders.standaloneSetup(songResource)
                 .setControllerAdvice(serviceExceptionHandler)
                 .build();
@@ -249,6 +256,108 @@ public class SongResourceIntegrationTest {
     }
 
 
+    @Test
+    public void testImportSongsFromNdjson() throws Exception {
+        String body = "{\"title\":\"Bulk Song #1\",\"description\":\"Bulk upload\",\"duration\":\"3:01\",\"artistName\":\"Bulk Artist\",\"category\":\"POP\"}\n"
+                + "{\"title\":\"Bulk Song #2\",\"description\":\"Bulk upload\",\"duration\":\"3:02\",\"category\":\"JAZZ\"}\n"
+                + "\n"
+                + "{\"title\":\"Bulk Song #3\",\"description\":\"Bulk upload\",\"duration\":\"3:03\",\"artistName\":\"Bulk Artist\",\"category\":\"ROCK\"}\n"
+                + "{\"title\":\"Bulk Song #4\",\"description\":\"Bulk upload\",\"duration\":\"3:04\",\"artistName\":\"Bulk Artist\",\"category\":\"CLASSICAL\"}\n";
+        try {
+            mockMvc.perform(post("/api/songs/bulk")
+                    .contentType("application/x-ndjson")
+                    .content(body))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.received").value(4))
+                    .andExpect(jsonPath("$.imported").value(2))
+                    .andExpect(jsonPath("$.rejected").value(2))
+                    .andExpect(jsonPath("$.errors[0].line").value(2))
+                    .andExpect(jsonPath("$.errors[0].message").value("NotBlank: artistname ne doit pas être null"))
+                    .andExpect(jsonPath("$.errors[1].line").value(4));
+
+            List<String> titles = songRepository.findSongsByArtistNameContaining("Bulk Artist").stream()
+                    .map(Song::getTitle)
+                    .collect(Collectors.toList());
+            assertThat(titles).containsExactlyInAnyOrder("Bulk Song #1", "Bulk Song #4");
+        } finally {
+            songRepository.deleteAll(songRepository.findSongsByArtistNameContaining("Bulk Artist"));
+        }
+    }
+
+    @Test
+    public void testImportSongsFromCsv() throws Exception {
+        String body = "title,description,duration,artistName,category\n"
+                + "Bulk Csv #1,Bulk upload,3:01,Bulk Csv Artist,POP\n"
+                + "\"Bulk, Csv #2\",Bulk upload,3:02,Bulk Csv Artist,jazz\n"
+                + "B,Bulk upload,3:03,Bulk Csv Artist,POP\n";
+        try {
+            mockMvc.perform(post("/api/songs/bulk")
+                    .contentType("text/csv")
+                    .content(body))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.received").value(3))
+                    .andExpect(jsonPath("$.imported").value(1))
+                    .andExpect(jsonPath("$.errors[*].line").value(org.hamcrest.Matchers.contains(3, 4)))
+                    .andExpect(jsonPath("$.errors[1].message").value("Size: titre doit être compris entre 3 et 50 caractères"));
+
+            List<Song> songs = songRepository.findSongsByArtistNameContaining("Bulk Csv Artist");
+            assertThat(songs).hasSize(1);
+            assertThat(songs.get(0).getId()).isNotNull();
+            assertThat(songs.get(0).getTitle()).isEqualTo("Bulk Csv #1");
+        } finally {
+            songRepository.deleteAll(songRepository.findSongsByArtistNameContaining("Bulk Csv Artist"));
+        }
+    }
+
+    @Test
+    public void testExportSongsAsNdjson() throws Exception {
+        Song savedSong = songRepository.saveAndFlush(mySong);
+        try {
+            MvcResult result = mockMvc.perform(get("/api/songs/export"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            String body = mockMvc.perform(asyncDispatch(result))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(TransferFormat.NDJSON.getMediaType()))
+                    .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"songs.ndjson\""))
+                    .andReturn().getResponse().getContentAsString();
+
+            String[] lines = body.split("\n");
+            assertThat(lines).hasSize((int) songRepository.count());
+            assertThat(lines).anyMatch(line -> line.contains("\"id\":" + savedSong.getId() + ",")
+                    && line.contains("\"title\":\"For The Lover That I Lost\""));
+        } finally {
+            songRepository.delete(savedSong);
+        }
+    }
+
+    @Test
+    public void testExportSongsAsCsv() throws Exception {
+        Song savedSong = songRepository.saveAndFlush(mySong);
+        try {
+            MvcResult result = mockMvc.perform(get("/api/songs/export").param("format", "csv"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            String body = mockMvc.perform(asyncDispatch(result))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(TransferFormat.CSV.getMediaType()))
+                    .andReturn().getResponse().getContentAsString();
+
+            String[] lines = body.split("\n");
+            assertThat(lines[0]).isEqualTo("id,title,description,duration,artistName,category");
+            assertThat(lines).hasSize((int) songRepository.count() + 1);
+            assertThat(lines).contains(savedSong.getId() + ",\"For The Lover That I Lost\",\"Live At Abbey Road Studios\",3:01,\"Sam Smith\",POP");
+        } finally {
+            songRepository.delete(savedSong);
+        }
+    }
+
+    @Test
+    public void testExportSongsWithUnknownFormat() throws Exception {
+        mockMvc.perform(get("/api/songs/export").param("format", "xml"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void testDeleteSongById() throws Exception {
         Song savedSong = songRepository.saveAndFlush(mySong);
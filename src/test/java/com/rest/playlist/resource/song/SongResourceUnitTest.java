@@ -1,10 +1,22 @@
 package com.rest.playlist.resource.song;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.rest.playlist.dto.BulkImportReport;
+import com.rest.playlist.dto.ResourceVersion;
+import com.rest.playlist.dto.SongSearchResult;
+import com.rest.playlist.dto.Suggestion;
 import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.web.exception.PreconditionFailedException;
 import com.rest.playlist.web.exception.ResourceNotFoundException;
+import com.rest.playlist.model.Playlist;
 import com.rest.playlist.model.Song;
+import com.rest.playlist.pagination.CursorPage;
+import com.rest.playlist.projection.Projection;
+import com.rest.playlist.web.exception.BadRequestException;
 import com.rest.playlist.web.resource.SongResource;
 import com.rest.playlist.service.ISongService;
+import com.rest.playlist.service.io.TransferFormat;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -13,17 +25,27 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.InputStream;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.List;
 
 import static com.rest.playlist.TestUtils.asJsonString;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -33,6 +55,12 @@ public class SongResourceUnitTest {
 
     private static final Logger log = LoggerFactory.getLogger(SongResourceUnitTest.class);
 
+    private static final ResourceVersion SONG_VERSION = ResourceVersion.of(4, Instant.parse("2026-11-15T10:00:00Z"));
+
+    private static final MediaType CBOR = MediaType.valueOf("application/cbor");
+
+    private final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -56,24 +84,25 @@ public class SongResourceUnitTest {
     @Test
     public void testGetAllSongs() throws Exception {
         songList.add(mySong);
-        when(songService.getAllSongs()).thenReturn(songList);
+        when(songService.getAllSongs(null, 100, null)).thenReturn(new CursorPage<>(songList, null));
 
         mockMvc.perform(get("/api/songs")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
                 .andExpect(jsonPath("$", hasSize(1)))
                 .andExpect(jsonPath("$[*].title").value(songList.get(0).getTitle()))
                 .andExpect(jsonPath("$[*].description").value(songList.get(0).getDescription()))
                 .andExpect(jsonPath("$[*].category").value(songList.get(0).getCategory().toString()))
                 .andExpect(jsonPath("$[*].artistName").value(songList.get(0).getArtistName()))
                 .andExpect(jsonPath("$[*].duration").value(songList.get(0).getDuration()));
-        verify(songService).getAllSongs();
-        verify(songService, times(1)).getAllSongs();
+        verify(songService).getAllSongs(null, 100, null);
+        verify(songService, times(1)).getAllSongs(null, 100, null);
     }
 
     @Test
     public void testGetEmptyListSongs() throws Exception {
-        when(songService.getAllSongs()).thenReturn(songList);
+        when(songService.getAllSongs(null, 100, null)).thenReturn(new CursorPage<>(songList, null));
 
         mockMvc.perform(get("/api/songs")
                 .contentType(MediaType.APPLICATION_JSON))
@@ -81,6 +110,60 @@ public class SongResourceUnitTest {
                 .andExpect(jsonPath("$", hasSize(0)));
     }
 
+    @Test
+    public void testGetAllSongsWithNextCursor() throws Exception {
+        songList.add(mySong);
+        when(songService.getAllSongs("aWR8NDI", 1, "id")).thenReturn(new CursorPage<>(songList, "aWR8NDM"));
+
+        mockMvc.perform(get("/api/songs?cursor=aWR8NDI&limit=1&sort=id")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "aWR8NDM"))
+                .andExpect(header().string("Link", "<http://localhost/api/songs?limit=1&sort=id&cursor=aWR8NDM>; rel=\"next\""))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[*].title").value(songList.get(0).getTitle()));
+    }
+
+    @Test
+    public void testGetAllSongsWithFields() throws Exception {
+        Projection song = new Projection(null)
+                .put("id", 1000L)
+                .put("title", mySong.getTitle())
+                .put("artistName", mySong.getArtistName());
+        when(songService.getAllSongs(null, 100, null, "title,artistName"))
+                .thenReturn(new CursorPage<>(Collections.singletonList(song), null));
+
+        mockMvc.perform(get("/api/songs?fields=title,artistName")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value(1000))
+                .andExpect(jsonPath("$[0].title").value(mySong.getTitle()))
+                .andExpect(jsonPath("$[0].artistName").value(mySong.getArtistName()))
+                .andExpect(jsonPath("$[0].description").doesNotExist())
+                .andExpect(jsonPath("$[0].createdAt").doesNotExist());
+        verify(songService, never()).getAllSongs(null, 100, null);
+    }
+
+    @Test
+    public void testGetAllSongsWithUnknownField() throws Exception {
+        doThrow(new BadRequestException("Not supported field with value = lyrics"))
+                .when(songService).getAllSongs(null, 100, null, "lyrics");
+        mockMvc.perform(get("/api/songs?fields=lyrics")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("message").value("Not supported field with value = lyrics"));
+    }
+
+    @Test
+    public void testGetAllSongsWithInvalidCursor() throws Exception {
+        doThrow(new BadRequestException("Invalid cursor with value = abc")).when(songService).getAllSongs("abc", 100, null);
+        mockMvc.perform(get("/api/songs?cursor=abc")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("message").value("Invalid cursor with value = abc"));
+    }
+
     @Test
     public void testGetSongsByCategory() throws Exception {
         songList.add(mySong);
@@ -134,6 +217,20 @@ public class SongResourceUnitTest {
                 .andExpect(jsonPath("$[*].duration").value(songList.get(0).getDuration()));
     }
 
+    @Test
+    public void testGetSongsByFuzzyArtistName() throws Exception {
+        songList.add(mySong);
+        when(songService.getSongsByArtistName("Sam Smitt", 2)).thenReturn(songList);
+
+        mockMvc.perform(get("/api/songs/artist/Sam Smitt?fuzzy=2")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].artistName").value(mySong.getArtistName()));
+        verify(songService, times(1)).getSongsByArtistName("Sam Smitt", 2);
+        verify(songService, never()).getSongsByArtistName("Sam Smitt");
+    }
+
     @Test
     public void testGetEmptyListSongsByArtistName() throws Exception {
         when(songService.getSongsByArtistName("Isak")).thenReturn(songList);
@@ -144,14 +241,67 @@ public class SongResourceUnitTest {
                 .andExpect(jsonPath("$", hasSize(0)));
     }
 
+    @Test
+    public void testSearchSongs() throws Exception {
+        songList.add(mySong);
+        Map<String, Integer> categories = new LinkedHashMap<>();
+        categories.put("JAZZ", 0);
+        categories.put("CLASSICAL", 0);
+        categories.put("POP", 2);
+        SongSearchResult result = new SongSearchResult(2, new CursorPage<>(songList, "aWR8NDI"),
+                categories, Collections.singletonMap("Sam Smith", 2));
+        when(songService.searchSongs("pop", "Sam Smith", null, null, 1)).thenReturn(result);
+
+        mockMvc.perform(get("/api/songs/search?category=pop&artist=Sam Smith&limit=1")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "aWR8NDI"))
+                .andExpect(jsonPath("total").value(2))
+                .andExpect(jsonPath("songs", hasSize(1)))
+                .andExpect(jsonPath("songs[0].title").value(mySong.getTitle()))
+                .andExpect(jsonPath("categories.POP").value(2))
+                .andExpect(jsonPath("categories.JAZZ").value(0))
+                .andExpect(jsonPath("artists['Sam Smith']").value(2))
+                .andExpect(jsonPath("page").doesNotExist());
+        verify(songService, times(1)).searchSongs("pop", "Sam Smith", null, null, 1);
+    }
+
+    @Test
+    public void testSuggestSongs() throws Exception {
+        when(songService.suggestSongs("sam", 10)).thenReturn(Arrays.asList(
+                new Suggestion("Sam Smith", "artistName", 2),
+                new Suggestion("Samba", "title", 1)));
+
+        mockMvc.perform(get("/api/songs/suggest?prefix=sam")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].value").value("Sam Smith"))
+                .andExpect(jsonPath("$[0].field").value("artistName"))
+                .andExpect(jsonPath("$[0].count").value(2));
+        verify(songService, times(1)).suggestSongs("sam", 10);
+    }
+
+    @Test
+    public void testSuggestSongsWithInvalidLimit() throws Exception {
+        doThrow(new BadRequestException("limit must be between 1 and 10")).when(songService).suggestSongs("sam", 50);
+        mockMvc.perform(get("/api/songs/suggest?prefix=sam&limit=50")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("message").value("limit must be between 1 and 10"));
+    }
+
     @Test
     public void testGetSongById() throws Exception {
         mySong.setId(1000L);
+        when(songService.getSongVersion(mySong.getId())).thenReturn(SONG_VERSION);
         when(songService.getSongById(mySong.getId())).thenReturn(mySong);
 
         mockMvc.perform(get("/api/songs/" + mySong.getId())
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"4\""))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
                 .andExpect(jsonPath("$.title").value(mySong.getTitle()))
                 .andExpect(jsonPath("$.description").value(mySong.getDescription()))
                 .andExpect(jsonPath("$.category").value(mySong.getCategory().toString()))
@@ -162,7 +312,7 @@ public class SongResourceUnitTest {
 
     @Test
     public void testGetSongByNonExistingId() throws Exception {
-        doThrow(new ResourceNotFoundException("Not found Song with id = 1000")).when(songService).getSongById(1000L);
+        doThrow(new ResourceNotFoundException("Not found Song with id = 1000")).when(songService).getSongVersion(1000L);
         mockMvc.perform(get("/api/songs/1000")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().is4xxClientError())
@@ -170,6 +320,103 @@ public class SongResourceUnitTest {
     }
 
 
+    @Test
+    public void testGetSongByIdNotModified() throws Exception {
+        when(songService.getSongVersion(1000L)).thenReturn(SONG_VERSION);
+
+        mockMvc.perform(get("/api/songs/1000")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"4\""))
+                .andExpect(status().isNotModified());
+        verify(songService, never()).getSongById(anyLong());
+    }
+
+    @Test
+    public void testGetSongByIdWithStaleETag() throws Exception {
+        mySong.setId(1000L);
+        when(songService.getSongVersion(1000L)).thenReturn(SONG_VERSION);
+        when(songService.getSongById(1000L)).thenReturn(mySong);
+
+        mockMvc.perform(get("/api/songs/1000")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"4\""))
+                .andExpect(jsonPath("$.title").value(mySong.getTitle()));
+    }
+
+    @Test
+    public void testGetSongByIdRenderedOnceUntilUpdated() throws Exception {
+        mySong.setId(2000L);
+        when(songService.getSongVersion(2000L)).thenReturn(SONG_VERSION);
+        when(songService.getSongById(2000L)).thenReturn(mySong);
+        when(songService.updateSong(any(Song.class))).thenReturn(mySong);
+
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(get("/api/songs/2000"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().stringValues(HttpHeaders.VARY, HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING))
+                    .andExpect(jsonPath("$.title").value(mySong.getTitle()));
+        }
+        verify(songService, times(1)).getSongById(2000L);
+
+        mockMvc.perform(put("/api/songs")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(asJsonString(mySong)))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/songs/2000"))
+                .andExpect(status().isOk());
+        verify(songService, times(2)).getSongById(2000L);
+    }
+
+    @Test
+    public void testGetSongByIdAsCbor() throws Exception {
+        mySong.setId(3000L);
+        when(songService.getSongVersion(3000L)).thenReturn(SONG_VERSION);
+        when(songService.getSongById(3000L)).thenReturn(mySong);
+
+        byte[] body = mockMvc.perform(get("/api/songs/3000")
+                .accept(CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertThat(cborMapper.readValue(body, Song.class).getTitle()).isEqualTo(mySong.getTitle());
+    }
+
+    @Test
+    public void testGetSongByIdNotAcceptable() throws Exception {
+        when(songService.getSongVersion(1000L)).thenReturn(SONG_VERSION);
+
+        mockMvc.perform(get("/api/songs/1000")
+                .accept(MediaType.TEXT_HTML))
+                .andExpect(status().isNotAcceptable());
+    }
+
+    @Test
+    public void testGetSongByNonExistingIdAsCbor() throws Exception {
+        doThrow(new ResourceNotFoundException("Not found Song with id = 1000")).when(songService).getSongVersion(1000L);
+
+        byte[] body = mockMvc.perform(get("/api/songs/1000")
+                .accept(CBOR))
+                .andExpect(status().isNotFound())
+                .andExpect(content().contentType(CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertThat(cborMapper.readTree(body).get("message").asText()).isEqualTo("Not found Song with id = 1000");
+    }
+
+    @Test
+    public void testCreateSongFromCbor() throws Exception {
+        when(songService.createSong(any(Song.class))).thenReturn(mySong);
+
+        byte[] body = mockMvc.perform(post("/api/songs")
+                .contentType(CBOR)
+                .accept(CBOR)
+                .content(cborMapper.writeValueAsBytes(mySong)))
+                .andExpect(status().isCreated())
+                .andExpect(content().contentType(CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertThat(cborMapper.readValue(body, Song.class).getArtistName()).isEqualTo(mySong.getArtistName());
+        verify(songService, times(1)).createSong(argThat(song -> mySong.getTitle().equals(song.getTitle())));
+    }
+
     @Test
     public void testCreateSong() throws Exception {
         when(songService.createSong(any(Song.class))).thenReturn(mySong);
@@ -224,6 +471,35 @@ public class SongResourceUnitTest {
     }
 
 
+    @Test
+    public void testImportSongs() throws Exception {
+        BulkImportReport report = new BulkImportReport();
+        report.received();
+        report.received();
+        report.imported(1);
+        report.rejected(2, "NotBlank: titre ne doit pas être null ou vide");
+        when(songService.importSongs(any(InputStream.class), eq(TransferFormat.CSV))).thenReturn(report);
+
+        mockMvc.perform(post("/api/songs/bulk")
+                .contentType("text/csv")
+                .content("title,description,duration,artistName,category\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.received").value(2))
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.errors[0].line").value(2))
+                .andExpect(jsonPath("$.errors[0].message").value("NotBlank: titre ne doit pas être null ou vide"));
+    }
+
+    @Test
+    public void testImportSongsWithUnsupportedContentType() throws Exception {
+        mockMvc.perform(post("/api/songs/bulk")
+                .contentType(MediaType.APPLICATION_XML)
+                .content("<songs/>"))
+                .andExpect(status().isUnsupportedMediaType());
+        verify(songService, never()).importSongs(any(), any());
+    }
+
     @Test
     public void testUpdateSong() throws Exception {
         mySong.setId(1000L);
@@ -235,6 +511,47 @@ public class SongResourceUnitTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    public void testUpdateSongWithIfMatch() throws Exception {
+        mySong.setId(1000L);
+        when(songService.updateSong(any(Song.class), eq(3L))).thenReturn(mySong);
+        mockMvc.perform(put("/api/songs")
+                .header(HttpHeaders.IF_MATCH, "W/\"3\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(asJsonString(mySong)))
+                .andExpect(status().isOk());
+        verify(songService).updateSong(any(Song.class), eq(3L));
+        verify(songService, never()).updateSong(any(Song.class));
+    }
+
+    @Test
+    public void testUpdateSongWithStaleIfMatch() throws Exception {
+        mySong.setId(1000L);
+        doThrow(new PreconditionFailedException("Song with id = 1000 was changed since version 2"))
+                .when(songService).updateSong(any(Song.class), eq(2L));
+        mockMvc.perform(put("/api/songs")
+                .header(HttpHeaders.IF_MATCH, "\"2\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(asJsonString(mySong)))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(jsonPath("$.message").value("Song with id = 1000 was changed since version 2"));
+    }
+
+    @Test
+    public void testUpdateSongWithInvalidIfMatch() throws Exception {
+        mySong.setId(1000L);
+        mockMvc.perform(put("/api/songs")
+                .header(HttpHeaders.IF_MATCH, "\"latest\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(asJsonString(mySong)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Invalid If-Match with value = \"latest\""));
+        verify(songService, never()).updateSong(any(Song.class), anyLong());
+    }
+
     @Test
     public void testUpdateSongWithTitleSizeLessThanThree() throws Exception {
         mySong.setId(1000L);
@@ -280,6 +597,31 @@ public class SongResourceUnitTest {
                         .value("NotBlank: titre ne doit pas être null ou vide"));
     }
 
+    @Test
+    public void testGetSongPlaylists() throws Exception {
+        Playlist playlist = new Playlist();
+        playlist.setId(7L);
+        playlist.setTitle("Best Of Sam Smith");
+        playlist.setDescription("Live sessions");
+        when(songService.getSongPlaylists(1000L, null, 1))
+                .thenReturn(new CursorPage<>(Collections.singletonList(playlist), "aWR8Nw"));
+
+        mockMvc.perform(get("/api/songs/1000/playlists?limit=1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "aWR8Nw"))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value(7))
+                .andExpect(jsonPath("$[0].title").value("Best Of Sam Smith"));
+    }
+
+    @Test
+    public void testGetPlaylistsOfNotFoundSong() throws Exception {
+        doThrow(new ResourceNotFoundException("Not found song with id = 1000")).when(songService).getSongPlaylists(1000L, null, 100);
+        mockMvc.perform(get("/api/songs/1000/playlists"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("message").value("Not found song with id = 1000"));
+    }
+
     @Test
     public void testDeleteSongById() throws Exception {
         mySong.setId(1000L);
@@ -288,6 +630,23 @@ public class SongResourceUnitTest {
                 .andExpect(status().isNoContent());
     }
 
+    @Test
+    public void testDeleteSongs() throws Exception {
+        doNothing().when(songService).deleteSongs(Arrays.asList(1000L, 1001L));
+        mockMvc.perform(delete("/api/songs?ids=1000,1001"))
+                .andExpect(status().isNoContent());
+        verify(songService, times(1)).deleteSongs(Arrays.asList(1000L, 1001L));
+    }
+
+    @Test
+    public void testDeleteSongsWithNotFoundSong() throws Exception {
+        doThrow(new ResourceNotFoundException("Not found songs with ids = [4000]")).when(songService)
+                .deleteSongs(Arrays.asList(1000L, 4000L));
+        mockMvc.perform(delete("/api/songs?ids=1000,4000"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("message").value("Not found songs with ids = [4000]"));
+    }
+
     @Test
     public void testDeleteNotFoundSong() throws Exception {
         doThrow(new ResourceNotFoundException("Not found Song with id = 1000")).when(songService).deleteSongById(1000L);
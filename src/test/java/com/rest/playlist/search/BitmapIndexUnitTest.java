@@ -0,0 +1,71 @@
+package com.rest.playlist.search;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class BitmapIndexUnitTest {
+
+    private BitmapIndex index;
+
+    @Before
+    public void setup() {
+        index = new BitmapIndex();
+        index.add(1L, "POP");
+        index.add(2L, "POP");
+        index.add(3L, "JAZZ");
+        index.add(4L, "CLASSICAL");
+        index.add(5L, "POP");
+    }
+
+    @Test
+    public void testGetAndAll() {
+        assertThat(index.get("POP").toArray()).containsExactly(1, 2, 5);
+        assertThat(index.get("ROCK").isEmpty()).isTrue();
+        assertThat(index.all().toArray()).containsExactly(1, 2, 3, 4, 5);
+    }
+
+    @Test
+    public void testGetReturnsACopy() {
+        index.get("POP").add(42);
+        assertThat(index.get("POP").contains(42)).isFalse();
+    }
+
+    @Test
+    public void testCountsWithinManyIds() {
+        assertThat(index.counts(index.all(), 10))
+                .containsExactly(entry("POP", 3), entry("CLASSICAL", 1), entry("JAZZ", 1));
+        assertThat(index.counts(index.all(), 1)).containsExactly(entry("POP", 3));
+    }
+
+    @Test
+    public void testCountsWithinFewIds() {
+        assertThat(index.counts(RoaringBitmap.bitmapOf(2, 3), 10))
+                .containsExactly(entry("JAZZ", 1), entry("POP", 1));
+    }
+
+    @Test
+    public void testRemoveDropsEmptyValues() {
+        index.remove(3L, "JAZZ");
+        index.add(5L, "JAZZ");
+        index.retainOnly(5L, "JAZZ");
+
+        assertThat(index.get("POP").toArray()).containsExactly(1, 2);
+        assertThat(index.counts(index.all(), 10))
+                .containsExactly(entry("POP", 2), entry("CLASSICAL", 1), entry("JAZZ", 1));
+    }
+
+    @Test
+    public void testIdsBeyondIntAreLeftOut() {
+        long id = Integer.MAX_VALUE + 1L;
+        assertThat(index.add(id, "POP")).isTrue();
+        index.remove(id, "POP");
+        index.add((long) Integer.MAX_VALUE, "JAZZ");
+
+        assertThat(index.get("POP").toArray()).containsExactly(1, 2, 5);
+        assertThat(index.get("JAZZ").contains(Integer.MAX_VALUE)).isTrue();
+    }
+}
@@ -0,0 +1,59 @@
+package com.rest.playlist.search;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BkTreeIndexUnitTest {
+
+    private BkTreeIndex index;
+
+    @Before
+    public void setup() {
+        index = new BkTreeIndex();
+        index.add(1L, "Sam Smith");
+        index.add(2L, "Sam Smith");
+        index.add(3L, "Sam Smyth");
+        index.add(4L, "Lean Bridges");
+        index.add(5L, "Adele");
+    }
+
+    @Test
+    public void testDistance() {
+        assertThat(BkTreeIndex.distance("kitten", "sitting")).isEqualTo(3);
+        assertThat(BkTreeIndex.distance("adele", "adele")).isZero();
+        assertThat(BkTreeIndex.distance("", "adele")).isEqualTo(5);
+    }
+
+    @Test
+    public void testSearchRanksByDistanceThenCount() {
+        assertThat(index.search("sam smit", 2)).extracting(BkTreeIndex.Match::getValue)
+                .containsExactly("Sam Smith", "Sam Smyth");
+        assertThat(index.search("Sam Smyth", 2)).extracting(BkTreeIndex.Match::getValue)
+                .containsExactly("Sam Smyth", "Sam Smith");
+        assertThat(index.search("Sam Smyth", 2)).extracting(BkTreeIndex.Match::getDistance)
+                .containsExactly(0, 1);
+        assertThat(index.search("sam smit", 2).get(0).getIds()).containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void testSearchHonoursMaxDistance() {
+        assertThat(index.search("Adelle", 1)).extracting(BkTreeIndex.Match::getValue).containsExactly("Adele");
+        assertThat(index.search("Adelle", 0)).isEmpty();
+        assertThat(index.search("Lean Brigdes", 1)).isEmpty();
+        assertThat(index.search("Lean Brigdes", 2)).extracting(BkTreeIndex.Match::getValue).containsExactly("Lean Bridges");
+    }
+
+    @Test
+    public void testRemovedValuesAreSkipped() {
+        index.removeAll(5L);
+        assertThat(index.search("Adele", 2)).isEmpty();
+
+        index.remove(1L, "Sam Smith");
+        assertThat(index.search("Sam Smith", 0).get(0).getIds()).containsExactly(2L);
+
+        index.add(6L, "Adele");
+        assertThat(index.search("Adele", 0).get(0).getIds()).containsExactly(6L);
+    }
+}
@@ -0,0 +1,66 @@
+package com.rest.playlist.search;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrefixIndexUnitTest {
+
+    private PrefixIndex index;
+
+    @Before
+    public void setup() {
+        index = new PrefixIndex();
+        index.add(1L, "Sam Smith");
+        index.add(2L, "Sam Smith");
+        index.add(3L, "Samuel Barber");
+        index.add(4L, "Lean Bridges");
+    }
+
+    @Test
+    public void testCompleteRanksByFrequency() {
+        assertThat(index.complete("sam", 10)).extracting(PrefixIndex.Completion::getValue)
+                .containsExactly("Sam Smith", "Samuel Barber");
+        assertThat(index.complete("sam", 10)).extracting(PrefixIndex.Completion::getCount)
+                .containsExactly(2, 1);
+    }
+
+    @Test
+    public void testCompleteMatchesEveryWordStart() {
+        assertThat(index.complete("Bri", 10)).extracting(PrefixIndex.Completion::getValue).containsExactly("Lean Bridges");
+        assertThat(index.complete("b", 10)).extracting(PrefixIndex.Completion::getValue)
+                .containsExactly("Lean Bridges", "Samuel Barber");
+        assertThat(index.complete("mith", 10)).isEmpty();
+    }
+
+    @Test
+    public void testCompleteHonoursLimit() {
+        assertThat(index.complete("", 2)).extracting(PrefixIndex.Completion::getValue)
+                .containsExactly("Sam Smith", "Lean Bridges");
+    }
+
+    @Test
+    public void testCompleteKeepsTheBestCompletionsOnly() {
+        for (long id = 10; id < 10 + 2 * PrefixIndex.MAX_COMPLETIONS; id++) {
+            index.add(id, "Song " + id);
+        }
+        index.add(100L, "Song 29");
+
+        assertThat(index.complete("song", PrefixIndex.MAX_COMPLETIONS))
+                .hasSize(PrefixIndex.MAX_COMPLETIONS)
+                .first().extracting(PrefixIndex.Completion::getValue).isEqualTo("Song 29");
+    }
+
+    @Test
+    public void testRemoveUpdatesCountsAndPrunes() {
+        index.remove(1L, "Sam Smith");
+        assertThat(index.complete("sam", 10)).extracting(PrefixIndex.Completion::getValue)
+                .containsExactly("Sam Smith", "Samuel Barber");
+        assertThat(index.complete("sam s", 10)).extracting(PrefixIndex.Completion::getCount).containsExactly(1);
+
+        index.removeAll(2L);
+        assertThat(index.complete("sam", 10)).extracting(PrefixIndex.Completion::getValue).containsExactly("Samuel Barber");
+        assertThat(index.complete("smi", 10)).isEmpty();
+    }
+}
@@ -0,0 +1,81 @@
+package com.rest.playlist.search;
+
+import com.rest.playlist.model.Song;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * songs already in the database when the application starts are searchable by the first request :
+ * the indexes are filled before the web server takes any
+ */
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.datasource.url=jdbc:h2:mem:search_index_loader_db")
+@RunWith(SpringRunner.class)
+public class SearchIndexLoaderIntegrationTest {
+
+    private static final long SONG_ID = 900001L;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private StartupProbe startupProbe;
+
+    @Test
+    public void testIndexesAreLoadedBeforeTheServerStarts() {
+        assertThat(startupProbe.artistIdsAtServerStart).containsExactly(SONG_ID);
+
+        ResponseEntity<Song[]> response = restTemplate.getForEntity("/api/songs/artist/Preisner", Song[].class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).extracting(Song::getId).containsExactly(SONG_ID);
+    }
+
+    @TestConfiguration
+    static class StartupConfiguration {
+
+        /**
+         * written once the schema is migrated and before the indexes are loaded, as by an earlier run
+         */
+        @Bean
+        StartupProbe startupProbe(JdbcTemplate jdbcTemplate, SongSearchIndex songSearchIndex) {
+            jdbcTemplate.update("insert into songs (id, created_at, title, description, duration, artist_name, category, version) " +
+                    "values (?, current_timestamp, 'Van den Budenmayer', 'Loaded at startup', '3:01', 'Zbigniew Preisner', 'CLASSICAL', 0)", SONG_ID);
+            return new StartupProbe(songSearchIndex);
+        }
+    }
+
+    /**
+     * records what the artist index answers when the web server starts
+     */
+    static class StartupProbe implements ApplicationListener<WebServerInitializedEvent> {
+
+        private final SongSearchIndex songSearchIndex;
+        private List<Long> artistIdsAtServerStart = new ArrayList<>();
+
+        StartupProbe(SongSearchIndex songSearchIndex) {
+            this.songSearchIndex = songSearchIndex;
+        }
+
+        @Override
+        public void onApplicationEvent(WebServerInitializedEvent event) {
+            artistIdsAtServerStart = new ArrayList<>(songSearchIndex.findIdsByArtistName("Preisner"));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.rest.playlist.search;
+
+import com.rest.playlist.dto.SongSearchResult;
+import com.rest.playlist.dto.Suggestion;
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.repository.SongRepository;
+import com.rest.playlist.service.ISongService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@RunWith(SpringRunner.class)
+public class SongSearchIndexIntegrationTest {
+
+    @Autowired
+    private SongRepository songRepository;
+
+    @Autowired
+    private ISongService songService;
+
+    @Autowired
+    private SongSearchIndex songSearchIndex;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Song mySong;
+
+    @Before
+    public void setup() {
+        mySong = new Song();
+        mySong.setTitle("Indexed Song");
+        mySong.setDescription("Search index");
+        mySong.setCategory(SongCategory.POP);
+        mySong.setArtistName("Zbigniew Preisner");
+        mySong.setDuration("3:01");
+    }
+
+    @After
+    public void cleanup() {
+        songRepository.deleteAll(songRepository.findSongsByArtistNameContaining("Preisner"));
+    }
+
+    @Test
+    public void testCreatedSongIsSearchable() {
+        Song savedSong = songService.createSong(mySong);
+
+        assertThat(songSearchIndex.findIdsByArtistName("Preisner")).containsExactly(savedSong.getId());
+        assertThat(songSearchIndex.findIdsByTitle("Indexed Song")).contains(savedSong.getId());
+        assertThat(songService.getSongsByArtistName("Preisner")).extracting(Song::getId).containsExactly(savedSong.getId());
+    }
+
+    @Test
+    public void testCreatedSongIsFoundWithTypos() {
+        Song savedSong = songService.createSong(mySong);
+
+        assertThat(songService.getSongsByArtistName("zbignew preisnr", 2)).extracting(Song::getId).containsExactly(savedSong.getId());
+        assertThat(songService.getSongsByArtistName("zbignew preisnr", 1)).isEmpty();
+    }
+
+    @Test
+    public void testSearchCountsFacetsOfTheMatchingSongs() {
+        Song savedSong = songService.createSong(mySong);
+        Song otherSong = new Song();
+        otherSong.setTitle("Kieslowski Theme");
+        otherSong.setDescription("Search index");
+        otherSong.setCategory(SongCategory.CLASSICAL);
+        otherSong.setArtistName("Zbigniew Preisner");
+        otherSong.setDuration("4:00");
+        otherSong = songService.createSong(otherSong);
+
+        SongSearchResult result = songService.searchSongs(null, "Zbigniew Preisner", null, null, 10);
+        assertThat(result.getTotal()).isEqualTo(2);
+        assertThat(result.getSongs()).extracting(Song::getId).containsExactly(savedSong.getId(), otherSong.getId());
+        assertThat(result.getCategories()).containsEntry("POP", 1).containsEntry("CLASSICAL", 1).containsEntry("JAZZ", 0);
+        assertThat(result.getArtists()).containsEntry("Zbigniew Preisner", 2);
+
+        otherSong.setCategory(SongCategory.POP);
+        songService.updateSong(otherSong);
+        assertThat(songService.searchSongs("POP", "Zbigniew Preisner", null, null, 10).getTotal()).isEqualTo(2);
+        assertThat(songService.searchSongs("CLASSICAL", "Zbigniew Preisner", null, null, 10).getTotal()).isZero();
+    }
+
+    @Test
+    public void testUpdatedSongIsSearchableUnderItsNewValueOnly() {
+        Song savedSong = songService.createSong(mySong);
+        savedSong.setArtistName("Zbigniew Preisner Quartet");
+        songService.updateSong(savedSong);
+
+        assertThat(songSearchIndex.findIdsByArtistName("Quartet")).containsExactly(savedSong.getId());
+
+        savedSong.setArtistName("Preisner Orchestra");
+        songService.updateSong(savedSong);
+
+        assertThat(songSearchIndex.findIdsByArtistName("Quartet")).isEmpty();
+        assertThat(songSearchIndex.findIdsByArtistName("Orchestra")).containsExactly(savedSong.getId());
+        assertThat(songService.suggestSongs("preisner", 10)).extracting(Suggestion::getValue).containsExactly("Preisner Orchestra");
+    }
+
+    @Test
+    public void testRolledBackWritesLeaveTheIndexUnchanged() {
+        Song savedSong = songService.createSong(mySong);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Song song = songRepository.findById(savedSong.getId()).orElseThrow(AssertionError::new);
+            song.setArtistName("Preisner Rollback");
+            songRepository.flush();
+            assertThat(songSearchIndex.findIdsByArtistName("Rollback")).containsExactly(savedSong.getId());
+            status.setRollbackOnly();
+        });
+        transactionTemplate.executeWithoutResult(status -> {
+            Song song = new Song();
+            song.setTitle("Never Committed");
+            song.setDescription("Search index");
+            song.setCategory(SongCategory.JAZZ);
+            song.setArtistName("Preisner Ghost");
+            song.setDuration("2:00");
+            songRepository.saveAndFlush(song);
+            status.setRollbackOnly();
+        });
+
+        assertThat(songSearchIndex.findIdsByArtistName("Rollback")).isEmpty();
+        assertThat(songSearchIndex.findIdsByArtistName("Ghost")).isEmpty();
+        assertThat(songSearchIndex.findIdsByArtistName("Zbigniew")).containsExactly(savedSong.getId());
+    }
+
+    @Test
+    public void testDeletedSongIsNoLongerSearchable() {
+        Song savedSong = songService.createSong(mySong);
+        songService.deleteSongById(savedSong.getId());
+
+        assertThat(songSearchIndex.findIdsByArtistName("Preisner")).isEmpty();
+    }
+}
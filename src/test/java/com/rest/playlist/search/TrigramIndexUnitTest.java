@@ -0,0 +1,79 @@
+package com.rest.playlist.search;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TrigramIndexUnitTest {
+
+    private TrigramIndex index;
+
+    @Before
+    public void setup() {
+        index = new TrigramIndex();
+        index.add(1L, "Sam Smith");
+        index.add(2L, "Lean Bridges");
+        index.add(3L, "Samuel Barber");
+    }
+
+    @Test
+    public void testSearchMatchesSubstrings() {
+        assertThat(index.search("Sam")).containsExactly(1L, 3L);
+        assertThat(index.search("mith")).containsExactly(1L);
+        assertThat(index.search("Bridges")).containsExactly(2L);
+    }
+
+    @Test
+    public void testSearchIsCaseSensitiveLikeTheDatabase() {
+        assertThat(index.search("sam")).isEmpty();
+        assertThat(index.search("smith")).isEmpty();
+    }
+
+    @Test
+    public void testSearchChecksCandidatesAgainstTheirValue() {
+        // every trigram of the query is present, but never contiguous
+        index.add(4L, "abc bcd");
+        assertThat(index.search("abcd")).isEmpty();
+    }
+
+    @Test
+    public void testRemoveKeepsTrigramsOfOtherValues() {
+        index.add(1L, "Sam Smyth");
+        index.remove(1L, "Sam Smith");
+
+        assertThat(index.search("Sam Sm")).containsExactly(1L);
+        assertThat(index.search("mith")).isEmpty();
+    }
+
+    @Test
+    public void testRetainOnlyDropsReplacedValues() {
+        index.add(2L, "Lana Del Rey");
+        assertThat(index.search("Lean")).containsExactly(2L);
+
+        index.retainOnly(2L, "Lana Del Rey");
+        assertThat(index.search("Lean")).isEmpty();
+        assertThat(index.search("Del Rey")).containsExactly(2L);
+    }
+
+    @Test
+    public void testRemoveAll() {
+        index.removeAll(1L);
+        assertThat(index.search("Sam")).containsExactly(3L);
+        assertThat(index.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testAddTwiceIsIgnored() {
+        assertThat(index.add(1L, "Sam Smith")).isFalse();
+        index.remove(1L, "Sam Smith");
+        assertThat(index.search("Smith")).isEmpty();
+    }
+
+    @Test
+    public void testIsSearchable() {
+        assertThat(TrigramIndex.isSearchable("Sam")).isTrue();
+        assertThat(TrigramIndex.isSearchable("Sa")).isFalse();
+        assertThat(TrigramIndex.isSearchable(null)).isFalse();
+    }
+}
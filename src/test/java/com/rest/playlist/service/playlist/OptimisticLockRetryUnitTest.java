@@ -0,0 +1,61 @@
+package com.rest.playlist.service.playlist;
+
+import com.rest.playlist.service.OptimisticLockRetry;
+import com.rest.playlist.web.exception.ConflictException;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+
+public class OptimisticLockRetryUnitTest {
+
+    private OptimisticLockRetry optimisticLockRetry;
+
+    @Before
+    public void setup() {
+        optimisticLockRetry = new OptimisticLockRetry(new TransactionTemplate(mock(PlatformTransactionManager.class)));
+    }
+
+    @Test
+    public void testReplaysLostRaces() {
+        AtomicInteger attempts = new AtomicInteger();
+        String result = optimisticLockRetry.execute(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new OptimisticLockingFailureException("version moved");
+            }
+            return "written";
+        });
+
+        assertThat(result).isEqualTo("written");
+        assertThat(attempts).hasValue(3);
+    }
+
+    @Test
+    public void testGivesUpAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(OptimisticLockingFailureException.class, () -> optimisticLockRetry.executeWithoutResult(() -> {
+            attempts.incrementAndGet();
+            throw new OptimisticLockingFailureException("version moved");
+        }));
+
+        assertThat(attempts).hasValue(OptimisticLockRetry.MAX_ATTEMPTS);
+    }
+
+    @Test
+    public void testDoesNotReplayOtherFailures() {
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(ConflictException.class, () -> optimisticLockRetry.executeWithoutResult(() -> {
+            attempts.incrementAndGet();
+            throw new ConflictException("both sides moved songs");
+        }));
+
+        assertThat(attempts).hasValue(1);
+    }
+}
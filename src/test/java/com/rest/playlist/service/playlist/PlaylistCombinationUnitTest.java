@@ -0,0 +1,42 @@
+package com.rest.playlist.service.playlist;
+
+import com.rest.playlist.enums.SetOperation;
+import com.rest.playlist.service.PlaylistCombination;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PlaylistCombinationUnitTest {
+
+    private static final List<Long> FIRST = Arrays.asList(4L, 1L, 3L, 5_000_000_000L);
+    private static final List<Long> SECOND = Arrays.asList(3L, 2L, 5_000_000_000L);
+    private static final List<Long> THIRD = Arrays.asList(7L, 3L);
+
+    @Test
+    public void testUnionKeepsFirstOccurrences() {
+        assertThat(PlaylistCombination.combine(SetOperation.UNION, Arrays.asList(FIRST, SECOND, THIRD)))
+                .containsExactly(4L, 1L, 3L, 5_000_000_000L, 2L, 7L);
+    }
+
+    @Test
+    public void testIntersectKeepsTheOrderOfTheFirstPlaylist() {
+        assertThat(PlaylistCombination.combine(SetOperation.INTERSECT, Arrays.asList(FIRST, SECOND)))
+                .containsExactly(3L, 5_000_000_000L);
+        assertThat(PlaylistCombination.combine(SetOperation.INTERSECT, Arrays.asList(FIRST, SECOND, THIRD)))
+                .containsExactly(3L);
+    }
+
+    @Test
+    public void testMinusDropsTheSongsOfEveryOtherPlaylist() {
+        assertThat(PlaylistCombination.combine(SetOperation.MINUS, Arrays.asList(FIRST, SECOND)))
+                .containsExactly(4L, 1L);
+        assertThat(PlaylistCombination.combine(SetOperation.MINUS, Arrays.asList(FIRST, Collections.emptyList())))
+                .containsExactlyElementsOf(FIRST);
+        assertThat(PlaylistCombination.combine(SetOperation.MINUS, Arrays.asList(FIRST, SECOND, Collections.singletonList(4L))))
+                .containsExactly(1L);
+    }
+}
@@ -0,0 +1,166 @@
+package com.rest.playlist.service.playlist;
+
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Playlist;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.repository.PlaylistRepository;
+import com.rest.playlist.repository.SongRepository;
+import com.rest.playlist.service.IPlaylistService;
+import com.rest.playlist.service.ISongService;
+import com.rest.playlist.web.exception.ConflictException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * concurrent writers on one playlist : every write commits on its own, as it would behind the REST endpoints.
+ * Half the writers add their songs through POST /songs, the other half PUT the whole playlist
+ * they read a moment before, so most of their updates are stale and merged server side.
+ */
+
+@SpringBootTest
+@RunWith(SpringRunner.class)
+public class PlaylistConcurrencyIntegrationTest {
+
+    private final static Logger log = LoggerFactory.getLogger(PlaylistConcurrencyIntegrationTest.class);
+
+    private static final int WRITERS = 8;
+    private static final int SONGS_PER_WRITER = 10;
+
+    @Autowired
+    private IPlaylistService playlistService;
+
+    @Autowired
+    private ISongService songService;
+
+    @Autowired
+    private PlaylistRepository playlistRepository;
+
+    @Autowired
+    private SongRepository songRepository;
+
+    private Playlist playlist;
+    private final List<Song> songs = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        for (int i = 0; i < WRITERS * SONGS_PER_WRITER + 2; i++) {
+            Song song = new Song();
+            song.setTitle("Contended Song " + i);
+            song.setDescription("Concurrent writers");
+            song.setCategory(SongCategory.JAZZ);
+            song.setArtistName("Contended Artist");
+            song.setDuration("3:00");
+            songs.add(songService.createSong(song));
+        }
+        Playlist newPlaylist = new Playlist();
+        newPlaylist.setTitle("Contended Playlist");
+        newPlaylist.setDescription("Concurrent writers");
+        newPlaylist.setSongs(new ArrayList<>(songs.subList(0, 2)));
+        playlist = playlistService.createPlaylist(newPlaylist);
+    }
+
+    @After
+    public void cleanup() {
+        playlistService.deletePlaylistById(playlist.getId());
+        songRepository.deleteAll(songRepository.findSongsByArtistNameContaining("Contended Artist"));
+    }
+
+    @Test
+    public void testConcurrentWritersLoseNoSong() throws Exception {
+        AtomicInteger conflicts = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int writer = 0; writer < WRITERS; writer++) {
+            List<Song> writerSongs = songs.subList(2 + writer * SONGS_PER_WRITER, 2 + (writer + 1) * SONGS_PER_WRITER);
+            boolean putsPlaylist = writer % 2 == 0;
+            writers.add(executor.submit(() -> {
+                start.await();
+                for (Song song : writerSongs) {
+                    if (putsPlaylist) {
+                        putWithSong(song, conflicts);
+                    } else {
+                        postSong(song, conflicts);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long started = System.nanoTime();
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        executor.shutdown();
+
+        int writes = WRITERS * SONGS_PER_WRITER;
+        log.info("{} writes by {} writers in {} ms ({} writes/s), {} conflicts sent back to clients",
+                writes, WRITERS, elapsedMs, writes * 1000L / Math.max(elapsedMs, 1), conflicts.get());
+
+        Playlist updatedPlaylist = playlistService.getPlaylistById(playlist.getId());
+        assertThat(updatedPlaylist.getSongs()).extracting(Song::getId)
+                .containsExactlyInAnyOrderElementsOf(songs.stream().map(Song::getId).collect(Collectors.toList()));
+        assertThat(playlistRepository.findById(playlist.getId()).get().getVersion())
+                .isEqualTo(writes);
+    }
+
+    /**
+     * a client adding one song : a 409 makes it send the song again
+     */
+    private void postSong(Song song, AtomicInteger conflicts) {
+        while (true) {
+            try {
+                playlistService.addSongs(playlist.getId(), Collections.singletonList(song.getId()));
+                return;
+            } catch (ConcurrencyFailureException e) {
+                conflicts.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * a client reading the playlist, then sending it back with one more song against the version it read :
+     * a 409 makes it read the playlist again
+     */
+    private void putWithSong(Song song, AtomicInteger conflicts) {
+        while (true) {
+            Playlist current = playlistService.getPlaylistById(playlist.getId());
+            Playlist body = new Playlist();
+            body.setId(current.getId());
+            body.setTitle(current.getTitle());
+            body.setDescription(current.getDescription());
+            List<Song> bodySongs = new ArrayList<>(current.getSongs());
+            bodySongs.add(song);
+            body.setSongs(bodySongs);
+            try {
+                playlistService.updatePlaylist(body, current.getVersion());
+                return;
+            } catch (ConflictException | ConcurrencyFailureException e) {
+                conflicts.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.rest.playlist.service.playlist;
+
+import com.rest.playlist.repository.PlaylistChange;
+import com.rest.playlist.service.PlaylistMerge;
+import com.rest.playlist.web.exception.ConflictException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertThrows;
+
+public class PlaylistMergeUnitTest {
+
+    private static final List<Long> BASE = Arrays.asList(1L, 2L, 3L);
+
+    @Test
+    public void testAddsOfBothSidesAreKept() {
+        PlaylistMerge merge = new PlaylistMerge(Collections.singletonList(PlaylistChange.added(Arrays.asList(4L, 5L))),
+                Arrays.asList(1L, 2L, 3L, 4L, 5L), "Title", "Description");
+
+        assertThat(merge.mergeSongIds(Arrays.asList(6L, 1L, 2L, 7L, 3L))).containsExactly(6L, 1L, 2L, 7L, 3L, 4L, 5L);
+    }
+
+    @Test
+    public void testRemovesOfBothSidesAreKept() {
+        PlaylistMerge merge = new PlaylistMerge(Collections.singletonList(PlaylistChange.removed(Collections.singletonList(2L))),
+                Arrays.asList(1L, 3L), "Title", "Description");
+
+        assertThat(merge.mergeSongIds(Arrays.asList(1L, 2L))).containsExactly(1L);
+        assertThat(merge.mergeSongIds(BASE)).containsExactly(1L, 3L);
+    }
+
+    @Test
+    public void testMovesOfTheUpdateAreKept() {
+        PlaylistMerge merge = new PlaylistMerge(Arrays.asList(
+                PlaylistChange.added(Collections.singletonList(4L)),
+                PlaylistChange.removed(Collections.singletonList(1L))),
+                Arrays.asList(2L, 3L, 4L), "Title", "Description");
+
+        assertThat(merge.mergeSongIds(Arrays.asList(3L, 1L, 2L))).containsExactly(3L, 2L, 4L);
+    }
+
+    @Test
+    public void testConcurrentMovesConflict() {
+        PlaylistMerge merge = new PlaylistMerge(Collections.singletonList(PlaylistChange.moved()),
+                Arrays.asList(3L, 1L, 2L), "Title", "Description");
+
+        assertThat(merge.mergeSongIds(Arrays.asList(3L, 1L, 2L, 4L))).containsExactly(3L, 1L, 2L, 4L);
+        assertThrows(ConflictException.class, () -> merge.mergeSongIds(Arrays.asList(2L, 1L, 3L)));
+    }
+
+    @Test
+    public void testDetailsChangedOnOneSide() {
+        PlaylistMerge merge = new PlaylistMerge(Arrays.asList(
+                PlaylistChange.between(BASE, "Title", "Description", BASE, "Their Title", "Description"),
+                PlaylistChange.between(BASE, "Their Title", "Description", BASE, "Their Title", "Their Description")),
+                BASE, "Their Title", "Their Description");
+
+        assertThat(merge.mergeTitle("Title")).isEqualTo("Their Title");
+        assertThat(merge.mergeTitle("Their Title")).isEqualTo("Their Title");
+        assertThat(merge.mergeDescription("Description")).isEqualTo("Their Description");
+
+        PlaylistMerge titleOnly = new PlaylistMerge(Collections.singletonList(PlaylistChange.added(Collections.singletonList(4L))),
+                Arrays.asList(1L, 2L, 3L, 4L), "Title", "Description");
+        assertThat(titleOnly.mergeTitle("My Title")).isEqualTo("My Title");
+    }
+
+    @Test
+    public void testDetailsChangedOnBothSidesConflict() {
+        PlaylistMerge merge = new PlaylistMerge(Collections.singletonList(
+                PlaylistChange.between(BASE, "Title", "Description", BASE, "Their Title", "Description")),
+                BASE, "Their Title", "Description");
+
+        ConflictException ex = assertThrows(ConflictException.class, () -> merge.mergeTitle("My Title"));
+        assertThat(ex.getMessage()).isEqualTo("The title of the playlist was changed concurrently");
+    }
+}
@@ -0,0 +1,106 @@
+package com.rest.playlist.service.playlist;
+
+import com.rest.playlist.enums.SongStorage;
+import com.rest.playlist.model.Playlist;
+import com.rest.playlist.repository.PlaylistChange;
+import com.rest.playlist.repository.PlaylistChangeJdbcRepository;
+import com.rest.playlist.repository.PlaylistMemberJdbcRepository;
+import com.rest.playlist.repository.PlaylistRepository;
+import com.rest.playlist.service.OptimisticLockRetry;
+import com.rest.playlist.service.PlaylistRenumberingJob;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Optional;
+
+import static org.mockito.Mockito.*;
+
+public class PlaylistRenumberingJobUnitTest {
+
+    private PlaylistRepository playlistRepository;
+    private PlaylistMemberJdbcRepository playlistMemberJdbcRepository;
+    private PlaylistChangeJdbcRepository playlistChangeJdbcRepository;
+    private PlaylistRenumberingJob playlistRenumberingJob;
+
+    @Before
+    public void setup() {
+        playlistRepository = mock(PlaylistRepository.class);
+        playlistMemberJdbcRepository = mock(PlaylistMemberJdbcRepository.class);
+        playlistChangeJdbcRepository = mock(PlaylistChangeJdbcRepository.class);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        playlistRenumberingJob = new PlaylistRenumberingJob(playlistRepository, playlistMemberJdbcRepository, playlistChangeJdbcRepository,
+                new OptimisticLockRetry(transactionTemplate));
+        when(playlistRepository.findById(anyLong())).thenAnswer(invocation -> Optional.of(playlistOf(invocation.getArgument(0))));
+    }
+
+    @Test
+    public void testRenumbersEachScheduledPlaylistOnce() {
+        playlistRenumberingJob.schedule(1000L);
+        playlistRenumberingJob.schedule(1000L);
+        playlistRenumberingJob.schedule(1001L);
+
+        playlistRenumberingJob.renumberPending();
+        playlistRenumberingJob.renumberPending();
+
+        verify(playlistMemberJdbcRepository, times(1)).renumber(1000L);
+        verify(playlistMemberJdbcRepository, times(1)).renumber(1001L);
+    }
+
+    @Test
+    public void testRenumberingMovesThePlaylistVersion() {
+        playlistRenumberingJob.schedule(1000L);
+
+        playlistRenumberingJob.renumberPending();
+
+        verify(playlistChangeJdbcRepository, times(1)).insertChange(eq(1000L), eq(3L), any(PlaylistChange.class));
+        verify(playlistRepository, times(1)).flush();
+    }
+
+    @Test
+    public void testRenumberingLosingToAConcurrentMoveIsReplayed() {
+        doThrow(new OptimisticLockingFailureException("moved concurrently")).doNothing()
+                .when(playlistChangeJdbcRepository).insertChange(eq(1000L), anyLong(), any(PlaylistChange.class));
+        playlistRenumberingJob.schedule(1000L);
+
+        playlistRenumberingJob.renumberPending();
+
+        verify(playlistMemberJdbcRepository, times(2)).renumber(1000L);
+        verify(playlistRepository, times(1)).flush();
+    }
+
+    @Test
+    public void testDeletedOrPackedPlaylistsAreSkipped() {
+        Playlist packedPlaylist = playlistOf(1001L);
+        packedPlaylist.setSongStorage(SongStorage.PACKED);
+        when(playlistRepository.findById(1000L)).thenReturn(Optional.empty());
+        when(playlistRepository.findById(1001L)).thenReturn(Optional.of(packedPlaylist));
+        playlistRenumberingJob.schedule(1000L);
+        playlistRenumberingJob.schedule(1001L);
+
+        playlistRenumberingJob.renumberPending();
+
+        verify(playlistMemberJdbcRepository, never()).renumber(anyLong());
+        verify(playlistChangeJdbcRepository, never()).insertChange(anyLong(), anyLong(), any(PlaylistChange.class));
+    }
+
+    @Test
+    public void testFailedRenumberingDoesNotStopTheOthers() {
+        doThrow(new IllegalStateException("deadlock")).when(playlistMemberJdbcRepository).renumber(1000L);
+        playlistRenumberingJob.schedule(1000L);
+        playlistRenumberingJob.schedule(1001L);
+
+        playlistRenumberingJob.renumberPending();
+
+        verify(playlistMemberJdbcRepository, times(1)).renumber(1001L);
+    }
+
+    private static Playlist playlistOf(Long id) {
+        Playlist playlist = new Playlist();
+        playlist.setId(id);
+        playlist.setVersion(3L);
+        return playlist;
+    }
+}
@@ -1,12 +1,25 @@
 package com.rest.playlist.service.playlist;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rest.playlist.dto.ResourceVersion;
 import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.enums.SongStorage;
+import com.rest.playlist.web.exception.BadRequestException;
+import com.rest.playlist.web.exception.ConflictException;
+import com.rest.playlist.web.exception.PreconditionFailedException;
 import com.rest.playlist.web.exception.ResourceNotFoundException;
 import com.rest.playlist.model.Playlist;
 import com.rest.playlist.model.Song;
+import com.rest.playlist.pagination.Cursor;
+import com.rest.playlist.pagination.CursorPage;
+import com.rest.playlist.projection.Projection;
 import com.rest.playlist.repository.PlaylistRepository;
 import com.rest.playlist.service.PlaylistServiceImpl;
 import com.rest.playlist.service.SongServiceImpl;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -14,12 +27,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertThrows;
@@ -40,6 +64,15 @@ public class PlaylistServiceIntegrationTest {
     @Autowired
     private SongServiceImpl songService;
 
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     private Playlist defaultPlaylist;
 
     @Before
@@ -71,12 +104,112 @@ public class PlaylistServiceIntegrationTest {
 
     }
 
+    @Test
+    public void testExportPlaylistsGroupsSongsUnderTheirPlaylist() throws IOException {
+        Playlist emptyPlaylist = new Playlist();
+        emptyPlaylist.setTitle("Empty Playlist");
+        emptyPlaylist.setDescription("No songs");
+        emptyPlaylist = playlistRepository.saveAndFlush(emptyPlaylist);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long exported = playlistService.exportPlaylists(out);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<JsonNode> documents = new ArrayList<>();
+        for (String line : out.toString().split("\n")) {
+            documents.add(objectMapper.readTree(line));
+        }
+        assertThat(exported).isEqualTo(playlistRepository.count()).isEqualTo(documents.size());
+        assertThat(documents).extracting(document -> document.get("id").asLong()).isSorted();
+
+        JsonNode exportedDefault = documents.stream()
+                .filter(document -> document.get("id").asLong() == defaultPlaylist.getId())
+                .findFirst().orElseThrow(AssertionError::new);
+        assertThat(exportedDefault.get("title").asText()).isEqualTo("Playlist1");
+        assertThat(exportedDefault.get("songs")).extracting(song -> song.get("title").asText())
+                .containsExactly("For The Lover That I Lost", "Summer Rain");
+
+        Long emptyId = emptyPlaylist.getId();
+        JsonNode exportedEmpty = documents.stream()
+                .filter(document -> document.get("id").asLong() == emptyId)
+                .findFirst().orElseThrow(AssertionError::new);
+        assertThat(exportedEmpty.get("songs")).isEmpty();
+    }
+
     @Test
     public void testGetAllPlaylists() {
         List<Playlist> playlists = playlistService.getAllPlaylists();
         assertThat(playlists).isNotNull().isNotEmpty();
     }
 
+    @Test
+    public void testGetAllPlaylistsByPages() {
+        for (int i = 0; i < 3; i++) {
+            Playlist playlist = new Playlist();
+            playlist.setTitle("Page Playlist " + i);
+            playlist.setDescription("Keyset page " + i);
+            playlistRepository.saveAndFlush(playlist);
+        }
+        int total = playlistRepository.findAll().size();
+
+        for (String sort : new String[]{"id", "createdAt"}) {
+            List<Playlist> playlists = new ArrayList<>();
+            String cursor = null;
+            do {
+                CursorPage<Playlist> page = playlistService.getAllPlaylists(cursor, 2, sort);
+                playlists.addAll(page.getContent());
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+
+            assertThat(playlists).hasSize(total);
+            assertThat(playlists).doesNotHaveDuplicates();
+        }
+    }
+
+    @Test
+    public void testListingPlaylistsRunsOneStatement() throws Exception {
+        List<Song> songs = defaultPlaylist.getSongs();
+        for (int i = 0; i < 500; i++) {
+            Playlist playlist = new Playlist();
+            playlist.setTitle("Listed Playlist " + i);
+            playlist.setDescription("Summary plan " + i);
+            playlist.setSongs(new ArrayList<>(songs));
+            playlistRepository.save(playlist);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<Playlist> playlists = playlistService.getAllPlaylists();
+        String json = new ObjectMapper().writeValueAsString(playlists);
+
+        assertThat(playlists).hasSizeGreaterThanOrEqualTo(501);
+        assertThat(json).doesNotContain("\"songs\"");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        statistics.clear();
+        playlistService.getAllPlaylists(null, 500, null);
+        playlistService.getPlaylistsByTitle("Listed Playlist");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testGetPlaylistByIdLoadsSongsInOneStatement() {
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Playlist playlist = playlistService.getPlaylistById(defaultPlaylist.getId());
+
+        assertThat(Hibernate.isInitialized(playlist.getSongs())).isTrue();
+        assertThat(playlist.getSongs()).hasSize(2);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
     @Test
     public void testGetPlaylistsByArtistName() {
         List<Playlist> playlists = playlistService.getPlaylistsByTitle("Playlist");
@@ -107,6 +240,452 @@ public class PlaylistServiceIntegrationTest {
         assertThat(savedPlaylist.getDescription()).isEqualTo(defaultPlaylist.getDescription());
     }
 
+    @Test
+    public void testCreatePlaylistResolvesSongsInChunkedQueries() {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            Song song = new Song();
+            song.setTitle("Resolved Song " + i);
+            song.setDescription("One query per chunk");
+            song.setCategory(SongCategory.JAZZ);
+            song.setArtistName("Resolved Artist");
+            song.setDuration("3:00");
+            songs.add(songService.createSong(song));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        // the client only sends ids, in its own order
+        List<Song> requestedSongs = new ArrayList<>();
+        for (int i = songs.size() - 1; i >= 0; i--) {
+            Song requestedSong = new Song();
+            requestedSong.setId(songs.get(i).getId());
+            requestedSongs.add(requestedSong);
+        }
+        Playlist playlist = new Playlist();
+        playlist.setTitle("Large Playlist");
+        playlist.setDescription("2500 songs");
+        playlist.setSongs(requestedSongs);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Playlist savedPlaylist = playlistService.createPlaylist(playlist);
+
+        assertThat(statistics.getQueryExecutionCount()).isEqualTo(3);
+        assertThat(statistics.getEntityFetchCount()).isZero();
+        assertThat(savedPlaylist.getSongs()).extracting(Song::getId)
+                .containsExactlyElementsOf(requestedSongs.stream().map(Song::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testCreatePlaylistReportsAllMissingSongs() {
+        Song existingSong = new Song();
+        existingSong.setId(defaultPlaylist.getSongs().get(0).getId());
+        Song missingSong = new Song();
+        missingSong.setId(4000L);
+        Song otherMissingSong = new Song();
+        otherMissingSong.setId(4001L);
+        Playlist playlist = new Playlist();
+        playlist.setTitle("Incomplete Playlist");
+        playlist.setDescription("Missing songs");
+        playlist.setSongs(Arrays.asList(missingSong, existingSong, otherMissingSong));
+
+        ResourceNotFoundException ex = assertThrows(ResourceNotFoundException.class, () -> playlistService.createPlaylist(playlist));
+        assertThat(ex.getMessage()).isEqualTo("Not found songs with ids = [4000, 4001]");
+    }
+
+    @Test
+    public void testAddAndRemoveSongsOnlyTouchTheirRows() {
+        Song song3 = new Song();
+        song3.setTitle("Stay With Me");
+        song3.setDescription("In The Lonely Hour");
+        song3.setCategory(SongCategory.POP);
+        song3.setArtistName("Sam Smith");
+        song3.setDuration("2:52");
+        Song savedSong3 = songService.createSong(song3);
+        Long song1Id = defaultPlaylist.getSongs().get(0).getId();
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        playlistService.addSongs(defaultPlaylist.getId(), Arrays.asList(savedSong3.getId(), song1Id));
+        playlistService.removeSongs(defaultPlaylist.getId(), Collections.singletonList(song1Id));
+        entityManager.flush();
+
+        // the songs collection is neither loaded nor rewritten by Hibernate
+        assertThat(statistics.getCollectionLoadCount()).isZero();
+        assertThat(statistics.getCollectionRecreateCount()).isZero();
+        assertThat(statistics.getCollectionRemoveCount()).isZero();
+
+        entityManager.clear();
+        assertThat(playlistService.getPlaylistById(defaultPlaylist.getId()).getSongs())
+                .extracting(Song::getTitle)
+                .containsExactlyInAnyOrder("Summer Rain", "Stay With Me");
+    }
+
+    @Test
+    public void testAddSongsReportsAllMissingSongs() {
+        ResourceNotFoundException ex = assertThrows(ResourceNotFoundException.class,
+                () -> playlistService.addSongs(defaultPlaylist.getId(), Arrays.asList(4000L, 4001L)));
+        assertThat(ex.getMessage()).isEqualTo("Not found songs with ids = [4000, 4001]");
+    }
+
+    @Test
+    public void testPlaylistKeepsTheOrderOfItsSongs() {
+        List<Song> songs = createSongs(3);
+        Playlist playlist = new Playlist();
+        playlist.setTitle("Ordered Playlist");
+        playlist.setDescription("Client order");
+        playlist.setSongs(Arrays.asList(songs.get(2), songs.get(0), songs.get(1), songs.get(2)));
+        Playlist savedPlaylist = playlistService.createPlaylist(playlist);
+        entityManager.flush();
+        entityManager.clear();
+
+        assertThat(playlistService.getPlaylistById(savedPlaylist.getId()).getSongs())
+                .extracting(Song::getId)
+                .containsExactly(songs.get(2).getId(), songs.get(0).getId(), songs.get(1).getId());
+
+        playlistService.addSongs(savedPlaylist.getId(), Collections.singletonList(defaultPlaylist.getSongs().get(0).getId()));
+        entityManager.clear();
+        assertThat(playlistService.getPlaylistById(savedPlaylist.getId()).getSongs())
+                .extracting(Song::getId)
+                .endsWith(defaultPlaylist.getSongs().get(0).getId());
+    }
+
+    @Test
+    public void testMoveSongWritesOneRow() {
+        List<Song> songs = createSongs(50);
+        Playlist playlist = playlistOf(songs);
+        Map<Long, Long> positionsBefore = positionsOf(playlist.getId());
+
+        playlistService.moveSong(playlist.getId(), songs.get(49).getId(), songs.get(0).getId());
+        playlistService.moveSong(playlist.getId(), songs.get(10).getId(), null);
+
+        Map<Long, Long> positionsAfter = positionsOf(playlist.getId());
+        assertThat(positionsAfter.keySet()).isEqualTo(positionsBefore.keySet());
+        assertThat(positionsAfter.keySet().stream()
+                .filter(songId -> !positionsAfter.get(songId).equals(positionsBefore.get(songId))))
+                .containsExactlyInAnyOrder(songs.get(49).getId(), songs.get(10).getId());
+
+        entityManager.clear();
+        assertThat(playlistService.getPlaylistById(playlist.getId()).getSongs())
+                .extracting(Song::getId)
+                .startsWith(songs.get(10).getId(), songs.get(0).getId(), songs.get(49).getId(), songs.get(1).getId());
+    }
+
+    @Test
+    public void testMoveSongRenumbersWhenGapsRunOut() {
+        List<Song> songs = createSongs(3);
+        Playlist playlist = playlistOf(songs);
+        Long first = songs.get(0).getId();
+
+        // every move halves the gap right after the first song
+        for (int i = 0; i < 50; i++) {
+            Song moved = songs.get(1 + i % 2);
+            Song other = songs.get(2 - i % 2);
+            playlistService.moveSong(playlist.getId(), moved.getId(), first);
+
+            entityManager.clear();
+            assertThat(playlistService.getPlaylistById(playlist.getId()).getSongs())
+                    .extracting(Song::getId)
+                    .containsExactly(first, moved.getId(), other.getId());
+        }
+    }
+
+    @Test
+    public void testGetPlaylistSongsPagesThroughThePlaylistOrder() {
+        List<Song> songs = createSongs(250);
+        Playlist playlist = playlistOf(songs);
+        playlistService.moveSong(playlist.getId(), songs.get(200).getId(), null);
+        List<Long> expectedIds = new ArrayList<>();
+        expectedIds.add(songs.get(200).getId());
+        songs.stream().map(Song::getId).filter(id -> !id.equals(songs.get(200).getId())).forEach(expectedIds::add);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<Long> pagedIds = new ArrayList<>();
+        int pages = 0;
+        String cursor = null;
+        do {
+            CursorPage<Song> page = playlistService.getPlaylistSongs(playlist.getId(), cursor, 100);
+            assertThat(page.getContent()).hasSizeLessThanOrEqualTo(100);
+            page.getContent().forEach(song -> pagedIds.add(song.getId()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(pagedIds).containsExactlyElementsOf(expectedIds);
+        assertThat(statistics.getCollectionLoadCount()).isZero();
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    public void testGetPlaylistSongsRejectsCursorOfAnotherListing() {
+        String idCursor = Cursor.after(Cursor.Order.ID, null, 42L).encode();
+        assertThrows(BadRequestException.class, () -> playlistService.getPlaylistSongs(defaultPlaylist.getId(), idCursor, 10));
+    }
+
+    @Test
+    public void testGetAllPlaylistsWithFieldsExpandsSongsOfRowsAndPackedPlaylists() {
+        List<Song> songs = createSongs(3);
+        Playlist rowsPlaylist = playlistOf(Arrays.asList(songs.get(2), songs.get(0)));
+        Playlist packedPlaylist = playlistOf(Arrays.asList(songs.get(1), songs.get(2)));
+        playlistService.changeSongStorage(packedPlaylist.getId(), "packed");
+        entityManager.flush();
+
+        String cursor = Cursor.after(Cursor.Order.ID, null, rowsPlaylist.getId() - 1).encode();
+        CursorPage<Projection> page = playlistService.getAllPlaylists(cursor, 2, "id", "title,songs.title", "songs");
+
+        assertThat(page.getContent()).hasSize(2);
+        Projection first = page.getContent().get(0);
+        assertThat(first.getValues()).containsOnlyKeys("id", "title", "songs");
+        assertThat(first.get("id")).isEqualTo(rowsPlaylist.getId());
+        assertThat(songTitlesOf(first)).containsExactly("Ordered Song 2", "Ordered Song 0");
+        assertThat(songsOf(first).get(0).getValues()).containsOnlyKeys("id", "title");
+        assertThat(songTitlesOf(page.getContent().get(1))).containsExactly("Ordered Song 1", "Ordered Song 2");
+    }
+
+    @Test
+    public void testGetAllPlaylistsWithSongFieldsNeedsExpand() {
+        BadRequestException ex = assertThrows(BadRequestException.class,
+                () -> playlistService.getAllPlaylists(null, 10, null, "title,songs.title", null));
+        assertThat(ex.getMessage()).isEqualTo("Fields of songs need expand=songs");
+
+        ex = assertThrows(BadRequestException.class,
+                () -> playlistService.getAllPlaylists(null, 10, null, null, "owner"));
+        assertThat(ex.getMessage()).isEqualTo("Not supported expand with value = owner");
+    }
+
+    @Test
+    public void testGetPlaylistSongsWithFieldsPagesThroughThePlaylistOrder() {
+        List<Song> songs = createSongs(5);
+        Playlist playlist = playlistOf(songs);
+        playlistService.moveSong(playlist.getId(), songs.get(4).getId(), null);
+        List<String> expectedTitles = Arrays.asList("Ordered Song 4", "Ordered Song 0", "Ordered Song 1",
+                "Ordered Song 2", "Ordered Song 3");
+
+        for (String storage : new String[]{"rows", "packed"}) {
+            playlistService.changeSongStorage(playlist.getId(), storage);
+            entityManager.flush();
+
+            List<String> pagedTitles = new ArrayList<>();
+            String cursor = null;
+            do {
+                CursorPage<Projection> page = playlistService.getPlaylistSongs(playlist.getId(), cursor, 2, "title");
+                page.getContent().forEach(song -> {
+                    assertThat(song.getValues()).containsOnlyKeys("id", "title");
+                    pagedTitles.add((String) song.get("title"));
+                });
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+            assertThat(pagedTitles).containsExactlyElementsOf(expectedTitles);
+        }
+    }
+
+    @Test
+    public void testGetPlaylistByIdWithoutSongs() throws Exception {
+        entityManager.flush();
+        entityManager.clear();
+
+        Playlist playlist = playlistService.getPlaylistById(defaultPlaylist.getId(), false);
+
+        assertThat(Hibernate.isInitialized(playlist.getSongs())).isFalse();
+        assertThat(new ObjectMapper().writeValueAsString(playlist)).doesNotContain("\"songs\"");
+    }
+
+    @Test
+    public void testMoveSongNotInPlaylist() {
+        ResourceNotFoundException ex = assertThrows(ResourceNotFoundException.class,
+                () -> playlistService.moveSong(defaultPlaylist.getId(), 4000L, null));
+        assertThat(ex.getMessage()).isEqualTo("Not found song with id = 4000 in playlist with id = " + defaultPlaylist.getId());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testMoveSongAfterItself() {
+        Long songId = defaultPlaylist.getSongs().get(0).getId();
+        playlistService.moveSong(defaultPlaylist.getId(), songId, songId);
+    }
+
+    @Test
+    public void testChangeSongStorageKeepsPlaylistOrder() throws IOException {
+        List<Song> songs = createSongs(5);
+        Playlist playlist = playlistOf(songs);
+        playlistService.moveSong(playlist.getId(), songs.get(4).getId(), null);
+        List<Long> expectedIds = Arrays.asList(songs.get(4).getId(), songs.get(0).getId(), songs.get(1).getId(),
+                songs.get(2).getId(), songs.get(3).getId());
+
+        playlistService.changeSongStorage(playlist.getId(), "packed");
+        entityManager.flush();
+        entityManager.clear();
+
+        assertThat(positionsOf(playlist.getId())).isEmpty();
+        Playlist packedPlaylist = playlistService.getPlaylistById(playlist.getId());
+        assertThat(packedPlaylist.getSongStorage()).isEqualTo(SongStorage.PACKED);
+        assertThat(packedPlaylist.getSongs()).extracting(Song::getId).containsExactlyElementsOf(expectedIds);
+
+        List<Long> pagedIds = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPage<Song> page = playlistService.getPlaylistSongs(playlist.getId(), cursor, 2);
+            page.getContent().forEach(song -> pagedIds.add(song.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertThat(pagedIds).containsExactlyElementsOf(expectedIds);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        playlistService.exportPlaylists(out);
+        assertThat(out.toString()).contains("Ordered Song 4");
+
+        playlistService.changeSongStorage(playlist.getId(), "ROWS");
+        entityManager.flush();
+        entityManager.clear();
+
+        assertThat(positionsOf(playlist.getId())).hasSize(5);
+        Playlist rowsPlaylist = playlistService.getPlaylistById(playlist.getId());
+        assertThat(rowsPlaylist.getSongStorage()).isEqualTo(SongStorage.ROWS);
+        assertThat(rowsPlaylist.getSongs()).extracting(Song::getId).containsExactlyElementsOf(expectedIds);
+    }
+
+    @Test
+    public void testAddRemoveAndMoveSongsOfPackedPlaylist() {
+        List<Song> songs = createSongs(4);
+        Playlist playlist = playlistOf(songs.subList(0, 2));
+        playlistService.changeSongStorage(playlist.getId(), "packed");
+
+        playlistService.addSongs(playlist.getId(), Arrays.asList(songs.get(2).getId(), songs.get(0).getId(), songs.get(3).getId()));
+        playlistService.moveSong(playlist.getId(), songs.get(3).getId(), songs.get(0).getId());
+        playlistService.removeSongs(playlist.getId(), Collections.singletonList(songs.get(1).getId()));
+
+        assertThat(positionsOf(playlist.getId())).isEmpty();
+        assertThat(playlistService.getPlaylistById(playlist.getId()).getSongs()).extracting(Song::getId)
+                .containsExactly(songs.get(0).getId(), songs.get(3).getId(), songs.get(2).getId());
+
+        ResourceNotFoundException ex = assertThrows(ResourceNotFoundException.class,
+                () -> playlistService.removeSongs(playlist.getId(), Collections.singletonList(songs.get(1).getId())));
+        assertThat(ex.getMessage()).isEqualTo("Not found songs with ids = [" + songs.get(1).getId() +
+                "] in playlist with id = " + playlist.getId());
+    }
+
+    @Test
+    public void testChangeSongStorageWithUnknownMode() {
+        BadRequestException ex = assertThrows(BadRequestException.class,
+                () -> playlistService.changeSongStorage(defaultPlaylist.getId(), "blob"));
+        assertThat(ex.getMessage()).isEqualTo("Not supported storage with value = blob");
+    }
+
+    @Test
+    public void testCopyPlaylistCopiesItsRowsOrItsPackedSongs() {
+        List<Song> songs = createSongs(3);
+        Playlist playlist = playlistOf(Arrays.asList(songs.get(2), songs.get(0), songs.get(1)));
+
+        Playlist copy = playlistService.copyPlaylist(playlist.getId());
+        entityManager.flush();
+        entityManager.clear();
+
+        assertThat(copy.getId()).isNotEqualTo(playlist.getId());
+        assertThat(copy.getTitle()).isEqualTo("Ordered Playlist");
+        assertThat(positionsOf(copy.getId())).isEqualTo(positionsOf(playlist.getId()));
+        assertThat(playlistService.getPlaylistById(copy.getId()).getSongs()).extracting(Song::getId)
+                .containsExactly(songs.get(2).getId(), songs.get(0).getId(), songs.get(1).getId());
+
+        playlistService.changeSongStorage(playlist.getId(), "packed");
+        Playlist packedCopy = playlistService.copyPlaylist(playlist.getId());
+        entityManager.flush();
+        entityManager.clear();
+
+        assertThat(packedCopy.getSongStorage()).isEqualTo(SongStorage.PACKED);
+        assertThat(positionsOf(packedCopy.getId())).isEmpty();
+        assertThat(playlistService.getPlaylistById(packedCopy.getId()).getSongs()).extracting(Song::getId)
+                .containsExactly(songs.get(2).getId(), songs.get(0).getId(), songs.get(1).getId());
+    }
+
+    @Test
+    public void testCombinePlaylistsInTheDatabase() {
+        List<Song> songs = createSongs(5);
+        Playlist first = playlistOf(songs.subList(0, 4));
+        Playlist second = playlistOf(Arrays.asList(songs.get(3), songs.get(1), songs.get(4)));
+        List<Long> ids = Arrays.asList(first.getId(), second.getId());
+
+        assertThat(combinedSongIds("union", ids)).containsExactly(songs.get(0).getId(), songs.get(1).getId(),
+                songs.get(2).getId(), songs.get(3).getId(), songs.get(4).getId());
+        assertThat(combinedSongIds("intersect", ids)).containsExactly(songs.get(1).getId(), songs.get(3).getId());
+        assertThat(combinedSongIds("MINUS", ids)).containsExactly(songs.get(0).getId(), songs.get(2).getId());
+        assertThat(combinedSongIds("union", Arrays.asList(second.getId(), first.getId()))).containsExactly(
+                songs.get(3).getId(), songs.get(1).getId(), songs.get(4).getId(), songs.get(0).getId(), songs.get(2).getId());
+
+        Playlist combination = playlistService.combinePlaylists("union", ids);
+        assertThat(combination.getTitle()).isEqualTo("Ordered Playlist");
+        assertThat(combination.getDescription()).isEqualTo("union of 2 playlists");
+        assertThat(combination.getSongStorage()).isEqualTo(SongStorage.ROWS);
+        assertThat(new ArrayList<>(positionsOf(combination.getId()).values()))
+                .containsExactlyInAnyOrder(1L << 20, 2L << 20, 3L << 20, 4L << 20, 5L << 20);
+    }
+
+    @Test
+    public void testCombinePackedPlaylistsInMemory() {
+        List<Song> songs = createSongs(5);
+        Playlist first = playlistOf(songs.subList(0, 4));
+        Playlist second = playlistOf(Arrays.asList(songs.get(3), songs.get(1), songs.get(4)));
+        playlistService.changeSongStorage(second.getId(), "packed");
+        songService.deleteSongById(songs.get(4).getId());
+        List<Long> ids = Arrays.asList(first.getId(), second.getId());
+
+        // the deleted song is still in the packed ids, it is left out of the combination
+        assertThat(combinedSongIds("union", ids)).containsExactly(songs.get(0).getId(), songs.get(1).getId(),
+                songs.get(2).getId(), songs.get(3).getId());
+        assertThat(combinedSongIds("intersect", ids)).containsExactly(songs.get(1).getId(), songs.get(3).getId());
+        assertThat(combinedSongIds("minus", ids)).containsExactly(songs.get(0).getId(), songs.get(2).getId());
+    }
+
+    @Test
+    public void testCombinePlaylistsWithUnknownOpOrPlaylists() {
+        BadRequestException badOp = assertThrows(BadRequestException.class,
+                () -> playlistService.combinePlaylists("xor", Arrays.asList(defaultPlaylist.getId(), 4000L)));
+        assertThat(badOp.getMessage()).isEqualTo("Not supported op with value = xor");
+
+        BadRequestException single = assertThrows(BadRequestException.class,
+                () -> playlistService.combinePlaylists("union", Arrays.asList(defaultPlaylist.getId(), defaultPlaylist.getId())));
+        assertThat(single.getMessage()).isEqualTo("ids must hold between 2 and 1000 playlist ids");
+
+        ResourceNotFoundException missing = assertThrows(ResourceNotFoundException.class,
+                () -> playlistService.combinePlaylists("union", Arrays.asList(defaultPlaylist.getId(), 4000L, 4001L)));
+        assertThat(missing.getMessage()).isEqualTo("Not found playlists with ids = [4000, 4001]");
+    }
+
+    @Test
+    public void testPlaylistVersionMovesWithItsSongs() {
+        List<Song> songs = createSongs(3);
+        Playlist playlist = playlistOf(songs.subList(0, 2));
+        Long id = playlist.getId();
+        ResourceVersion created = playlistService.getPlaylistVersion(id, true);
+        assertThat(created.getTag()).isEqualTo(playlistService.getPlaylistVersion(id, false).getTag() + "-2-0");
+
+        playlistService.addSongs(id, Collections.singletonList(songs.get(2).getId()));
+        entityManager.flush();
+        ResourceVersion added = playlistService.getPlaylistVersion(id, true);
+        assertThat(added.getTag()).isNotEqualTo(created.getTag());
+
+        entityManager.find(Song.class, songs.get(0).getId()).setTitle("Renamed Ordered Song");
+        entityManager.flush();
+        ResourceVersion songUpdated = playlistService.getPlaylistVersion(id, true);
+        assertThat(songUpdated.getTag()).isNotEqualTo(added.getTag());
+        assertThat(playlistService.getPlaylistVersion(id, false).getTag()).isEqualTo(added.getTag().split("-")[0]);
+
+        playlistService.changeSongStorage(id, "packed");
+        entityManager.flush();
+        ResourceVersion packed = playlistService.getPlaylistVersion(id, true);
+        assertThat(packed.getTag()).isNotEqualTo(songUpdated.getTag()).endsWith("-3-1");
+
+        playlistService.moveSong(id, songs.get(2).getId(), null);
+        entityManager.flush();
+        assertThat(playlistService.getPlaylistVersion(id, true).getTag()).isNotEqualTo(packed.getTag());
+    }
+
     @Test
     public void testUpdatePlaylist() {
         defaultPlaylist.setTitle("Updated Playlist");
@@ -127,6 +706,77 @@ public class PlaylistServiceIntegrationTest {
 
     }
 
+    @Test
+    public void testEveryWriteMovesTheVersionOnce() {
+        List<Song> songs = createSongs(3);
+        Playlist playlist = playlistOf(songs.subList(0, 2));
+        Long id = playlist.getId();
+
+        playlistService.addSongs(id, Collections.singletonList(songs.get(2).getId()));
+        playlistService.moveSong(id, songs.get(2).getId(), null);
+        playlistService.removeSongs(id, Collections.singletonList(songs.get(0).getId()));
+        playlistService.changeSongStorage(id, "packed");
+        playlistService.updatePlaylist(bodyOf(id, "Renamed Playlist", songs.get(1)));
+        entityManager.flush();
+        entityManager.clear();
+
+        assertThat(playlistRepository.findById(id).get().getVersion()).isEqualTo(5);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from playlist_changes where playlist_id = ?", Long.class, id))
+                .isEqualTo(5);
+    }
+
+    @Test
+    public void testStaleUpdateIsMergedWithConcurrentAdds() {
+        List<Song> songs = createSongs(4);
+        Playlist playlist = playlistOf(songs.subList(0, 2));
+        Long id = playlist.getId();
+        long baseVersion = playlist.getVersion();
+
+        playlistService.addSongs(id, Collections.singletonList(songs.get(2).getId()));
+        playlistService.updatePlaylist(bodyOf(id, "Merged Playlist", songs.get(0), songs.get(1), songs.get(3)), baseVersion);
+        entityManager.flush();
+        entityManager.clear();
+
+        Playlist merged = playlistService.getPlaylistById(id);
+        assertThat(merged.getTitle()).isEqualTo("Merged Playlist");
+        assertThat(merged.getSongs()).extracting(Song::getId).containsExactly(
+                songs.get(0).getId(), songs.get(1).getId(), songs.get(3).getId(), songs.get(2).getId());
+    }
+
+    @Test
+    public void testStaleUpdateKeepsConcurrentRemovals() {
+        List<Song> songs = createSongs(3);
+        Playlist playlist = playlistOf(songs);
+        Long id = playlist.getId();
+        long baseVersion = playlist.getVersion();
+
+        playlistService.removeSongs(id, Collections.singletonList(songs.get(1).getId()));
+        playlistService.updatePlaylist(bodyOf(id, "Merged Playlist", songs.get(2), songs.get(1), songs.get(0)), baseVersion);
+        entityManager.flush();
+        entityManager.clear();
+
+        assertThat(playlistService.getPlaylistById(id).getSongs()).extracting(Song::getId)
+                .containsExactly(songs.get(2).getId(), songs.get(0).getId());
+    }
+
+    @Test
+    public void testStaleUpdateOfAConcurrentlyChangedTitle() {
+        long baseVersion = defaultPlaylist.getVersion();
+        playlistService.updatePlaylist(bodyOf(defaultPlaylist.getId(), "First Title"));
+
+        ConflictException ex = assertThrows(ConflictException.class,
+                () -> playlistService.updatePlaylist(bodyOf(defaultPlaylist.getId(), "Second Title"), baseVersion));
+        assertThat(ex.getMessage()).isEqualTo("The title of the playlist was changed concurrently");
+    }
+
+    @Test
+    public void testUpdateBasedOnUnknownVersion() {
+        long version = defaultPlaylist.getVersion() + 1;
+        PreconditionFailedException ex = assertThrows(PreconditionFailedException.class,
+                () -> playlistService.updatePlaylist(bodyOf(defaultPlaylist.getId(), "Future Title"), version));
+        assertThat(ex.getMessage()).isEqualTo("Not found version " + version + " of playlist with id = " + defaultPlaylist.getId());
+    }
+
     @Test
     public void testDeletePlaylistById() {
         playlistService.deletePlaylistById(defaultPlaylist.getId());
@@ -141,4 +791,74 @@ public class PlaylistServiceIntegrationTest {
 
     }
 
+    private List<Song> createSongs(int count) {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Song song = new Song();
+            song.setTitle("Ordered Song " + i);
+            song.setDescription("Sparse positions");
+            song.setCategory(SongCategory.JAZZ);
+            song.setArtistName("Ordered Artist");
+            song.setDuration("3:00");
+            songs.add(songService.createSong(song));
+        }
+        return songs;
+    }
+
+    private Playlist playlistOf(List<Song> songs) {
+        Playlist playlist = new Playlist();
+        playlist.setTitle("Ordered Playlist");
+        playlist.setDescription("Sparse positions");
+        playlist.setSongs(new ArrayList<>(songs));
+        Playlist savedPlaylist = playlistService.createPlaylist(playlist);
+        entityManager.flush();
+        entityManager.clear();
+        return savedPlaylist;
+    }
+
+    /**
+     * a PUT body : the songs only carry their id
+     */
+    private static Playlist bodyOf(Long id, String title, Song... songs) {
+        Playlist playlist = new Playlist();
+        playlist.setId(id);
+        playlist.setTitle(title);
+        playlist.setDescription("Sparse positions");
+        List<Song> references = new ArrayList<>();
+        for (Song song : songs) {
+            Song reference = new Song();
+            reference.setId(song.getId());
+            references.add(reference);
+        }
+        playlist.setSongs(references);
+        return playlist;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Projection> songsOf(Projection playlist) {
+        return (List<Projection>) playlist.get("songs");
+    }
+
+    private static List<Object> songTitlesOf(Projection playlist) {
+        return songsOf(playlist).stream()
+                .map(song -> song.get("title"))
+                .collect(Collectors.toList());
+    }
+
+    private List<Long> combinedSongIds(String op, List<Long> ids) {
+        Playlist combination = playlistService.combinePlaylists(op, ids);
+        entityManager.flush();
+        entityManager.clear();
+        return jdbcTemplate.queryForList("select song_id from songs_playlist where playlist_id = ? order by position",
+                Long.class, combination.getId());
+    }
+
+    private Map<Long, Long> positionsOf(Long playlistId) {
+        Map<Long, Long> positions = new HashMap<>();
+        jdbcTemplate.query("select song_id, position from songs_playlist where playlist_id = ?",
+                rs -> {
+                    positions.put(rs.getLong("song_id"), rs.getLong("position"));
+                }, playlistId);
+        return positions;
+    }
 }
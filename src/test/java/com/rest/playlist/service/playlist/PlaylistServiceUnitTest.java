@@ -1,11 +1,23 @@
 package com.rest.playlist.service.playlist;
 
 import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.enums.SongStorage;
+import com.rest.playlist.web.exception.BadRequestException;
 import com.rest.playlist.web.exception.ResourceNotFoundException;
 import com.rest.playlist.model.Playlist;
 import com.rest.playlist.model.Song;
+import com.rest.playlist.repository.PackedSongIdsJdbcRepository;
+import com.rest.playlist.repository.PlaylistChangeJdbcRepository;
+import com.rest.playlist.repository.PlaylistJdbcRepository;
+import com.rest.playlist.repository.PlaylistMemberJdbcRepository;
 import com.rest.playlist.repository.PlaylistRepository;
+import com.rest.playlist.repository.ProjectionJdbcRepository;
 import com.rest.playlist.service.ISongService;
+import com.rest.playlist.dto.Suggestion;
+import com.rest.playlist.search.PlaylistSearchIndex;
+import com.rest.playlist.service.PlaylistBulkExporter;
+import com.rest.playlist.service.PlaylistRenumberingJob;
+import com.rest.playlist.service.OptimisticLockRetry;
 import com.rest.playlist.service.PlaylistServiceImpl;
 import org.junit.Before;
 import org.junit.Test;
@@ -14,9 +26,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 
@@ -36,6 +52,29 @@ public class PlaylistServiceUnitTest {
     @MockBean
     private ISongService songService;
 
+    @MockBean
+    private PlaylistJdbcRepository playlistJdbcRepository;
+
+    @MockBean
+    private PlaylistMemberJdbcRepository playlistMemberJdbcRepository;
+
+    @MockBean
+    private PackedSongIdsJdbcRepository packedSongIdsJdbcRepository;
+
+    @MockBean
+    private PlaylistChangeJdbcRepository playlistChangeJdbcRepository;
+
+    @MockBean
+    private ProjectionJdbcRepository projectionJdbcRepository;
+
+    @MockBean
+    private PlaylistBulkExporter playlistBulkExporter;
+
+    @MockBean
+    private PlaylistRenumberingJob playlistRenumberingJob;
+
+    private PlaylistSearchIndex playlistSearchIndex;
+
     private PlaylistServiceImpl playlistService;
 
     private Playlist myPlaylist;
@@ -45,7 +84,11 @@ public class PlaylistServiceUnitTest {
 
     @Before
     public void setup() {
-        playlistService = new PlaylistServiceImpl(playlistRepository, songService);
+        playlistSearchIndex = new PlaylistSearchIndex();
+        playlistService = new PlaylistServiceImpl(playlistRepository, playlistJdbcRepository, playlistMemberJdbcRepository,
+                packedSongIdsJdbcRepository, playlistChangeJdbcRepository, projectionJdbcRepository, songService,
+                playlistBulkExporter, playlistSearchIndex, playlistRenumberingJob,
+                new OptimisticLockRetry(new TransactionTemplate(mock(PlatformTransactionManager.class))));
 
         Song song1 =  new Song();
         song1.setTitle("For The Lover That I Lost");
@@ -86,13 +129,49 @@ public class PlaylistServiceUnitTest {
     @Test
     public void testGetPlaylistsByTitle() {
         playlistList.add(myPlaylist);
-        when(playlistRepository.findPlaylistsByTitleContaining(myPlaylist.getTitle())).thenReturn(playlistList);
+        playlistSearchIndex.saved(myPlaylist);
+        when(playlistRepository.findAllById(Arrays.asList(myPlaylist.getId()))).thenReturn(playlistList);
         List<Playlist> playlists = playlistService.getPlaylistsByTitle(myPlaylist.getTitle());
 
         //test
         assertThat(playlists).isNotEmpty();
         assertThat(playlists).hasSizeGreaterThanOrEqualTo(1);
-        verify(playlistRepository, times(1)).findPlaylistsByTitleContaining(myPlaylist.getTitle());
+        verify(playlistRepository, times(1)).findAllById(Arrays.asList(myPlaylist.getId()));
+        verify(playlistRepository, never()).findPlaylistsByTitleContaining(anyString());
+    }
+
+    @Test
+    public void testGetPlaylistsByTitleQueriesOneChunkPerInList() {
+        for (long id = 1; id <= 2500; id++) {
+            Playlist playlist = new Playlist();
+            playlist.setId(id);
+            playlist.setTitle("Playlist1");
+            playlistSearchIndex.saved(playlist);
+        }
+        when(playlistRepository.findAllById(anyList())).thenAnswer(invocation -> {
+            List<Long> chunk = invocation.getArgument(0);
+            List<Playlist> playlists = new ArrayList<>();
+            for (Long id : chunk) {
+                Playlist playlist = new Playlist();
+                playlist.setId(id);
+                playlist.setTitle("Playlist1");
+                playlists.add(playlist);
+            }
+            return playlists;
+        });
+
+        assertThat(playlistService.getPlaylistsByTitle("Playlist1")).hasSize(2500);
+        verify(playlistRepository, times(3)).findAllById(anyList());
+    }
+
+    @Test
+    public void testSuggestPlaylists() {
+        playlistSearchIndex.saved(myPlaylist);
+        List<Suggestion> suggestions = playlistService.suggestPlaylists("play", 10);
+
+        //test
+        assertThat(suggestions).extracting(Suggestion::getValue).containsExactly("Playlist1");
+        verifyNoInteractions(playlistRepository);
     }
 
     @Test
@@ -102,6 +181,8 @@ public class PlaylistServiceUnitTest {
         when(playlistRepository.save(any(Playlist.class))).thenReturn(myPlaylist);
         playlistService.createPlaylist(myPlaylist);
         verify(playlistRepository, times(1)).save(any(Playlist.class));
+        verify(songService, times(1)).getSongsByIds(anyList());
+        verify(songService, never()).getSongById(any());
     }
 
     @Test
@@ -136,7 +217,7 @@ public class PlaylistServiceUnitTest {
     @Test
     public void testGetPlaylistsById() {
         // when
-        when(playlistRepository.findById(myPlaylist.getId())).thenReturn(Optional.ofNullable(myPlaylist));
+        when(playlistRepository.findWithSongsById(myPlaylist.getId())).thenReturn(Optional.ofNullable(myPlaylist));
         Playlist foundPlaylist = playlistService.getPlaylistById(myPlaylist.getId());
 
         //test - then
@@ -154,7 +235,7 @@ public class PlaylistServiceUnitTest {
     public void testGetPlaylistsWithNonExistingId() {
 
         // when
-        when(playlistRepository.findById(4000L)).thenReturn(Optional.empty());
+        when(playlistRepository.findWithSongsById(4000L)).thenReturn(Optional.empty());
         playlistService.getPlaylistById(4000L);
     }
 
@@ -177,4 +258,80 @@ public class PlaylistServiceUnitTest {
         when(playlistRepository.findById(4000L)).thenReturn(Optional.empty());
         playlistService.deletePlaylistById(4000L);
     }
+
+    @Test
+    public void testAddSongsInsertsOnlyNewMembers() {
+        when(playlistRepository.findById(myPlaylist.getId())).thenReturn(Optional.of(myPlaylist));
+        when(playlistMemberJdbcRepository.findMemberSongIds(myPlaylist.getId(), Arrays.asList(1L, 2L)))
+                .thenReturn(Collections.singleton(1L));
+
+        playlistService.addSongs(myPlaylist.getId(), Arrays.asList(1L, 2L, 2L));
+
+        verify(songService, times(1)).getSongsByIds(Arrays.asList(1L, 2L));
+        verify(playlistMemberJdbcRepository, times(1)).addMembers(myPlaylist.getId(), Collections.singletonList(2L));
+        verify(playlistRepository, never()).save(any(Playlist.class));
+    }
+
+    @Test
+    public void testAddSongsAlreadyInPlaylist() {
+        when(playlistRepository.findById(myPlaylist.getId())).thenReturn(Optional.of(myPlaylist));
+        when(playlistMemberJdbcRepository.findMemberSongIds(myPlaylist.getId(), Collections.singletonList(1L)))
+                .thenReturn(Collections.singleton(1L));
+
+        playlistService.addSongs(myPlaylist.getId(), Collections.singletonList(1L));
+
+        verify(playlistMemberJdbcRepository, never()).addMembers(anyLong(), anyList());
+    }
+
+    @Test
+    public void testAddSongsWithNonExistingPlaylist() {
+        when(playlistRepository.findById(4000L)).thenReturn(Optional.empty());
+
+        ResourceNotFoundException ex = assertThrows(ResourceNotFoundException.class,
+                () -> playlistService.addSongs(4000L, Collections.singletonList(1L)));
+
+        assertThat(ex.getMessage()).isEqualTo("Not found playlist with id = 4000");
+        verifyNoInteractions(playlistMemberJdbcRepository, packedSongIdsJdbcRepository);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testAddSongsWithoutIds() {
+        playlistService.addSongs(myPlaylist.getId(), Collections.emptyList());
+    }
+
+    @Test
+    public void testRemoveSongs() {
+        when(playlistRepository.findById(myPlaylist.getId())).thenReturn(Optional.of(myPlaylist));
+        when(playlistMemberJdbcRepository.findMemberSongIds(myPlaylist.getId(), Arrays.asList(1L, 2L)))
+                .thenReturn(new HashSet<>(Arrays.asList(1L, 2L)));
+
+        playlistService.removeSongs(myPlaylist.getId(), Arrays.asList(1L, 2L));
+
+        verify(playlistMemberJdbcRepository, times(1)).removeMembers(myPlaylist.getId(), Arrays.asList(1L, 2L));
+    }
+
+    @Test
+    public void testRemoveSongsNotInPlaylist() {
+        when(playlistRepository.findById(myPlaylist.getId())).thenReturn(Optional.of(myPlaylist));
+        when(playlistMemberJdbcRepository.findMemberSongIds(myPlaylist.getId(), Arrays.asList(1L, 2L, 3L)))
+                .thenReturn(Collections.singleton(1L));
+
+        ResourceNotFoundException ex = assertThrows(ResourceNotFoundException.class,
+                () -> playlistService.removeSongs(myPlaylist.getId(), Arrays.asList(1L, 2L, 3L)));
+
+        assertThat(ex.getMessage()).isEqualTo("Not found songs with ids = [2, 3] in playlist with id = 1000");
+        verify(playlistMemberJdbcRepository, never()).removeMembers(anyLong(), anyCollection());
+    }
+
+    @Test
+    public void testAddSongsToPackedPlaylistRewritesItsRow() {
+        myPlaylist.setSongStorage(SongStorage.PACKED);
+        when(playlistRepository.findById(myPlaylist.getId())).thenReturn(Optional.of(myPlaylist));
+        when(packedSongIdsJdbcRepository.findPackedSongIds(myPlaylist.getId())).thenReturn(new ArrayList<>(Arrays.asList(3L, 1L)));
+
+        playlistService.addSongs(myPlaylist.getId(), Arrays.asList(1L, 2L));
+
+        verify(packedSongIdsJdbcRepository, times(1)).savePackedSongIds(myPlaylist.getId(), Arrays.asList(3L, 1L, 2L));
+        verify(playlistMemberJdbcRepository, never()).addMembers(anyLong(), anyList());
+    }
 }
@@ -0,0 +1,99 @@
+package com.rest.playlist.service.song;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rest.playlist.dto.BulkImportReport;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.repository.SongJdbcRepository;
+import com.rest.playlist.search.SongSearchIndex;
+import com.rest.playlist.service.SongBulkImporter;
+import com.rest.playlist.service.io.TransferFormat;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@RunWith(SpringRunner.class)
+public class SongBulkImporterUnitTest {
+
+    private final static Logger log = LoggerFactory.getLogger(SongBulkImporterUnitTest.class);
+
+    @MockBean
+    private SongJdbcRepository songJdbcRepository;
+
+    @MockBean
+    private PlatformTransactionManager transactionManager;
+
+    private SongBulkImporter songBulkImporter;
+
+    @Before
+    public void setup() {
+        songBulkImporter = new SongBulkImporter(songJdbcRepository,
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                new ObjectMapper(),
+                new TransactionTemplate(transactionManager),
+                new SongSearchIndex(),
+                100);
+    }
+
+    @Test
+    public void testImportSongsInChunks() throws Exception {
+        List<Integer> chunkSizes = new ArrayList<>();
+        when(songJdbcRepository.insertAll(anyList())).thenAnswer(invocation -> {
+            List<Song> chunk = invocation.getArgument(0);
+            chunkSizes.add(chunk.size());
+            chunk.forEach(song -> song.setId((long) song.getTitle().hashCode()));
+            return chunk;
+        });
+
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 250; i++) {
+            body.append("{\"title\":\"Song #").append(i)
+                    .append("\",\"description\":\"Bulk upload\",\"duration\":\"3:01\",\"artistName\":\"Sam Smith\",\"category\":\"POP\"}\n");
+        }
+
+        BulkImportReport report = songBulkImporter.importSongs(
+                new ByteArrayInputStream(body.toString().getBytes(StandardCharsets.UTF_8)), TransferFormat.NDJSON);
+
+        assertThat(report.getReceived()).isEqualTo(250);
+        assertThat(report.getImported()).isEqualTo(250);
+        assertThat(report.getErrors()).isEmpty();
+        assertThat(chunkSizes).containsExactly(100, 100, 50);
+        verify(transactionManager, times(3)).commit(any());
+    }
+
+    @Test
+    public void testImportSongsReportsInvalidRows() throws Exception {
+        String body = "{\"title\":\"Song #1\",\"description\":\"Bulk upload\",\"duration\":\"3:01\",\"artistName\":\"Sam Smith\",\"category\":\"POP\"}\n"
+                + "not json\n"
+                + "{\"title\":\"S\",\"description\":\"Bulk upload\",\"duration\":\"3:01\",\"artistName\":\"Sam Smith\"}\n";
+
+        BulkImportReport report = songBulkImporter.importSongs(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), TransferFormat.NDJSON);
+
+        assertThat(report.getReceived()).isEqualTo(3);
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getRejected()).isEqualTo(2);
+        assertThat(report.getErrors()).extracting(BulkImportReport.RowError::getLine).containsExactly(2L, 3L);
+        assertThat(report.getErrors().get(1).getMessage())
+                .isEqualTo("NotNull: categorie<JAZZ, POP, CLASSICAL> ne doit pas être nulle, "
+                        + "Size: titre doit être compris entre 3 et 50 caractères");
+
+        ArgumentCaptor<List<Song>> chunk = ArgumentCaptor.forClass(List.class);
+        verify(songJdbcRepository, times(1)).insertAll(chunk.capture());
+    }
+}
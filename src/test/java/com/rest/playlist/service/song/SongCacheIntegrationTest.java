@@ -0,0 +1,197 @@
+package com.rest.playlist.service.song;
+
+import com.rest.playlist.dto.CacheRegionReport;
+import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.model.Playlist;
+import com.rest.playlist.model.Song;
+import com.rest.playlist.repository.PlaylistRepository;
+import com.rest.playlist.repository.SongRepository;
+import com.rest.playlist.service.CacheStatisticsService;
+import com.rest.playlist.service.IPlaylistService;
+import com.rest.playlist.service.ISongService;
+import com.rest.playlist.web.exception.ResourceNotFoundException;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * second-level cache behaviour : every test commits, so entries really reach (and leave) the cache
+ */
+
+@SpringBootTest
+@RunWith(SpringRunner.class)
+public class SongCacheIntegrationTest {
+
+    private static final String SONG_REGION = Song.class.getName();
+    private static final String PLAYLIST_SONGS_REGION = Playlist.class.getName() + ".songs";
+
+    @Autowired
+    private ISongService songService;
+
+    @Autowired
+    private IPlaylistService playlistService;
+
+    @Autowired
+    private SongRepository songRepository;
+
+    @Autowired
+    private PlaylistRepository playlistRepository;
+
+    @Autowired
+    private CacheStatisticsService cacheStatisticsService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Statistics statistics;
+    private final List<Long> playlistIds = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @After
+    public void cleanup() {
+        playlistIds.forEach(playlistRepository::deleteById);
+        songRepository.deleteAll(songRepository.findSongsByArtistNameContaining("Komeda"));
+    }
+
+    @Test
+    public void testGetSongByIdIsServedFromCache() {
+        Song savedSong = songService.createSong(newSong("Rosemary's Baby"));
+        long hits = hits(SONG_REGION);
+        statistics.clear();
+
+        Song cachedSong = songService.getSongById(savedSong.getId());
+        songService.getSongById(savedSong.getId());
+
+        assertThat(cachedSong.getTitle()).isEqualTo("Rosemary's Baby");
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getDomainDataRegionStatistics(SONG_REGION).getHitCount()).isEqualTo(2);
+        assertThat(hits(SONG_REGION)).isEqualTo(hits + 2);
+    }
+
+    @Test
+    public void testUpdateSongRefreshesCachedSong() {
+        Song savedSong = songService.createSong(newSong("Rosemary's Baby"));
+        songService.getSongById(savedSong.getId());
+
+        savedSong.setTitle("Knife in the Water");
+        songService.updateSong(savedSong);
+
+        assertThat(songService.getSongById(savedSong.getId()).getTitle()).isEqualTo("Knife in the Water");
+    }
+
+    @Test
+    public void testDeleteSongEvictsCachedSong() {
+        Song savedSong = songService.createSong(newSong("Rosemary's Baby"));
+        songService.getSongById(savedSong.getId());
+        assertThat(entityManagerFactory.getCache().contains(Song.class, savedSong.getId())).isTrue();
+
+        songService.deleteSongById(savedSong.getId());
+        statistics.clear();
+
+        // a read-write region keeps a lock marker in place of the entry : lookups miss it
+        assertThatThrownBy(() -> songService.getSongById(savedSong.getId()))
+                .isInstanceOf(ResourceNotFoundException.class);
+        assertThat(statistics.getDomainDataRegionStatistics(SONG_REGION).getHitCount()).isZero();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testUpdatePlaylistRefreshesCachedSongs() {
+        Song firstSong = songService.createSong(newSong("Rosemary's Baby"));
+        Song secondSong = songService.createSong(newSong("Knife in the Water"));
+        Playlist playlist = new Playlist();
+        playlist.setTitle("Komeda Playlist");
+        playlist.setDescription("Cached songs");
+        playlist.setSongs(new ArrayList<>(Collections.singletonList(firstSong)));
+        Playlist savedPlaylist = playlistService.createPlaylist(playlist);
+        playlistIds.add(savedPlaylist.getId());
+
+        assertThat(songTitlesOf(savedPlaylist.getId())).containsExactly("Rosemary's Baby");
+        assertThat(entityManagerFactory.unwrap(SessionFactory.class).getCache()
+                .containsCollection(PLAYLIST_SONGS_REGION, savedPlaylist.getId())).isTrue();
+
+        savedPlaylist.setSongs(new ArrayList<>(Collections.singletonList(secondSong)));
+        playlistService.updatePlaylist(savedPlaylist);
+
+        assertThat(songTitlesOf(savedPlaylist.getId())).containsExactly("Knife in the Water");
+    }
+
+    @Test
+    public void testAddAndRemoveSongsEvictCachedSongs() {
+        Song firstSong = songService.createSong(newSong("Rosemary's Baby"));
+        Song secondSong = songService.createSong(newSong("Knife in the Water"));
+        Playlist playlist = new Playlist();
+        playlist.setTitle("Komeda Playlist");
+        playlist.setDescription("Cached songs");
+        playlist.setSongs(new ArrayList<>(Collections.singletonList(firstSong)));
+        Playlist savedPlaylist = playlistService.createPlaylist(playlist);
+        playlistIds.add(savedPlaylist.getId());
+        assertThat(songTitlesOf(savedPlaylist.getId())).containsExactly("Rosemary's Baby");
+
+        playlistService.addSongs(savedPlaylist.getId(), Collections.singletonList(secondSong.getId()));
+        assertThat(songTitlesOf(savedPlaylist.getId())).containsExactlyInAnyOrder("Rosemary's Baby", "Knife in the Water");
+
+        playlistService.removeSongs(savedPlaylist.getId(), Collections.singletonList(firstSong.getId()));
+        assertThat(songTitlesOf(savedPlaylist.getId())).containsExactly("Knife in the Water");
+    }
+
+    @Test
+    public void testStatisticsListEveryRegion() {
+        assertThat(cacheStatisticsService.getRegionReports())
+                .extracting(CacheRegionReport::getRegion)
+                .containsExactly(Playlist.class.getName(), PLAYLIST_SONGS_REGION, SONG_REGION);
+    }
+
+    private List<String> songTitlesOf(Long playlistId) {
+        return transactionTemplate.execute(status -> entityManager.find(Playlist.class, playlistId).getSongs()
+                .stream()
+                .map(Song::getTitle)
+                .collect(Collectors.toList()));
+    }
+
+    private long hits(String region) {
+        return cacheStatisticsService.getRegionReports().stream()
+                .filter(report -> report.getRegion().equals(region))
+                .findFirst()
+                .map(CacheRegionReport::getHits)
+                .orElseThrow(IllegalStateException::new);
+    }
+
+    private static Song newSong(String title) {
+        Song song = new Song();
+        song.setTitle(title);
+        song.setDescription("Second-level cache");
+        song.setCategory(SongCategory.JAZZ);
+        song.setArtistName("Krzysztof Komeda");
+        song.setDuration("3:30");
+        return song;
+    }
+}
@@ -1,10 +1,21 @@
 package com.rest.playlist.service.song;
 
+import com.rest.playlist.dto.ResourceVersion;
 import com.rest.playlist.enums.SongCategory;
 import com.rest.playlist.web.exception.ResourceNotFoundException;
+import com.rest.playlist.web.exception.PreconditionFailedException;
+import com.rest.playlist.model.Playlist;
 import com.rest.playlist.model.Song;
+import com.rest.playlist.pagination.Cursor;
+import com.rest.playlist.pagination.CursorPage;
+import com.rest.playlist.projection.Projection;
+import com.rest.playlist.web.exception.BadRequestException;
+import com.rest.playlist.repository.PlaylistRepository;
 import com.rest.playlist.repository.SongRepository;
+import com.rest.playlist.service.IPlaylistService;
 import com.rest.playlist.service.SongServiceImpl;
+import com.rest.playlist.service.io.TransferFormat;
+import org.hibernate.Session;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -15,8 +26,16 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertThrows;
@@ -34,6 +53,15 @@ public class SongServiceIntegrationTest {
     @Autowired
     private SongServiceImpl songService;
 
+    @Autowired
+    private PlaylistRepository playlistRepository;
+
+    @Autowired
+    private IPlaylistService playlistService;
+
+    @Autowired
+    private EntityManager entityManager;
+
     private Song defaultSong;
 
     @Before
@@ -56,6 +84,78 @@ public class SongServiceIntegrationTest {
         assertThat(songs).isNotNull().isNotEmpty();
     }
 
+    @Test
+    public void testGetAllSongsByPages() {
+        for (int i = 0; i < 4; i++) {
+            Song song = new Song();
+            song.setTitle("Page Song " + i);
+            song.setDescription("Keyset page " + i);
+            song.setCategory(SongCategory.JAZZ);
+            song.setArtistName("Page Artist");
+            song.setDuration("2:0" + i);
+            songRepository.saveAndFlush(song);
+        }
+        int total = songRepository.findAll().size();
+
+        for (String sort : new String[]{"id", "createdAt"}) {
+            List<Song> songs = new ArrayList<>();
+            String cursor = null;
+            do {
+                CursorPage<Song> page = songService.getAllSongs(cursor, 2, sort);
+                assertThat(page.getContent()).hasSizeLessThanOrEqualTo(2);
+                songs.addAll(page.getContent());
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+
+            assertThat(songs).hasSize(total);
+            assertThat(songs).doesNotHaveDuplicates();
+        }
+    }
+
+    @Test
+    public void testGetAllSongsWithFieldsReadsRequestedColumnsOnly() {
+        String cursor = Cursor.after(Cursor.Order.ID, null, defaultSong.getId() - 1).encode();
+        CursorPage<Projection> page = songService.getAllSongs(cursor, 1, "id", "title, artistName");
+
+        Projection song = page.getContent().get(0);
+        assertThat(song.get("id")).isEqualTo(defaultSong.getId());
+        assertThat(song.getValues()).containsOnlyKeys("id", "title", "artistName");
+        assertThat(song.get("title")).isEqualTo(defaultSong.getTitle());
+        assertThat(song.get("artistName")).isEqualTo(defaultSong.getArtistName());
+    }
+
+    @Test
+    public void testGetAllSongsWithFieldsByPages() {
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPage<Projection> page = songService.getAllSongs(cursor, 1, "createdAt", "title");
+            page.getContent().forEach(song -> ids.add((Long) song.get("id")));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertThat(ids).hasSize(songRepository.findAll().size()).doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void testGetAllSongsWithUnknownField() {
+        BadRequestException ex = assertThrows(BadRequestException.class,
+                () -> songService.getAllSongs(null, 10, null, "title,createdAt"));
+        assertThat(ex.getMessage()).isEqualTo("Not supported field with value = createdAt");
+    }
+
+    @Test
+    public void testGetAllSongsWithInvalidCursor() {
+        BadRequestException ex = assertThrows(BadRequestException.class, () -> songService.getAllSongs("not-a-cursor", 10, null));
+
+        assertThat(ex.getMessage()).isEqualTo("Invalid cursor with value = not-a-cursor");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testGetAllSongsWithLimitTooLarge() {
+        songService.getAllSongs(null, 5000, "id");
+    }
+
     @Test
     public void testGetSongsByCategory() {
         List<Song> songs = songService.getSongsByCategory("POP");
@@ -110,6 +210,38 @@ public class SongServiceIntegrationTest {
         assertThat(savedSong.getArtistName()).isEqualTo(defaultSong.getArtistName());
     }
 
+    @Test
+    public void testSongVersionMovesWithUpdates() {
+        ResourceVersion created = songService.getSongVersion(defaultSong.getId());
+        assertThat(created.getETag()).isEqualTo("W/\"0\"");
+
+        entityManager.detach(defaultSong);
+        defaultSong.setTitle("Broken");
+        songService.updateSong(defaultSong);
+        entityManager.flush();
+
+        ResourceVersion updated = songService.getSongVersion(defaultSong.getId());
+        assertThat(updated.getETag()).isEqualTo("W/\"1\"");
+        assertThat(updated.getLastModified()).isAfterOrEqualTo(created.getLastModified());
+    }
+
+    @Test
+    public void testUpdateSongBasedOnStaleVersion() {
+        entityManager.detach(defaultSong);
+        defaultSong.setTitle("Broken");
+        songService.updateSong(defaultSong, 0L);
+        entityManager.flush();
+
+        PreconditionFailedException ex = assertThrows(PreconditionFailedException.class,
+                () -> songService.updateSong(defaultSong, 0L));
+        assertThat(ex.getMessage()).isEqualTo("Song with id = " + defaultSong.getId() + " was changed since version 0");
+    }
+
+    @Test(expected = ResourceNotFoundException.class)
+    public void testGetSongVersionWithNonExistingId() {
+        songService.getSongVersion(4000L);
+    }
+
     @Test
     public void testUpdateSong() {
         defaultSong.setTitle("Broken");
@@ -127,6 +259,28 @@ public class SongServiceIntegrationTest {
 
     }
 
+    @Test
+    public void testUpdateSongKeepsItsCreationDate() {
+        entityManager.flush();
+        entityManager.clear();
+        Instant createdAt = songRepository.findById(defaultSong.getId()).get().getCreateAt();
+
+        Song body = new Song();
+        body.setId(defaultSong.getId());
+        body.setTitle("Broken");
+        body.setDescription("Isak Album");
+        body.setCategory(defaultSong.getCategory());
+        body.setArtistName("Isak Danielson");
+        body.setDuration(defaultSong.getDuration());
+        body.setCreateAt(Instant.parse("2000-01-01T00:00:00Z"));
+        Song updatedSong = songService.updateSong(body);
+        entityManager.clear();
+
+        assertThat(updatedSong.getCreateAt()).isEqualTo(createdAt);
+        assertThat(updatedSong.getVersion()).isEqualTo(1L);
+        assertThat(songRepository.findById(defaultSong.getId()).get().getCreateAt()).isEqualTo(createdAt);
+    }
+
     @Test(expected = ResourceNotFoundException.class)
     public void testUpdateSongWithNonExistingId() {
         defaultSong.setId(4000L);
@@ -134,6 +288,180 @@ public class SongServiceIntegrationTest {
 
     }
 
+    @Test
+    public void testExportSongsKeepsPersistenceContextEmpty() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            Song song = new Song();
+            song.setTitle("Export Song #" + i);
+            song.setDescription("Export");
+            song.setCategory(SongCategory.JAZZ);
+            song.setArtistName("Export Artist");
+            song.setDuration("3:00");
+            songRepository.save(song);
+        }
+        songRepository.flush();
+        entityManager.clear();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long exported = songService.exportSongs(out, TransferFormat.NDJSON);
+
+        assertThat(exported).isEqualTo(songRepository.count());
+        assertThat(out.toString().split("\n")).hasSize((int) exported);
+        assertThat(entityManager.unwrap(Session.class).getStatistics().getEntityCount()).isZero();
+    }
+
+    @Test
+    public void testGetSongPlaylistsByPages() {
+        List<Long> playlistIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Playlist playlist = new Playlist();
+            playlist.setTitle("Song Playlist " + i);
+            playlist.setDescription("Reverse lookup " + i);
+            playlist.setSongs(new ArrayList<>(Collections.singletonList(defaultSong)));
+            playlistIds.add(playlistRepository.saveAndFlush(playlist).getId());
+        }
+        // the songs of a packed playlist have no songs_playlist rows
+        playlistService.changeSongStorage(playlistIds.get(1), "PACKED");
+        entityManager.flush();
+        entityManager.clear();
+
+        CursorPage<Playlist> firstPage = songService.getSongPlaylists(defaultSong.getId(), null, 2);
+        assertThat(firstPage.getContent()).extracting(Playlist::getId).containsExactly(playlistIds.get(0), playlistIds.get(1));
+        assertThat(firstPage.hasNext()).isTrue();
+
+        CursorPage<Playlist> secondPage = songService.getSongPlaylists(defaultSong.getId(), firstPage.getNextCursor(), 2);
+        assertThat(secondPage.getContent()).extracting(Playlist::getId).containsExactly(playlistIds.get(2));
+        assertThat(secondPage.hasNext()).isFalse();
+    }
+
+    @Test
+    public void testPackedPlaylistsOfSongFollowTheirWrites() {
+        Playlist playlist = new Playlist();
+        playlist.setTitle("Packed Song Playlist");
+        playlist.setDescription("Reverse lookup");
+        playlist.setSongs(new ArrayList<>(Collections.singletonList(defaultSong)));
+        Long playlistId = playlistRepository.saveAndFlush(playlist).getId();
+        playlistService.changeSongStorage(playlistId, "PACKED");
+        Long copyId = playlistService.copyPlaylist(playlistId).getId();
+        entityManager.flush();
+        entityManager.clear();
+
+        assertThat(playlistIdsOf(defaultSong)).containsExactly(playlistId, copyId);
+
+        playlistService.removeSongs(playlistId, Collections.singletonList(defaultSong.getId()));
+        assertThat(playlistIdsOf(defaultSong)).containsExactly(copyId);
+
+        playlistService.addSongs(playlistId, Collections.singletonList(defaultSong.getId()));
+        playlistService.deletePlaylistById(copyId);
+        assertThat(playlistIdsOf(defaultSong)).containsExactly(playlistId);
+
+        // back to ROWS : the song is found through its songs_playlist row only
+        playlistService.changeSongStorage(playlistId, "ROWS");
+        assertThat(playlistIdsOf(defaultSong)).containsExactly(playlistId);
+    }
+
+    @Test(expected = ResourceNotFoundException.class)
+    public void testGetPlaylistsOfNonExistingSong() {
+        songService.getSongPlaylists(4000L, null, 20);
+    }
+
+    @Test
+    public void testDeleteSongInPlaylist() {
+        Playlist playlist = new Playlist();
+        playlist.setTitle("Deleted Song Playlist");
+        playlist.setDescription("Song deleted");
+        playlist.setSongs(new ArrayList<>(Collections.singletonList(defaultSong)));
+        playlistRepository.saveAndFlush(playlist);
+        entityManager.clear();
+
+        songService.deleteSongById(defaultSong.getId());
+        entityManager.flush();
+        entityManager.clear();
+
+        assertThat(songRepository.findById(defaultSong.getId())).isEmpty();
+        assertThat(playlistRepository.findWithSongsById(playlist.getId()).get().getSongs()).isEmpty();
+    }
+
+    @Test
+    public void testDeleteSongs() {
+        Song otherSong = new Song();
+        otherSong.setTitle("Stay With Me");
+        otherSong.setDescription("In The Lonely Hour");
+        otherSong.setCategory(SongCategory.POP);
+        otherSong.setArtistName("Sam Smith");
+        otherSong.setDuration("2:52");
+        otherSong = songRepository.saveAndFlush(otherSong);
+        List<Long> playlistIds = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Playlist playlist = new Playlist();
+            playlist.setTitle("Deleted Songs Playlist " + i);
+            playlist.setDescription("Songs deleted");
+            playlist.setSongs(new ArrayList<>(Arrays.asList(defaultSong, otherSong)));
+            playlistIds.add(playlistRepository.saveAndFlush(playlist).getId());
+        }
+        entityManager.clear();
+
+        songService.deleteSongs(Arrays.asList(defaultSong.getId(), otherSong.getId()));
+        entityManager.clear();
+
+        assertThat(songRepository.findAllById(Arrays.asList(defaultSong.getId(), otherSong.getId()))).isEmpty();
+        for (Long playlistId : playlistIds) {
+            assertThat(playlistRepository.findWithSongsById(playlistId).get().getSongs()).isEmpty();
+        }
+    }
+
+    @Test
+    public void testDeleteSongMovesItsPlaylistsToTheirNextVersion() {
+        Song otherSong = new Song();
+        otherSong.setTitle("Stay With Me");
+        otherSong.setDescription("In The Lonely Hour");
+        otherSong.setCategory(SongCategory.POP);
+        otherSong.setArtistName("Sam Smith");
+        otherSong.setDuration("2:52");
+        otherSong = songRepository.saveAndFlush(otherSong);
+        List<Long> playlistIds = new ArrayList<>();
+        for (String storage : Arrays.asList("ROWS", "PACKED")) {
+            Playlist playlist = new Playlist();
+            playlist.setTitle("Deleted Song " + storage + " Playlist");
+            playlist.setDescription("Song deleted");
+            playlist.setSongs(new ArrayList<>(Arrays.asList(defaultSong, otherSong)));
+            Long playlistId = playlistRepository.saveAndFlush(playlist).getId();
+            playlistService.changeSongStorage(playlistId, storage);
+            playlistIds.add(playlistId);
+        }
+        entityManager.flush();
+        entityManager.clear();
+        List<ResourceVersion> versions = playlistIds.stream()
+                .map(playlistId -> playlistService.getPlaylistVersion(playlistId, false))
+                .collect(Collectors.toList());
+
+        songService.deleteSongById(defaultSong.getId());
+
+        for (int i = 0; i < playlistIds.size(); i++) {
+            Long playlistId = playlistIds.get(i);
+            ResourceVersion version = playlistService.getPlaylistVersion(playlistId, false);
+            assertThat(version.getTag()).isNotEqualTo(versions.get(i).getTag());
+            assertThat(version.getLastModified()).isAfterOrEqualTo(versions.get(i).getLastModified());
+
+            // an update based on the version read before the deletion is merged with it
+            Playlist update = new Playlist();
+            update.setId(playlistId);
+            update.setDescription("Song deleted");
+            update.setTitle("Merged Playlist " + i);
+            update.setSongs(new ArrayList<>(Arrays.asList(defaultSong, otherSong)));
+            Playlist updated = playlistService.updatePlaylist(update, Long.valueOf(versions.get(i).getTag()));
+            assertThat(updated.getTitle()).isEqualTo("Merged Playlist " + i);
+            assertThat(updated.getSongs()).extracting(Song::getId).containsExactly(otherSong.getId());
+        }
+    }
+
+    @Test
+    public void testDeleteSongsWithNonExistingId() {
+        assertThrows(ResourceNotFoundException.class,
+                () -> songService.deleteSongs(Arrays.asList(defaultSong.getId(), 4000L)));
+        assertThat(songRepository.findById(defaultSong.getId())).isPresent();
+    }
+
     @Test
     public void testDeleteSongById() {
         songService.deleteSongById(defaultSong.getId());
@@ -148,4 +476,9 @@ public class SongServiceIntegrationTest {
 
     }
 
+    private List<Long> playlistIdsOf(Song song) {
+        return songService.getSongPlaylists(song.getId(), null, 20).getContent().stream()
+                .map(Playlist::getId)
+                .collect(Collectors.toList());
+    }
 }
@@ -1,22 +1,49 @@
 package com.rest.playlist.service.song;
 
 import com.rest.playlist.enums.SongCategory;
+import com.rest.playlist.web.exception.BadRequestException;
 import com.rest.playlist.web.exception.ResourceNotFoundException;
 import com.rest.playlist.model.Song;
+import com.rest.playlist.pagination.Cursor;
+import com.rest.playlist.pagination.CursorPage;
+import com.rest.playlist.repository.PackedSongIdsJdbcRepository;
+import com.rest.playlist.repository.PlaylistChangeJdbcRepository;
+import com.rest.playlist.repository.PlaylistMemberJdbcRepository;
+import com.rest.playlist.repository.PlaylistRepository;
+import com.rest.playlist.repository.ProjectionJdbcRepository;
+import com.rest.playlist.repository.SongJdbcRepository;
 import com.rest.playlist.repository.SongRepository;
+import com.rest.playlist.dto.SongSearchResult;
+import com.rest.playlist.dto.Suggestion;
+import com.rest.playlist.search.PrefixIndex;
+import com.rest.playlist.search.SongSearchIndex;
+import com.rest.playlist.service.SongBulkExporter;
+import com.rest.playlist.service.SongBulkImporter;
+import com.rest.playlist.service.OptimisticLockRetry;
 import com.rest.playlist.service.SongServiceImpl;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Pageable;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.Assert.*;
@@ -31,6 +58,35 @@ public class SongServiceUnitTest {
     @MockBean
     private SongRepository songRepository;
 
+    @MockBean
+    private SongJdbcRepository songJdbcRepository;
+
+    @MockBean
+    private PlaylistRepository playlistRepository;
+
+    @MockBean
+    private PlaylistMemberJdbcRepository playlistMemberJdbcRepository;
+
+    @MockBean
+    private PackedSongIdsJdbcRepository packedSongIdsJdbcRepository;
+
+    @MockBean
+    private PlaylistChangeJdbcRepository playlistChangeJdbcRepository;
+
+    @MockBean
+    private ProjectionJdbcRepository projectionJdbcRepository;
+
+    @MockBean
+    private SongBulkImporter songBulkImporter;
+
+    @MockBean
+    private SongBulkExporter songBulkExporter;
+
+    @MockBean
+    private EntityManager entityManager;
+
+    private SongSearchIndex songSearchIndex;
+
     private SongServiceImpl songService;
 
     private Song mySong;
@@ -39,7 +95,12 @@ public class SongServiceUnitTest {
 
     @Before
     public void setup() {
-        songService = new SongServiceImpl(songRepository);
+        songSearchIndex = new SongSearchIndex();
+        songService = new SongServiceImpl(songRepository, songJdbcRepository, playlistRepository, playlistMemberJdbcRepository,
+                packedSongIdsJdbcRepository, playlistChangeJdbcRepository,
+                projectionJdbcRepository, songBulkImporter, songBulkExporter, songSearchIndex,
+                new OptimisticLockRetry(new TransactionTemplate(mock(PlatformTransactionManager.class))),
+                entityManager);
 
         mySong = new Song();
         mySong.setId(1000L);
@@ -62,6 +123,35 @@ public class SongServiceUnitTest {
         verify(songRepository, times(1)).findAll();
     }
 
+    @Test
+    public void testGetAllSongsFirstPage() {
+        Song nextSong = new Song();
+        nextSong.setId(1001L);
+        songList.addAll(Arrays.asList(mySong, nextSong));
+        when(songRepository.findAllByOrderByIdAsc(any(Pageable.class))).thenReturn(songList);
+
+        CursorPage<Song> page = songService.getAllSongs(null, 1, null);
+
+        assertThat(page.getContent()).containsExactly(mySong);
+        assertThat(page.getNextCursor()).isNotNull();
+        verify(songRepository, times(1)).findAllByOrderByIdAsc(any(Pageable.class));
+    }
+
+    @Test
+    public void testGetAllSongsNextPage() {
+        songList.addAll(Arrays.asList(mySong, new Song()));
+        when(songRepository.findAllByOrderByIdAsc(any(Pageable.class))).thenReturn(songList);
+        String cursor = songService.getAllSongs(null, 1, null).getNextCursor();
+
+        when(songRepository.findByIdGreaterThanOrderByIdAsc(eq(mySong.getId()), any(Pageable.class)))
+                .thenReturn(songList.subList(1, 2));
+        CursorPage<Song> page = songService.getAllSongs(cursor, 1, null);
+
+        assertThat(page.getContent()).hasSize(1);
+        assertThat(page.getNextCursor()).isNull();
+        verify(songRepository, times(1)).findByIdGreaterThanOrderByIdAsc(eq(mySong.getId()), any(Pageable.class));
+    }
+
     @Test
     public void testGetSongsByCategory() {
         songList.add(mySong);
@@ -83,13 +173,145 @@ public class SongServiceUnitTest {
     @Test
     public void testGetSongsByArtistName() {
         songList.add(mySong);
-        when(songRepository.findSongsByArtistNameContaining(mySong.getArtistName())).thenReturn(songList);
+        songSearchIndex.saved(mySong);
+        when(songRepository.findAllById(Arrays.asList(mySong.getId()))).thenReturn(songList);
         List<Song> songs = songService.getSongsByArtistName(mySong.getArtistName());
 
         //test
         assertThat(songs).isNotEmpty();
         assertThat(songs).hasSizeGreaterThanOrEqualTo(1);
-        verify(songRepository, times(1)).findSongsByArtistNameContaining(mySong.getArtistName());
+        verify(songRepository, times(1)).findAllById(Arrays.asList(mySong.getId()));
+        verify(songRepository, never()).findSongsByArtistNameContaining(anyString());
+    }
+
+    @Test
+    public void testGetSongsByArtistNameQueriesOneChunkPerInList() {
+        for (long id = 1; id <= 2500; id++) {
+            songSearchIndex.saved(songOf(id, "Sam Smith"));
+        }
+        when(songRepository.findAllById(anyList())).thenAnswer(invocation -> {
+            List<Long> chunk = invocation.getArgument(0);
+            List<Song> songs = new ArrayList<>();
+            chunk.forEach(id -> songs.add(songOf(id, "Sam Smith")));
+            return songs;
+        });
+
+        assertThat(songService.getSongsByArtistName("Sam Smith")).hasSize(2500);
+        verify(songRepository, times(3)).findAllById(anyList());
+    }
+
+    @Test
+    public void testGetSongsByShortArtistNameFallsBackToDatabase() {
+        songList.add(mySong);
+        when(songRepository.findSongsByArtistNameContaining("Sa")).thenReturn(songList);
+        List<Song> songs = songService.getSongsByArtistName("Sa");
+
+        //test
+        assertThat(songs).containsExactly(mySong);
+        verify(songRepository, times(1)).findSongsByArtistNameContaining("Sa");
+    }
+
+    @Test
+    public void testGetSongsByFuzzyArtistName() {
+        Song otherSong = new Song();
+        otherSong.setId(1001L);
+        otherSong.setTitle("Stay With Me");
+        otherSong.setArtistName("Sam Smyth");
+        songSearchIndex.saved(mySong);
+        songSearchIndex.saved(otherSong);
+        when(songRepository.findAllById(Arrays.asList(1000L, 1001L))).thenReturn(Arrays.asList(otherSong, mySong));
+
+        List<Song> songs = songService.getSongsByArtistName("Sam Smitt", 2);
+
+        //test
+        assertThat(songs).containsExactly(mySong, otherSong);
+        verify(songRepository, never()).findSongsByArtistNameContaining(anyString());
+    }
+
+    @Test
+    public void testGetSongsByFuzzyArtistNameQueriesOneChunkPerInList() {
+        for (long id = 1; id <= 2500; id++) {
+            songSearchIndex.saved(songOf(id, id % 2 == 0 ? "Sam Smith" : "Sam Smyth"));
+        }
+        when(songRepository.findAllById(anyList())).thenAnswer(invocation -> {
+            List<Long> chunk = invocation.getArgument(0);
+            List<Song> songs = new ArrayList<>();
+            chunk.forEach(id -> songs.add(songOf(id, id % 2 == 0 ? "Sam Smith" : "Sam Smyth")));
+            return songs;
+        });
+
+        assertThat(songService.getSongsByArtistName("Sam Smitt", 2)).hasSize(2500);
+        verify(songRepository, times(3)).findAllById(anyList());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testGetSongsByFuzzyArtistNameWithTooManyEdits() {
+        songService.getSongsByArtistName("Sam Smitt", 3);
+    }
+
+    @Test
+    public void testSearchSongs() {
+        Song otherSong = new Song();
+        otherSong.setId(1001L);
+        otherSong.setTitle("Stay With Me");
+        otherSong.setArtistName("Sam Smith");
+        otherSong.setCategory(SongCategory.JAZZ);
+        songSearchIndex.saved(mySong);
+        songSearchIndex.saved(otherSong);
+        when(songRepository.findAllById(Arrays.asList(1000L))).thenReturn(Arrays.asList(mySong));
+
+        SongSearchResult result = songService.searchSongs(null, "Sam Smith", null, null, 1);
+
+        //test
+        assertThat(result.getTotal()).isEqualTo(2);
+        assertThat(result.getSongs()).containsExactly(mySong);
+        assertThat(result.getPage().hasNext()).isTrue();
+        assertThat(result.getCategories()).containsEntry("POP", 1).containsEntry("JAZZ", 1).containsEntry("CLASSICAL", 0);
+        assertThat(result.getArtists()).containsOnlyKeys("Sam Smith").containsEntry("Sam Smith", 2);
+
+        when(songRepository.findAllById(Arrays.asList(1001L))).thenReturn(Arrays.asList(otherSong));
+        SongSearchResult nextResult = songService.searchSongs(null, "Sam Smith", null, result.getPage().getNextCursor(), 1);
+        assertThat(nextResult.getSongs()).containsExactly(otherSong);
+        assertThat(nextResult.getPage().hasNext()).isFalse();
+    }
+
+    @Test
+    public void testSearchSongsByCategoryAndTitle() {
+        songSearchIndex.saved(mySong);
+        when(songRepository.findAllById(Arrays.asList(1000L))).thenReturn(Arrays.asList(mySong));
+
+        assertThat(songService.searchSongs("pop", null, "Lover", null, 10).getSongs()).containsExactly(mySong);
+        assertThat(songService.searchSongs("jazz", null, "Lover", null, 10).getTotal()).isZero();
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testSearchSongsWithNonExistingCategory() {
+        songService.searchSongs("rock", null, null, null, 10);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testSearchSongsWithCursorBeyondIndexedIds() {
+        songService.searchSongs(null, null, null, Cursor.after(Cursor.Order.ID, null, Integer.MAX_VALUE + 1L).encode(), 10);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testSearchSongsWithShortTitle() {
+        songService.searchSongs(null, null, "Lo", null, 10);
+    }
+
+    @Test
+    public void testSuggestSongs() {
+        songSearchIndex.saved(mySong);
+        List<Suggestion> suggestions = songService.suggestSongs("smi", 10);
+
+        //test
+        assertThat(suggestions).extracting(Suggestion::getValue).containsExactly("Sam Smith");
+        verifyNoInteractions(songRepository);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testSuggestSongsWithInvalidLimit() {
+        songService.suggestSongs("smi", PrefixIndex.MAX_COMPLETIONS + 1);
     }
 
     @Test
@@ -103,23 +325,26 @@ public class SongServiceUnitTest {
     public void testUpdateSong() {
         when(songRepository.findById(mySong.getId())).thenReturn(Optional.of(mySong));
 
-        mySong.setTitle("Power");
-        mySong.setDescription("power album");
-        mySong.setArtistName("Isak Danielson");
-
-        given(songRepository.saveAndFlush(mySong)).willReturn(mySong);
+        Song body = new Song();
+        body.setId(mySong.getId());
+        body.setTitle("Power");
+        body.setDescription("power album");
+        body.setCategory(mySong.getCategory());
+        body.setArtistName("Isak Danielson");
+        body.setDuration(mySong.getDuration());
 
-        Song updatedSong = songService.updateSong(mySong);
+        Song updatedSong = songService.updateSong(body);
 
         assertThat(updatedSong).isNotNull();
-        assertThat(updatedSong).isEqualTo(mySong);
-        assertThat(updatedSong.getId()).isNotNull();
-        assertThat(updatedSong.getId()).isEqualTo(mySong.getId());
-        assertThat(updatedSong.getTitle()).isEqualTo(mySong.getTitle());
-        assertThat(updatedSong.getDescription()).isEqualTo(mySong.getDescription());
-        assertThat(updatedSong.getCategory()).isEqualTo(mySong.getCategory());
-        assertThat(updatedSong.getDuration()).isEqualTo(mySong.getDuration());
-        assertThat(updatedSong.getArtistName()).isEqualTo(mySong.getArtistName());
+        assertThat(updatedSong).isSameAs(mySong);
+        assertThat(updatedSong.getId()).isEqualTo(body.getId());
+        assertThat(updatedSong.getTitle()).isEqualTo("Power");
+        assertThat(updatedSong.getDescription()).isEqualTo("power album");
+        assertThat(updatedSong.getCategory()).isEqualTo(body.getCategory());
+        assertThat(updatedSong.getDuration()).isEqualTo(body.getDuration());
+        assertThat(updatedSong.getArtistName()).isEqualTo("Isak Danielson");
+        verify(songRepository, times(1)).flush();
+        verify(songRepository, never()).saveAndFlush(any(Song.class));
     }
 
 
@@ -150,6 +375,50 @@ public class SongServiceUnitTest {
 
     }
 
+    @Test
+    public void testGetSongsByIdsKeepsRequestedOrder() {
+        Song otherSong = new Song();
+        otherSong.setId(1001L);
+        otherSong.setTitle("Stay With Me");
+        when(songRepository.findAllById(Arrays.asList(1001L, 1000L))).thenReturn(Arrays.asList(mySong, otherSong));
+
+        List<Song> songs = songService.getSongsByIds(Arrays.asList(1001L, 1000L, 1001L));
+
+        assertThat(songs).containsExactly(otherSong, mySong, otherSong);
+        verify(songRepository, times(1)).findAllById(anyList());
+    }
+
+    @Test
+    public void testGetSongsByIdsQueriesOneChunkPerInList() {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 2500; id++) {
+            ids.add(id);
+        }
+        when(songRepository.findAllById(anyList())).thenAnswer(invocation -> {
+            List<Long> chunk = invocation.getArgument(0);
+            List<Song> songs = new ArrayList<>();
+            for (Long id : chunk) {
+                Song song = new Song();
+                song.setId(id);
+                songs.add(song);
+            }
+            return songs;
+        });
+
+        assertThat(songService.getSongsByIds(ids)).extracting(Song::getId).containsExactlyElementsOf(ids);
+        verify(songRepository, times(3)).findAllById(anyList());
+    }
+
+    @Test
+    public void testGetSongsByIdsReportsAllMissingIds() {
+        when(songRepository.findAllById(Arrays.asList(4000L, 1000L, 4001L))).thenReturn(Arrays.asList(mySong));
+
+        ResourceNotFoundException ex = assertThrows(ResourceNotFoundException.class,
+                () -> songService.getSongsByIds(Arrays.asList(4000L, 1000L, 4001L)));
+
+        assertThat(ex.getMessage()).isEqualTo("Not found songs with ids = [4000, 4001]");
+    }
+
     @Test(expected = ResourceNotFoundException.class)
     public void testGetSongsWithNonExistingId() {
 
@@ -167,14 +436,67 @@ public class SongServiceUnitTest {
 
     @Test
     public void testDeleteSongById() {
-        when(songRepository.findById(mySong.getId())).thenReturn(Optional.of(mySong));
+        List<Long> ids = Collections.singletonList(mySong.getId());
+        when(songJdbcRepository.findExistingIds(ids)).thenReturn(new HashSet<>(ids));
         songService.deleteSongById(mySong.getId());
-        verify(songRepository, times(1)).deleteById(mySong.getId());
+        InOrder inOrder = inOrder(entityManager, playlistMemberJdbcRepository, songJdbcRepository, playlistChangeJdbcRepository);
+        inOrder.verify(entityManager).flush();
+        inOrder.verify(playlistMemberJdbcRepository, times(1)).removeSongsFromPlaylists(ids);
+        inOrder.verify(songJdbcRepository, times(1)).deleteAll(ids);
+        inOrder.verify(playlistChangeJdbcRepository, times(1)).recordRemovals(anyMap());
+        inOrder.verify(entityManager).clear();
+        verify(songRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    public void testDeleteSongs() {
+        when(songJdbcRepository.findExistingIds(Arrays.asList(1000L, 1001L))).thenReturn(new HashSet<>(Arrays.asList(1000L, 1001L)));
+        songService.deleteSongs(Arrays.asList(1000L, 1001L, 1000L));
+        verify(playlistMemberJdbcRepository, times(1)).removeSongsFromPlaylists(Arrays.asList(1000L, 1001L));
+        verify(songJdbcRepository, times(1)).deleteAll(Arrays.asList(1000L, 1001L));
+    }
+
+    @Test
+    public void testDeleteSongsRecordsTheirRemovalFromTheirPlaylists() {
+        List<Long> ids = Arrays.asList(1000L, 1001L);
+        when(songJdbcRepository.findExistingIds(ids)).thenReturn(new HashSet<>(ids));
+        when(playlistMemberJdbcRepository.removeSongsFromPlaylists(ids)).thenReturn(Collections.singletonMap(7L, ids));
+        when(packedSongIdsJdbcRepository.removeSongsFromPlaylists(ids))
+                .thenReturn(Collections.singletonMap(8L, Collections.singletonList(1001L)));
+        songService.deleteSongs(ids);
+        Map<Long, List<Long>> removedSongIds = new HashMap<>();
+        removedSongIds.put(7L, ids);
+        removedSongIds.put(8L, Collections.singletonList(1001L));
+        verify(playlistChangeJdbcRepository, times(1)).recordRemovals(removedSongIds);
+    }
+
+    @Test
+    public void testDeleteSongsWithNonExistingId() {
+        when(songJdbcRepository.findExistingIds(Arrays.asList(1000L, 4000L))).thenReturn(new HashSet<>(Collections.singletonList(1000L)));
+        ResourceNotFoundException exception = assertThrows(ResourceNotFoundException.class,
+                () -> songService.deleteSongs(Arrays.asList(1000L, 4000L)));
+        assertThat(exception.getMessage()).isEqualTo("Not found songs with ids = [4000]");
+        verify(songJdbcRepository, never()).deleteAll(anyCollection());
+    }
+
+    @Test(expected = ResourceNotFoundException.class)
+    public void testGetPlaylistsOfNonExistingSong() {
+        when(songRepository.existsById(4000L)).thenReturn(false);
+        songService.getSongPlaylists(4000L, null, 20);
     }
 
     @Test(expected = ResourceNotFoundException.class)
     public void testDeleteSongWithNonExistingId() {
-        when(songRepository.findById(4000L)).thenReturn(Optional.empty());
+        when(songJdbcRepository.findExistingIds(Collections.singletonList(4000L))).thenReturn(new HashSet<>());
         songService.deleteSongById(4000L);
     }
+
+    private static Song songOf(long id, String artistName) {
+        Song song = new Song();
+        song.setId(id);
+        song.setTitle("Indexed Song " + id);
+        song.setArtistName(artistName);
+        song.setCategory(SongCategory.POP);
+        return song;
+    }
 }